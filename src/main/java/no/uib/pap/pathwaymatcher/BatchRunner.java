@@ -0,0 +1,191 @@
+package no.uib.pap.pathwaymatcher;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.cli.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the jobs of a batch manifest in one JVM, on a pool of workers sharing the mappings.
+ * <p>
+ * The manifest is tab separated, one job per line, with the columns INPUT, TYPE, OUTPUT and optionally OPTIONS,
+ * e.g. {@code sample1.txt  uniprot  out/sample1/  -tlp -g}. The options are those of the command line for the
+ * search and the graphs: -tlp, -m, -r, -f, -g, -gg, -gu, -gp and -ro. Empty lines, lines starting with # and a
+ * header line starting with INPUT are skipped.
+ * <p>
+ * A job that fails is reported and the batch goes on with the next one.
+ */
+class BatchRunner {
+
+    /**
+     * Config of one line of the manifest, or the reason it could not be read.
+     */
+    static class Entry {
+        final int line;
+        final String input;
+        final RunConfig config;
+        final String error;
+
+        Entry(int line, String input, RunConfig config, String error) {
+            this.line = line;
+            this.input = input;
+            this.config = config;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Time and result of a job, the error is null if it succeeded.
+     */
+    static class Outcome {
+        final Entry entry;
+        final long millis;
+        final String error;
+
+        Outcome(Entry entry, long millis, String error) {
+            this.entry = entry;
+            this.millis = millis;
+            this.error = error;
+        }
+    }
+
+    private static Options createJobOptions() {
+        Options options = new Options();
+        options.addOption(new Option("tlp", "toplevelpathways", false, "Show Top Level Pathway columns"));
+        options.addOption(new Option("m", "matchType", true, "Proteoform match criteria"));
+        options.addOption(new Option("r", "range", true, "Ptm sites range of error"));
+        options.addOption(new Option("f", "fasta", true, "Proteins where to find the peptides"));
+        options.addOption(new Option("g", "graph", false, "Create connection graph"));
+        options.addOption(new Option("gg", "graphGene", false, "Create gene connection graph"));
+        options.addOption(new Option("gu", "graphUniprot", false, "Create protein connection graph"));
+        options.addOption(new Option("gp", "graphProteoform", false, "Create proteoform connection graph"));
+        options.addOption(new Option("ro", "roles", true, "Reaction participant roles connected in the graphs"));
+        options.addOption(new Option("st", "stream", false, "Read and search the input in chunks"));
+        options.addOption(new Option("fp", "filterPass", false, "Keep only the vcf variants with PASS in the FILTER column"));
+        options.addOption(new Option("afmin", "minAlleleFrequency", true, "Minimum allele frequency of the vcf variants"));
+        options.addOption(new Option("afmax", "maxAlleleFrequency", true, "Maximum allele frequency of the vcf variants"));
+        options.addOption(new Option("ps", "perSample", false, "Analyse each sample of the vcf file"));
+        options.addOption(new Option("rg", "region", true, "Region of the chrbp and vcf variants read"));
+        return options;
+    }
+
+    static List<Entry> readManifest(File manifest) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Options options = createJobOptions();
+        int number = 0;
+        for (String line : Files.readLines(manifest, StandardCharsets.UTF_8)) {
+            number++;
+            if (line.trim().isEmpty() || line.startsWith("#") || line.startsWith("INPUT\t")) {
+                continue;
+            }
+            String[] columns = line.split("\t");
+            String input = columns[0].trim();
+            if (columns.length < 3 || input.isEmpty()) {
+                entries.add(new Entry(number, input, null, "Expected the columns INPUT, TYPE, OUTPUT and OPTIONS"));
+                continue;
+            }
+
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put("inputType", columns[1].trim());
+            parameters.put("output", columns[2].trim());
+            try {
+                if (columns.length > 3 && !columns[3].trim().isEmpty()) {
+                    CommandLine commandLine = new DefaultParser().parse(options, columns[3].trim().split("\\s+"));
+                    for (Option option : commandLine.getOptions()) {
+                        String name = option.getOpt().equals("tlp") ? "tlp" : option.getLongOpt();
+                        parameters.put(name, option.hasArg() ? option.getValue() : "true");
+                    }
+                }
+                RunConfig config = RunConfig.fromParameters(parameters, true).inputPath(input).build();
+                entries.add(new Entry(number, input, config, null));
+            } catch (ParseException | PathwayMatcherException e) {
+                entries.add(new Entry(number, input, null, e.getMessage()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Runs the jobs of a manifest and prints the time and result of each one.
+     *
+     * @param workers jobs run at the same time
+     * @return the number of failed jobs
+     */
+    static int run(File manifest, int workers, PrintStream out) throws IOException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Entry> entries = readManifest(manifest);
+
+        // One mapping per search type: with the top level pathways if any job of the type shows them
+        PathwayMatcherEngine engine = new PathwayMatcherEngine();
+        for (Entry entry : entries) {
+            if (entry.config != null && entry.config.isTopLevelPathways()) {
+                engine.declare(entry.config.getSearchType(), true);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workers),
+                new ThreadFactoryBuilder().setNameFormat("pathwaymatcher-batch-%d").setDaemon(true).build());
+        List<Outcome> outcomes = new ArrayList<>();
+        try {
+            List<Future<Outcome>> tasks = new ArrayList<>();
+            for (Entry entry : entries) {
+                tasks.add(executor.submit(() -> runJob(engine, entry)));
+            }
+            for (Future<Outcome> task : tasks) {
+                outcomes.add(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running the batch.");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        stopwatch.stop();
+        printSummary(outcomes, stopwatch.elapsed(TimeUnit.MILLISECONDS), out);
+        int failures = 0;
+        for (Outcome outcome : outcomes) {
+            if (outcome.error != null) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static Outcome runJob(PathwayMatcherEngine engine, Entry entry) {
+        if (entry.config == null) {
+            return new Outcome(entry, 0, entry.error);
+        }
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try {
+            engine.run(entry.config);
+            return new Outcome(entry, stopwatch.elapsed(TimeUnit.MILLISECONDS), null);
+        } catch (PathwayMatcherException | RuntimeException e) {
+            return new Outcome(entry, stopwatch.elapsed(TimeUnit.MILLISECONDS), String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static void printSummary(List<Outcome> outcomes, long millis, PrintStream out) {
+        int failures = 0;
+        out.println("LINE\tINPUT\tTIME_MS\tRESULT");
+        for (Outcome outcome : outcomes) {
+            out.println(outcome.entry.line + "\t" + outcome.entry.input + "\t" + outcome.millis + "\t"
+                    + (outcome.error == null ? "OK" : "FAILED: " + outcome.error));
+            if (outcome.error != null) {
+                failures++;
+            }
+        }
+        out.println("Batch finished: " + outcomes.size() + " jobs, " + failures + " failed (" + millis / 1000 + "s)");
+    }
+}
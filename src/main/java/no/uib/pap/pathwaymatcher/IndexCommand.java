@@ -0,0 +1,57 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.Error;
+import no.uib.pap.pathwaymatcher.data.TabixIndex;
+import org.apache.commons.cli.*;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The index subcommand: writes the tabix index of sorted vcf or chrBp files compressed with bgzip, e.g.
+ * {@code index variants.vcf.gz}, next to each file with the .tbi extension. Runs with a region then read only the
+ * blocks of the file with the variants of the region.
+ */
+class IndexCommand {
+
+    static void main(String args[]) {
+        Options options = new Options();
+        options.addOption(new Option("h", "help", false, "Print usage and available arguments"));
+        String usage = "java -jar PathwayMatcher.jar index <file.vcf.gz> [more files]";
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp(usage, options);
+            System.exit(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR.getCode());
+            return;
+        }
+        if (commandLine.hasOption("h") || commandLine.getArgList().isEmpty()) {
+            new HelpFormatter().printHelp(usage, options);
+            System.exit(commandLine.hasOption("h") ? 0 : Error.MISSING_ARGUMENT.getCode());
+            return;
+        }
+
+        for (String path : commandLine.getArgList()) {
+            File file = new File(path);
+            try {
+                File indexFile = index(file);
+                System.out.println("Indexed " + path + " to " + indexFile.getPath());
+            } catch (IOException e) {
+                System.out.println("Could not index " + path + ": " + e.getMessage());
+                System.exit(Error.COULD_NOT_READ_INPUT_FILE.getCode());
+            }
+        }
+    }
+
+    /**
+     * @return the index file written
+     */
+    static File index(File file) throws IOException {
+        File indexFile = TabixIndex.getIndexFile(file);
+        TabixIndex.build(file).write(indexFile);
+        return indexFile;
+    }
+}
@@ -1,13 +1,24 @@
 package no.uib.pap.pathwaymatcher;
 
+import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
 import no.uib.pap.methods.search.SearchResult;
 import no.uib.pap.model.*;
+import no.uib.pap.pathwaymatcher.data.IdDictionary;
+import no.uib.pap.pathwaymatcher.data.IdDictionary.Kind;
+import no.uib.pap.pathwaymatcher.data.IndexedMapping;
+import no.uib.pap.pathwaymatcher.data.IndexedProteoforms;
+import no.uib.pap.pathwaymatcher.data.IntMultimap;
+import no.uib.pap.pathwaymatcher.data.NetworkMaps;
+import no.uib.pap.pathwaymatcher.data.ProteoformRegistry;
+import no.uib.pap.pathwaymatcher.data.RoleMask;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import static no.uib.pap.model.InputType.*;
 
@@ -17,7 +28,7 @@ class NetworkGenerator {
         return s1;
     }
 
-    private static Set<Role> getFirst(Set<Role> s1, Set<Role> s2) {
+    private static byte getFirst(byte s1, byte s2) {
         return s1;
     }
 
@@ -32,7 +43,7 @@ class NetworkGenerator {
 
     private static List<String> getValidLines(String entity1, String entity2,
                                               String container, String container_id,
-                                              Set<Role> roles1, Set<Role> roles2) {
+                                              byte roles1, byte roles2) {
         List<String> validLines = new ArrayList<>();
 
         if (entity1.compareTo(entity2) > 0) {   // Swap the values if not in order
@@ -40,15 +51,40 @@ class NetworkGenerator {
             roles2 = getFirst(roles1, roles2 = roles1);
         }
 
-        for (Role first_role : roles1) {
-            for (Role second_role : roles2) {
-                validLines.add(String.join("\t", entity1, entity2, container, container_id, first_role.toString(), second_role.toString()));
+        // One line for each pair of role bits
+        for (int first_roles = roles1 & 0xFF; first_roles != 0; first_roles &= first_roles - 1) {
+            String first_role = RoleMask.getName(Integer.numberOfTrailingZeros(first_roles));
+            for (int second_roles = roles2 & 0xFF; second_roles != 0; second_roles &= second_roles - 1) {
+                validLines.add(String.join("\t", entity1, entity2, container, container_id, first_role,
+                        RoleMask.getName(Integer.numberOfTrailingZeros(second_roles))));
             }
         }
 
         return validLines;
     }
 
+    private static BitSet toIds(Collection<String> identifiers, IdDictionary dictionary, Kind kind) {
+        BitSet ids = new BitSet(dictionary.size(kind));
+        for (String identifier : identifiers) {
+            int id = dictionary.getId(kind, identifier);
+            if (id >= 0) {
+                ids.set(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the targets of the keys in the relation, in order of appearance
+     */
+    private static <T> Set<T> getTargets(Collection<String> keys, Multimap<String, T> relation) {
+        Set<T> targets = new LinkedHashSet<>();
+        for (String key : keys) {
+            targets.addAll(relation.get(key));
+        }
+        return targets;
+    }
+
     private static void writeLine(String line, BufferedWriter output) throws IOException {
         output.write(line);
         output.newLine();
@@ -63,13 +99,16 @@ class NetworkGenerator {
 
     /**
      * Decide which network is done and call for respective writer functions.
+     * The requested networks are written in parallel, each one waiting only for the maps it uses.
      *
      * @param doGeneGraph       command line argument requesting the gene network
      * @param doProteinGraph    command line argument requesting the protein network
      * @param doProteoformGraph command line argument requesting the proteoform network
      * @param inputType         type of data: uniprot | proteoform | peptide...
      * @param searchResult      structured filled after search execution
-     * @param mapping           static mapping data
+     * @param maps              network maps of the static mapping, loaded on first use
+     * @param pipeline          startup pipeline running the writers
+     * @param roleFilter        {@link RoleMask} of the reaction participant roles to connect
      * @param outputPath        directory for output files
      */
     static void writeGraphs(boolean doGeneGraph,
@@ -77,32 +116,49 @@ class NetworkGenerator {
                             boolean doProteoformGraph,
                             InputType inputType,
                             SearchResult searchResult,
-                            Mapping mapping,
+                            NetworkMaps maps,
+                            StartupPipeline pipeline,
+                            byte roleFilter,
                             String outputPath) throws IOException {
+        Map<String, Future<?>> graphs = new LinkedHashMap<>();
         if (doGeneGraph) {
-            try {
-                writeGeneGraph(searchResult, mapping, outputPath, inputType);
-            } catch (IOException e) {
-                throw new IOException("Can't create gene network file.");
-            }
+            graphs.put("gene", pipeline.submit(StartupPipeline.GENE_GRAPH, () -> {
+                writeGeneGraph(searchResult, maps.loadGeneMaps(), maps.getIndexedMapping(true), roleFilter, outputPath, inputType);
+                return null;
+            }));
         }
         if (doProteinGraph) {
-            try {
-                writeProteinGraph(searchResult, mapping, outputPath);
-            } catch (IOException e) {
-                throw new IOException("Can't create protein network file.");
-            }
+            graphs.put("protein", pipeline.submit(StartupPipeline.PROTEIN_GRAPH, () -> {
+                writeProteinGraph(searchResult, maps.loadProteinMaps(), maps.getIndexedMapping(doGeneGraph), roleFilter, outputPath);
+                return null;
+            }));
         }
         if (doProteoformGraph) {
+            graphs.put("proteoform", pipeline.submit(StartupPipeline.PROTEOFORM_GRAPH, () -> {
+                writeProteoformGraph(searchResult, maps.loadProteoformMaps(), maps.getIndexedProteoforms(), roleFilter, outputPath, inputType);
+                return null;
+            }));
+        }
+
+        for (Map.Entry<String, Future<?>> graph : graphs.entrySet()) {
             try {
-                writeProteoformGraph(searchResult, mapping, outputPath, inputType);
-            } catch (IOException e) {
-                throw new IOException("Can't create proteoform network file.");
+                graph.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while creating the " + graph.getKey() + " network file.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw new IOException("Can't create " + graph.getKey() + " network file.");
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
             }
         }
     }
 
-    private static void writeGeneGraph(SearchResult searchResult, Mapping mapping, String outputPath, InputType inputType) throws IOException {
+    private static void writeGeneGraph(SearchResult searchResult, NetworkMaps maps, IndexedMapping indexed, byte roleFilter, String outputPath, InputType inputType) throws IOException {
         System.out.println("Creating gene connection graph...");
 
         TreeMultimap<String, String> addedEdges = TreeMultimap.create();
@@ -117,20 +173,18 @@ class NetworkGenerator {
         outputInternalEdges.write("id1" + "\t" + "id2" + "\t" + "type" + "\t" + "container_id" + "\t" + "role1" + "\t" + "role2" + System.lineSeparator());
         outputExternalEdges.write("id1" + "\t" + "id2" + "\t" + "type" + "\t" + "container_id" + "\t" + "role1" + "\t" + "role2" + System.lineSeparator());
 
-        // Make sure all static maps are loaded
-        // Load static mapping
-        mapping.loadMapsForGeneNetwork();
-
-        // Make sure all results are calculated
         // Get the list of hit genes for input cases different to -t gene. The list is generated during the search for the gene input type.
+        Collection<String> hitGenes = searchResult.getHitGenes();
         if (!inputType.equals(GENE) && !inputType.equals(GENES)) {
-            searchResult.calculateHitGenes(mapping);
+            hitGenes = getTargets(searchResult.getHitProteins(), maps.getProteinsToGenes());
         }
 
         // Write the vertices file
-        for (String gene : searchResult.getHitGenes()) {
-            for (String protein : mapping.getGenesToProteins().get(gene)) {
-                String line = String.join("\t", gene, mapping.getProteinsToNames().get(protein));
+        Map<String, String> proteinsToNames = maps.getProteinsToNames();
+        Multimap<String, String> genesToProteins = maps.getGenesToProteins();
+        for (String gene : hitGenes) {
+            for (String protein : genesToProteins.get(gene)) {
+                String line = String.join("\t", gene, proteinsToNames.get(protein));
                 outputVertices.write(line);
                 outputVertices.newLine();
             }
@@ -139,24 +193,47 @@ class NetworkGenerator {
         System.out.println("Finished writing " + outputPath + "geneVertices.tsv");
 
         // Write edges
-        for (String protein : searchResult.getHitProteins()) {
+        IdDictionary dictionary = indexed.getDictionary();
+        IntMultimap proteinsToReactions = indexed.getProteinsToReactions();
+        IntMultimap reactionsToParticipants = indexed.getReactionsToParticipants();
+        IntMultimap proteinsToComplexes = indexed.getProteinsToComplexes();
+        IntMultimap complexesToProteins = indexed.getComplexesToProteins();
+        IntMultimap proteinsToSets = indexed.getProteinsToSets();
+        IntMultimap setsToProteins = indexed.getSetsToProteins();
+        IntMultimap proteinsToGenes = indexed.getProteinsToGenes();
+        BitSet inputGenes = toIds(searchResult.getInputGenes(), dictionary, Kind.GENE);
+        for (String protein_str : searchResult.getHitProteins()) {
+            int protein = dictionary.getId(Kind.PROTEIN, protein_str);
+            if (protein < 0) {
+                continue;
+            }
 
             //***** Output Reaction edges ******/
             // For all reactions where the current protein participates
-            for (String reaction : mapping.getProteinsToReactions().get(protein)) {
+            for (int R = proteinsToReactions.start(protein); R < proteinsToReactions.end(protein); R++) {
+                int reaction = proteinsToReactions.target(R);
+                String reaction_str = dictionary.getString(Kind.REACTION, reaction);
+                byte roles = (byte) (indexed.getRolesOf(reaction, protein) & roleFilter);
+                if (roles == RoleMask.NONE) {
+                    continue;
+                }
 
                 // For all other proteins in the same reaction
-                for (String other_protein : mapping.getReactions().get(reaction).getProteinParticipantsWithRole().keySet()) {
-                    if (!other_protein.equals(protein)) {
+                for (int P = reactionsToParticipants.start(reaction); P < reactionsToParticipants.end(reaction); P++) {
+                    int other_protein = reactionsToParticipants.target(P);
+                    byte other_roles = (byte) (indexed.getRoles(P) & roleFilter);
+                    if (other_protein != protein && other_roles != RoleMask.NONE) {
                         // For all the genes corresponding to each protein
-                        for (String gene : mapping.getProteinsToGenes().get(protein)) {
-                            for (String other_gene : mapping.getProteinsToGenes().get(other_protein)) {
-                                if (!gene.equals(other_gene)) {
-                                    List<String> validLines = getValidLines(gene, other_gene,
-                                            "Reaction", reaction,
-                                            mapping.getReactions().get(reaction).getProteinParticipantsWithRole().get(protein),
-                                            mapping.getReactions().get(reaction).getProteinParticipantsWithRole().get(other_protein));
-                                    if (searchResult.getInputGenes().contains(other_gene)) {
+                        for (int G = proteinsToGenes.start(protein); G < proteinsToGenes.end(protein); G++) {
+                            int gene = proteinsToGenes.target(G);
+                            for (int OG = proteinsToGenes.start(other_protein); OG < proteinsToGenes.end(other_protein); OG++) {
+                                int other_gene = proteinsToGenes.target(OG);
+                                if (gene != other_gene) {
+                                    List<String> validLines = getValidLines(dictionary.getString(Kind.GENE, gene), dictionary.getString(Kind.GENE, other_gene),
+                                            "Reaction", reaction_str,
+                                            roles,
+                                            other_roles);
+                                    if (inputGenes.get(other_gene)) {
                                         writeLines(validLines, outputInternalEdges);
                                     } else {
                                         writeLines(validLines, outputExternalEdges);
@@ -170,16 +247,21 @@ class NetworkGenerator {
             addedEdges.clear();
 
             //***** Output complex edges ******/
-            for (String complex : mapping.getProteinsToComplexes().get(protein)) {
+            for (int C = proteinsToComplexes.start(protein); C < proteinsToComplexes.end(protein); C++) {
+                int complex = proteinsToComplexes.target(C);
 
                 // For each pair of components in this complex
-                for (String other_protein : mapping.getComplexesToProteins().get(complex)) {
-                    if (!other_protein.equals(protein)) {
-                        for (String gene : mapping.getProteinsToGenes().get(protein)) {
-                            for (String other_gene : mapping.getProteinsToGenes().get(other_protein)) {
-                                if (!gene.equals(other_gene)) {
-                                    String validLine = getValidLine(gene, other_gene, "Complex", complex, "component");
-                                    if (searchResult.getInputGenes().contains(other_gene)) {
+                for (int P = complexesToProteins.start(complex); P < complexesToProteins.end(complex); P++) {
+                    int other_protein = complexesToProteins.target(P);
+                    if (other_protein != protein) {
+                        for (int G = proteinsToGenes.start(protein); G < proteinsToGenes.end(protein); G++) {
+                            int gene = proteinsToGenes.target(G);
+                            for (int OG = proteinsToGenes.start(other_protein); OG < proteinsToGenes.end(other_protein); OG++) {
+                                int other_gene = proteinsToGenes.target(OG);
+                                if (gene != other_gene) {
+                                    String validLine = getValidLine(dictionary.getString(Kind.GENE, gene), dictionary.getString(Kind.GENE, other_gene),
+                                            "Complex", dictionary.getString(Kind.COMPLEX, complex), "component");
+                                    if (inputGenes.get(other_gene)) {
                                         writeLine(validLine, outputInternalEdges);
                                     } else {
                                         writeLine(validLine, outputExternalEdges);
@@ -193,17 +275,22 @@ class NetworkGenerator {
             addedEdges.clear();
 
             //***** Output set edges ******/
-            for (String set : mapping.getProteinsToSets().get(protein)) {
+            for (int S = proteinsToSets.start(protein); S < proteinsToSets.end(protein); S++) {
+                int set = proteinsToSets.target(S);
 
                 // For each pair of members of this set
-                for (String other_protein : mapping.getSetsToProteins().get(set)) {
-                    if (!other_protein.equals(protein)) {
-
-                        for (String gene : mapping.getProteinsToGenes().get(protein)) {
-                            for (String other_gene : mapping.getProteinsToGenes().get(other_protein)) {
-                                if (!gene.equals(other_gene)) {
-                                    String validLine = getValidLine(gene, other_gene, "Set", set, "member/candidate");
-                                    if (searchResult.getInputGenes().contains(other_gene)) {
+                for (int P = setsToProteins.start(set); P < setsToProteins.end(set); P++) {
+                    int other_protein = setsToProteins.target(P);
+                    if (other_protein != protein) {
+
+                        for (int G = proteinsToGenes.start(protein); G < proteinsToGenes.end(protein); G++) {
+                            int gene = proteinsToGenes.target(G);
+                            for (int OG = proteinsToGenes.start(other_protein); OG < proteinsToGenes.end(other_protein); OG++) {
+                                int other_gene = proteinsToGenes.target(OG);
+                                if (gene != other_gene) {
+                                    String validLine = getValidLine(dictionary.getString(Kind.GENE, gene), dictionary.getString(Kind.GENE, other_gene),
+                                            "Set", dictionary.getString(Kind.SET, set), "member/candidate");
+                                    if (inputGenes.get(other_gene)) {
                                         writeLine(validLine, outputInternalEdges);
                                     } else {
                                         writeLine(validLine, outputExternalEdges);
@@ -220,7 +307,7 @@ class NetworkGenerator {
         System.out.println("Finished writing edges files: \n" + outputPath + "geneInternalEdges.tsv\n" + outputPath + "geneExternalEdges.tsv");
     }
 
-    private static void writeProteinGraph(SearchResult searchResult, Mapping mapping, String outputPath) throws IOException {
+    private static void writeProteinGraph(SearchResult searchResult, NetworkMaps maps, IndexedMapping indexed, byte roleFilter, String outputPath) throws IOException {
 
         System.out.println("Creating protein connection graph...");
 
@@ -236,12 +323,10 @@ class NetworkGenerator {
         outputInternalEdges.write("id1" + "\t" + "id2" + "\t" + "type" + "\t" + "container_id" + "\t" + "role1" + "\t" + "role2" + System.lineSeparator());
         outputExternalEdges.write("id1" + "\t" + "id2" + "\t" + "type" + "\t" + "container_id" + "\t" + "role1" + "\t" + "role2" + System.lineSeparator());
 
-        // Load static mapping
-        mapping.loadMapsForProteinNetwork();
-
         // Write the vertices file
+        Map<String, String> proteinsToNames = maps.getProteinsToNames();
         for (String protein : searchResult.getMatchedProteins()) {
-            String line = String.join("\t", protein, mapping.getProteinsToNames().get(protein)); // Concatenate the protein accession with the name text
+            String line = String.join("\t", protein, proteinsToNames.get(protein)); // Concatenate the protein accession with the name text
             outputVertices.write(line);
             outputVertices.newLine();
         }
@@ -249,22 +334,42 @@ class NetworkGenerator {
         System.out.println("Finished writing " + outputPath + "proteinVertices.tsv");
 
         // For each of the proteins in the result
-        for (String protein : searchResult.getMatchedProteins()) {
+        IdDictionary dictionary = indexed.getDictionary();
+        IntMultimap proteinsToReactions = indexed.getProteinsToReactions();
+        IntMultimap reactionsToParticipants = indexed.getReactionsToParticipants();
+        IntMultimap proteinsToComplexes = indexed.getProteinsToComplexes();
+        IntMultimap complexesToProteins = indexed.getComplexesToProteins();
+        IntMultimap proteinsToSets = indexed.getProteinsToSets();
+        IntMultimap setsToProteins = indexed.getSetsToProteins();
+        BitSet inputProteins = toIds(searchResult.getInputProteins(), dictionary, Kind.PROTEIN);
+        for (String protein_str : searchResult.getMatchedProteins()) {
+            int protein = dictionary.getId(Kind.PROTEIN, protein_str);
+            if (protein < 0) {
+                continue;
+            }
 
             //***** Output Reaction edges ******/
 
             // For each reaction that where the protein participates
-            for (String reaction : mapping.getProteinsToReactions().get(protein)) {
+            for (int R = proteinsToReactions.start(protein); R < proteinsToReactions.end(protein); R++) {
+                int reaction = proteinsToReactions.target(R);
+                String reaction_str = dictionary.getString(Kind.REACTION, reaction);
+                byte roles = (byte) (indexed.getRolesOf(reaction, protein) & roleFilter);
+                if (roles == RoleMask.NONE) {
+                    continue;
+                }
 
                 // For all other participant proteins in the reaction
-                for (String other_protein : mapping.getReactions().get(reaction).getProteinParticipantsWithRole().keySet()) {
-
-                    if (!protein.equals(other_protein)) {
-                        List<String> validLines = getValidLines(protein, other_protein,
-                                "Reaction", reaction,
-                                mapping.getReactions().get(reaction).getProteinParticipantsWithRole().get(protein),
-                                mapping.getReactions().get(reaction).getProteinParticipantsWithRole().get(other_protein));
-                        if (searchResult.getInputProteins().contains(other_protein)) {
+                for (int P = reactionsToParticipants.start(reaction); P < reactionsToParticipants.end(reaction); P++) {
+                    int other_protein = reactionsToParticipants.target(P);
+                    byte other_roles = (byte) (indexed.getRoles(P) & roleFilter);
+
+                    if (protein != other_protein && other_roles != RoleMask.NONE) {
+                        List<String> validLines = getValidLines(protein_str, dictionary.getString(Kind.PROTEIN, other_protein),
+                                "Reaction", reaction_str,
+                                roles,
+                                other_roles);
+                        if (inputProteins.get(other_protein)) {
                             writeLines(validLines, outputInternalEdges);
                         } else {
                             writeLines(validLines, outputExternalEdges);
@@ -278,14 +383,17 @@ class NetworkGenerator {
             //***** Output complex edges *****/
 
             // For each complex where the protein is component
-            for (String complex : mapping.getProteinsToComplexes().get(protein)) {
+            for (int C = proteinsToComplexes.start(protein); C < proteinsToComplexes.end(protein); C++) {
+                int complex = proteinsToComplexes.target(C);
 
                 // For each other component of the comples
-                for (String other_protein : mapping.getComplexesToProteins().get(complex)) {
+                for (int P = complexesToProteins.start(complex); P < complexesToProteins.end(complex); P++) {
+                    int other_protein = complexesToProteins.target(P);
 
-                    if (!protein.equals(other_protein)) {
-                        String validLine = getValidLine(protein, other_protein, "Complex", complex, "component");
-                        if (searchResult.getInputProteins().contains(other_protein)) {
+                    if (protein != other_protein) {
+                        String validLine = getValidLine(protein_str, dictionary.getString(Kind.PROTEIN, other_protein),
+                                "Complex", dictionary.getString(Kind.COMPLEX, complex), "component");
+                        if (inputProteins.get(other_protein)) {
                             writeLine(validLine, outputInternalEdges);
                         } else {
                             writeLine(validLine, outputExternalEdges);
@@ -299,14 +407,17 @@ class NetworkGenerator {
             //****** Output set edges *****/
 
             // For each set where this protein is member
-            for (String set : mapping.getProteinsToSets().get(protein)) {
+            for (int S = proteinsToSets.start(protein); S < proteinsToSets.end(protein); S++) {
+                int set = proteinsToSets.target(S);
 
                 // For each other member of this set
-                for (String other_protein : mapping.getSetsToProteins().get(set)) {
+                for (int P = setsToProteins.start(set); P < setsToProteins.end(set); P++) {
+                    int other_protein = setsToProteins.target(P);
 
-                    if (!protein.equals(other_protein)) {
-                        String validLine = getValidLine(protein, other_protein, "Set", set, "member/candidate");
-                        if (searchResult.getInputProteins().contains(other_protein)) {
+                    if (protein != other_protein) {
+                        String validLine = getValidLine(protein_str, dictionary.getString(Kind.PROTEIN, other_protein),
+                                "Set", dictionary.getString(Kind.SET, set), "member/candidate");
+                        if (inputProteins.get(other_protein)) {
                             writeLine(validLine, outputInternalEdges);
                         } else {
                             writeLine(validLine, outputExternalEdges);
@@ -320,7 +431,7 @@ class NetworkGenerator {
         System.out.println("Finished writing edges files: \n" + outputPath + "proteinInternalEdges.tsv\n" + outputPath + "proteinExternalEdges.tsv");
     }
 
-    private static void writeProteoformGraph(SearchResult searchResult, Mapping mapping, String outputPath, InputType inputType) throws IOException {
+    private static void writeProteoformGraph(SearchResult searchResult, NetworkMaps maps, IndexedProteoforms indexed, byte roleFilter, String outputPath, InputType inputType) throws IOException {
 
         System.out.println("Creating proteoform connection graph...");
 
@@ -334,16 +445,19 @@ class NetworkGenerator {
         outputInternalEdges.write("id1" + "\t" + "id2" + "\t" + "type" + "\t" + "container_id" + "\t" + "role1" + "\t" + "role2" + System.lineSeparator());
         outputExternalEdges.write("id1" + "\t" + "id2" + "\t" + "type" + "\t" + "container_id" + "\t" + "role1" + "\t" + "role2" + System.lineSeparator());
 
-        mapping.loadMapsForProteoformNetwork();
-
-        // Make sure all results are calculated
+        // Get the proteoforms of the hit proteins for input cases different to proteoforms and modified peptides
+        Collection<Proteoform> matchedProteoforms = searchResult.getMatchedProteoforms();
         if (!inputType.equals(PROTEOFORM) && !inputType.equals(MODIFIEDPEPTIDE)) {
-            searchResult.calculateHitProteoforms(mapping);
+            matchedProteoforms = getTargets(searchResult.getHitProteins(), maps.getProteinsToProteoforms());
         }
 
         // Write the vertices file
-        for (Proteoform proteoform : searchResult.getMatchedProteoforms()) {
-            String line = String.join("\t", proteoform.toString(ProteoformFormat.SIMPLE), mapping.getProteinsToNames().get(proteoform.getUniProtAcc()));
+        ProteoformRegistry registry = indexed.getRegistry();
+        Map<String, String> proteinsToNames = maps.getProteinsToNames();
+        for (Proteoform proteoform : matchedProteoforms) {
+            int id = registry.getId(proteoform);
+            String proteoform_str = id >= 0 ? registry.getSimple(id) : proteoform.toString(ProteoformFormat.SIMPLE);
+            String line = String.join("\t", proteoform_str, proteinsToNames.get(proteoform.getUniProtAcc()));
             outputVertices.write(line);
             outputVertices.newLine();
         }
@@ -351,23 +465,47 @@ class NetworkGenerator {
         System.out.println("Finished writing " + outputPath + "proteoformVertices.tsv");
 
         // Write edges among input proteins
-        for (Proteoform proteoform : searchResult.getMatchedProteoforms()) {
+        IdDictionary dictionary = indexed.getDictionary();
+        IntMultimap proteoformsToReactions = indexed.getProteoformsToReactions();
+        IntMultimap reactionsToParticipants = indexed.getReactionsToParticipants();
+        IntMultimap proteoformsToComplexes = indexed.getProteoformsToComplexes();
+        IntMultimap complexesToProteoforms = indexed.getComplexesToProteoforms();
+        IntMultimap proteoformsToSets = indexed.getProteoformsToSets();
+        IntMultimap setsToProteoforms = indexed.getSetsToProteoforms();
+        BitSet inputProteoforms = new BitSet(registry.size());
+        for (Proteoform proteoform : searchResult.getInputProteoforms()) {
+            int id = registry.getId(proteoform);
+            if (id >= 0) {
+                inputProteoforms.set(id);
+            }
+        }
+        for (Proteoform matched : matchedProteoforms) {
+            int proteoform = registry.getId(matched);
+            if (proteoform < 0) {
+                continue;
+            }
+            String proteoform_str = registry.getSimple(proteoform);
 
             //***** Output Reaction edges ******/
             // For all reactions where the protein is participant
-            for (String reaction : mapping.getProteoformsToReactions().get(proteoform)) {
+            for (int R = proteoformsToReactions.start(proteoform); R < proteoformsToReactions.end(proteoform); R++) {
+                int reaction = proteoformsToReactions.target(R);
+                byte roles = (byte) (indexed.getRolesOf(reaction, proteoform) & roleFilter);
+                if (roles == RoleMask.NONE) {
+                    continue;
+                }
 
                 //For each other participant proteoforms
-                for (Proteoform other_proteoform : mapping.getReactions().get(reaction).getProteoformParticipants().keySet()) {
-                    String proteoform_str = proteoform.toString(ProteoformFormat.SIMPLE);
-                    String other_proteoform_str = other_proteoform.toString(ProteoformFormat.SIMPLE);
-
-                    if (!proteoform_str.equals(other_proteoform_str)) {
-                        List<String> validLines = getValidLines(proteoform_str, other_proteoform_str,
-                                "Reaction", reaction,
-                                mapping.getReactions().get(reaction).getProteinParticipantsWithRole().get(proteoform_str),
-                                mapping.getReactions().get(reaction).getProteinParticipantsWithRole().get(other_proteoform_str));
-                        if (searchResult.getInputProteoforms().contains(other_proteoform)) {
+                for (int P = reactionsToParticipants.start(reaction); P < reactionsToParticipants.end(reaction); P++) {
+                    int other_proteoform = reactionsToParticipants.target(P);
+                    byte other_roles = (byte) (indexed.getRoles(P) & roleFilter);
+
+                    if (proteoform != other_proteoform && other_roles != RoleMask.NONE) {
+                        List<String> validLines = getValidLines(proteoform_str, registry.getSimple(other_proteoform),
+                                "Reaction", dictionary.getString(Kind.REACTION, reaction),
+                                roles,
+                                other_roles);
+                        if (inputProteoforms.get(other_proteoform)) {
                             writeLines(validLines, outputInternalEdges);
                         } else {
                             writeLines(validLines, outputExternalEdges);
@@ -377,18 +515,17 @@ class NetworkGenerator {
             }
 
             //***** Output complex edges ******/
-            for (String complex : mapping.getProteoformsToComplexes().get(proteoform)) {
+            for (int C = proteoformsToComplexes.start(proteoform); C < proteoformsToComplexes.end(proteoform); C++) {
+                int complex = proteoformsToComplexes.target(C);
 
                 // For each pair of components in this complex
-                for (Proteoform other_proteoform : mapping.getComplexesToProteoforms().get(complex)) {
-
-                    String proteoform_str = proteoform.toString(ProteoformFormat.SIMPLE);
-                    String other_proteoform_str = other_proteoform.toString(ProteoformFormat.SIMPLE);
+                for (int P = complexesToProteoforms.start(complex); P < complexesToProteoforms.end(complex); P++) {
+                    int other_proteoform = complexesToProteoforms.target(P);
 
-                    if (!proteoform_str.equals(other_proteoform_str)) {
-                        String validLine = getValidLine(proteoform_str, other_proteoform_str,
-                                "Complex", complex, "component");
-                        if (searchResult.getInputProteoforms().contains(other_proteoform)) {
+                    if (proteoform != other_proteoform) {
+                        String validLine = getValidLine(proteoform_str, registry.getSimple(other_proteoform),
+                                "Complex", dictionary.getString(Kind.COMPLEX, complex), "component");
+                        if (inputProteoforms.get(other_proteoform)) {
                             writeLine(validLine, outputInternalEdges);
                         } else {
                             writeLine(validLine, outputExternalEdges);
@@ -398,18 +535,17 @@ class NetworkGenerator {
             }
 
             //***** Output set edges ******/
-            for (String set : mapping.getProteoformsToSets().get(proteoform)) {
+            for (int S = proteoformsToSets.start(proteoform); S < proteoformsToSets.end(proteoform); S++) {
+                int set = proteoformsToSets.target(S);
 
                 // For each pair of members of this set
-                for (Proteoform other_proteoform : mapping.getSetsToProteoforms().get(set)) {
-
-                    String proteoform_str = proteoform.toString(ProteoformFormat.SIMPLE);
-                    String other_proteoform_str = other_proteoform.toString(ProteoformFormat.SIMPLE);
+                for (int P = setsToProteoforms.start(set); P < setsToProteoforms.end(set); P++) {
+                    int other_proteoform = setsToProteoforms.target(P);
 
-                    if (!proteoform_str.equals(other_proteoform_str)) {
-                        String validLine = getValidLine(proteoform_str, other_proteoform_str,
-                                "Set", set, "member/candidate");
-                        if (searchResult.getInputProteoforms().contains(other_proteoform)) {
+                    if (proteoform != other_proteoform) {
+                        String validLine = getValidLine(proteoform_str, registry.getSimple(other_proteoform),
+                                "Set", dictionary.getString(Kind.SET, set), "member/candidate");
+                        if (inputProteoforms.get(other_proteoform)) {
                             writeLine(validLine, outputInternalEdges);
                         } else {
                             writeLine(validLine, outputExternalEdges);
@@ -1,91 +1,84 @@
 package no.uib.pap.pathwaymatcher;
 
 import com.google.common.base.Stopwatch;
-import com.google.common.io.Files;
-
-import no.uib.pap.methods.analysis.ora.Analysis;
-import no.uib.pap.methods.analysis.ora.AnalysisResult;
-import no.uib.pap.methods.search.Search;
-import no.uib.pap.methods.search.SearchResult;
-import no.uib.pap.model.*;
 import no.uib.pap.model.Error;
+import no.uib.pap.model.InputType;
+import no.uib.pap.pathwaymatcher.data.ResourceCache;
+import no.uib.pap.pathwaymatcher.data.RoleMask;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.math.NumberUtils;
 
-import java.io.*;
-import java.nio.charset.Charset;
+import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
-import java.util.*;
+import java.util.Arrays;
 
+/**
+ * Command line of PathwayMatcher. The arguments are turned into a {@link RunConfig} and run by a
+ * {@link PathwayMatcherEngine}; failures exit with the code of their {@link Error}.
+ */
 public class PathwayMatcher {
 
-    private static final String separator = "\t";    // Column separator
-
-    // Search and analysis parameters
-    private static InputType inputType;
-    private static Boolean showTopLevelPathways = false;
-    private static MatchType matchType = MatchType.SUBSET;
-    private static Long range = 0L;
-    private static int populationSize = 1;
-
-    // File parameters
-    private static String input_path = "";
-    private static String output_path = "";
-    private static String fasta_path = "";
-
-    // Graph parameters
-    private static boolean doDefaultGraph = false;
-    private static boolean doGeneGraph = false;
-    private static boolean doUniprotGraph = false;
-    private static boolean doProteoformGraph = false;
-
     public static void main(String args[]) {
 
-        BufferedWriter output_search;
-        BufferedWriter output_analysis;
-        SearchResult searchResult;
-        AnalysisResult analysisResult;
-
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         System.setProperty("version", "1.8.2");
 
-        parseArguments(args);
+        if (args.length > 0 && args[0].equals("serve")) {
+            PathwayMatcherServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("query")) {
+            PointQueryCommand.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("index")) {
+            IndexCommand.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
 
-        try {
-            List<String> input = readInput(input_path);
+        Options options = createUsageOptions();
+        CommandLine commandLine = parseArguments(args, options);
 
-            output_search = createOutputFiles(output_path, "search.tsv");
-            Mapping mapping = new Mapping(inputType, showTopLevelPathways); // Load static structures needed for all the cases
+        // A batch takes the search parameters of each job from the manifest
+        if (commandLine.hasOption("b")) {
+            runBatch(commandLine, options);
+            return;
+        }
 
-            searchResult = Search.search(input, inputType, showTopLevelPathways, mapping,
-                    matchType, range, fasta_path);
-            searchResult.writeToFile(output_search, separator);
-            output_search.close();
+        RunConfig config;
+        ResourceCache resourceCache;
+        try {
+            config = createConfig(commandLine);
+            resourceCache = createResourceCache(commandLine.getOptionValue("mm"));
+        } catch (PathwayMatcherException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("java -jar PathwayMatcher.jar <options>", options);
+            System.exit(e.getCode());
+            return;
+        }
 
-            output_analysis = createOutputFiles(output_path, "analysis.tsv");
-            setPopulationSize(mapping.getProteinsToReactions().keySet().size(), mapping.getProteoformsToReactions().keySet().size());
-            analysisResult = Analysis.analysis(searchResult, populationSize);
-            analysisResult.writeToFile(output_analysis, inputType, separator);
-            output_analysis.close();
+        if (commandLine.hasOption("ex")) {
+            config.getPlan().print(System.out);
+            return;
+        }
 
-            NetworkGenerator.writeGraphs(doGeneGraph, doUniprotGraph, doProteoformGraph,
-                    inputType, searchResult, mapping, output_path);
+        try {
+            RunResult result = new PathwayMatcherEngine(resourceCache).run(config);
 
             stopwatch.stop();
             Duration duration = stopwatch.elapsed();
             System.out.println("PathwayMatcher finished (" + duration.toMillis() / 1000 + "s)");
-
-        } catch (IOException e) {
-            if (e.getMessage().contains("network") || e.getMessage().contains("directory")) {
-                System.out.println(e.getMessage());
-            } else {
-                System.out.println(Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getMessage() + ": " +
-                        output_path + "search.txt  " +
-                        System.lineSeparator() +
-                        output_path + "analysis.txt");
+            if (commandLine.hasOption("tm")) {
+                result.printTimings(System.out);
             }
-            System.exit(Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getCode());
+            if (resourceCache != null) {
+                resourceCache.printSummary(System.out);
+            }
+        } catch (PathwayMatcherException e) {
+            System.out.println(e.getMessage());
+            System.exit(e.getCode());
         }
     }
 
@@ -107,52 +100,39 @@ public class PathwayMatcher {
         options.addOption(createOption("gu", "graphUniprot", false, "Create protein connection graph"));
         options.addOption(createOption("gp", "graphProteoform", false, "Create proteoform connection graph"));
         options.addOption(createOption("gg", "graphGene", false, "Create gene connection graph"));
+        options.addOption(createOption("ro", "roles", true, "Reaction participant roles connected in the graphs: input,output,catalyst,regulator"));
         options.addOption(createOption("f", "fasta", true, "Proteins where to find the peptides"));
         options.addOption(createOption("h", "help", false, "Print usage and available arguments"));
         options.addOption(createOption("v", "version", false, "Print version of PathwayMatcher"));
+        options.addOption(createOption("tm", "timings", false, "Print the load time of each resource"));
+        options.addOption(createOption("ex", "explain", false, "Print the stages of the run and the resources they load, without running it"));
+        options.addOption(createOption("w", "window", true, "Map chrbp and vcf variants to the proteins within this number of base pairs"));
+        options.addOption(createOption("rg", "region", true, "Read only the chrbp and vcf variants of a region, e.g. chr1:11000000-12000000. Inputs compressed with bgzip and indexed with tabix or the index subcommand are read from the blocks of the region. The region limits the input read, not the mapping: without a window the search still loads the chrBp shards of every chromosome"));
+        options.addOption(createOption("fp", "filterPass", false, "Keep only the vcf variants with PASS in the FILTER column"));
+        options.addOption(createOption("afmin", "minAlleleFrequency", true, "Keep only the vcf variants with an allele frequency (INFO AF) of at least this value"));
+        options.addOption(createOption("afmax", "maxAlleleFrequency", true, "Keep only the vcf variants with an allele frequency (INFO AF) of at most this value"));
+        options.addOption(createOption("ps", "perSample", false, "Analyse each sample of the vcf file on its non-reference genotypes, writing a matrix of the p-values of the samples in the pathways"));
+        options.addOption(createOption("st", "stream", false, "Read and search the input in chunks, writing search.tsv as it goes. Memory does not grow with the input, but rows are sorted within each chunk only. Vcf and region inputs are parsed in the background while the previous chunk is searched only with this option; without it they are read in full before the search starts"));
+        options.addOption(createOption("mm", "max-mapping-memory", true, "Memory for the SNP indexes, protein names, proteoform maps and network indexes, e.g. 800m or 2g. Least recently used ones are dropped and reloaded"));
+        options.addOption(createOption("b", "batch", true, "Manifest of jobs run sharing the mappings, one per line: input, type, output and options, tab separated. Exits with 1 if a job failed"));
+        options.addOption(createOption("bw", "batchWorkers", true, "Batch jobs run at the same time, default the number of processors"));
         return options;
     }
 
-    private static void parseArguments(String args[]) {
+    /**
+     * Parses the arguments, printing the help or the version and exiting when they are requested.
+     */
+    private static CommandLine parseArguments(String args[], Options options) {
         if (args.length == 0) {
             System.exit(Error.NO_ARGUMENTS.getCode());
         }
 
         CommandLineParser parser = new DefaultParser();
-        Options options = createUsageOptions();
-        CommandLine commandLine;
         HelpFormatter formatter = new HelpFormatter();
+        CommandLine commandLine = null;
 
         try {
             commandLine = parser.parse(options, args);
-
-            // Check for help arguments
-            if (commandLine.hasOption("h")) {
-                formatter.printHelp("java -jar PathwayMatcher.jar <options>", options);
-                System.exit(0);
-            }
-            if (commandLine.hasOption("v")) {
-                System.out.println("PathwayMatcher version " + System.getProperty("version"));
-                System.exit(0);
-            }
-
-            // Set search parameters
-            setInputType(commandLine.getOptionValue("t"));
-            showTopLevelPathways = commandLine.hasOption("tlp");
-            setMatchType(commandLine.getOptionValue("m"));
-            setRange(commandLine.getOptionValue("r"));
-
-            // Set file parameters
-            setInputPath(commandLine.getOptionValue("i"));
-            setOutputPath(commandLine.getOptionValue("o"));
-            setFasta(commandLine.getOptionValue("f"));
-
-            // Set graph parameters
-            doDefaultGraph = commandLine.hasOption("g");
-            setDoGeneGraph(commandLine.hasOption("gg"));
-            setDoUniprotGraph(commandLine.hasOption("gu"));
-            setDoProteoformGraph(commandLine.hasOption("gp"));
-
         } catch (org.apache.commons.cli.ParseException e) {
             System.out.println(e.getMessage());
             formatter.printHelp("java -jar PathwayMatcher.jar <options>", options);
@@ -161,208 +141,112 @@ public class PathwayMatcher {
             }
             System.exit(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR.getCode());
         }
-    }
-
-    private static void setInputType(String value) throws ParseException {
 
-        if (value == null) {
-            throw new ParseException("Missing required option: t");
+        // Check for help arguments
+        if (commandLine.hasOption("h")) {
+            formatter.printHelp("java -jar PathwayMatcher.jar <options>", options);
+            System.exit(0);
         }
-
-        value = value.toUpperCase();
-        if (!InputType.isValueOf(value)) {
-            throw new ParseException(Error.INVALID_INPUT_TYPE.getMessage());
+        if (commandLine.hasOption("v")) {
+            System.out.println("PathwayMatcher version " + System.getProperty("version"));
+            System.exit(0);
         }
-
-        inputType = InputType.valueOf(value);
+        return commandLine;
     }
 
-    private static void setMatchType(String value) throws ParseException {
-        switch (inputType) {
-            case PROTEOFORM:
-            case PROTEOFORMS:
-            case MODIFIEDPEPTIDE:
-            case MODIFIEDPEPTIDES:
-                if (value == null) {
-                    matchType = MatchType.SUBSET;
-                } else {
-                    value = value.toUpperCase();
-                    if (MatchType.isValueOf(value)) {
-                        matchType = MatchType.valueOf(value);
-                    } else {
-                        System.out.println(Error.INVALID_MATCHING_TYPE.getMessage());
-                        System.exit(Error.INVALID_MATCHING_TYPE.getCode());
-                    }
-                }
-                break;
-        }
-    }
+    private static RunConfig createConfig(CommandLine commandLine) throws PathwayMatcherException {
+        RunConfig.Builder builder = RunConfig.builder();
 
-    private static void setRange(String value) {
-        switch (inputType) {
-            case PROTEOFORM:
-            case PROTEOFORMS:
-            case MODIFIEDPEPTIDE:
-            case MODIFIEDPEPTIDES:
-                if (value != null) {
-                    range = NumberUtils.toLong(value, 0L);  // Try to set value, if it doesn't work, set to 0
-                }
-                break;
+        // Search parameters
+        InputType inputType = RunConfig.parseInputType(commandLine.getOptionValue("t"));
+        builder.inputType(inputType);
+        builder.topLevelPathways(commandLine.hasOption("tlp"));
+        if (commandLine.hasOption("m") && RunConfig.isMatchTypeUsed(inputType)) {
+            builder.matchType(RunConfig.parseMatchType(commandLine.getOptionValue("m")));
         }
-    }
-
-    private static void setPopulationSize(int totalProteins, int totalProteoforms) {
-        switch (inputType) {
-            case GENE:
-            case GENES:
-            case ENSEMBL:
-            case ENSEMBLS:
-            case UNIPROT:
-            case UNIPROTS:
-            case RSID:
-            case RSIDS:
-            case CHRBP:
-            case CHRBPS:
-            case VCF:
-            case PEPTIDE:
-            case PEPTIDES:
-                populationSize = totalProteins;
-                break;
-            case PROTEOFORM:
-            case PROTEOFORMS:
-            case MODIFIEDPEPTIDE:
-            case MODIFIEDPEPTIDES:
-                populationSize = totalProteoforms;
-                break;
-            default:
-                populationSize = 0;
-                break;
+        if (commandLine.hasOption("r")) {
+            builder.range(NumberUtils.toLong(commandLine.getOptionValue("r"), 0L));  // Try to set value, if it doesn't work, set to 0
         }
-    }
-
-    private static void setInputPath(String value) throws ParseException {
-        if (value == null) {
-            throw new ParseException("Missing required option: i");
+        if (commandLine.hasOption("w")) {
+            String value = commandLine.getOptionValue("w");
+            long window = NumberUtils.toLong(value, -1L);
+            if (window < 0) {
+                throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, "Invalid window: " + value);
+            }
+            builder.window(window);
+        }
+        if (commandLine.hasOption("rg")) {
+            builder.region(RunConfig.parseRegion(commandLine.getOptionValue("rg")));
+        }
+
+        // File parameters
+        if (!commandLine.hasOption("i")) {
+            throw new PathwayMatcherException(Error.MISSING_ARGUMENT, "Missing required option: i");
+        }
+        builder.inputPath(commandLine.getOptionValue("i"));
+        builder.outputPath(commandLine.getOptionValue("o", ""));
+        builder.fastaPath(commandLine.getOptionValue("f"));
+        builder.streaming(commandLine.hasOption("st"));
+
+        // Vcf filters
+        builder.passOnly(commandLine.hasOption("fp"));
+        if (commandLine.hasOption("afmin")) {
+            builder.minAlleleFrequency(RunConfig.parseAlleleFrequency(commandLine.getOptionValue("afmin")));
+        }
+        if (commandLine.hasOption("afmax")) {
+            builder.maxAlleleFrequency(RunConfig.parseAlleleFrequency(commandLine.getOptionValue("afmax")));
+        }
+        builder.perSample(commandLine.hasOption("ps"));
+
+        // Graph parameters
+        builder.defaultGraph(commandLine.hasOption("g"));
+        builder.geneGraph(commandLine.hasOption("gg"));
+        builder.uniprotGraph(commandLine.hasOption("gu"));
+        builder.proteoformGraph(commandLine.hasOption("gp"));
+        if (commandLine.hasOption("ro")) {
+            String value = commandLine.getOptionValue("ro");
+            try {
+                builder.roleFilter(RoleMask.parse(value));
+            } catch (IllegalArgumentException e) {
+                throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, e.getMessage());
+            }
         }
 
-        input_path = value;
+        return builder.build();
     }
 
-    private static void setOutputPath(String value) {
+    /**
+     * @return the cache of the reloadable resources, or null without a memory budget
+     */
+    private static ResourceCache createResourceCache(String value) throws PathwayMatcherException {
         if (value == null) {
-            output_path = "";
-        } else {
-            output_path = value.endsWith("/") ? value : value + "/";
-        }
-    }
-
-    private static void setFasta(String value) throws ParseException {
-        switch (inputType) {
-            case PEPTIDES:
-            case PEPTIDE:
-            case MODIFIEDPEPTIDE:
-            case MODIFIEDPEPTIDES:
-                if (value == null) {
-                    throw new ParseException("Missing required option: f");
-                } else {
-                    File f = new File(value);
-                    if (!f.exists() || f.isDirectory()) {
-                        System.out.println(Error.COULD_NOT_READ_FASTA_FILE.getMessage());
-                        System.exit(Error.COULD_NOT_READ_FASTA_FILE.getCode());
-                    }
-                    fasta_path = value;
-                }
-        }
-    }
-
-    private static void setDoGeneGraph(boolean value) {
-        if (value) {
-            doGeneGraph = true;
-            return;
+            return null;
         }
-        if (doDefaultGraph) {
-            switch (inputType) {
-                case GENE:
-                case GENES:
-                    doGeneGraph = true;
-                    return;
-            }
+        long budget = ResourceCache.parseMemory(value);
+        if (budget <= 0) {
+            throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, "Invalid max mapping memory: " + value);
         }
-        doGeneGraph = false;
+        return new ResourceCache(budget);
     }
 
-    private static void setDoUniprotGraph(boolean value) {
-        if (value) {
-            doUniprotGraph = true;
-            return;
-        }
-        if (doDefaultGraph) {
-            switch (inputType) {
-                case UNIPROT:
-                case UNIPROTS:
-                case ENSEMBL:
-                case ENSEMBLS:
-                case PEPTIDE:
-                case PEPTIDES:
-                case VCF:
-                case RSID:
-                case RSIDS:
-                case CHRBP:
-                case CHRBPS:
-                    doUniprotGraph = true;
-                    return;
-            }
-        }
-        doUniprotGraph = false;
-    }
-
-    private static void setDoProteoformGraph(boolean value) {
-        if (value) {
-            doProteoformGraph = true;
-            return;
-        }
-        if (doDefaultGraph) {
-            switch (inputType) {
-                case PROTEOFORMS:
-                case PROTEOFORM:
-                case MODIFIEDPEPTIDE:
-                case MODIFIEDPEPTIDES:
-                    doProteoformGraph = true;
-                    return;
-            }
+    private static void runBatch(CommandLine commandLine, Options options) {
+        String path = commandLine.getOptionValue("b");
+        String workers = commandLine.getOptionValue("bw");
+        int batchWorkers = workers == null ? Runtime.getRuntime().availableProcessors() : NumberUtils.toInt(workers, 0);
+        if (batchWorkers <= 0) {
+            System.out.println("Invalid batch workers: " + workers);
+            new HelpFormatter().printHelp("java -jar PathwayMatcher.jar <options>", options);
+            System.exit(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR.getCode());
         }
-        doProteoformGraph = false;
-    }
-
-    private static BufferedWriter createOutputFiles(String path, String file) {
-        File outputDir = new File(path);
-        BufferedWriter br = null;
 
         try {
-            if (!outputDir.exists()) {
-                if (!outputDir.mkdirs()) {
-                    throw new IOException();
-                }
+            int failures = BatchRunner.run(new File(path), batchWorkers, System.out);
+            if (failures > 0) {
+                System.exit(1);
             }
-            br = new BufferedWriter(new FileWriter(path + file));
         } catch (IOException e) {
-            System.out.println(Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getMessage());
-            System.exit(Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getCode());
-        }
-        return br;
-    }
-
-    private static List<String> readInput(String path) {
-        File file = new File(path);
-        try {
-            return Files.readLines(file, Charset.forName("ISO-8859-1"));
-        } catch (IOException e) {
-            System.out.println("The input file: " + path + " was not found.");
+            System.out.println("Could not read the batch manifest: " + path);
             System.exit(Error.COULD_NOT_READ_INPUT_FILE.getCode());
         }
-        return new ArrayList<>();
     }
 }
-
-
-
@@ -0,0 +1,688 @@
+package no.uib.pap.pathwaymatcher;
+
+import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import no.uib.pap.methods.analysis.ora.Analysis;
+import no.uib.pap.methods.analysis.ora.AnalysisResult;
+import no.uib.pap.methods.search.Search;
+import no.uib.pap.methods.search.SearchResult;
+import no.uib.pap.model.Error;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.pathwaymatcher.data.*;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs searches, analyses and graphs over mappings loaded once and shared read-only by all the runs.
+ * <p>
+ * The engine keeps no state of a run, so one instance runs many {@link RunConfig}s, also concurrently. There is one
+ * mapping per search type, loaded on the first run of that type. A mapping loaded with the top level pathways
+ * also serves the runs without them. Each run loads its resources in the background while the input is read.
+ * <p>
+ * A streaming run reads its input file in chunks and writes search.tsv as the chunks are searched, keeping only
+ * the distinct hits for the analysis and the graphs, see {@link StreamingSearch}. A per sample run reads the
+ * genotypes of a vcf file and analyses each sample on its own, see {@link PerSampleAnalysis}.
+ */
+public class PathwayMatcherEngine {
+
+    private static final String separator = "\t";
+
+    private final ResourceCache resourceCache;
+    private final ConcurrentMap<String, Lazy<Mapping>> mappings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, String> states = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Mapping, NetworkMaps> networkMaps = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Lazy<PointQuery>> pointQueries = new ConcurrentHashMap<>();
+    private final Lazy<Optional<Bundle>> bundle = new Lazy<>(PathwayMatcherEngine::openBundle);
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat("pathwaymatcher-engine-%d").setDaemon(true).build());
+
+    public PathwayMatcherEngine() {
+        this((ResourceCache) null);
+    }
+
+    /**
+     * @param resourceCache cache of the SNP indexes of the variant windows, the protein names, the proteoform maps and
+     *                      the indexed network relations, null to keep them all loaded
+     */
+    public PathwayMatcherEngine(ResourceCache resourceCache) {
+        this.resourceCache = resourceCache;
+    }
+
+    /**
+     * Engine running the searches of a search type on a mapping loaded beforehand.
+     */
+    public PathwayMatcherEngine(Mapping mapping, InputType searchType, boolean topLevelPathways) {
+        this((ResourceCache) null);
+        String key = getKey(searchType, topLevelPathways);
+        mappings.put(key, new Lazy<>(() -> mapping));
+        states.put(key, "loaded");
+    }
+
+    private static String getKey(InputType searchType, boolean topLevelPathways) {
+        return searchType + (topLevelPathways ? "+tlp" : "");
+    }
+
+    /**
+     * Mapping of a search type, loaded on the first call.
+     */
+    public Mapping getMapping(InputType searchType, boolean topLevelPathways) throws PathwayMatcherException {
+        try {
+            return loadMapping(searchType, topLevelPathways);
+        } catch (IOException | RuntimeException e) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "Could not load the mapping for " + searchType + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Mapping loadMapping(InputType searchType, boolean topLevelPathways) throws IOException {
+        Lazy<Mapping> withPathways = mappings.get(getKey(searchType, true));
+        if (!topLevelPathways && withPathways != null) {
+            return withPathways.get();
+        }
+        return declare(searchType, topLevelPathways).get();
+    }
+
+    /**
+     * Declares the mapping of a search type without loading it. Declaring the mapping with the top level pathways
+     * before the runs start makes the runs without them wait for that mapping instead of loading another one.
+     */
+    Lazy<Mapping> declare(InputType searchType, boolean topLevelPathways) {
+        return mappings.computeIfAbsent(getKey(searchType, topLevelPathways), name -> new Lazy<>(() -> {
+            states.put(name, "loading");
+            try {
+                Mapping loaded = new Mapping(searchType, topLevelPathways);
+                states.put(name, "loaded");
+                return loaded;
+            } catch (RuntimeException e) {
+                states.put(name, "failed");
+                throw e;
+            }
+        }));
+    }
+
+    /**
+     * Load state of each mapping requested so far: loading, loaded or failed.
+     */
+    public Map<String, String> getStates() {
+        return new TreeMap<>(states);
+    }
+
+    /**
+     * Point queries of an input type over the mapping bundle of the resources directory, or over the mapping of the
+     * input type when there is no bundle with its sections. The first call loads the mapping and, for rsIds, the
+     * rsId indexes of all the chromosomes, so that the queries do not read files; concurrent first calls wait for
+     * the same load.
+     *
+     * @throws PathwayMatcherException if the input type has no point queries or the bundle or the mapping could not
+     *                                 be loaded
+     */
+    public PointQuery getPointQuery(InputType inputType, boolean topLevelPathways) throws PathwayMatcherException {
+        if (!PointQuery.isSupported(inputType)) {
+            throw new PathwayMatcherException(Error.INVALID_INPUT_TYPE, "Point queries are not supported for " + inputType);
+        }
+        Lazy<PointQuery> pointQuery = pointQueries.computeIfAbsent(getKey(inputType, topLevelPathways),
+                name -> new Lazy<>(() -> createPointQuery(inputType, topLevelPathways)));
+        try {
+            return pointQuery.get();
+        } catch (IOException | RuntimeException e) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "Could not load the point queries for " + inputType + ": " + e.getMessage(), e);
+        }
+    }
+
+    private PointQuery createPointQuery(InputType inputType, boolean topLevelPathways) throws IOException {
+        PointQuery pointQuery = null;
+        Optional<Bundle> bundle = this.bundle.get();
+        if (bundle.isPresent()) {
+            try {
+                pointQuery = new PointQuery(inputType, bundle.get(), topLevelPathways, executor);
+            } catch (IllegalArgumentException e) {
+                // The bundle was converted without the sections of the input type
+            }
+        }
+        if (pointQuery == null) {
+            pointQuery = new PointQuery(inputType, loadMapping(inputType, topLevelPathways), topLevelPathways, executor);
+        }
+        pointQuery.preload();
+        return pointQuery;
+    }
+
+    /**
+     * @return the mapping bundle of the resources directory, or empty if none has been converted
+     */
+    private static Optional<Bundle> openBundle() throws IOException {
+        File file = new File(SerializedResources.RESOURCES_PATH + Bundle.FILE_NAME);
+        return file.isFile() ? Optional.of(Bundle.open(file)) : Optional.<Bundle>empty();
+    }
+
+    /**
+     * Searches the input without writing any file. With a window, the variants are first mapped to nearby proteins.
+     */
+    public SearchResult search(RunConfig config, List<String> input) throws PathwayMatcherException {
+        try {
+            List<String> searchInput = config.getWindow() < 0 ? input : getProteins(mapVariantWindows(config, input));
+            Mapping mapping = getMapping(config.getSearchType(), config.isTopLevelPathways());
+            return Search.search(searchInput, config.getSearchType(), config.isTopLevelPathways(), mapping,
+                    config.getMatchType(), config.getRange(), config.getFastaPath());
+        } catch (IOException e) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Over-representation analysis of a search result, with the proteins or proteoforms of the mapping as background.
+     */
+    public AnalysisResult analyse(RunConfig config, SearchResult searchResult) throws PathwayMatcherException {
+        Mapping mapping = getMapping(config.getSearchType(), config.isTopLevelPathways());
+        return Analysis.analysis(searchResult, getPopulationSize(config.getInputType(), mapping));
+    }
+
+    /**
+     * Runs a config on its input file and writes the results to its output directory.
+     */
+    public RunResult run(RunConfig config) throws PathwayMatcherException {
+        if (config.getInputPath() == null) {
+            throw new PathwayMatcherException(Error.MISSING_ARGUMENT, "Missing required option: i");
+        }
+        if (config.isPerSample()) {
+            return runPerSample(config);
+        }
+        if (config.isStreaming()) {
+            return runStreaming(config);
+        }
+        if (isReadAsVcf(config)) {
+            return run(config, () -> readVcf(config));
+        }
+        return run(config, () -> InputTokenizer.readLines(new File(config.getInputPath())));
+    }
+
+    private VcfReader createVcfReader(RunConfig config) {
+        return new VcfReader(config.isPassOnly(), config.getMinAlleleFrequency(), config.getMaxAlleleFrequency(), config.getRegion());
+    }
+
+    /**
+     * Vcf inputs, and chrBp inputs restricted to a region, are read with a {@link VcfReader}.
+     */
+    private static boolean isReadAsVcf(RunConfig config) {
+        return config.getInputType() == InputType.VCF || config.getRegion() != null;
+    }
+
+    /**
+     * @return a variant read by a {@link VcfReader} as a line of the input type of the config
+     */
+    private static String getLine(RunConfig config, VcfReader.Batch batch, int index) {
+        if (config.getInputType() == InputType.VCF) {
+            return batch.getLine(index);
+        }
+        return batch.getChromosome(index) + " " + batch.getPosition(index);
+    }
+
+    /**
+     * Reads the variants of a vcf file that pass its filters, as lines of their CHROM, POS and ID columns, or the
+     * variants of a chrBp file in the region of the config. All of them are held until the search starts, as the
+     * search takes its whole input at once; the streaming runs search each batch as it is parsed instead.
+     */
+    private List<String> readVcf(RunConfig config) throws IOException {
+        List<String> lines = new ArrayList<>();
+        createVcfReader(config).read(new File(config.getInputPath()), executor, VcfReader.DEFAULT_BATCH_SIZE, batch -> {
+            for (int I = 0; I < batch.size(); I++) {
+                lines.add(getLine(config, batch, I));
+            }
+        });
+        return lines;
+    }
+
+    /**
+     * Runs a config on the given input lines and writes the results to its output directory.
+     */
+    public RunResult run(RunConfig config, List<String> input) throws PathwayMatcherException {
+        return run(config, () -> input);
+    }
+
+    private RunResult run(RunConfig config, StartupPipeline.Stage<List<String>> reader) throws PathwayMatcherException {
+        InputType searchType = config.getSearchType();
+        ResourcePlan plan = config.getPlan();
+        String outputPath = config.getOutputPath();
+
+        // Load the static structures in the background while the input is read
+        StartupPipeline pipeline = new StartupPipeline(executor);
+        boolean topLevelPathways = plan.contains(ResourcePlan.Resource.TOP_LEVEL_PATHWAYS);
+        Future<Mapping> mappingLoad = pipeline.submit(StartupPipeline.MAPPING, () -> loadMapping(searchType, topLevelPathways));
+        Future<NetworkMaps> mapsLoad = submitNetworkMaps(pipeline, plan, mappingLoad);
+
+        List<String> input;
+        try {
+            input = pipeline.time(StartupPipeline.INPUT, reader);
+        } catch (IOException e) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "The input file: " + config.getInputPath() + " was not found.", e);
+        }
+
+        List<File> files = new ArrayList<>();
+        try {
+            createOutputDirectory(outputPath);
+            List<String> searchInput = config.getWindow() < 0 ? input
+                    : pipeline.time(StartupPipeline.VARIANT_WINDOWS, () -> writeVariantWindows(config, input, files));
+
+            Mapping mapping = await(pipeline, mappingLoad, "mapping for " + searchType);
+            SearchResult searchResult = pipeline.time("search", () -> Search.search(searchInput, searchType,
+                    config.isTopLevelPathways(), mapping, config.getMatchType(), config.getRange(), config.getFastaPath()));
+            File searchFile = new File(outputPath + "search.tsv");
+            try (BufferedWriter output = new BufferedWriter(new FileWriter(searchFile))) {
+                searchResult.writeToFile(output, separator);
+            }
+            files.add(searchFile);
+
+            return analyseAndWriteGraphs(config, pipeline, mapping, mapsLoad, searchResult, files);
+        } catch (IOException e) {
+            throw getWriteException(outputPath, e);
+        }
+    }
+
+    /**
+     * Runs a config reading and searching its input file in chunks. With a window, the variant windows are mapped
+     * in chunks instead, and the distinct proteins found are searched at once.
+     */
+    private RunResult runStreaming(RunConfig config) throws PathwayMatcherException {
+        InputType searchType = config.getSearchType();
+        ResourcePlan plan = config.getPlan();
+        String outputPath = config.getOutputPath();
+        File inputFile = new File(config.getInputPath());
+        if (!inputFile.isFile()) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "The input file: " + config.getInputPath() + " was not found.");
+        }
+
+        StartupPipeline pipeline = new StartupPipeline(executor);
+        boolean topLevelPathways = plan.contains(ResourcePlan.Resource.TOP_LEVEL_PATHWAYS);
+        Future<Mapping> mappingLoad = pipeline.submit(StartupPipeline.MAPPING, () -> loadMapping(searchType, topLevelPathways));
+        Future<NetworkMaps> mapsLoad = submitNetworkMaps(pipeline, plan, mappingLoad);
+
+        List<File> files = new ArrayList<>();
+        try {
+            createOutputDirectory(outputPath);
+            if (config.getWindow() >= 0) {
+                List<String> proteins = pipeline.time(StartupPipeline.VARIANT_WINDOWS, () -> streamVariantWindows(config, inputFile, files));
+                Mapping mapping = await(pipeline, mappingLoad, "mapping for " + searchType);
+                SearchResult searchResult = pipeline.time("search", () -> Search.search(proteins, searchType,
+                        config.isTopLevelPathways(), mapping, config.getMatchType(), config.getRange(), config.getFastaPath()));
+                File searchFile = new File(outputPath + "search.tsv");
+                try (BufferedWriter output = new BufferedWriter(new FileWriter(searchFile))) {
+                    searchResult.writeToFile(output, separator);
+                }
+                files.add(searchFile);
+                return analyseAndWriteGraphs(config, pipeline, mapping, mapsLoad, searchResult, files);
+            }
+
+            Mapping mapping = await(pipeline, mappingLoad, "mapping for " + searchType);
+            StreamingSearch search = new StreamingSearch(config, mapping);
+            File searchFile = new File(outputPath + "search.tsv");
+            try (BufferedWriter output = new BufferedWriter(new FileWriter(searchFile))) {
+                pipeline.time("search", () -> {
+                    if (!isReadAsVcf(config)) {
+                        StreamingSearch.readChunks(inputFile, config.getChunkSize(), chunk -> search.search(chunk, output));
+                        return null;
+                    }
+                    // The next batch is read and parsed while one is searched
+                    List<String> chunk = new ArrayList<>();
+                    createVcfReader(config).read(inputFile, executor, config.getChunkSize(), batch -> {
+                        chunk.clear();
+                        for (int I = 0; I < batch.size(); I++) {
+                            chunk.add(getLine(config, batch, I));
+                        }
+                        search.search(chunk, output);
+                    });
+                    return null;
+                });
+            }
+            files.add(searchFile);
+            SearchResult searchResult = pipeline.time("searchSummary", search::summarize);
+
+            return analyseAndWriteGraphs(config, pipeline, mapping, mapsLoad, searchResult, files);
+        } catch (IOException e) {
+            throw getWriteException(outputPath, e);
+        }
+    }
+
+    /**
+     * Runs a config reading the genotypes of its vcf file in one pass, and writes the p-values of each sample in the
+     * pathways to samplePathways.tsv.
+     */
+    private RunResult runPerSample(RunConfig config) throws PathwayMatcherException {
+        String outputPath = config.getOutputPath();
+        File inputFile = new File(config.getInputPath());
+        if (!inputFile.isFile()) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "The input file: " + config.getInputPath() + " was not found.");
+        }
+
+        StartupPipeline pipeline = new StartupPipeline(executor);
+        Future<Mapping> mappingLoad = pipeline.submit(StartupPipeline.MAPPING, () -> loadMapping(config.getSearchType(), false));
+        Future<PathwaySets> setsLoad = pipeline.submit(StartupPipeline.PATHWAY_SETS, mappingLoad,
+                () -> networkMaps.computeIfAbsent(pipeline.await(mappingLoad), this::createNetworkMaps).getPathwaySets());
+
+        PerSampleAnalysis analysis = new PerSampleAnalysis(await(pipeline, setsLoad, "pathway sets"), new VariantLookup(config.getWindow()));
+        try {
+            pipeline.time(StartupPipeline.INPUT, () -> createVcfReader(config).readGenotypes(inputFile, executor, analysis));
+        } catch (IOException e) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "Could not read the genotypes of " + config.getInputPath() + ": " + e.getMessage(), e);
+        }
+        if (analysis.getSamples().isEmpty()) {
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "The input file: " + config.getInputPath() + " has no sample columns.");
+        }
+
+        List<File> files = new ArrayList<>();
+        try {
+            createOutputDirectory(outputPath);
+            File file = new File(outputPath + "samplePathways.tsv");
+            pipeline.time("analysis", () -> {
+                analysis.write(file, executor, separator);
+                return null;
+            });
+            files.add(file);
+            return new RunResult(null, null, files, pipeline);
+        } catch (IOException e) {
+            throw new PathwayMatcherException(Error.COULD_NOT_WRITE_TO_OUTPUT_FILES,
+                    Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getMessage() + ": " + outputPath + "samplePathways.tsv", e);
+        }
+    }
+
+    /**
+     * Writes analysis.tsv and the requested graphs of a search result.
+     */
+    private RunResult analyseAndWriteGraphs(RunConfig config, StartupPipeline pipeline, Mapping mapping,
+                                            Future<NetworkMaps> mapsLoad, SearchResult searchResult, List<File> files)
+            throws IOException, PathwayMatcherException {
+        String outputPath = config.getOutputPath();
+        InputType searchType = config.getSearchType();
+        int populationSize = getPopulationSize(config.getInputType(), mapping);
+        AnalysisResult analysisResult = pipeline.time("analysis", () -> Analysis.analysis(searchResult, populationSize));
+        File analysisFile = new File(outputPath + "analysis.tsv");
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(analysisFile))) {
+            analysisResult.writeToFile(output, searchType, separator);
+        }
+        files.add(analysisFile);
+
+        NetworkGenerator.writeGraphs(config.isGeneGraph(), config.isUniprotGraph(), config.isProteoformGraph(),
+                searchType, searchResult, await(pipeline, mapsLoad, "network maps"), pipeline, config.getRoleFilter(), outputPath);
+        addGraphFiles(config, files);
+
+        return new RunResult(searchResult, analysisResult, files, pipeline);
+    }
+
+    private static PathwayMatcherException getWriteException(String outputPath, IOException e) {
+        String message = e.getMessage();
+        if (message == null || !(message.contains("network") || message.contains("directory"))) {
+            message = Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getMessage() + ": " +
+                    outputPath + "search.tsv  " + System.lineSeparator() + outputPath + "analysis.tsv";
+        }
+        return new PathwayMatcherException(Error.COULD_NOT_WRITE_TO_OUTPUT_FILES, message, e);
+    }
+
+    /**
+     * Waits for a resource loaded in the background, reporting a failed load like {@link #getMapping}.
+     *
+     * @param name name of the resource in the error message
+     */
+    private static <T> T await(StartupPipeline pipeline, Future<T> load, String name) throws PathwayMatcherException {
+        try {
+            return pipeline.await(load);
+        } catch (RuntimeException e) {
+            // The pipeline wraps checked errors of the loader
+            Throwable cause = e instanceof IllegalStateException && e.getCause() != null ? e.getCause() : e;
+            throw new PathwayMatcherException(Error.COULD_NOT_READ_INPUT_FILE,
+                    "Could not load the " + name + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    private NetworkMaps createNetworkMaps(Mapping mapping) {
+        return new NetworkMaps(mapping, resourceCache);
+    }
+
+    /**
+     * Starts loading the network resources of the plan in the background once the mapping is loaded.
+     * Each network waits only for its own maps when it is written.
+     */
+    private Future<NetworkMaps> submitNetworkMaps(StartupPipeline pipeline, ResourcePlan plan, Future<Mapping> mappingLoad) {
+        Future<NetworkMaps> mapsLoad = pipeline.submit(StartupPipeline.NETWORK_MAPS, mappingLoad,
+                () -> networkMaps.computeIfAbsent(pipeline.await(mappingLoad), this::createNetworkMaps));
+        for (ResourcePlan.Resource resource : plan.getResources()) {
+            String name = resource.getTaskName();
+            switch (resource) {
+                case GENE_NETWORK_MAPS:
+                    pipeline.submit(name, mapsLoad, () -> pipeline.await(mapsLoad).loadGeneMaps());
+                    break;
+                case PROTEIN_NETWORK_MAPS:
+                    pipeline.submit(name, mapsLoad, () -> pipeline.await(mapsLoad).loadProteinMaps());
+                    break;
+                case PROTEOFORM_NETWORK_MAPS:
+                    pipeline.submit(name, mapsLoad, () -> pipeline.await(mapsLoad).loadProteoformMaps());
+                    break;
+                // With a resource cache the indexes are built by the graphs, as the cache could drop a prefetched one
+                case INDEXED_MAPPING:
+                    if (resourceCache == null) {
+                        pipeline.submit(name, mapsLoad, () -> pipeline.await(mapsLoad).getIndexedMapping(false));
+                    }
+                    break;
+                case INDEXED_MAPPING_WITH_GENES:
+                    if (resourceCache == null) {
+                        pipeline.submit(name, mapsLoad, () -> pipeline.await(mapsLoad).getIndexedMapping(true));
+                    }
+                    break;
+                case INDEXED_PROTEOFORMS:
+                    if (resourceCache == null) {
+                        pipeline.submit(name, mapsLoad, () -> pipeline.await(mapsLoad).getIndexedProteoforms());
+                    }
+                    break;
+                default:
+                    // Loaded with the mapping, or, for the position indexes, by the variant windows once the
+                    // chromosomes of the input are known
+            }
+        }
+        return mapsLoad;
+    }
+
+    /**
+     * Number of proteins or proteoforms of the analysis background, depending on the input type.
+     */
+    static int getPopulationSize(InputType inputType, Mapping mapping) {
+        switch (inputType) {
+            case GENE:
+            case GENES:
+            case ENSEMBL:
+            case ENSEMBLS:
+            case UNIPROT:
+            case UNIPROTS:
+            case RSID:
+            case RSIDS:
+            case CHRBP:
+            case CHRBPS:
+            case VCF:
+            case PEPTIDE:
+            case PEPTIDES:
+                return mapping.getProteinsToReactions().keySet().size();
+            case PROTEOFORM:
+            case PROTEOFORMS:
+            case MODIFIEDPEPTIDE:
+            case MODIFIEDPEPTIDES:
+                return mapping.getProteoformsToReactions().keySet().size();
+            default:
+                return 0;
+        }
+    }
+
+    private List<VariantWindows.Hit> mapVariantWindows(RunConfig config, List<String> input) throws IOException {
+        Set<Integer> chromosomes = SnpShards.getChromosomes(input, config.getInputType(), null);
+        if (resourceCache == null) {
+            return VariantWindows.map(input, SnpShards.loadPositionIndexes(chromosomes, null, executor), config.getWindow());
+        }
+        // One chromosome at a time, keeping only what fits the budget
+        return VariantWindows.map(input, chromosomes, chromosome -> SnpShards.getPositionIndex(chromosome, resourceCache), config.getWindow());
+    }
+
+    /**
+     * @return the proteins of the hits, in order of appearance
+     */
+    private static List<String> getProteins(List<VariantWindows.Hit> hits) {
+        Set<String> proteins = new LinkedHashSet<>();
+        for (VariantWindows.Hit hit : hits) {
+            proteins.add(hit.getProtein());
+        }
+        return new ArrayList<>(proteins);
+    }
+
+    /**
+     * Maps the chrBp or vcf variants to the proteins within the window and writes the pairs to variantWindows.tsv.
+     *
+     * @return the proteins found, in order of appearance
+     */
+    private List<String> writeVariantWindows(RunConfig config, List<String> input, List<File> files) throws IOException {
+        List<VariantWindows.Hit> hits = mapVariantWindows(config, input);
+        File file = new File(config.getOutputPath() + "variantWindows.tsv");
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(file))) {
+            output.write("CHROMOSOME" + separator + "POSITION" + separator + "UNIPROT" + separator + "DISTANCE");
+            output.newLine();
+            for (VariantWindows.Hit hit : hits) {
+                output.write(hit.getChromosome() + separator + hit.getPosition() + separator + hit.getProtein() + separator + hit.getDistance());
+                output.newLine();
+            }
+        }
+        files.add(file);
+        return getProteins(hits);
+    }
+
+    /**
+     * Maps the chrBp or vcf variants of the input file to the proteins within the window, a chunk of lines at a
+     * time, and writes the pairs to variantWindows.tsv. The hits are sorted within each chunk. The lines are read
+     * as vcf variants, in batches of variant keys parsed while the previous batch is mapped.
+     *
+     * @return the distinct proteins found, in order of appearance
+     */
+    private List<String> streamVariantWindows(RunConfig config, File inputFile, List<File> files) throws IOException {
+        VariantWindows.IndexSource indexes = getIndexSource();
+        Set<String> proteins = new LinkedHashSet<>();
+        File file = new File(config.getOutputPath() + "variantWindows.tsv");
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(file))) {
+            output.write("CHROMOSOME" + separator + "POSITION" + separator + "UNIPROT" + separator + "DISTANCE");
+            output.newLine();
+            createVcfReader(config).read(inputFile, executor, config.getChunkSize(), batch -> {
+                for (VariantWindows.Hit hit : VariantWindows.map(batch.getVariants(), batch.size(), indexes, config.getWindow())) {
+                    output.write(hit.getChromosome() + separator + hit.getPosition() + separator + hit.getProtein() + separator + hit.getDistance());
+                    output.newLine();
+                    proteins.add(hit.getProtein());
+                }
+            });
+        }
+        files.add(file);
+        return new ArrayList<>(proteins);
+    }
+
+    /**
+     * Position indexes loaded on first use, through the resource cache if there is one, or kept for the run otherwise.
+     * A chromosome without an index is remembered as missing, so its files are looked for only once.
+     */
+    private VariantWindows.IndexSource getIndexSource() {
+        if (resourceCache != null) {
+            Set<Integer> missing = ConcurrentHashMap.newKeySet();
+            return chromosome -> {
+                if (missing.contains(chromosome)) {
+                    return null;
+                }
+                try {
+                    return SnpShards.getPositionIndex(chromosome, resourceCache);
+                } catch (FileNotFoundException e) {
+                    missing.add(chromosome);
+                    return null;
+                }
+            };
+        }
+        ConcurrentMap<Integer, Lazy<Optional<PositionIndex>>> loaded = new ConcurrentHashMap<>();
+        return chromosome -> loaded.computeIfAbsent(chromosome, key -> new Lazy<>(() -> findPositionIndex(key))).get().orElse(null);
+    }
+
+    /**
+     * @return the position index of the chromosome, or empty if it has none
+     */
+    private static Optional<PositionIndex> findPositionIndex(int chromosome) throws IOException {
+        try {
+            return Optional.of(SnpShards.getPositionIndex(chromosome, null));
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Proteins of single variants: within the window from the position indexes, or at the exact position from the
+     * chrBp shards. The index or shard of the last chromosome is kept between lookups, as the variants of a vcf file
+     * are sorted by chromosome. Through the resource cache only that one is kept, otherwise all stay loaded for the run.
+     */
+    private class VariantLookup implements PerSampleAnalysis.ProteinLookup {
+
+        private final long window;
+        private final VariantWindows.IndexSource indexes = getIndexSource();
+        private final Map<Integer, Multimap<Long, String>> shards = new HashMap<>();
+        private int chromosome = 0;
+        private PositionIndex index;
+
+        VariantLookup(long window) {
+            this.window = window;
+        }
+
+        @Override
+        public Collection<String> getProteins(int chromosome, long position) throws IOException {
+            if (window >= 0) {
+                if (chromosome != this.chromosome) {
+                    index = indexes.get(chromosome);
+                    this.chromosome = chromosome;
+                }
+                return index == null ? Collections.emptyList() : index.getProteins(position, window);
+            }
+            Multimap<Long, String> shard = shards.get(chromosome);
+            if (shard == null) {
+                if (resourceCache != null) {
+                    shards.clear();
+                }
+                shard = SnpShards.loadChrBpShards(Collections.singleton(chromosome), resourceCache, null).get(chromosome);
+                shards.put(chromosome, shard);
+            }
+            return shard.get(position);
+        }
+    }
+
+    private static void createOutputDirectory(String path) throws IOException {
+        if (path.isEmpty()) {
+            return;     // Working directory
+        }
+        File directory = new File(path);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create the output directory " + path);
+        }
+    }
+
+    private static void addGraphFiles(RunConfig config, List<File> files) {
+        List<String> networks = new ArrayList<>();
+        if (config.isGeneGraph()) {
+            networks.add("gene");
+        }
+        if (config.isUniprotGraph()) {
+            networks.add("protein");
+        }
+        if (config.isProteoformGraph()) {
+            networks.add("proteoform");
+        }
+        for (String network : networks) {
+            for (String suffix : new String[]{"Vertices.tsv", "InternalEdges.tsv", "ExternalEdges.tsv"}) {
+                files.add(new File(config.getOutputPath() + network + suffix));
+            }
+        }
+    }
+}
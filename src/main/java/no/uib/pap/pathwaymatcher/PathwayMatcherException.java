@@ -0,0 +1,36 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.Error;
+
+/**
+ * Failure of a run, with the {@link Error} whose code the command line exits with.
+ */
+public class PathwayMatcherException extends Exception {
+
+    private final Error error;
+
+    public PathwayMatcherException(Error error) {
+        this(error, error.getMessage());
+    }
+
+    public PathwayMatcherException(Error error, String message) {
+        super(message);
+        this.error = error;
+    }
+
+    public PathwayMatcherException(Error error, String message, Throwable cause) {
+        super(message, cause);
+        this.error = error;
+    }
+
+    public Error getError() {
+        return error;
+    }
+
+    /**
+     * @return the exit code of the error
+     */
+    public int getCode() {
+        return error.getCode();
+    }
+}
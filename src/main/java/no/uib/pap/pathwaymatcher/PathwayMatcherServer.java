@@ -0,0 +1,276 @@
+package no.uib.pap.pathwaymatcher;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import no.uib.pap.methods.search.SearchResult;
+import no.uib.pap.model.InputType;
+import org.apache.commons.cli.*;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Resident PathwayMatcher answering searches over HTTP, so that the mapping is loaded once for many requests.
+ * <p>
+ * The mapping of each input type is loaded on the first request of that type, or at startup with -t, and then
+ * shared read-only by all requests. It is always loaded with the top level pathways, so that the requests with
+ * and without them share one mapping instead of loading two. Requests run on a bounded pool; when the pool and its queue are full the
+ * server answers 503.
+ * <p>
+ * Endpoints, with the parameters of the command line in the query, e.g. {@code ?inputType=uniprot&tlp=true}, and
+ * the input lines in the body of a POST:
+ * <pre>
+ * POST /search     search.tsv in the response
+ * POST /analysis   analysis.tsv in the response
+ * POST /run        search.tsv, analysis.tsv and the requested networks written to the output directory
+ * GET  /query      reactions and pathways of the comma separated identifiers in the id parameter
+ * GET  /health     state of the mappings
+ * </pre>
+ */
+class PathwayMatcherServer {
+
+    private static final String separator = "\t";
+    private static final int DEFAULT_PORT = 8089;
+
+    private final PathwayMatcherEngine engine = new PathwayMatcherEngine();
+
+    /**
+     * @param args serve options: -p port, -th request threads, -t input types to load at startup
+     */
+    static void main(String args[]) {
+        Options options = new Options();
+        options.addOption(new Option("p", "port", true, "Port of the HTTP endpoint, default " + DEFAULT_PORT));
+        options.addOption(new Option("th", "threads", true, "Requests run at the same time, default the number of processors"));
+        options.addOption(new Option("t", "inputType", true, "Input types to load at startup, e.g. uniprot,proteoform"));
+        options.addOption(new Option("h", "help", false, "Print usage and available arguments"));
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp("java -jar PathwayMatcher.jar serve <options>", options);
+            System.exit(no.uib.pap.model.Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR.getCode());
+            return;
+        }
+        if (commandLine.hasOption("h")) {
+            new HelpFormatter().printHelp("java -jar PathwayMatcher.jar serve <options>", options);
+            System.exit(0);
+        }
+
+        int port = NumberUtils.toInt(commandLine.getOptionValue("p"), DEFAULT_PORT);
+        int threads = NumberUtils.toInt(commandLine.getOptionValue("th"), Runtime.getRuntime().availableProcessors());
+        PathwayMatcherServer server = new PathwayMatcherServer();
+        try {
+            HttpServer httpServer = server.start(port, Math.max(1, threads));
+            System.out.println("PathwayMatcher serving on http://localhost:" + httpServer.getAddress().getPort());
+        } catch (IOException e) {
+            System.out.println("Could not start the server on port " + port + ": " + e.getMessage());
+            System.exit(no.uib.pap.model.Error.COULD_NOT_WRITE_TO_OUTPUT_FILES.getCode());
+        }
+
+        if (commandLine.hasOption("t")) {
+            for (String type : commandLine.getOptionValue("t").split(",")) {
+                try {
+                    server.engine.getMapping(RunConfig.parseInputType(type.trim()), true);
+                } catch (PathwayMatcherException e) {
+                    System.out.println(e.getMessage() + ": " + type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts listening on the loopback interface.
+     *
+     * @param port    port, 0 for any free port
+     * @param threads requests run at the same time
+     */
+    HttpServer start(int port, int threads) throws IOException {
+        HttpServer httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        ExecutorService requests = createExecutor(threads);
+        httpServer.createContext("/health", this::health);
+        httpServer.createContext("/search", exchange -> submit(requests, exchange, "search"));
+        httpServer.createContext("/analysis", exchange -> submit(requests, exchange, "analysis"));
+        httpServer.createContext("/run", exchange -> submit(requests, exchange, "run"));
+        httpServer.createContext("/query", exchange -> submit(requests, exchange, "query"));
+        httpServer.start();
+        return httpServer;
+    }
+
+    /**
+     * Fixed pool with a bounded queue, rejecting the requests over the queue.
+     */
+    private static ExecutorService createExecutor(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(threads * 16),
+                new ThreadFactoryBuilder().setNameFormat("pathwaymatcher-request-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Runs a request on the pool, or answers 503 from the dispatcher thread when the pool is full.
+     */
+    private void submit(ExecutorService requests, HttpExchange exchange, String endpoint) throws IOException {
+        try {
+            requests.execute(() -> {
+                try {
+                    handle(exchange, endpoint);
+                } catch (IOException e) {
+                    // The client is gone
+                } finally {
+                    exchange.close();       // Also when an Error, e.g. out of memory, ends the request
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            respond(exchange, 503, "text/plain", "The server is busy.");
+        }
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder("{\"status\":\"up\",\"mappings\":{");
+        String delimiter = "";
+        for (Map.Entry<String, String> state : engine.getStates().entrySet()) {
+            body.append(delimiter).append('"').append(state.getKey()).append("\":\"").append(state.getValue()).append('"');
+            delimiter = ",";
+        }
+        body.append("}}");
+        respond(exchange, 200, "application/json", body.toString());
+    }
+
+    private void handle(HttpExchange exchange, String endpoint) throws IOException {
+        if (endpoint.equals("query")) {
+            query(exchange);
+            return;
+        }
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "text/plain", "Use POST with the input lines in the body.");
+            return;
+        }
+        RunConfig config;
+        try {
+            config = RunConfig.fromParameters(parseQuery(exchange.getRequestURI().getRawQuery()), endpoint.equals("run")).build();
+        } catch (PathwayMatcherException e) {
+            respond(exchange, 400, "text/plain", e.getMessage());
+            return;
+        }
+        engine.declare(config.getSearchType(), true);
+        try {
+            List<String> input = readLines(exchange.getRequestBody());
+            respond(exchange, 200, "text/tab-separated-values", run(config, input, endpoint));
+        } catch (PathwayMatcherException | IOException | RuntimeException e) {
+            respond(exchange, 500, "text/plain", String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Point query of the identifiers, answered from the mapping without running a search.
+     */
+    private void query(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET")) {
+            respond(exchange, 405, "text/plain", "Use GET with the identifiers in the id parameter.");
+            return;
+        }
+        Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+        PointQuery pointQuery;
+        try {
+            InputType inputType = RunConfig.parseInputType(parameters.get("inputType"));
+            engine.declare(inputType, true);
+            pointQuery = engine.getPointQuery(inputType, Boolean.parseBoolean(parameters.get("tlp")));
+        } catch (PathwayMatcherException e) {
+            respond(exchange, e.getError() == no.uib.pap.model.Error.COULD_NOT_READ_INPUT_FILE ? 500 : 400,
+                    "text/plain", e.getMessage());
+            return;
+        }
+        String ids = parameters.get("id");
+        if (ids == null) {
+            respond(exchange, 400, "text/plain", "Missing parameter: id");
+            return;
+        }
+        StringBuilder body = new StringBuilder(pointQuery.getHeader()).append('\n');
+        try {
+            for (String id : ids.split(",")) {
+                pointQuery.query(id, (identifier, entity, reaction, pathway, topLevelPathway) -> {
+                    body.append(identifier).append(separator).append(entity).append(separator)
+                            .append(reaction).append(separator).append(pathway);
+                    if (topLevelPathway != null) {
+                        body.append(separator).append(topLevelPathway);
+                    }
+                    body.append('\n');
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            respond(exchange, 500, "text/plain", String.valueOf(e.getMessage()));
+            return;
+        }
+        respond(exchange, 200, "text/tab-separated-values", body.toString());
+    }
+
+    private String run(RunConfig config, List<String> input, String endpoint) throws PathwayMatcherException, IOException {
+        if (endpoint.equals("run")) {
+            StringBuilder files = new StringBuilder();
+            for (File file : engine.run(config, input).getFiles()) {
+                files.append(file.getPath()).append(System.lineSeparator());
+            }
+            return files.toString();
+        }
+
+        SearchResult searchResult = engine.search(config, input);
+        StringWriter text = new StringWriter();
+        try (BufferedWriter output = new BufferedWriter(text)) {
+            if (endpoint.equals("search")) {
+                searchResult.writeToFile(output, separator);
+            } else {
+                engine.analyse(config, searchResult).writeToFile(output, config.getSearchType(), separator);
+            }
+        }
+        return text.toString();
+    }
+
+    static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            try {
+                String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8");
+                String value = equals < 0 ? "true" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8");
+                parameters.put(name, value);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return parameters;
+    }
+
+    private static List<String> readLines(InputStream body) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.ISO_8859_1))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        }
+        exchange.close();
+    }
+}
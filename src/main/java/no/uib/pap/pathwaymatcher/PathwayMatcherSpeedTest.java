@@ -4,6 +4,9 @@ import com.google.common.base.Stopwatch;
 import com.google.common.io.Files;
 import no.uib.pap.model.InputType;
 import no.uib.pap.pathwaymatcher.PathwayMatcher;
+import no.uib.pap.pathwaymatcher.data.RsIdDirectory;
+import no.uib.pap.pathwaymatcher.data.RsIdIndex;
+import no.uib.pap.pathwaymatcher.data.SnpShards;
 
 import java.io.File;
 import java.io.FileWriter;
@@ -139,6 +142,7 @@ public class PathwayMatcherSpeedTest {
 //        runPathwayMatcher(InputType.PROTEOFORMS, Files.readLines(new File(ALL_PROTEOFORMS), Charset.defaultCharset()), PROTEOFORM_SIZES);
 //        runPathwayMatcher(InputType.PEPTIDES, Files.readLines(new File(ALL_PEPTIDES), Charset.defaultCharset()), PEPTIDE_SIZES);
         runPathwayMatcher(InputType.RSIDS, Files.readLines(new File(ALL_SNPS), Charset.defaultCharset()), SNPS_SIZES);
+        runRsIdLookups(Files.readLines(new File(ALL_SNPS), Charset.defaultCharset()));
 
         timesFile.close();
     }
@@ -200,6 +204,52 @@ public class PathwayMatcherSpeedTest {
         }
     }
 
+    /**
+     * Measure the lookups of all the rsIds in the numeric rsId indexes, on-heap and off-heap.
+     */
+    private static void runRsIdLookups(List<String> allSnps) throws IOException {
+
+        Stopwatch stopwatch = Stopwatch.createUnstarted();
+        RsIdDirectory directory = RsIdDirectory.load();
+        for (boolean offHeap : new boolean[]{false, true}) {
+            Map<Integer, RsIdIndex> indexes = SnpShards.loadRsIdIndexes(SnpShards.allChromosomes(), offHeap, null, null);
+            long footprint = 0;
+            for (RsIdIndex index : indexes.values()) {
+                footprint += index.getMemoryFootprint();
+            }
+            System.out.println("rsId indexes: " + footprint / (1024 * 1024) + " MB" + (offHeap ? " off-heap" : ""));
+
+            for (int R = 0; R < REPETITIONS + WARMUP_OFFSET; R++) {
+                int found = 0;
+                stopwatch.start();
+                for (String rsId : allSnps) {
+                    rsId = rsId.trim();
+                    if (directory != null) {
+                        RsIdIndex index = indexes.get(directory.getChromosome(rsId));
+                        found += index != null ? index.getProteins(rsId).size() : 0;
+                        continue;
+                    }
+                    for (RsIdIndex index : indexes.values()) {
+                        found += index.getProteins(rsId).size();
+                    }
+                }
+                stopwatch.stop();
+
+                Duration duration = stopwatch.elapsed();
+                stopwatch.reset();
+
+                if (R < WARMUP_OFFSET) {
+                    continue;
+                }
+
+                String type = offHeap ? "RSID_INDEX_OFFHEAP" : "RSID_INDEX";
+                timesFile.write(type + ",0," + allSnps.size() + "," + new DecimalFormat("#0.000").format(duration.toNanos() / 1000000.0) + "," + R + "\n");
+                timesFile.flush();
+                System.out.println("Looked up " + allSnps.size() + " rsIds, " + found + " proteins.");
+            }
+        }
+    }
+
     public static void createFiles(InputType inputType, List<String> allLines, List<Integer> SIZES) throws IOException {
 
         FileWriter[] files = new FileWriter[SIZES.size()];
@@ -0,0 +1,244 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.pathwaymatcher.data.IdDictionary;
+import no.uib.pap.pathwaymatcher.data.IntMultimap;
+import no.uib.pap.pathwaymatcher.data.PathwaySets;
+import no.uib.pap.pathwaymatcher.data.VariantWindows;
+import no.uib.pap.pathwaymatcher.data.VcfReader;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Over-representation analysis of each sample of a multi-sample vcf file, on the proteins of the variants where the
+ * sample has a non-reference genotype.
+ * <p>
+ * The file is read once. Each variant is resolved to proteins once, and its proteins are added to the protein set
+ * of every sample carrying it, so the cost of the lookups does not grow with the number of samples. The samples are
+ * then analysed in parallel against the same {@link PathwaySets}, with the proteins of the mapping as background,
+ * and their p-values written as a matrix with one row per sample and one column per pathway hit by any sample.
+ * <p>
+ * The p-value of a pathway is the probability of at least as many hits in a binomial distribution with the
+ * proteins of the sample as trials, and the fraction of the background in the pathway as probability. Pathways
+ * without hits in a sample get a p-value of 1.
+ */
+class PerSampleAnalysis implements VcfReader.GenotypeHandler {
+
+    /**
+     * Samples analysed by each task.
+     */
+    static final int BLOCK_SIZE = 64;
+
+    /**
+     * Proteins of a variant, at its position or within the window of the run.
+     */
+    interface ProteinLookup {
+        Collection<String> getProteins(int chromosome, long position) throws IOException;
+    }
+
+    private final PathwaySets pathwaySets;
+    private final ProteinLookup lookup;
+    private final IdDictionary dictionary;
+    private List<String> samples = Collections.emptyList();
+    private BitSet[] carriedProteins = new BitSet[0];
+
+    private long lastVariant = -1;
+    private int[] variantProteins = new int[16];
+    private int variantProteinCount = 0;
+
+    PerSampleAnalysis(PathwaySets pathwaySets, ProteinLookup lookup) {
+        this.pathwaySets = pathwaySets;
+        this.lookup = lookup;
+        this.dictionary = pathwaySets.getDictionary();
+    }
+
+    @Override
+    public void samples(List<String> samples) {
+        this.samples = new ArrayList<>(samples);
+        carriedProteins = new BitSet[samples.size()];
+        for (int I = 0; I < carriedProteins.length; I++) {
+            carriedProteins[I] = new BitSet();
+        }
+    }
+
+    @Override
+    public boolean variant(int chromosome, long position) throws IOException {
+        long variant = VariantWindows.getVariant(chromosome, position);
+        if (variant != lastVariant) {
+            // The lines of a multi-allelic site split in several lines are resolved once
+            lastVariant = variant;
+            variantProteinCount = 0;
+            for (String protein : lookup.getProteins(chromosome, position)) {
+                int id = dictionary.getId(IdDictionary.Kind.PROTEIN, protein);
+                if (id >= 0) {
+                    if (variantProteinCount == variantProteins.length) {
+                        variantProteins = Arrays.copyOf(variantProteins, variantProteinCount * 2);
+                    }
+                    variantProteins[variantProteinCount++] = id;
+                }
+            }
+        }
+        return variantProteinCount > 0;
+    }
+
+    @Override
+    public void carrier(int sample) {
+        BitSet proteins = carriedProteins[sample];
+        for (int I = 0; I < variantProteinCount; I++) {
+            proteins.set(variantProteins[I]);
+        }
+    }
+
+    List<String> getSamples() {
+        return samples;
+    }
+
+    /**
+     * @return the number of background proteins hit by the variants carried by a sample
+     */
+    int getProteinCount(int sample) {
+        return carriedProteins[sample].cardinality();
+    }
+
+    /**
+     * Pathways with hits in any sample, sorted by stable identifier.
+     */
+    int[] getPathways() {
+        BitSet proteins = new BitSet();
+        for (BitSet sampleProteins : carriedProteins) {
+            proteins.or(sampleProteins);
+        }
+        IntMultimap proteinsToPathways = pathwaySets.getProteinsToPathways();
+        BitSet hit = new BitSet(pathwaySets.getPathwayCount());
+        for (int protein = proteins.nextSetBit(0); protein >= 0; protein = proteins.nextSetBit(protein + 1)) {
+            for (int I = proteinsToPathways.start(protein); I < proteinsToPathways.end(protein); I++) {
+                hit.set(proteinsToPathways.target(I));
+            }
+        }
+        Integer[] pathways = hit.stream().boxed().toArray(Integer[]::new);
+        Arrays.sort(pathways, Comparator.comparing(pathway -> dictionary.getString(IdDictionary.Kind.PATHWAY, pathway)));
+        return Arrays.stream(pathways).mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Analyses the samples, a block per task with as many tasks at a time as processors, and writes the matrix of
+     * p-values with a header line of the pathways. Only the rows of the blocks being analysed are kept in memory.
+     */
+    void write(File file, ExecutorService executor, String separator) throws IOException {
+        int[] pathways = getPathways();
+        int tasks = Runtime.getRuntime().availableProcessors();
+        try (BufferedWriter output = new BufferedWriter(new FileWriter(file))) {
+            output.write("SAMPLE");
+            for (int pathway : pathways) {
+                output.write(separator + dictionary.getString(IdDictionary.Kind.PATHWAY, pathway));
+            }
+            output.newLine();
+
+            for (int first = 0; first < samples.size(); first += tasks * BLOCK_SIZE) {
+                List<Future<double[][]>> blocks = new ArrayList<>();
+                for (int start = first; start < Math.min(first + tasks * BLOCK_SIZE, samples.size()); start += BLOCK_SIZE) {
+                    int from = start;
+                    int to = Math.min(start + BLOCK_SIZE, samples.size());
+                    blocks.add(executor.submit(() -> analyse(from, to, pathways)));
+                }
+                int sample = first;
+                for (Future<double[][]> block : blocks) {
+                    for (double[] row : get(block)) {
+                        output.write(samples.get(sample++));
+                        for (double pValue : row) {
+                            output.write(separator + pValue);
+                        }
+                        output.newLine();
+                    }
+                }
+            }
+        }
+    }
+
+    private static double[][] get(Future<double[][]> block) throws IOException {
+        try {
+            return block.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while analysing the samples.");
+        } catch (ExecutionException e) {
+            throw new IOException("Could not analyse the samples.", e.getCause());
+        }
+    }
+
+    /**
+     * @return the p-values of the samples from index from to index to in the pathways
+     */
+    double[][] analyse(int from, int to, int[] pathways) {
+        IntMultimap proteinsToPathways = pathwaySets.getProteinsToPathways();
+        int population = pathwaySets.getProteinCount();
+        int[] hits = new int[pathwaySets.getPathwayCount()];
+        double[][] rows = new double[to - from][];
+        for (int sample = from; sample < to; sample++) {
+            BitSet proteins = carriedProteins[sample];
+            int found = 0;
+            for (int protein = proteins.nextSetBit(0); protein >= 0; protein = proteins.nextSetBit(protein + 1)) {
+                found++;
+                for (int I = proteinsToPathways.start(protein); I < proteinsToPathways.end(protein); I++) {
+                    hits[proteinsToPathways.target(I)]++;
+                }
+            }
+            double[] row = new double[pathways.length];
+            for (int column = 0; column < pathways.length; column++) {
+                int pathway = pathways[column];
+                double probability = (double) pathwaySets.getPathwaySize(pathway) / population;
+                row[column] = binomialUpperTail(hits[pathway], found, probability);
+                hits[pathway] = 0;
+            }
+            rows[sample - from] = row;
+        }
+        return rows;
+    }
+
+    /**
+     * Probability of at least k successes in n trials of probability p. The terms of the tail beyond the mean are
+     * summed directly, so that small p-values keep their precision; otherwise the complement is summed.
+     */
+    static double binomialUpperTail(int k, int n, double p) {
+        if (k <= 0 || p >= 1.0) {
+            return 1.0;
+        }
+        if (k > n || p <= 0.0) {
+            return 0.0;
+        }
+        if (k > n * p) {
+            return Math.min(1.0, sumTerms(k, n, p, 1));
+        }
+        return Math.max(0.0, 1.0 - sumTerms(k - 1, n, p, -1));
+    }
+
+    /**
+     * Sums the probabilities of i successes from i = first on, upwards or downwards, each term computed from the
+     * previous one, until the terms no longer change the sum.
+     */
+    private static double sumTerms(int first, int n, double p, int step) {
+        double ratio = p / (1.0 - p);
+        double term = Math.exp(logChoose(n, first) + first * Math.log(p) + (n - first) * Math.log1p(-p));
+        double sum = 0.0;
+        for (int i = first; i >= 0 && i <= n; i += step) {
+            sum += term;
+            if (term <= sum * 1e-17) {
+                break;
+            }
+            term *= step > 0 ? (double) (n - i) / (i + 1) * ratio : i / ((double) (n - i + 1) * ratio);
+        }
+        return sum;
+    }
+
+    private static double logChoose(int n, int k) {
+        int m = Math.min(k, n - k);
+        double sum = 0.0;
+        for (int i = 1; i <= m; i++) {
+            sum += Math.log((double) (n - m + i) / i);
+        }
+        return sum;
+    }
+}
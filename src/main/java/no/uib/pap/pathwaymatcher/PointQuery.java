@@ -0,0 +1,457 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import no.uib.pap.pathwaymatcher.data.*;
+import no.uib.pap.pathwaymatcher.data.IdentifierIndex.Namespace;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Reactions and pathways of single identifiers, read directly from a loaded {@link Mapping} or from the sections of a
+ * mapping {@link Bundle}. Over a bundle nothing is deserialized: the lookups read the mapped sections.
+ * <p>
+ * A query walks the maps from the identifier to its proteins or proteoform, their reactions, the pathways of the
+ * reactions and, when requested, their top level pathways, without building a search result. Rows are passed to a
+ * {@link RowHandler} as they are found, so a query allocates only for the rows it returns.
+ * <p>
+ * Gene, Ensembl and UniProt identifiers are resolved with the {@link IdentifierIndex} of their namespace when its
+ * file has been built with the {@code tools.IdentifierIndexBuilder}, otherwise with the maps of the mapping.
+ * Proteoforms are matched exactly, without match type or range. The rsIds of a chromosome with a block compressed
+ * shard are read from it, decompressing only the blocks that hold them, so a few rsIds cost the same whatever the
+ * size of the chromosome. Otherwise the rsId index of the chromosome is loaded on its first rsId. {@link #preload()}
+ * loads the rsId indexes of all the chromosomes; afterwards the queries read no files.
+ * Instances are immutable once loaded and are shared by concurrent queries.
+ */
+public class PointQuery {
+
+    private static final String separator = "\t";
+
+    /**
+     * Receives the rows of a query. The top level pathway is null when they were not requested.
+     */
+    public interface RowHandler {
+        void row(String identifier, String entity, String reaction, String pathway, String topLevelPathway);
+    }
+
+    /**
+     * Row of a query: the identifier, the protein or proteoform it maps to, a reaction of that entity, and a
+     * pathway of the reaction.
+     */
+    public static class Row {
+        private final String identifier;
+        private final String entity;
+        private final String reaction;
+        private final String pathway;
+        private final String topLevelPathway;
+
+        Row(String identifier, String entity, String reaction, String pathway, String topLevelPathway) {
+            this.identifier = identifier;
+            this.entity = entity;
+            this.reaction = reaction;
+            this.pathway = pathway;
+            this.topLevelPathway = topLevelPathway;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public String getEntity() {
+            return entity;
+        }
+
+        public String getReaction() {
+            return reaction;
+        }
+
+        public String getPathway() {
+            return pathway;
+        }
+
+        /**
+         * @return the top level pathway, or null if the query was made without them
+         */
+        public String getTopLevelPathway() {
+            return topLevelPathway;
+        }
+
+        @Override
+        public String toString() {
+            return identifier + separator + entity + separator + reaction + separator + pathway
+                    + (topLevelPathway == null ? "" : separator + topLevelPathway);
+        }
+    }
+
+    /**
+     * Values of a key in one of the maps read by the queries, empty if the key is unknown.
+     */
+    private interface Relation<K> {
+        Collection<String> get(K key);
+    }
+
+    private final InputType inputType;
+    private final boolean topLevelPathways;
+    private final Relation<String> identifiersToProteins;
+    private final Relation<String> proteinsToReactions;
+    private final Relation<Proteoform> proteoformsToReactions;
+    private final Relation<String> reactionsToPathways;
+    private final Relation<String> pathwaysToTopLevelPathways;
+    private final IdentifierIndex identifierIndex;
+    private final RsIdDirectory rsIdDirectory;
+    private final ExecutorService executor;
+    private final ConcurrentMap<Integer, Lazy<RsIdIndex>> rsIdIndexes = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, Lazy<Optional<BlockShard>>> blockShards = new ConcurrentHashMap<>();
+
+    /**
+     * @param inputType        type of the identifiers: gene, ensembl, uniprot, proteoform or rsid, singular or plural
+     * @param mapping          mapping loaded for the input type, with the top level pathways if they are requested
+     * @param topLevelPathways add the top level pathway of each pathway to the rows
+     * @param executor         decompresses the blocks of the rsIds of a query in parallel, or null to do it in the
+     *                         calling thread
+     */
+    public PointQuery(InputType inputType, Mapping mapping, boolean topLevelPathways, ExecutorService executor) {
+        // The maps are read on each lookup, as the mapping of an input type leaves the maps it does not use empty
+        this(inputType, topLevelPathways, executor, getIdentifiersToProteins(inputType, mapping),
+                protein -> mapping.getProteinsToReactions().get(protein),
+                proteoform -> mapping.getProteoformsToReactions().get(proteoform),
+                reaction -> mapping.getReactionsToPathways().get(reaction),
+                pathway -> mapping.getPathwaysToTopLevelPathways().get(pathway));
+    }
+
+    /**
+     * @param bundle mapping bundle with the sections of the input type: genesToProteins or ensemblToProteins,
+     *               proteinsToReactions or proteoformsToReactions, reactionsToPathways and, if they are requested,
+     *               pathwaysToTopLevelPathways
+     * @throws IllegalArgumentException if a section is missing from the bundle
+     * @see #PointQuery(InputType, Mapping, boolean, ExecutorService)
+     */
+    public PointQuery(InputType inputType, Bundle bundle, boolean topLevelPathways, ExecutorService executor) {
+        this(inputType, topLevelPathways, executor, getIdentifiersToProteins(inputType, bundle),
+                bundle.getMultimap("proteinsToReactions")::get, getProteoformsToReactions(inputType, bundle),
+                bundle.getMultimap("reactionsToPathways")::get,
+                topLevelPathways ? bundle.getMultimap("pathwaysToTopLevelPathways")::get : null);
+    }
+
+    private PointQuery(InputType inputType, boolean topLevelPathways, ExecutorService executor,
+                       Relation<String> identifiersToProteins, Relation<String> proteinsToReactions,
+                       Relation<Proteoform> proteoformsToReactions, Relation<String> reactionsToPathways,
+                       Relation<String> pathwaysToTopLevelPathways) {
+        if (!isSupported(inputType)) {
+            throw new IllegalArgumentException("Point queries are not supported for " + inputType);
+        }
+        this.inputType = inputType;
+        this.topLevelPathways = topLevelPathways;
+        this.identifiersToProteins = identifiersToProteins;
+        this.proteinsToReactions = proteinsToReactions;
+        this.proteoformsToReactions = proteoformsToReactions;
+        this.reactionsToPathways = reactionsToPathways;
+        this.pathwaysToTopLevelPathways = pathwaysToTopLevelPathways;
+        Namespace namespace = getNamespace(inputType);
+        this.identifierIndex = namespace == null ? null : IdentifierIndex.find(namespace);
+        this.rsIdDirectory = isRsId() ? RsIdDirectory.load() : null;
+        this.executor = executor;
+    }
+
+    /**
+     * @return true for identifiers that map directly to proteins or proteoforms: genes, ensembl, uniprot,
+     * proteoforms and rsIds
+     */
+    public static boolean isSupported(InputType inputType) {
+        switch (inputType) {
+            case GENE:
+            case GENES:
+            case ENSEMBL:
+            case ENSEMBLS:
+            case UNIPROT:
+            case UNIPROTS:
+            case PROTEOFORM:
+            case PROTEOFORMS:
+            case RSID:
+            case RSIDS:
+                return true;
+        }
+        return false;
+    }
+
+    private static Relation<String> getIdentifiersToProteins(InputType inputType, Mapping mapping) {
+        switch (inputType) {
+            case GENE:
+            case GENES:
+                return gene -> mapping.getGenesToProteins().get(gene);
+            case ENSEMBL:
+            case ENSEMBLS:
+                return ensembl -> mapping.getEnsemblToProteins().get(ensembl);
+        }
+        return null;
+    }
+
+    private static Relation<String> getIdentifiersToProteins(InputType inputType, Bundle bundle) {
+        switch (inputType) {
+            case GENE:
+            case GENES:
+                return bundle.getMultimap("genesToProteins")::get;
+            case ENSEMBL:
+            case ENSEMBLS:
+                return bundle.getMultimap("ensemblToProteins")::get;
+        }
+        return null;
+    }
+
+    /**
+     * The bundle keeps the proteoforms in the SIMPLE format, so the parsed input is written back to match them.
+     */
+    private static Relation<Proteoform> getProteoformsToReactions(InputType inputType, Bundle bundle) {
+        if (inputType != InputType.PROTEOFORM && inputType != InputType.PROTEOFORMS) {
+            return null;
+        }
+        BundleMultimap proteoformsToReactions = bundle.getMultimap("proteoformsToReactions");
+        return proteoform -> proteoformsToReactions.get(proteoform.toString(ProteoformFormat.SIMPLE));
+    }
+
+    /**
+     * @return the namespace of the identifiers, or null if they are not resolved by an {@link IdentifierIndex}
+     */
+    private static Namespace getNamespace(InputType inputType) {
+        switch (inputType) {
+            case GENE:
+            case GENES:
+                return Namespace.GENE;
+            case ENSEMBL:
+            case ENSEMBLS:
+                return Namespace.ENSEMBL;
+            case UNIPROT:
+            case UNIPROTS:
+                return Namespace.UNIPROT;
+        }
+        return null;
+    }
+
+    public InputType getInputType() {
+        return inputType;
+    }
+
+    public boolean isTopLevelPathways() {
+        return topLevelPathways;
+    }
+
+    private boolean isRsId() {
+        return inputType == InputType.RSID || inputType == InputType.RSIDS;
+    }
+
+    /**
+     * Loads the rsId indexes of all the chromosomes, so that no query reads a file.
+     */
+    public void preload() throws IOException {
+        if (isRsId()) {
+            for (int chromosome : SnpShards.allChromosomes()) {
+                getRsIdIndex(chromosome);
+            }
+        }
+    }
+
+    /**
+     * Header of the rows, tab separated.
+     */
+    public String getHeader() {
+        String entity = inputType == InputType.PROTEOFORM || inputType == InputType.PROTEOFORMS ? "PROTEOFORM" : "UNIPROT";
+        return "IDENTIFIER" + separator + entity + separator + "REACTION_STABLE_ID" + separator + "PATHWAY_STABLE_ID"
+                + (topLevelPathways ? separator + "TOP_LEVEL_PATHWAY_STABLE_ID" : "");
+    }
+
+    /**
+     * @return the rows of the identifiers, in the order of the identifiers
+     */
+    public List<Row> query(Collection<String> identifiers) throws IOException {
+        List<Row> rows = new ArrayList<>();
+        RowHandler handler = (id, entity, reaction, pathway, topLevelPathway) ->
+                rows.add(new Row(id, entity, reaction, pathway, topLevelPathway));
+        Map<Long, List<String>> rsIdProteins = isRsId() ? readRsIdBlocks(identifiers) : Collections.<Long, List<String>>emptyMap();
+        for (String identifier : identifiers) {
+            String id = identifier.trim();
+            List<String> proteins = rsIdProteins.isEmpty() ? null : rsIdProteins.get(RsIdDirectory.parseRsNumber(id));
+            if (proteins != null) {
+                queryProteins(id, proteins, handler);
+            } else {
+                query(id, handler);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Passes the rows of one identifier to the handler. Unknown identifiers give no rows.
+     *
+     * @return the number of rows
+     * @throws IOException if the rsId index of the chromosome of an rsId could not be loaded
+     */
+    public int query(String identifier, RowHandler handler) throws IOException {
+        String id = identifier.trim();
+        if (id.isEmpty()) {
+            return 0;
+        }
+        switch (inputType) {
+            case GENE:
+            case GENES:
+            case ENSEMBL:
+            case ENSEMBLS:
+                return queryProteins(id, identifierIndex != null ? identifierIndex.getProteins(id) : identifiersToProteins.get(id), handler);
+            case UNIPROT:
+            case UNIPROTS:
+                return queryProtein(id, getAccession(id), handler);
+            case PROTEOFORM:
+            case PROTEOFORMS:
+                return queryProteoform(id, handler);
+            default:
+                return queryProteins(id, getRsIdProteins(id), handler);
+        }
+    }
+
+    /**
+     * Accession of a protein, without the isoform suffix if only the canonical protein is in the mapping.
+     */
+    private String getAccession(String id) {
+        int dash = id.indexOf('-');
+        if (dash > 0 && !isProtein(id)) {
+            return id.substring(0, dash);
+        }
+        return id;
+    }
+
+    private boolean isProtein(String id) {
+        if (identifierIndex != null) {
+            // The accessions resolve to themselves, which also rejects the few unknown ones the fingerprints let through
+            return identifierIndex.getProteins(id).contains(id);
+        }
+        return !proteinsToReactions.get(id).isEmpty();
+    }
+
+    private int queryProteins(String identifier, Collection<String> proteins, RowHandler handler) {
+        int rows = 0;
+        for (String protein : proteins) {
+            rows += queryProtein(identifier, protein, handler);
+        }
+        return rows;
+    }
+
+    private int queryProtein(String identifier, String protein, RowHandler handler) {
+        return queryReactions(identifier, protein, proteinsToReactions.get(protein), handler);
+    }
+
+    private int queryProteoform(String identifier, RowHandler handler) {
+        Proteoform proteoform;
+        try {
+            proteoform = ProteoformFormat.SIMPLE.getProteoform(identifier);
+        } catch (ParseException e) {
+            return 0;
+        }
+        if (proteoform == null) {
+            return 0;
+        }
+        return queryReactions(identifier, identifier, proteoformsToReactions.get(proteoform), handler);
+    }
+
+    private int queryReactions(String identifier, String entity, Collection<String> reactions, RowHandler handler) {
+        int rows = 0;
+        for (String reaction : reactions) {
+            for (String pathway : reactionsToPathways.get(reaction)) {
+                if (!topLevelPathways) {
+                    handler.row(identifier, entity, reaction, pathway, null);
+                    rows++;
+                    continue;
+                }
+                // A pathway without parents is its own top level pathway
+                Collection<String> parents = pathwaysToTopLevelPathways.get(pathway);
+                if (parents.isEmpty()) {
+                    handler.row(identifier, entity, reaction, pathway, pathway);
+                    rows++;
+                }
+                for (String topLevelPathway : parents) {
+                    handler.row(identifier, entity, reaction, pathway, topLevelPathway);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private List<String> getRsIdProteins(String rsId) throws IOException {
+        long rsNumber = RsIdDirectory.parseRsNumber(rsId);
+        if (rsNumber < 0) {
+            return Collections.emptyList();
+        }
+        if (rsIdDirectory != null) {
+            int chromosome = rsIdDirectory.getChromosome(rsId);
+            return chromosome == 0 ? Collections.<String>emptyList() : getRsIdProteins(chromosome, rsId, rsNumber);
+        }
+        // Without the directory, the rsId can be in any chromosome
+        for (int chromosome : SnpShards.allChromosomes()) {
+            List<String> proteins = getRsIdProteins(chromosome, rsId, rsNumber);
+            if (!proteins.isEmpty()) {
+                return proteins;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private List<String> getRsIdProteins(int chromosome, String rsId, long rsNumber) throws IOException {
+        BlockShard shard = getBlockShard(chromosome);
+        return shard != null ? shard.get(rsNumber) : getRsIdIndex(chromosome).getProteins(rsId);
+    }
+
+    /**
+     * Reads the proteins of the rsIds found in block shards, decompressing each needed block once.
+     *
+     * @return the proteins of each rs number read, empty for the ones not in their shard
+     */
+    private Map<Long, List<String>> readRsIdBlocks(Collection<String> identifiers) throws IOException {
+        if (rsIdDirectory == null) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, List<String>> rsIdsByChromosome = new TreeMap<>();
+        for (String identifier : identifiers) {
+            String rsId = identifier.trim();
+            int chromosome = RsIdDirectory.parseRsNumber(rsId) < 0 ? 0 : rsIdDirectory.getChromosome(rsId);
+            if (chromosome > 0 && getBlockShard(chromosome) != null) {
+                rsIdsByChromosome.computeIfAbsent(chromosome, key -> new ArrayList<>()).add(rsId);
+            }
+        }
+
+        Map<Long, List<String>> proteins = new HashMap<>();
+        for (Map.Entry<Integer, List<String>> chromosome : rsIdsByChromosome.entrySet()) {
+            long[] rsNumbers = RsIdDirectory.toRsNumbers(chromosome.getValue());
+            proteins.putAll(getBlockShard(chromosome.getKey()).get(rsNumbers, executor));
+            for (long rsNumber : rsNumbers) {
+                proteins.putIfAbsent(rsNumber, Collections.<String>emptyList());
+            }
+        }
+        return proteins;
+    }
+
+    /**
+     * @return the block shard of the chromosome, or null if it has none or its rsId index is loaded
+     */
+    private BlockShard getBlockShard(int chromosome) throws IOException {
+        Lazy<RsIdIndex> index = rsIdIndexes.get(chromosome);
+        if (index != null && index.isLoaded()) {
+            return null;
+        }
+        return blockShards.computeIfAbsent(chromosome, key -> new Lazy<>(() -> {
+            File file = new File(SerializedResources.RESOURCES_PATH + BlockShard.getRsIdFileName(key));
+            return file.isFile() ? Optional.of(BlockShard.open(file)) : Optional.<BlockShard>empty();
+        })).get().orElse(null);
+    }
+
+    private RsIdIndex getRsIdIndex(int chromosome) throws IOException {
+        return rsIdIndexes.computeIfAbsent(chromosome, key -> new Lazy<>(() ->
+                SnpShards.loadRsIdIndexes(Collections.singleton(key), true, null, null).get(key))).get();
+    }
+}
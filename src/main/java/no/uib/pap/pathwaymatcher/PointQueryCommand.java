@@ -0,0 +1,97 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.Error;
+import org.apache.commons.cli.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The query subcommand: prints the reactions and pathways of the identifiers given as arguments, e.g.
+ * {@code query -t uniprot -tlp P01308 P04637}. Without identifiers, answers each line of the standard input as
+ * soon as it is read, so that another program can keep the mapping loaded and query it through a pipe.
+ */
+class PointQueryCommand {
+
+    static void main(String args[]) {
+        Options options = new Options();
+        options.addOption(new Option("t", "inputType", true, "Type of the identifiers: gene, ensembl, uniprot, proteoform or rsid"));
+        options.addOption(new Option("tlp", "toplevelpathways", false, "Show Top Level Pathway column"));
+        options.addOption(new Option("h", "help", false, "Print usage and available arguments"));
+        String usage = "java -jar PathwayMatcher.jar query <options> [identifiers]";
+
+        CommandLine commandLine;
+        try {
+            commandLine = new DefaultParser().parse(options, args);
+        } catch (ParseException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp(usage, options);
+            System.exit(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR.getCode());
+            return;
+        }
+        if (commandLine.hasOption("h")) {
+            new HelpFormatter().printHelp(usage, options);
+            System.exit(0);
+        }
+
+        PointQuery pointQuery;
+        try {
+            pointQuery = new PathwayMatcherEngine().getPointQuery(RunConfig.parseInputType(commandLine.getOptionValue("t")),
+                    commandLine.hasOption("tlp"));
+        } catch (PathwayMatcherException e) {
+            System.out.println(e.getMessage());
+            new HelpFormatter().printHelp(usage, options);
+            System.exit(e.getCode());
+            return;
+        }
+
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)), false);
+        try {
+            List<String> identifiers = commandLine.getArgList();
+            if (identifiers.isEmpty()) {
+                query(pointQuery, new BufferedReader(new InputStreamReader(System.in, StandardCharsets.ISO_8859_1)), out);
+            } else {
+                out.println(pointQuery.getHeader());
+                for (String identifier : identifiers) {
+                    query(pointQuery, identifier, out);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            out.flush();
+            System.out.println(e.getMessage());
+            System.exit(Error.COULD_NOT_READ_INPUT_FILE.getCode());
+        }
+    }
+
+    /**
+     * Answers each line of the reader, flushing the rows of a line before reading the next one.
+     */
+    static void query(PointQuery pointQuery, BufferedReader reader, PrintStream out) throws IOException {
+        out.println(pointQuery.getHeader());
+        out.flush();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            query(pointQuery, line, out);
+            out.flush();
+        }
+    }
+
+    private static void query(PointQuery pointQuery, String identifier, PrintStream out) throws IOException {
+        pointQuery.query(identifier, (id, entity, reaction, pathway, topLevelPathway) -> {
+            out.print(id);
+            out.print('\t');
+            out.print(entity);
+            out.print('\t');
+            out.print(reaction);
+            out.print('\t');
+            out.print(pathway);
+            if (topLevelPathway != null) {
+                out.print('\t');
+                out.print(topLevelPathway);
+            }
+            out.println();
+        });
+    }
+}
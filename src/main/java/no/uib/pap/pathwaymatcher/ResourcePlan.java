@@ -0,0 +1,165 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.InputType;
+
+import java.io.PrintStream;
+import java.util.*;
+
+/**
+ * The stages of a run and the resources they read.
+ * <p>
+ * Each stage declares the resources it reads, and each resource the resources it is built from. The plan is the
+ * closure of the requested stages, in dependency order, so that exactly those resources are prefetched.
+ */
+class ResourcePlan {
+
+    enum Resource {
+        MAPPING(StartupPipeline.MAPPING, null),
+        TOP_LEVEL_PATHWAYS("topLevelPathways", "pathwaysToTopLevelPathways, loaded with the mapping", MAPPING),
+        POSITION_INDEXES("positionIndexes", "chrBpIndexN of the input chromosomes, not prefetched: loaded by the variantWindows stage once the input is read"),
+        GENE_NETWORK_MAPS(StartupPipeline.GENE_NETWORK_MAPS, "genesToProteins, proteinsToGenes, proteinsToNames", MAPPING),
+        PROTEIN_NETWORK_MAPS(StartupPipeline.PROTEIN_NETWORK_MAPS, "proteinsToNames", MAPPING),
+        PROTEOFORM_NETWORK_MAPS(StartupPipeline.PROTEOFORM_NETWORK_MAPS, "proteinsToProteoforms, proteinsToNames", MAPPING),
+        INDEXED_MAPPING(StartupPipeline.INDEXED_MAPPING, "int relations of the protein network, read from the complex and set maps while it is built", PROTEIN_NETWORK_MAPS),
+        INDEXED_MAPPING_WITH_GENES(StartupPipeline.INDEXED_MAPPING_WITH_GENES, "int relations of the protein and gene networks, read from the complex and set maps while it is built", GENE_NETWORK_MAPS),
+        INDEXED_PROTEOFORMS(StartupPipeline.INDEXED_PROTEOFORMS, "int relations of the proteoform network, read from the proteoform maps while it is built", PROTEOFORM_NETWORK_MAPS);
+
+        private final String taskName;
+        private final String description;
+        private final Resource[] dependencies;
+
+        Resource(String taskName, String description, Resource... dependencies) {
+            this.taskName = taskName;
+            this.description = description;
+            this.dependencies = dependencies;
+        }
+
+        /**
+         * Name of the task loading the resource in the {@link StartupPipeline}.
+         */
+        String getTaskName() {
+            return taskName;
+        }
+    }
+
+    enum Stage {
+        VARIANT_WINDOWS("variantWindows", Resource.POSITION_INDEXES),
+        SEARCH("search", Resource.MAPPING),
+        TOP_LEVEL_PATHWAYS("topLevelPathways", Resource.TOP_LEVEL_PATHWAYS),
+        ANALYSIS("analysis", Resource.MAPPING),
+        GENE_GRAPH("geneGraph", Resource.GENE_NETWORK_MAPS, Resource.INDEXED_MAPPING_WITH_GENES),
+        PROTEIN_GRAPH("proteinGraph", Resource.PROTEIN_NETWORK_MAPS, Resource.INDEXED_MAPPING),
+        PROTEOFORM_GRAPH("proteoformGraph", Resource.PROTEOFORM_NETWORK_MAPS, Resource.INDEXED_PROTEOFORMS);
+
+        private final String name;
+        private final Resource[] reads;
+
+        Stage(String name, Resource... reads) {
+            this.name = name;
+            this.reads = reads;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final InputType searchType;
+    private final Set<Stage> stages;
+    private final Map<Resource, Set<Stage>> resources = new LinkedHashMap<>();
+
+    private ResourcePlan(InputType searchType, Set<Stage> stages) {
+        this.searchType = searchType;
+        this.stages = stages;
+    }
+
+    /**
+     * @param searchType type of the search, {@link InputType#UNIPROTS} for the variants mapped with a window
+     * @param stages     stages of the run
+     */
+    static ResourcePlan create(InputType searchType, Set<Stage> stages) {
+        ResourcePlan plan = new ResourcePlan(searchType, EnumSet.copyOf(stages));
+        for (Stage stage : plan.stages) {
+            for (Resource resource : stage.reads) {
+                // With the gene network, the protein network uses the index that includes the genes
+                if (resource == Resource.INDEXED_MAPPING && stages.contains(Stage.GENE_GRAPH)) {
+                    resource = Resource.INDEXED_MAPPING_WITH_GENES;
+                }
+                plan.add(resource, stage);
+            }
+        }
+
+        // Dependencies before the resources built from them
+        Map<Resource, Set<Stage>> ordered = new LinkedHashMap<>();
+        for (Resource resource : Resource.values()) {
+            if (plan.resources.containsKey(resource)) {
+                ordered.put(resource, plan.resources.get(resource));
+            }
+        }
+        plan.resources.clear();
+        plan.resources.putAll(ordered);
+        return plan;
+    }
+
+    private void add(Resource resource, Stage stage) {
+        resources.computeIfAbsent(resource, key -> EnumSet.noneOf(Stage.class)).add(stage);
+        for (Resource dependency : resource.dependencies) {
+            add(dependency, stage);
+        }
+    }
+
+    boolean contains(Resource resource) {
+        return resources.containsKey(resource);
+    }
+
+    boolean contains(Stage stage) {
+        return stages.contains(stage);
+    }
+
+    /**
+     * @return the resources of the plan, each one after the resources it is built from
+     */
+    List<Resource> getResources() {
+        return new ArrayList<>(resources.keySet());
+    }
+
+    /**
+     * Maps of the {@code Mapping} read by the search of an input type.
+     */
+    static String getMappingMaps(InputType searchType) {
+        switch (searchType) {
+            case GENE:
+            case GENES:
+                return "genesToProteins, proteinsToReactions, reactionsToPathways";
+            case ENSEMBL:
+            case ENSEMBLS:
+                return "ensemblToProteins, proteinsToReactions, reactionsToPathways";
+            case PROTEOFORM:
+            case PROTEOFORMS:
+            case MODIFIEDPEPTIDE:
+            case MODIFIEDPEPTIDES:
+                return "proteoformsToReactions, reactionsToPathways";
+            case RSID:
+            case RSIDS:
+                return "rsIdsToProteins of every chromosome, read by the search whatever the rsIds of the input, proteinsToReactions, reactionsToPathways";
+            case CHRBP:
+            case CHRBPS:
+            case VCF:
+                return "chrBpToProteins of every chromosome, read by the search whatever the chromosomes of the input, proteinsToReactions, reactionsToPathways";
+            default:
+                return "proteinsToReactions, reactionsToPathways";
+        }
+    }
+
+    void print(PrintStream output) {
+        output.println("Stages: " + stages);
+        output.println("Resource\tstages\treads");
+        for (Map.Entry<Resource, Set<Stage>> resource : resources.entrySet()) {
+            String reads = resource.getKey() == Resource.MAPPING
+                    ? getMappingMaps(searchType)
+                    : resource.getKey().description;
+            output.println(resource.getKey().taskName + "\t" + resource.getValue() + "\t" + reads);
+        }
+    }
+}
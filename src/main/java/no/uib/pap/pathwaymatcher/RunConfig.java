@@ -0,0 +1,617 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.Error;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.pathwaymatcher.data.GenomicRegion;
+import no.uib.pap.pathwaymatcher.data.RoleMask;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Parameters of one run of PathwayMatcher. Instances are immutable and can be run concurrently by one
+ * {@link PathwayMatcherEngine}.
+ * <p>
+ * The builder resolves the parameters that depend on the input type the same way as the command line: the match
+ * type and range only apply to proteoforms and modified peptides, the window and the region only to chrBp and vcf
+ * variants, the FILTER and allele frequency filters only to vcf variants, and the default graph is the network of
+ * the input type.
+ */
+public class RunConfig {
+
+    private final InputType inputType;
+    private final boolean topLevelPathways;
+    private final MatchType matchType;
+    private final long range;
+    private final long window;
+    private final String inputPath;
+    private final String outputPath;
+    private final String fastaPath;
+    private final boolean geneGraph;
+    private final boolean uniprotGraph;
+    private final boolean proteoformGraph;
+    private final byte roleFilter;
+    private final boolean streaming;
+    private final int chunkSize;
+    private final boolean passOnly;
+    private final double minAlleleFrequency;
+    private final double maxAlleleFrequency;
+    private final boolean perSample;
+    private final GenomicRegion region;
+
+    private RunConfig(Builder builder) {
+        inputType = builder.inputType;
+        topLevelPathways = builder.topLevelPathways;
+        matchType = builder.matchType;
+        range = builder.range;
+        window = builder.window;
+        inputPath = builder.inputPath;
+        outputPath = builder.outputPath;
+        fastaPath = builder.fastaPath;
+        geneGraph = builder.geneGraph;
+        uniprotGraph = builder.uniprotGraph;
+        proteoformGraph = builder.proteoformGraph;
+        roleFilter = builder.roleFilter;
+        streaming = builder.streaming;
+        chunkSize = builder.chunkSize;
+        passOnly = builder.passOnly;
+        minAlleleFrequency = builder.minAlleleFrequency;
+        maxAlleleFrequency = builder.maxAlleleFrequency;
+        perSample = builder.perSample;
+        region = builder.region;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public InputType getInputType() {
+        return inputType;
+    }
+
+    public boolean isTopLevelPathways() {
+        return topLevelPathways;
+    }
+
+    public MatchType getMatchType() {
+        return matchType;
+    }
+
+    public long getRange() {
+        return range;
+    }
+
+    /**
+     * @return the window in base pairs around chrBp and vcf variants, or -1 to search the variants themselves
+     */
+    public long getWindow() {
+        return window;
+    }
+
+    /**
+     * @return the input file, or null if the input is given to the engine directly
+     */
+    public String getInputPath() {
+        return inputPath;
+    }
+
+    /**
+     * @return the output directory, ending with a slash, or empty for the working directory
+     */
+    public String getOutputPath() {
+        return outputPath;
+    }
+
+    public String getFastaPath() {
+        return fastaPath;
+    }
+
+    public boolean isGeneGraph() {
+        return geneGraph;
+    }
+
+    public boolean isUniprotGraph() {
+        return uniprotGraph;
+    }
+
+    public boolean isProteoformGraph() {
+        return proteoformGraph;
+    }
+
+    /**
+     * @return the {@link RoleMask} of the reaction participants connected in the graphs
+     */
+    public byte getRoleFilter() {
+        return roleFilter;
+    }
+
+    /**
+     * @return true if the input file is read and searched in chunks, see {@link StreamingSearch}
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * @return the lines of input searched at a time when streaming
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return true to keep only the vcf variants with PASS in the FILTER column
+     */
+    public boolean isPassOnly() {
+        return passOnly;
+    }
+
+    /**
+     * @return the minimum allele frequency of the vcf variants, 0 to keep all
+     */
+    public double getMinAlleleFrequency() {
+        return minAlleleFrequency;
+    }
+
+    /**
+     * @return the maximum allele frequency of the vcf variants, 1 to keep all
+     */
+    public double getMaxAlleleFrequency() {
+        return maxAlleleFrequency;
+    }
+
+    /**
+     * @return true if the samples of the vcf file are analysed one by one, see {@link PerSampleAnalysis}
+     */
+    public boolean isPerSample() {
+        return perSample;
+    }
+
+    /**
+     * @return the region of the chrBp or vcf variants read, null to read them all. It restricts the input only; the
+     *         shards loaded by the search do not depend on it
+     */
+    public GenomicRegion getRegion() {
+        return region;
+    }
+
+    /**
+     * With a window, the variants are mapped to nearby proteins before the search, so the search runs on proteins.
+     */
+    InputType getSearchType() {
+        return window < 0 ? inputType : InputType.UNIPROTS;
+    }
+
+    /**
+     * Stages of the run, from the input type and the requested outputs.
+     */
+    Set<ResourcePlan.Stage> getStages() {
+        Set<ResourcePlan.Stage> stages = EnumSet.of(ResourcePlan.Stage.SEARCH, ResourcePlan.Stage.ANALYSIS);
+        if (window >= 0) {
+            stages.add(ResourcePlan.Stage.VARIANT_WINDOWS);
+        }
+        if (topLevelPathways) {
+            stages.add(ResourcePlan.Stage.TOP_LEVEL_PATHWAYS);
+        }
+        if (geneGraph) {
+            stages.add(ResourcePlan.Stage.GENE_GRAPH);
+        }
+        if (uniprotGraph) {
+            stages.add(ResourcePlan.Stage.PROTEIN_GRAPH);
+        }
+        if (proteoformGraph) {
+            stages.add(ResourcePlan.Stage.PROTEOFORM_GRAPH);
+        }
+        return stages;
+    }
+
+    ResourcePlan getPlan() {
+        return ResourcePlan.create(getSearchType(), getStages());
+    }
+
+    /**
+     * @param value name of an input type, in any case
+     */
+    public static InputType parseInputType(String value) throws PathwayMatcherException {
+        if (value == null) {
+            throw new PathwayMatcherException(Error.MISSING_ARGUMENT, "Missing required option: t");
+        }
+        value = value.toUpperCase();
+        if (!InputType.isValueOf(value)) {
+            throw new PathwayMatcherException(Error.INVALID_INPUT_TYPE);
+        }
+        try {
+            return InputType.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw new PathwayMatcherException(Error.INVALID_INPUT_TYPE);
+        }
+    }
+
+    /**
+     * @param value name of a match type, in any case
+     */
+    public static MatchType parseMatchType(String value) throws PathwayMatcherException {
+        if (value == null) {
+            throw new PathwayMatcherException(Error.INVALID_MATCHING_TYPE);
+        }
+        value = value.toUpperCase();
+        if (!MatchType.isValueOf(value)) {
+            throw new PathwayMatcherException(Error.INVALID_MATCHING_TYPE);
+        }
+        try {
+            return MatchType.valueOf(value);
+        } catch (IllegalArgumentException e) {
+            throw new PathwayMatcherException(Error.INVALID_MATCHING_TYPE);
+        }
+    }
+
+    /**
+     * Builder of a config from named parameters, as sent to the server or listed in a batch manifest. The
+     * parameters are named after the long options of the command line, except -tlp: inputType, tlp, matchType,
+     * range, fasta, output, graph, graphGene, graphUniprot, graphProteoform, roles, stream, filterPass,
+     * minAlleleFrequency, maxAlleleFrequency, perSample and region.
+     *
+     * @param requireOutput if the output directory is required
+     */
+    static Builder fromParameters(Map<String, String> parameters, boolean requireOutput) throws PathwayMatcherException {
+        Builder builder = builder()
+                .inputType(parseInputType(parameters.get("inputType")))
+                .topLevelPathways(Boolean.parseBoolean(parameters.get("tlp")))
+                .range(NumberUtils.toLong(parameters.get("range"), 0L))
+                .fastaPath(parameters.get("fasta"))
+                .defaultGraph(Boolean.parseBoolean(parameters.get("graph")))
+                .geneGraph(Boolean.parseBoolean(parameters.get("graphGene")))
+                .uniprotGraph(Boolean.parseBoolean(parameters.get("graphUniprot")))
+                .proteoformGraph(Boolean.parseBoolean(parameters.get("graphProteoform")))
+                .streaming(Boolean.parseBoolean(parameters.get("stream")))
+                .passOnly(Boolean.parseBoolean(parameters.get("filterPass")))
+                .perSample(Boolean.parseBoolean(parameters.get("perSample")));
+        if (parameters.containsKey("matchType") && isMatchTypeUsed(builder.inputType)) {
+            builder.matchType(parseMatchType(parameters.get("matchType")));
+        }
+        if (parameters.containsKey("output")) {
+            builder.outputPath(parameters.get("output"));
+        } else if (requireOutput) {
+            throw new PathwayMatcherException(Error.MISSING_ARGUMENT, "Missing parameter: output");
+        }
+        if (parameters.containsKey("minAlleleFrequency")) {
+            builder.minAlleleFrequency(parseAlleleFrequency(parameters.get("minAlleleFrequency")));
+        }
+        if (parameters.containsKey("maxAlleleFrequency")) {
+            builder.maxAlleleFrequency(parseAlleleFrequency(parameters.get("maxAlleleFrequency")));
+        }
+        if (parameters.containsKey("region")) {
+            builder.region(parseRegion(parameters.get("region")));
+        }
+        if (parameters.containsKey("roles")) {
+            try {
+                builder.roleFilter(RoleMask.parse(parameters.get("roles")));
+            } catch (IllegalArgumentException e) {
+                throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, e.getMessage());
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * @param value allele frequency from 0 to 1
+     */
+    public static double parseAlleleFrequency(String value) throws PathwayMatcherException {
+        double frequency = NumberUtils.toDouble(value, -1.0);
+        if (frequency < 0.0 || frequency > 1.0) {
+            throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, "Invalid allele frequency: " + value);
+        }
+        return frequency;
+    }
+
+    /**
+     * @param value region like chr1:11000000-12000000, see {@link GenomicRegion#parse(String)}
+     */
+    public static GenomicRegion parseRegion(String value) throws PathwayMatcherException {
+        try {
+            return GenomicRegion.parse(value);
+        } catch (IllegalArgumentException e) {
+            throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, "Invalid region: " + value);
+        }
+    }
+
+    /**
+     * @return true if the default graph of the input type is the gene network
+     */
+    static boolean isDefaultGeneGraph(InputType inputType) {
+        switch (inputType) {
+            case GENE:
+            case GENES:
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the default graph of the input type is the protein network
+     */
+    static boolean isDefaultUniprotGraph(InputType inputType) {
+        switch (inputType) {
+            case UNIPROT:
+            case UNIPROTS:
+            case ENSEMBL:
+            case ENSEMBLS:
+            case PEPTIDE:
+            case PEPTIDES:
+            case VCF:
+            case RSID:
+            case RSIDS:
+            case CHRBP:
+            case CHRBPS:
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the match type and the range apply to the input type
+     */
+    static boolean isMatchTypeUsed(InputType inputType) {
+        switch (inputType) {
+            case PROTEOFORMS:
+            case PROTEOFORM:
+            case MODIFIEDPEPTIDE:
+            case MODIFIEDPEPTIDES:
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the default graph of the input type is the proteoform network
+     */
+    static boolean isDefaultProteoformGraph(InputType inputType) {
+        switch (inputType) {
+            case PROTEOFORMS:
+            case PROTEOFORM:
+            case MODIFIEDPEPTIDE:
+            case MODIFIEDPEPTIDES:
+                return true;
+        }
+        return false;
+    }
+
+    public static class Builder {
+
+        private InputType inputType;
+        private boolean topLevelPathways = false;
+        private MatchType matchType = MatchType.SUBSET;
+        private long range = 0L;
+        private long window = -1L;
+        private String inputPath;
+        private String outputPath = "";
+        private String fastaPath;
+        private boolean defaultGraph = false;
+        private boolean geneGraph = false;
+        private boolean uniprotGraph = false;
+        private boolean proteoformGraph = false;
+        private byte roleFilter = RoleMask.ALL;
+        private boolean streaming = false;
+        private int chunkSize = StreamingSearch.DEFAULT_CHUNK_SIZE;
+        private boolean passOnly = false;
+        private double minAlleleFrequency = 0.0;
+        private double maxAlleleFrequency = 1.0;
+        private boolean perSample = false;
+        private GenomicRegion region;
+
+        private Builder() {
+        }
+
+        public Builder inputType(InputType inputType) {
+            this.inputType = inputType;
+            return this;
+        }
+
+        public Builder topLevelPathways(boolean topLevelPathways) {
+            this.topLevelPathways = topLevelPathways;
+            return this;
+        }
+
+        public Builder matchType(MatchType matchType) {
+            this.matchType = matchType;
+            return this;
+        }
+
+        public Builder range(long range) {
+            this.range = range;
+            return this;
+        }
+
+        /**
+         * @param window base pairs around chrBp and vcf variants, negative to search the variants themselves
+         */
+        public Builder window(long window) {
+            this.window = window;
+            return this;
+        }
+
+        public Builder inputPath(String inputPath) {
+            this.inputPath = inputPath;
+            return this;
+        }
+
+        public Builder outputPath(String outputPath) {
+            this.outputPath = outputPath;
+            return this;
+        }
+
+        public Builder fastaPath(String fastaPath) {
+            this.fastaPath = fastaPath;
+            return this;
+        }
+
+        /**
+         * Creates the network of the input type: genes, proteins or proteoforms.
+         */
+        public Builder defaultGraph(boolean defaultGraph) {
+            this.defaultGraph = defaultGraph;
+            return this;
+        }
+
+        public Builder geneGraph(boolean geneGraph) {
+            this.geneGraph = geneGraph;
+            return this;
+        }
+
+        public Builder uniprotGraph(boolean uniprotGraph) {
+            this.uniprotGraph = uniprotGraph;
+            return this;
+        }
+
+        public Builder proteoformGraph(boolean proteoformGraph) {
+            this.proteoformGraph = proteoformGraph;
+            return this;
+        }
+
+        public Builder roleFilter(byte roleFilter) {
+            this.roleFilter = roleFilter;
+            return this;
+        }
+
+        /**
+         * Reads and searches the input file in chunks, writing search.tsv as it goes.
+         */
+        public Builder streaming(boolean streaming) {
+            this.streaming = streaming;
+            return this;
+        }
+
+        /**
+         * @param chunkSize lines of input searched at a time when streaming
+         */
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Keeps only the vcf variants with PASS in the FILTER column.
+         */
+        public Builder passOnly(boolean passOnly) {
+            this.passOnly = passOnly;
+            return this;
+        }
+
+        /**
+         * Keeps only the vcf variants with an alternate allele frequency (AF in the INFO column) of at least this value.
+         */
+        public Builder minAlleleFrequency(double minAlleleFrequency) {
+            this.minAlleleFrequency = minAlleleFrequency;
+            return this;
+        }
+
+        /**
+         * Keeps only the vcf variants with an alternate allele frequency (AF in the INFO column) of at most this value.
+         */
+        public Builder maxAlleleFrequency(double maxAlleleFrequency) {
+            this.maxAlleleFrequency = maxAlleleFrequency;
+            return this;
+        }
+
+        /**
+         * Analyses each sample of a vcf file on the variants where it has a non-reference genotype, writing a matrix
+         * of the p-values of the samples in the pathways instead of search.tsv and analysis.tsv.
+         */
+        public Builder perSample(boolean perSample) {
+            this.perSample = perSample;
+            return this;
+        }
+
+        /**
+         * Reads only the chrBp or vcf variants of a region. Files compressed with bgzip and indexed with tabix, or
+         * with the index subcommand, are read from the blocks of the region on.
+         */
+        public Builder region(GenomicRegion region) {
+            this.region = region;
+            return this;
+        }
+
+        /**
+         * @throws PathwayMatcherException if the input type or the fasta file of peptides is missing, the fasta
+         *                                 file can not be read, no role is connected in the graphs, the chunk
+         *                                 size is not positive, or the allele frequency range is invalid
+         */
+        public RunConfig build() throws PathwayMatcherException {
+            if (inputType == null) {
+                throw new PathwayMatcherException(Error.MISSING_ARGUMENT, "Missing required option: t");
+            }
+            Builder resolved = new Builder();
+            resolved.inputType = inputType;
+            resolved.topLevelPathways = topLevelPathways;
+            resolved.inputPath = inputPath;
+            resolved.roleFilter = roleFilter;
+            resolved.streaming = streaming;
+            resolved.chunkSize = chunkSize;
+
+            switch (inputType) {
+                case PROTEOFORM:
+                case PROTEOFORMS:
+                case MODIFIEDPEPTIDE:
+                case MODIFIEDPEPTIDES:
+                    resolved.matchType = matchType == null ? MatchType.SUBSET : matchType;
+                    resolved.range = range;
+                    break;
+            }
+
+            switch (inputType) {
+                case CHRBP:
+                case CHRBPS:
+                case VCF:
+                    resolved.window = window < 0 ? -1L : window;
+                    resolved.region = region;
+                    break;
+            }
+
+            if (inputType == InputType.VCF) {
+                if (minAlleleFrequency < 0.0 || maxAlleleFrequency > 1.0 || minAlleleFrequency > maxAlleleFrequency) {
+                    throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR,
+                            "Invalid allele frequency range: " + minAlleleFrequency + "-" + maxAlleleFrequency);
+                }
+                resolved.passOnly = passOnly;
+                resolved.minAlleleFrequency = minAlleleFrequency;
+                resolved.maxAlleleFrequency = maxAlleleFrequency;
+                resolved.perSample = perSample;
+            }
+
+            if (outputPath != null && !outputPath.isEmpty()) {
+                resolved.outputPath = outputPath.endsWith("/") ? outputPath : outputPath + "/";
+            }
+
+            resolved.fastaPath = "";
+            switch (inputType) {
+                case PEPTIDES:
+                case PEPTIDE:
+                case MODIFIEDPEPTIDE:
+                case MODIFIEDPEPTIDES:
+                    if (fastaPath == null) {
+                        throw new PathwayMatcherException(Error.MISSING_ARGUMENT, "Missing required option: f");
+                    }
+                    File fasta = new File(fastaPath);
+                    if (!fasta.exists() || fasta.isDirectory()) {
+                        throw new PathwayMatcherException(Error.COULD_NOT_READ_FASTA_FILE);
+                    }
+                    resolved.fastaPath = fastaPath;
+            }
+
+            resolved.geneGraph = geneGraph || defaultGraph && isDefaultGeneGraph(inputType);
+            resolved.uniprotGraph = uniprotGraph || defaultGraph && isDefaultUniprotGraph(inputType);
+            resolved.proteoformGraph = proteoformGraph || defaultGraph && isDefaultProteoformGraph(inputType);
+            if (roleFilter == RoleMask.NONE) {
+                throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, "Invalid roles: none");
+            }
+            if (chunkSize <= 0) {
+                throw new PathwayMatcherException(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, "Invalid chunk size: " + chunkSize);
+            }
+            return new RunConfig(resolved);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.methods.analysis.ora.AnalysisResult;
+import no.uib.pap.methods.search.SearchResult;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Results of a run and the files written to its output directory.
+ */
+public class RunResult {
+
+    private final SearchResult searchResult;
+    private final AnalysisResult analysisResult;
+    private final List<File> files;
+    private final StartupPipeline pipeline;
+
+    RunResult(SearchResult searchResult, AnalysisResult analysisResult, List<File> files, StartupPipeline pipeline) {
+        this.searchResult = searchResult;
+        this.analysisResult = analysisResult;
+        this.files = Collections.unmodifiableList(files);
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @return the search result of the input, or of its distinct hits in a streaming run, null in a per sample run
+     */
+    public SearchResult getSearchResult() {
+        return searchResult;
+    }
+
+    /**
+     * @return the analysis of the search result, null in a per sample run
+     */
+    public AnalysisResult getAnalysisResult() {
+        return analysisResult;
+    }
+
+    /**
+     * @return search.tsv, analysis.tsv, and the variant windows and network files when they were requested, or
+     * samplePathways.tsv in a per sample run
+     */
+    public List<File> getFiles() {
+        return files;
+    }
+
+    /**
+     * Prints the start and duration of the loads and stages of the run.
+     */
+    public void printTimings(PrintStream out) {
+        pipeline.printTimings(out);
+    }
+}
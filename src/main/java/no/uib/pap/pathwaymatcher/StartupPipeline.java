@@ -0,0 +1,127 @@
+package no.uib.pap.pathwaymatcher;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the loading of the static structures in the background while the input is read and searched.
+ * <p>
+ * Each task is named after the resource it loads. The start and duration of every task are recorded,
+ * relative to the creation of the pipeline, to show which loads are on the critical path.
+ */
+class StartupPipeline {
+
+    static final String MAPPING = "mapping";
+    static final String INPUT = "input";
+    static final String NETWORK_MAPS = "networkMaps";
+    static final String GENE_NETWORK_MAPS = "geneNetworkMaps";
+    static final String PROTEIN_NETWORK_MAPS = "proteinNetworkMaps";
+    static final String PROTEOFORM_NETWORK_MAPS = "proteoformNetworkMaps";
+    static final String INDEXED_MAPPING = "indexedMapping";
+    static final String INDEXED_MAPPING_WITH_GENES = "indexedMappingWithGenes";
+    static final String INDEXED_PROTEOFORMS = "indexedProteoforms";
+    static final String PATHWAY_SETS = "pathwaySets";
+    static final String VARIANT_WINDOWS = "variantWindows";
+    static final String GENE_GRAPH = "geneGraph";
+    static final String PROTEIN_GRAPH = "proteinGraph";
+    static final String PROTEOFORM_GRAPH = "proteoformGraph";
+
+    private final long start = System.nanoTime();
+    private final ExecutorService executor;
+    private final List<Timing> timings = new ArrayList<>();
+
+    /**
+     * Pipeline running its tasks on a shared executor, which is not shut down with the pipeline.
+     */
+    StartupPipeline(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Loading or processing step of the pipeline.
+     */
+    interface Stage<T> {
+        T run() throws IOException;
+    }
+
+    private static class Timing {
+        final String name;
+        final String thread;
+        final long startNanos;
+        final long durationNanos;
+
+        Timing(String name, String thread, long startNanos, long durationNanos) {
+            this.name = name;
+            this.thread = thread;
+            this.startNanos = startNanos;
+            this.durationNanos = durationNanos;
+        }
+    }
+
+    /**
+     * Starts loading a resource in the background.
+     */
+    <T> Future<T> submit(String name, Stage<T> loader) {
+        return submit(name, null, loader);
+    }
+
+    /**
+     * Starts loading a resource in the background once another one is finished.
+     * The time waiting for the dependency is not counted in the timing of the resource.
+     */
+    <T> Future<T> submit(String name, Future<?> dependency, Stage<T> loader) {
+        return executor.submit(() -> {
+            if (dependency != null) {
+                dependency.get();
+            }
+            return time(name, loader);
+        });
+    }
+
+    /**
+     * Runs a stage in the calling thread and records its timing.
+     */
+    <T> T time(String name, Stage<T> stage) throws IOException {
+        long stageStart = System.nanoTime();
+        try {
+            return stage.run();
+        } finally {
+            long end = System.nanoTime();
+            synchronized (timings) {
+                timings.add(new Timing(name, Thread.currentThread().getName(), stageStart - start, end - stageStart));
+            }
+        }
+    }
+
+    /**
+     * Blocks until a resource is loaded and returns it. Errors in the loader are rethrown unchecked.
+     */
+    <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the static mapping.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Could not load the static mapping.", e.getCause());
+        }
+    }
+
+    void printTimings(PrintStream output) {
+        output.println("Resource\tstart_ms\tduration_ms\tthread");
+        synchronized (timings) {
+            timings.sort((t1, t2) -> Long.compare(t1.startNanos, t2.startNanos));
+            for (Timing timing : timings) {
+                output.println(timing.name + "\t" + timing.startNanos / 1000000 + "\t" + timing.durationNanos / 1000000 + "\t" + timing.thread);
+            }
+        }
+    }
+}
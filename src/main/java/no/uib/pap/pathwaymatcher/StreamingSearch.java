@@ -0,0 +1,179 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.methods.search.Search;
+import no.uib.pap.methods.search.SearchResult;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import no.uib.pap.pathwaymatcher.data.InputTokenizer;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Search of an input read in chunks of lines, writing the rows of each chunk to search.tsv before the next chunk is
+ * read, so that the memory of a run does not grow with the input or the output.
+ * <p>
+ * Only the distinct entities hit by the input are kept: genes for gene inputs, proteoforms for proteoform and
+ * modified peptide inputs, and proteins otherwise. They are bounded by the mapping, not by the input. Searching them
+ * again at the end gives the compact search result used by the analysis and the graphs, with the same hit proteins,
+ * proteoforms, reactions and pathways as the search of the whole input.
+ * <p>
+ * The rows are sorted within each chunk only, and the rows of an identifier repeated in different chunks are written
+ * once per chunk.
+ */
+class StreamingSearch {
+
+    static final int DEFAULT_CHUNK_SIZE = 50000;
+
+    /**
+     * Receives the lines of the input, a chunk at a time. The list is reused for the next chunk.
+     */
+    interface ChunkHandler {
+        void chunk(List<String> lines) throws IOException;
+    }
+
+    private final RunConfig config;
+    private final InputType searchType;
+    private final Mapping mapping;
+    private final Set<String> hitIdentifiers = new LinkedHashSet<>();
+    private final Set<Proteoform> hitProteoforms = new LinkedHashSet<>();
+    private boolean headerWritten = false;
+
+    /**
+     * @param mapping mapping of the search type of the config
+     */
+    StreamingSearch(RunConfig config, Mapping mapping) {
+        this.config = config;
+        this.searchType = config.getSearchType();
+        this.mapping = mapping;
+    }
+
+    /**
+     * Reads the file in chunks of lines, decoded as ISO-8859-1 like the whole input otherwise. Files compressed
+     * with gzip are inflated.
+     */
+    static void readChunks(File file, int chunkSize, ChunkHandler handler) throws IOException {
+        try (InputTokenizer tokenizer = InputTokenizer.open(file)) {
+            List<String> chunk = new ArrayList<>(Math.min(chunkSize, 1024));
+            while (tokenizer.nextLine()) {
+                chunk.add(tokenizer.getLine());
+                if (chunk.size() >= chunkSize) {
+                    handler.chunk(chunk);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                handler.chunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * Searches a chunk, writes its rows and keeps its hit entities. The header is written with the first chunk only.
+     */
+    void search(List<String> chunk, BufferedWriter output) throws IOException {
+        SearchResult result = Search.search(chunk, searchType, config.isTopLevelPathways(), mapping,
+                config.getMatchType(), config.getRange(), config.getFastaPath());
+        BufferedWriter rows = headerWritten ? new BufferedWriter(new HeaderSkippingWriter(output)) : output;
+        result.writeToFile(rows, "\t");
+        rows.flush();
+        headerWritten = true;
+
+        switch (searchType) {
+            case GENE:
+            case GENES:
+                hitIdentifiers.addAll(result.getHitGenes());
+                break;
+            case PROTEOFORM:
+            case PROTEOFORMS:
+            case MODIFIEDPEPTIDE:
+            case MODIFIEDPEPTIDES:
+                hitProteoforms.addAll(result.getMatchedProteoforms());
+                break;
+            default:
+                hitIdentifiers.addAll(result.getHitProteins());
+        }
+    }
+
+    /**
+     * Searches the hit entities of all the chunks.
+     *
+     * @return a search result with the hits of the whole input, but with the hit entities as its input
+     */
+    SearchResult summarize() throws IOException {
+        switch (searchType) {
+            case GENE:
+            case GENES:
+                return Search.search(new ArrayList<>(hitIdentifiers), InputType.GENES, config.isTopLevelPathways(),
+                        mapping, config.getMatchType(), 0L, "");
+            case PROTEOFORM:
+            case PROTEOFORMS:
+            case MODIFIEDPEPTIDE:
+            case MODIFIEDPEPTIDES:
+                // The matched proteoforms are in the mapping, so they match themselves
+                List<String> proteoforms = new ArrayList<>(hitProteoforms.size());
+                for (Proteoform proteoform : hitProteoforms) {
+                    proteoforms.add(proteoform.toString(ProteoformFormat.SIMPLE));
+                }
+                return Search.search(proteoforms, InputType.PROTEOFORMS, config.isTopLevelPathways(), mapping,
+                        MatchType.STRICT, 0L, "");
+            default:
+                return Search.search(new ArrayList<>(hitIdentifiers), InputType.UNIPROTS, config.isTopLevelPathways(),
+                        mapping, config.getMatchType(), 0L, "");
+        }
+    }
+
+    /**
+     * Drops the first line written through it, the header of the rows of a chunk after the first one.
+     */
+    private static class HeaderSkippingWriter extends FilterWriter {
+
+        private boolean skipping = true;
+
+        HeaderSkippingWriter(Writer out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            if (skipping) {
+                skipping = c != '\n';
+                return;
+            }
+            out.write(c);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            int end = offset + length;
+            while (skipping && offset < end) {
+                skipping = buffer[offset++] != '\n';
+            }
+            if (offset < end) {
+                out.write(buffer, offset, end - offset);
+            }
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            int end = offset + length;
+            while (skipping && offset < end) {
+                skipping = text.charAt(offset++) != '\n';
+            }
+            if (offset < end) {
+                out.write(text, offset, end - offset);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();    // The output stays open for the next chunks
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Channel reading a file compressed with bgzip, one block at a time, from given virtual offsets.
+ * <p>
+ * A bgzip file is a series of gzip members of at most 64KB each, the blocks, with their compressed size in an extra
+ * field of the header. A virtual offset points into the uncompressed data: the address of the block in the file
+ * in the upper 48 bits and the offset within the inflated block in the lower 16 bits. The channel reads chunks of
+ * the file given as pairs of virtual offsets, e.g. the chunks of a {@link TabixIndex}, jumping over the blocks in
+ * between without reading them.
+ */
+public class BgzfChannel implements ReadableByteChannel {
+
+    static final int MAX_BLOCK_SIZE = 1 << 16;
+
+    private static final int HEADER_SIZE = 12;
+
+    private final FileChannel file;
+    private final long fileSize;
+    private final long[] chunks;
+    private final Inflater inflater = new Inflater(true);
+    private final ByteBuffer compressed = ByteBuffer.allocate(MAX_BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+
+    private int chunk = -1;
+    private long end = -1;
+    private long address = -1;
+    private long nextAddress;
+    private int length = 0;
+    private int position = 0;
+    private long lastReadOffset = 0;
+
+    /**
+     * Channel reading the whole file.
+     */
+    public BgzfChannel(File file) throws IOException {
+        this(file, new long[]{0L, Long.MAX_VALUE});
+    }
+
+    /**
+     * @param chunks start and end virtual offsets of each chunk, the end excluded, sorted and not overlapping
+     */
+    public BgzfChannel(File file, long[] chunks) throws IOException {
+        this.file = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.fileSize = this.file.size();
+        this.chunks = chunks;
+    }
+
+    /**
+     * @return true if the file starts with a bgzip block
+     */
+    public static boolean isBgzf(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 6).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Read the header of the first block, or as much of it as the file has
+            }
+            return !header.hasRemaining() && getBlockSize(header) > 0;
+        }
+    }
+
+    /**
+     * Reads the compressed size of a block from the extra field of its header.
+     *
+     * @return the size, or -1 if the header is not the header of a bgzip block
+     */
+    private static int getBlockSize(ByteBuffer header) {
+        if ((header.get(0) & 0xFF) != 0x1F || (header.get(1) & 0xFF) != 0x8B || header.get(2) != 8 || (header.get(3) & 4) == 0) {
+            return -1;
+        }
+        int extraLength = header.getShort(10) & 0xFFFF;
+        for (int I = HEADER_SIZE; I + 4 <= Math.min(HEADER_SIZE + extraLength, header.limit()); ) {
+            int subfieldLength = header.getShort(I + 2) & 0xFFFF;
+            if (header.get(I) == 'B' && header.get(I + 1) == 'C' && subfieldLength == 2 && I + 6 <= header.limit()) {
+                return (header.getShort(I + 4) & 0xFFFF) + 1;
+            }
+            I += 4 + subfieldLength;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads and inflates the block at an address of the file.
+     */
+    private void load(long blockAddress) throws IOException {
+        compressed.clear();
+        read(blockAddress, HEADER_SIZE + 6);
+        int size = getBlockSize(compressed);
+        if (size < 0) {
+            throw new IOException("Not a bgzip block at " + blockAddress + ", the file must be compressed with bgzip.");
+        }
+        int extraLength = compressed.getShort(10) & 0xFFFF;
+        compressed.clear();
+        read(blockAddress, size);
+
+        // The data is followed by its CRC32 and its inflated size
+        int dataStart = HEADER_SIZE + extraLength;
+        length = compressed.getInt(size - 4);
+        if (length > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid bgzip block at " + blockAddress);
+        }
+        inflater.reset();
+        inflater.setInput(compressed.array(), dataStart, size - 8 - dataStart);
+        try {
+            int inflated = 0;
+            while (inflated < length && !inflater.finished()) {
+                int count = inflater.inflate(block, inflated, length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != length) {
+                throw new IOException("Truncated bgzip block at " + blockAddress);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid bgzip block at " + blockAddress, e);
+        }
+        address = blockAddress;
+        nextAddress = blockAddress + size;
+        position = 0;
+    }
+
+    private void read(long offset, int count) throws IOException {
+        compressed.limit(count);
+        while (compressed.hasRemaining()) {
+            if (file.read(compressed, offset + compressed.position()) < 0) {
+                throw new EOFException("Truncated bgzip block at " + offset);
+            }
+        }
+    }
+
+    /**
+     * Reads bytes of one block at most, so that the bytes read are at consecutive virtual offsets from
+     * {@link #getLastReadOffset()}.
+     */
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (!destination.hasRemaining()) {
+            return 0;
+        }
+        while (true) {
+            if (address >= 0) {
+                int limit = end >>> 16 == address ? Math.min(length, (int) (end & 0xFFFF)) : length;
+                if (position < limit) {
+                    int count = Math.min(destination.remaining(), limit - position);
+                    destination.put(block, position, count);
+                    lastReadOffset = address << 16 | position;
+                    position += count;
+                    return count;
+                }
+                if (end >>> 16 > address && nextAddress < fileSize) {
+                    load(nextAddress);
+                    continue;
+                }
+            }
+
+            // Next chunk
+            chunk++;
+            if (2 * chunk >= chunks.length) {
+                return -1;
+            }
+            long start = chunks[2 * chunk];
+            end = chunks[2 * chunk + 1];
+            if (start >>> 16 != address) {
+                if (start >>> 16 >= fileSize) {
+                    return -1;
+                }
+                load(start >>> 16);
+            }
+            position = (int) (start & 0xFFFF);
+        }
+    }
+
+    /**
+     * @return the virtual offset of the first byte returned by the last read
+     */
+    public long getLastReadOffset() {
+        return lastReadOffset;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        file.close();
+    }
+}
@@ -0,0 +1,242 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Shard of long keys to strings split in independently compressed blocks, in the manner of BGZF.
+ * <p>
+ * Only the small block index is read when the shard is opened. A lookup decompresses just the blocks whose key
+ * range contains requested keys, so the cost of a small query does not depend on the size of the shard.
+ * <p>
+ * Layout:
+ * <pre>
+ * magic (int) version (int) block count (int)
+ * for each block: first key (long), last key (long), entry count (int), offset (long), compressed length (int)
+ * the blocks, raw deflate of: for each entry the difference of the key with the previous key of the block
+ * (var long), the number of values (var long) and the values (UTF)
+ * </pre>
+ * The files are created with {@link BlockShardWriter} or with the {@code tools.BlockShardConverter}.
+ */
+public class BlockShard implements Closeable {
+
+    public static final int MAGIC = 0x504D424B;    // "PMBK"
+    public static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 12;
+    static final int INDEX_ENTRY_SIZE = 32;
+
+    static final String RSIDS_PREFIX = "rsIdBlocks";
+
+    private final File file;
+    private final FileChannel channel;
+    private final long[] firstKeys;
+    private final long[] lastKeys;
+    private final int[] counts;
+    private final long[] offsets;
+    private final int[] lengths;
+
+    private final AtomicLong blocksRead = new AtomicLong();
+
+    private BlockShard(File file) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+
+        ByteBuffer header = read(0, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("The file " + file.getPath() + " is not a block shard.");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("The block shard " + file.getPath() + " has version " + version
+                    + ", expected version " + VERSION + ".");
+        }
+        int blockCount = header.getInt();
+        firstKeys = new long[blockCount];
+        lastKeys = new long[blockCount];
+        counts = new int[blockCount];
+        offsets = new long[blockCount];
+        lengths = new int[blockCount];
+
+        ByteBuffer index = read(HEADER_SIZE, blockCount * INDEX_ENTRY_SIZE);
+        for (int B = 0; B < blockCount; B++) {
+            firstKeys[B] = index.getLong();
+            lastKeys[B] = index.getLong();
+            counts[B] = index.getInt();
+            offsets[B] = index.getLong();
+            lengths[B] = index.getInt();
+        }
+    }
+
+    public static BlockShard open(File file) throws IOException {
+        return new BlockShard(file);
+    }
+
+    public static String getRsIdFileName(int chromosome) {
+        return RSIDS_PREFIX + chromosome + ".bin";
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getBlockCount() {
+        return firstKeys.length;
+    }
+
+    public long getEntryCount() {
+        long entries = 0;
+        for (int count : counts) {
+            entries += count;
+        }
+        return entries;
+    }
+
+    /**
+     * Number of blocks decompressed since the shard was opened.
+     */
+    public long getBlocksRead() {
+        return blocksRead.get();
+    }
+
+    /**
+     * @return the block whose key range contains the key, or -1 if there is none
+     */
+    int findBlock(long key) {
+        int low = 0;
+        int high = firstKeys.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (firstKeys[middle] <= key) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high >= 0 && key <= lastKeys[high] ? high : -1;
+    }
+
+    /**
+     * @return the values of the key, empty if it is not in the shard
+     */
+    public List<String> get(long key) throws IOException {
+        List<String> values = get(new long[]{key}, null).get(key);
+        return values != null ? values : Collections.emptyList();
+    }
+
+    /**
+     * Looks up many keys, decompressing each needed block once.
+     *
+     * @param executor decompresses the blocks in parallel, or null to do it in the calling thread
+     * @return the values of the keys found in the shard
+     */
+    public Map<Long, List<String>> get(long[] keys, ExecutorService executor) throws IOException {
+        long[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        // Group the keys by block. The keys are sorted, so the keys of a block are consecutive.
+        TreeMap<Integer, long[]> wanted = new TreeMap<>();
+        int start = 0;
+        int previousBlock = -1;
+        for (int K = 0; K <= sorted.length; K++) {
+            int block = K < sorted.length ? findBlock(sorted[K]) : -1;
+            if (block != previousBlock || K == sorted.length) {
+                if (previousBlock >= 0) {
+                    wanted.put(previousBlock, Arrays.copyOfRange(sorted, start, K));
+                }
+                start = K;
+                previousBlock = block;
+            }
+        }
+
+        Map<Long, List<String>> result = new HashMap<>();
+        if (executor == null || wanted.size() < 2) {
+            for (Map.Entry<Integer, long[]> block : wanted.entrySet()) {
+                result.putAll(readBlock(block.getKey(), block.getValue()));
+            }
+            return result;
+        }
+
+        List<Future<Map<Long, List<String>>>> futures = new ArrayList<>(wanted.size());
+        for (Map.Entry<Integer, long[]> block : wanted.entrySet()) {
+            futures.add(executor.submit(() -> readBlock(block.getKey(), block.getValue())));
+        }
+        try {
+            for (Future<Map<Long, List<String>>> future : futures) {
+                result.putAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading " + file.getPath(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not read " + file.getPath(), e.getCause());
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses a block and keeps the entries of the sorted keys.
+     */
+    private Map<Long, List<String>> readBlock(int block, long[] keys) throws IOException {
+        blocksRead.incrementAndGet();
+        ByteBuffer buffer = read(offsets[block], lengths[block]);
+        // The raw inflater needs an extra byte after the compressed data
+        byte[] compressed = Arrays.copyOf(buffer.array(), lengths[block] + 1);
+
+        Map<Long, List<String>> result = new HashMap<>();
+        Inflater inflater = new Inflater(true);
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new InflaterInputStream(new ByteArrayInputStream(compressed), inflater)))) {
+            long key = firstKeys[block];
+            int K = 0;
+            for (int E = 0; E < counts[block] && K < keys.length; E++) {
+                key += RsIdDirectory.readVarLong(input);
+                int valueCount = (int) RsIdDirectory.readVarLong(input);
+                while (K < keys.length && keys[K] < key) {
+                    K++;
+                }
+                if (K < keys.length && keys[K] == key) {
+                    List<String> values = new ArrayList<>(valueCount);
+                    for (int V = 0; V < valueCount; V++) {
+                        values.add(input.readUTF());
+                    }
+                    result.put(key, values);
+                } else {
+                    for (int V = 0; V < valueCount; V++) {
+                        input.skipBytes(input.readUnsignedShort());
+                    }
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return result;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + file.getPath());
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,107 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Creates {@link BlockShard} files. The entries are sorted by key and cut into blocks of about
+ * {@link #DEFAULT_BLOCK_SIZE} uncompressed bytes, each compressed on its own.
+ */
+public class BlockShardWriter {
+
+    public static final int DEFAULT_BLOCK_SIZE = 8 * 1024;
+
+    /**
+     * Keys of an rsIdsToProteins shard as rs numbers. Keys that are not rsIds, like "NA", are skipped.
+     */
+    public static Multimap<Long, String> fromRsIds(Multimap<String, String> rsIdsToProteins) {
+        Multimap<Long, String> result = ArrayListMultimap.create();
+        for (Map.Entry<String, String> entry : rsIdsToProteins.entries()) {
+            long rsNumber = RsIdDirectory.parseRsNumber(entry.getKey());
+            if (rsNumber >= 0) {
+                result.put(rsNumber, entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    public static void write(Multimap<Long, String> multimap, File file) throws IOException {
+        write(multimap, file, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize uncompressed bytes after which a block is closed
+     */
+    public static void write(Multimap<Long, String> multimap, File file, int blockSize) throws IOException {
+        List<Long> keys = new ArrayList<>(multimap.keySet());
+        Collections.sort(keys);
+
+        List<long[]> index = new ArrayList<>();        // first key, last key, entry count
+        List<byte[]> blocks = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(blockSize + 1024);
+        DataOutputStream block = new DataOutputStream(bytes);
+        long first = 0;
+        long previous = 0;
+        int count = 0;
+        for (Long key : keys) {
+            if (count == 0) {
+                first = key;
+                previous = key;
+            }
+            RsIdDirectory.writeVarLong(block, key - previous);
+            Collection<String> values = multimap.get(key);
+            RsIdDirectory.writeVarLong(block, values.size());
+            for (String value : values) {
+                block.writeUTF(value);
+            }
+            previous = key;
+            count++;
+            if (bytes.size() >= blockSize) {
+                index.add(new long[]{first, previous, count});
+                blocks.add(compress(bytes.toByteArray()));
+                bytes.reset();
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            index.add(new long[]{first, previous, count});
+            blocks.add(compress(bytes.toByteArray()));
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            output.writeInt(BlockShard.MAGIC);
+            output.writeInt(BlockShard.VERSION);
+            output.writeInt(blocks.size());
+            long offset = BlockShard.HEADER_SIZE + (long) blocks.size() * BlockShard.INDEX_ENTRY_SIZE;
+            for (int B = 0; B < blocks.size(); B++) {
+                output.writeLong(index.get(B)[0]);
+                output.writeLong(index.get(B)[1]);
+                output.writeInt((int) index.get(B)[2]);
+                output.writeLong(offset);
+                output.writeInt(blocks.get(B).length);
+                offset += blocks.get(B).length;
+            }
+            for (byte[] compressed : blocks) {
+                output.write(compressed);
+            }
+        }
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int length = deflater.deflate(buffer);
+            compressed.write(buffer, 0, length);
+        }
+        deflater.end();
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,152 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Versioned, uncompressed binary file holding the static mapping data, opened with {@link FileChannel#map}.
+ * <p>
+ * Reading a section does not deserialize anything: the lookups work directly on the mapped bytes, so opening a
+ * bundle takes milliseconds and concurrent processes share the same pages of the operating system cache.
+ * <p>
+ * Layout:
+ * <pre>
+ * magic (int) version (int) section count (int)
+ * for each section: name (UTF), kind (byte), offset (long), length (long)
+ * section data
+ * </pre>
+ * The bundles are created with {@link BundleWriter} or with the {@code tools.BundleConverter} from the gzipped
+ * resource files. The engine answers its point queries from the bundle {@link #FILE_NAME} of the resources directory
+ * when there is one. Only the point queries read it: the searches, analyses and networks take a {@code Mapping},
+ * which is still deserialized from the gzipped resources.
+ */
+public class Bundle implements Closeable {
+
+    public static final int MAGIC = 0x504D4244;    // "PMBD"
+    public static final int VERSION = 1;
+
+    public static final String FILE_NAME = "mapping.bundle";
+
+    static final byte STRING_MULTIMAP = 1;
+    static final byte LONG_MULTIMAP = 2;
+
+    private final File file;
+    private final FileChannel channel;
+    private final TreeMap<String, Byte> kinds = new TreeMap<>();
+    private final TreeMap<String, MappedByteBuffer> sections = new TreeMap<>();
+    private final TreeMap<String, Long> offsets = new TreeMap<>();
+
+    private Bundle(File file) throws IOException {
+        this.file = file;
+        this.channel = new RandomAccessFile(file, "r").getChannel();
+
+        DataInputStream header = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        if (header.readInt() != MAGIC) {
+            channel.close();
+            throw new IOException("The file " + file.getPath() + " is not a mapping bundle.");
+        }
+        int version = header.readInt();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("The mapping bundle " + file.getPath() + " has version " + version
+                    + ", expected version " + VERSION + ".");
+        }
+        int sectionCount = header.readInt();
+        for (int S = 0; S < sectionCount; S++) {
+            String name = header.readUTF();
+            byte kind = header.readByte();
+            long offset = header.readLong();
+            long length = header.readLong();
+            kinds.put(name, kind);
+            offsets.put(name, offset);
+            sections.put(name, channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+        }
+    }
+
+    /**
+     * Opens and maps a bundle file. The data is paged in by the operating system on first access.
+     *
+     * @throws IOException if the file can not be read or it is not a bundle of the current version
+     */
+    public static Bundle open(File file) throws IOException {
+        return new Bundle(file);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Set<String> getSectionNames() {
+        return Collections.unmodifiableSet(sections.keySet());
+    }
+
+    public boolean hasSection(String name) {
+        return sections.containsKey(name);
+    }
+
+    public BundleMultimap getMultimap(String name) {
+        return new BundleMultimap(getSection(name, STRING_MULTIMAP));
+    }
+
+    public BundleLongMultimap getLongMultimap(String name) {
+        return new BundleLongMultimap(getSection(name, LONG_MULTIMAP));
+    }
+
+    /**
+     * Kind of a section, {@link #STRING_MULTIMAP} or {@link #LONG_MULTIMAP}.
+     */
+    byte getKind(String name) {
+        return kinds.get(name);
+    }
+
+    /**
+     * Encoded bytes of a section.
+     */
+    ByteBuffer getSection(String name) {
+        return sections.get(name).duplicate();
+    }
+
+    /**
+     * Length in bytes of an encoded section.
+     */
+    long getSectionLength(String name) {
+        return sections.get(name).capacity();
+    }
+
+    /**
+     * Copies the encoded bytes of a section to a channel, from file to file when the channel allows it, without
+     * reading them into the heap.
+     */
+    void transferSection(String name, WritableByteChannel target) throws IOException {
+        long position = offsets.get(name);
+        long end = position + getSectionLength(name);
+        while (position < end) {
+            position += channel.transferTo(position, end - position, target);
+        }
+    }
+
+    private ByteBuffer getSection(String name, byte kind) {
+        if (!sections.containsKey(name)) {
+            throw new IllegalArgumentException("The mapping bundle does not contain " + name);
+        }
+        if (kinds.get(name) != kind) {
+            throw new IllegalArgumentException("The section " + name + " of the mapping bundle has kind " + kinds.get(name));
+        }
+        return sections.get(name).duplicate();
+    }
+
+    /**
+     * Closes the file. The mapped sections stay valid until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
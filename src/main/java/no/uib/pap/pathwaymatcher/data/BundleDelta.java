@@ -0,0 +1,315 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.TreeMultimap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Rows added to and removed from the sections of a {@link Bundle} between two releases.
+ * <p>
+ * Applying a delta re-encodes only the sections it changes; the other sections are copied byte for byte from file
+ * to file. The result is checked against the manifest of the target release before it replaces the bundle.
+ * <p>
+ * The file is gzipped text, one change per line, tab separated:
+ * <pre>
+ * #PathwayMatcher bundle delta 1
+ * =  section  string|long         kind of each changed section
+ * x  section                      section absent from the target, after its rows are removed
+ * -  section  key  value          removed row
+ * +  section  key  value          added row
+ * </pre>
+ */
+public class BundleDelta {
+
+    private static final String HEADER = "#PathwayMatcher bundle delta 1";
+
+    private final Map<String, Byte> kinds = new TreeMap<>();
+    private final Map<String, Multimap<String, String>> added = new TreeMap<>();
+    private final Map<String, Multimap<String, String>> removed = new TreeMap<>();
+    private final Set<String> dropped = new TreeSet<>();
+
+    private void declare(String section, byte kind) {
+        Byte previous = kinds.put(section, kind);
+        if (previous != null && previous != kind) {
+            throw new IllegalArgumentException("The section " + section + " is declared with two kinds.");
+        }
+    }
+
+    /**
+     * Records a row of a String multimap section to add.
+     */
+    public void add(String section, String key, String value) {
+        declare(section, Bundle.STRING_MULTIMAP);
+        added.computeIfAbsent(section, name -> TreeMultimap.create()).put(key, value);
+    }
+
+    public void remove(String section, String key, String value) {
+        declare(section, Bundle.STRING_MULTIMAP);
+        removed.computeIfAbsent(section, name -> TreeMultimap.create()).put(key, value);
+    }
+
+    /**
+     * Records a row of a Long multimap section to add, e.g. of a chrBpToProteins shard.
+     */
+    public void add(String section, long key, String value) {
+        declare(section, Bundle.LONG_MULTIMAP);
+        added.computeIfAbsent(section, name -> TreeMultimap.create()).put(Long.toString(key), value);
+    }
+
+    public void remove(String section, long key, String value) {
+        declare(section, Bundle.LONG_MULTIMAP);
+        removed.computeIfAbsent(section, name -> TreeMultimap.create()).put(Long.toString(key), value);
+    }
+
+    /**
+     * Sections with at least one change.
+     */
+    public Set<String> getSections() {
+        return Collections.unmodifiableSet(kinds.keySet());
+    }
+
+    public int getAddedCount() {
+        return count(added);
+    }
+
+    public int getRemovedCount() {
+        return count(removed);
+    }
+
+    private static int count(Map<String, Multimap<String, String>> rows) {
+        int count = 0;
+        for (Multimap<String, String> section : rows.values()) {
+            count += section.size();
+        }
+        return count;
+    }
+
+    /**
+     * Computes the delta that turns one bundle into another.
+     */
+    public static BundleDelta diff(Bundle from, Bundle to) {
+        BundleDelta delta = new BundleDelta();
+        Set<String> sections = new TreeSet<>(from.getSectionNames());
+        sections.addAll(to.getSectionNames());
+        for (String section : sections) {
+            boolean inFrom = from.hasSection(section);
+            boolean inTo = to.hasSection(section);
+            if (inFrom && inTo && from.getSection(section).equals(to.getSection(section))) {
+                continue;       // Same bytes
+            }
+            byte kind = inTo ? to.getKind(section) : from.getKind(section);
+            Multimap<String, String> oldRows = inFrom ? readRows(from, section) : HashMultimap.create();
+            Multimap<String, String> newRows = inTo ? readRows(to, section) : HashMultimap.create();
+            if (!inTo) {
+                delta.declare(section, kind);
+                delta.dropped.add(section);
+            }
+            for (Map.Entry<String, String> row : oldRows.entries()) {
+                if (!newRows.containsEntry(row.getKey(), row.getValue())) {
+                    delta.declare(section, kind);
+                    delta.removed.computeIfAbsent(section, name -> TreeMultimap.create()).put(row.getKey(), row.getValue());
+                }
+            }
+            for (Map.Entry<String, String> row : newRows.entries()) {
+                if (!oldRows.containsEntry(row.getKey(), row.getValue())) {
+                    delta.declare(section, kind);
+                    delta.added.computeIfAbsent(section, name -> TreeMultimap.create()).put(row.getKey(), row.getValue());
+                }
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Rows of a section, with the Long keys as decimal strings.
+     */
+    private static Multimap<String, String> readRows(Bundle bundle, String section) {
+        Multimap<String, String> rows = HashMultimap.create();
+        if (bundle.getKind(section) == Bundle.LONG_MULTIMAP) {
+            BundleLongMultimap multimap = bundle.getLongMultimap(section);
+            for (int K = 0; K < multimap.keyCount(); K++) {
+                long key = multimap.getKey(K);
+                rows.putAll(Long.toString(key), multimap.get(key));
+            }
+        } else {
+            BundleMultimap multimap = bundle.getMultimap(section);
+            for (int K = 0; K < multimap.keyCount(); K++) {
+                String key = multimap.getKey(K);
+                rows.putAll(key, multimap.get(key));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Writes the bundle with the changes applied to a new file. The sections without changes are copied as they are,
+     * and the sections absent from the target are left out.
+     *
+     * @throws IOException if a removed row is not in the bundle, an added row is already in it, or a section absent
+     *                     from the target still has rows
+     */
+    public void apply(Bundle bundle, File output) throws IOException {
+        BundleWriter writer = new BundleWriter();
+        for (String section : bundle.getSectionNames()) {
+            if (!kinds.containsKey(section)) {
+                writer.addSection(section, bundle);
+            }
+        }
+
+        for (Map.Entry<String, Byte> section : kinds.entrySet()) {
+            String name = section.getKey();
+            if (bundle.hasSection(name) && bundle.getKind(name) != section.getValue()) {
+                throw new IOException("The section " + name + " of the bundle has another kind than in the delta.");
+            }
+            Multimap<String, String> rows = bundle.hasSection(name) ? readRows(bundle, name) : HashMultimap.create();
+            for (Map.Entry<String, String> row : removed.getOrDefault(name, HashMultimap.create()).entries()) {
+                if (!rows.remove(row.getKey(), row.getValue())) {
+                    throw new IOException("The bundle does not match the delta: " + name + " has no row " + row.getKey() + " " + row.getValue());
+                }
+            }
+            for (Map.Entry<String, String> row : added.getOrDefault(name, HashMultimap.create()).entries()) {
+                if (!rows.put(row.getKey(), row.getValue())) {
+                    throw new IOException("The bundle does not match the delta: " + name + " already has row " + row.getKey() + " " + row.getValue());
+                }
+            }
+            if (dropped.contains(name)) {
+                if (!rows.isEmpty()) {
+                    throw new IOException("The bundle does not match the delta: " + name + " has rows left after it is dropped");
+                }
+                continue;
+            }
+
+            if (section.getValue() == Bundle.LONG_MULTIMAP) {
+                Multimap<Long, String> longRows = HashMultimap.create();
+                for (Map.Entry<String, String> row : rows.entries()) {
+                    longRows.put(Long.parseLong(row.getKey()), row.getValue());
+                }
+                writer.addLongMultimap(name, longRows);
+            } else {
+                writer.addMultimap(name, rows);
+            }
+        }
+        writer.write(output);
+    }
+
+    /**
+     * Applies the delta to a bundle file and replaces it, once the result matches the manifest of the target release.
+     * The bundle is left untouched if anything fails.
+     *
+     * @param manifest manifest of the sections of the target bundle, see {@link #manifest(Bundle)}
+     */
+    public void applyInPlace(File bundleFile, ResourceManifest manifest) throws IOException {
+        File patched = new File(bundleFile.getPath() + ".patch");
+        try {
+            try (Bundle bundle = Bundle.open(bundleFile)) {
+                apply(bundle, patched);
+            }
+            try (Bundle result = Bundle.open(patched)) {
+                List<String> mismatches = verify(result, manifest);
+                if (!mismatches.isEmpty()) {
+                    throw new IOException("The patched bundle does not match the manifest: " + String.join(", ", mismatches));
+                }
+            }
+            Files.move(patched.toPath(), bundleFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            patched.delete();
+        }
+    }
+
+    /**
+     * Manifest of the sections of a bundle: the number of rows, the size and the checksum of each one.
+     */
+    public static ResourceManifest manifest(Bundle bundle) {
+        ResourceManifest manifest = new ResourceManifest();
+        for (String section : bundle.getSectionNames()) {
+            ByteBuffer bytes = bundle.getSection(section);
+            long rows = bundle.getKind(section) == Bundle.LONG_MULTIMAP
+                    ? bundle.getLongMultimap(section).size()
+                    : bundle.getMultimap(section).size();
+            manifest.add(new ResourceManifest.Entry(section, rows, bytes.remaining(), ResourceManifest.checksum(bytes)));
+        }
+        return manifest;
+    }
+
+    /**
+     * @return the sections of the bundle that are missing, extra or different from the manifest
+     */
+    public static List<String> verify(Bundle bundle, ResourceManifest manifest) {
+        List<String> mismatches = new ArrayList<>();
+        ResourceManifest actual = manifest(bundle);
+        for (ResourceManifest.Entry expected : manifest.getEntries()) {
+            ResourceManifest.Entry entry = actual.get(expected.getFile());
+            if (entry == null) {
+                mismatches.add(expected.getFile() + " missing");
+            } else if (entry.getEntries() != expected.getEntries() || !entry.getChecksum().equals(expected.getChecksum())) {
+                mismatches.add(expected.getFile() + " differs");
+            }
+        }
+        for (ResourceManifest.Entry entry : actual.getEntries()) {
+            if (manifest.get(entry.getFile()) == null) {
+                mismatches.add(entry.getFile() + " not expected");
+            }
+        }
+        return mismatches;
+    }
+
+    public void write(File file) throws IOException {
+        try (BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8))) {
+            output.write(HEADER);
+            output.newLine();
+            for (Map.Entry<String, Byte> section : kinds.entrySet()) {
+                output.write("=\t" + section.getKey() + "\t" + (section.getValue() == Bundle.LONG_MULTIMAP ? "long" : "string"));
+                output.newLine();
+            }
+            for (String section : dropped) {
+                output.write("x\t" + section);
+                output.newLine();
+            }
+            writeRows('-', removed, output);
+            writeRows('+', added, output);
+        }
+    }
+
+    private static void writeRows(char change, Map<String, Multimap<String, String>> rows, BufferedWriter output) throws IOException {
+        for (Map.Entry<String, Multimap<String, String>> section : rows.entrySet()) {
+            for (Map.Entry<String, String> row : section.getValue().entries()) {
+                output.write(change + "\t" + section.getKey() + "\t" + row.getKey() + "\t" + row.getValue());
+                output.newLine();
+            }
+        }
+    }
+
+    public static BundleDelta read(File file) throws IOException {
+        BundleDelta delta = new BundleDelta();
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), StandardCharsets.UTF_8))) {
+            String line = input.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("Not a bundle delta: " + file.getPath());
+            }
+            while ((line = input.readLine()) != null) {
+                String[] columns = line.split("\t", 4);
+                if (columns.length == 3 && columns[0].equals("=")) {
+                    delta.declare(columns[1], columns[2].equals("long") ? Bundle.LONG_MULTIMAP : Bundle.STRING_MULTIMAP);
+                } else if (columns.length == 2 && columns[0].equals("x") && delta.kinds.containsKey(columns[1])) {
+                    delta.dropped.add(columns[1]);
+                } else if (columns.length == 4 && delta.kinds.containsKey(columns[1])
+                        && (columns[0].equals("+") || columns[0].equals("-"))) {
+                    Map<String, Multimap<String, String>> rows = columns[0].equals("+") ? delta.added : delta.removed;
+                    rows.computeIfAbsent(columns[1], name -> TreeMultimap.create()).put(columns[2], columns[3]);
+                } else {
+                    throw new IOException("Invalid delta line: " + line);
+                }
+            }
+        }
+        return delta;
+    }
+}
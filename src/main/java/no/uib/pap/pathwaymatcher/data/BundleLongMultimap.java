@@ -0,0 +1,85 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only multimap from long keys to String values, backed by a section of a memory-mapped {@link Bundle}.
+ * Used for the base pair positions of the chrBpToProteins maps.
+ * <p>
+ * Layout: entry count (int), key count (int), sorted keys (long[keys]), value table,
+ * starts (int[keys + 1]), targets (int[entries]).
+ */
+public class BundleLongMultimap {
+
+    private final ByteBuffer buffer;
+    private final int entryCount;
+    private final int keyCount;
+    private final StringTable values;
+    private final int startsPosition;
+    private final int targetsPosition;
+
+    BundleLongMultimap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.entryCount = buffer.getInt(0);
+        this.keyCount = buffer.getInt(4);
+        this.values = new StringTable(buffer, 8 + 8 * keyCount);
+        this.startsPosition = values.end();
+        this.targetsPosition = startsPosition + 4 * (keyCount + 1);
+    }
+
+    public int keyCount() {
+        return keyCount;
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    public long getKey(int index) {
+        return buffer.getLong(8 + 8 * index);
+    }
+
+    public boolean containsKey(long key) {
+        return indexOf(key) >= 0;
+    }
+
+    public List<String> get(long key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        final int start = buffer.getInt(startsPosition + 4 * index);
+        final int end = buffer.getInt(startsPosition + 4 * (index + 1));
+        return new AbstractList<String>() {
+            @Override
+            public String get(int I) {
+                return values.get(buffer.getInt(targetsPosition + 4 * (start + I)));
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+
+    private int indexOf(long key) {
+        int low = 0;
+        int high = keyCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = getKey(middle);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+}
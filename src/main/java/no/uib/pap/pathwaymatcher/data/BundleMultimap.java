@@ -0,0 +1,74 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only multimap from String keys to String values, backed by a section of a memory-mapped {@link Bundle}.
+ * <p>
+ * Layout: entry count (int), key table, value table, starts (int[keys + 1]), targets (int[entries]).
+ * Both tables are {@link StringTable}s. The values of key i are the value table entries
+ * targets[starts[i]] to targets[starts[i + 1] - 1].
+ */
+public class BundleMultimap {
+
+    private final ByteBuffer buffer;
+    private final int entryCount;
+    private final StringTable keys;
+    private final StringTable values;
+    private final int startsPosition;
+    private final int targetsPosition;
+
+    BundleMultimap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.entryCount = buffer.getInt(0);
+        this.keys = new StringTable(buffer, 4);
+        this.values = new StringTable(buffer, keys.end());
+        this.startsPosition = values.end();
+        this.targetsPosition = startsPosition + 4 * (keys.size() + 1);
+    }
+
+    public int keyCount() {
+        return keys.size();
+    }
+
+    /**
+     * Number of key-value pairs.
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    public String getKey(int index) {
+        return keys.get(index);
+    }
+
+    public boolean containsKey(String key) {
+        return keys.indexOf(key) >= 0;
+    }
+
+    /**
+     * Values of a key, decoded on access. Returns an empty list if the key is not present.
+     */
+    public List<String> get(String key) {
+        int index = keys.indexOf(key);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        final int start = buffer.getInt(startsPosition + 4 * index);
+        final int end = buffer.getInt(startsPosition + 4 * (index + 1));
+        return new AbstractList<String>() {
+            @Override
+            public String get(int I) {
+                return values.get(buffer.getInt(targetsPosition + 4 * (start + I)));
+            }
+
+            @Override
+            public int size() {
+                return end - start;
+            }
+        };
+    }
+}
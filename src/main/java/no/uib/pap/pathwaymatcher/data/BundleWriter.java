@@ -0,0 +1,201 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Creates {@link Bundle} files. Sections are encoded in memory when added and written together by {@link #write};
+ * the sections copied from another bundle are only read from it when they are written.
+ */
+public class BundleWriter {
+
+    /**
+     * Encoded bytes of a section, held in memory or in another bundle.
+     */
+    private interface Section {
+        long length();
+
+        void writeTo(FileChannel output) throws IOException;
+    }
+
+    private final TreeMap<String, Byte> kinds = new TreeMap<>();
+    private final TreeMap<String, Section> sections = new TreeMap<>();
+
+    private static final Comparator<byte[]> UTF8_ORDER = UnsignedBytes.lexicographicalComparator();
+
+    public BundleWriter addMultimap(String name, Multimap<String, String> multimap) throws IOException {
+        List<byte[]> keys = sortedUtf8(multimap.keySet());
+        List<byte[]> values = sortedUtf8(new HashSet<>(multimap.values()));
+        Map<String, Integer> valueIndex = indexOf(values);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(multimap.size());
+        writeStringTable(keys, output);
+        writeStringTable(values, output);
+
+        List<String> keyStrings = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            keyStrings.add(new String(key, StandardCharsets.UTF_8));
+        }
+        writeTargets(keyStrings, multimap, valueIndex, output);
+        output.close();
+
+        putSection(name, Bundle.STRING_MULTIMAP, bytes.toByteArray());
+        return this;
+    }
+
+    public BundleWriter addLongMultimap(String name, Multimap<Long, String> multimap) throws IOException {
+        List<Long> keys = new ArrayList<>(multimap.keySet());
+        Collections.sort(keys);
+        List<byte[]> values = sortedUtf8(new HashSet<>(multimap.values()));
+        Map<String, Integer> valueIndex = indexOf(values);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        output.writeInt(multimap.size());
+        output.writeInt(keys.size());
+        for (Long key : keys) {
+            output.writeLong(key);
+        }
+        writeStringTable(values, output);
+        writeTargets(keys, multimap, valueIndex, output);
+        output.close();
+
+        putSection(name, Bundle.LONG_MULTIMAP, bytes.toByteArray());
+        return this;
+    }
+
+    private void putSection(String name, byte kind, byte[] bytes) {
+        kinds.put(name, kind);
+        sections.put(name, new Section() {
+            @Override
+            public long length() {
+                return bytes.length;
+            }
+
+            @Override
+            public void writeTo(FileChannel output) throws IOException {
+                writeFully(ByteBuffer.wrap(bytes), output);
+            }
+        });
+    }
+
+    /**
+     * Adds a section of another bundle as it is. Its bytes are transferred from the file of that bundle by
+     * {@link #write}, which must run before the bundle is closed.
+     */
+    BundleWriter addSection(String name, Bundle source) {
+        kinds.put(name, source.getKind(name));
+        sections.put(name, new Section() {
+            @Override
+            public long length() {
+                return source.getSectionLength(name);
+            }
+
+            @Override
+            public void writeTo(FileChannel output) throws IOException {
+                source.transferSection(name, output);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Writes the header and all the sections added so far.
+     */
+    public void write(File file) throws IOException {
+        // Measure the header to know where the sections start
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        writeHeader(new DataOutputStream(headerBytes), 0L);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(headerBytes.size());
+        writeHeader(new DataOutputStream(header), headerBytes.size());
+
+        try (FileChannel output = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(ByteBuffer.wrap(header.toByteArray()), output);
+            for (Section section : sections.values()) {
+                section.writeTo(output);
+            }
+        }
+    }
+
+    private static void writeFully(ByteBuffer bytes, FileChannel output) throws IOException {
+        while (bytes.hasRemaining()) {
+            output.write(bytes);
+        }
+    }
+
+    private void writeHeader(DataOutputStream output, long start) throws IOException {
+        output.writeInt(Bundle.MAGIC);
+        output.writeInt(Bundle.VERSION);
+        output.writeInt(sections.size());
+        long offset = start;
+        for (Map.Entry<String, Section> section : sections.entrySet()) {
+            output.writeUTF(section.getKey());
+            output.writeByte(kinds.get(section.getKey()));
+            output.writeLong(offset);
+            output.writeLong(section.getValue().length());
+            offset += section.getValue().length();
+        }
+        output.flush();
+    }
+
+    private static List<byte[]> sortedUtf8(Collection<String> strings) {
+        List<byte[]> result = new ArrayList<>(strings.size());
+        for (String string : strings) {
+            result.add(string.getBytes(StandardCharsets.UTF_8));
+        }
+        result.sort(UTF8_ORDER);
+        return result;
+    }
+
+    private static Map<String, Integer> indexOf(List<byte[]> values) {
+        Map<String, Integer> index = new HashMap<>(values.size() * 2);
+        for (int I = 0; I < values.size(); I++) {
+            index.put(new String(values.get(I), StandardCharsets.UTF_8), I);
+        }
+        return index;
+    }
+
+    private static void writeStringTable(List<byte[]> strings, DataOutputStream output) throws IOException {
+        output.writeInt(strings.size());
+        int offset = 0;
+        output.writeInt(offset);
+        for (byte[] string : strings) {
+            offset += string.length;
+            output.writeInt(offset);
+        }
+        output.writeInt(offset);
+        for (byte[] string : strings) {
+            output.write(string);
+        }
+    }
+
+    private static <K> void writeTargets(List<K> keys, Multimap<K, String> multimap,
+                                         Map<String, Integer> valueIndex, DataOutputStream output) throws IOException {
+        int start = 0;
+        output.writeInt(start);
+        for (K key : keys) {
+            start += multimap.get(key).size();
+            output.writeInt(start);
+        }
+        for (K key : keys) {
+            List<Integer> targets = new ArrayList<>();
+            for (String value : multimap.get(key)) {
+                targets.add(valueIndex.get(value));
+            }
+            Collections.sort(targets);
+            for (Integer target : targets) {
+                output.writeInt(target);
+            }
+        }
+    }
+}
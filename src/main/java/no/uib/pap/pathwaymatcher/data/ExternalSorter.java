@@ -0,0 +1,142 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Sorts lines of text with a bounded amount of memory.
+ * <p>
+ * Lines are kept in memory until their estimated size reaches the limit, then sorted and written to a gzipped
+ * run file. The runs are merged at the end, reading one line of each run at a time. Duplicate lines are dropped.
+ */
+public class ExternalSorter implements Closeable {
+
+    public interface LineConsumer {
+        void accept(String line) throws IOException;
+    }
+
+    private final long memory;
+    private final File directory;
+    private final Comparator<String> comparator;
+
+    private final List<String> buffer = new ArrayList<>();
+    private final List<File> runs = new ArrayList<>();
+    private long bufferBytes = 0;
+
+    /**
+     * @param memory     bytes of lines kept in memory before a run is written
+     * @param directory  directory for the run files
+     * @param comparator order of the lines
+     */
+    public ExternalSorter(long memory, File directory, Comparator<String> comparator) {
+        this.memory = memory;
+        this.directory = directory;
+        this.comparator = comparator;
+    }
+
+    public void add(String line) throws IOException {
+        buffer.add(line);
+        bufferBytes += 40 + 2L * line.length();
+        if (bufferBytes >= memory) {
+            spill();
+        }
+    }
+
+    private void spill() throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(comparator);
+        File run = File.createTempFile("run", ".gz", directory);
+        run.deleteOnExit();
+        try (BufferedWriter output = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(run), 1 << 16), StandardCharsets.UTF_8))) {
+            for (String line : buffer) {
+                output.write(line);
+                output.write('\n');
+            }
+        }
+        runs.add(run);
+        buffer.clear();
+        bufferBytes = 0;
+    }
+
+    /**
+     * Streams the lines in order, without duplicates.
+     *
+     * @return the number of lines streamed
+     */
+    public long forEachSorted(LineConsumer consumer) throws IOException {
+        if (runs.isEmpty()) {
+            buffer.sort(comparator);
+            long count = 0;
+            String previous = null;
+            for (String line : buffer) {
+                if (!line.equals(previous)) {
+                    consumer.accept(line);
+                    count++;
+                }
+                previous = line;
+            }
+            return count;
+        }
+
+        spill();
+        List<BufferedReader> readers = new ArrayList<>();
+        try {
+            PriorityQueue<Map.Entry<String, BufferedReader>> heads = new PriorityQueue<>(runs.size(),
+                    (a, b) -> comparator.compare(a.getKey(), b.getKey()));
+            for (File run : runs) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(new FileInputStream(run), 1 << 16), StandardCharsets.UTF_8));
+                readers.add(reader);
+                String line = reader.readLine();
+                if (line != null) {
+                    heads.add(new AbstractMap.SimpleEntry<>(line, reader));
+                }
+            }
+
+            long count = 0;
+            String previous = null;
+            while (!heads.isEmpty()) {
+                Map.Entry<String, BufferedReader> head = heads.poll();
+                if (!head.getKey().equals(previous)) {
+                    consumer.accept(head.getKey());
+                    count++;
+                }
+                previous = head.getKey();
+                String line = head.getValue().readLine();
+                if (line != null) {
+                    heads.add(new AbstractMap.SimpleEntry<>(line, head.getValue()));
+                }
+            }
+            return count;
+        } finally {
+            for (BufferedReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Number of run files written so far.
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public void close() {
+        for (File run : runs) {
+            run.delete();
+        }
+        runs.clear();
+        buffer.clear();
+    }
+}
@@ -0,0 +1,72 @@
+package no.uib.pap.pathwaymatcher.data;
+
+/**
+ * Base pair range of one autosome, written like the regions of tabix: chr1, 1:11854476 or chr1:11,000,000-12,000,000.
+ * Positions are 1-based and the range includes both ends.
+ */
+public class GenomicRegion {
+
+    private final int chromosome;
+    private final long start;
+    private final long end;
+
+    public GenomicRegion(int chromosome, long start, long end) {
+        if (chromosome < 1 || chromosome > SnpShards.CHROMOSOMES) {
+            throw new IllegalArgumentException("Not an autosome: " + chromosome);
+        }
+        if (start < 1 || end < start) {
+            throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+        }
+        this.chromosome = chromosome;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the region is malformed or not on an autosome
+     */
+    public static GenomicRegion parse(String region) {
+        String text = region.trim();
+        int colon = text.indexOf(':');
+        int chromosome = SnpShards.parseChromosome(colon < 0 ? text : text.substring(0, colon));
+        if (chromosome == 0) {
+            throw new IllegalArgumentException("Not an autosome: " + region);
+        }
+        if (colon < 0) {
+            return new GenomicRegion(chromosome, 1, VariantWindows.MAX_POSITION);
+        }
+        String range = text.substring(colon + 1).replace(",", "");
+        int dash = range.indexOf('-');
+        long start = parsePosition(dash < 0 ? range : range.substring(0, dash), region);
+        long end = dash < 0 ? start : dash == range.length() - 1 ? VariantWindows.MAX_POSITION : parsePosition(range.substring(dash + 1), region);
+        return new GenomicRegion(chromosome, start, end);
+    }
+
+    private static long parsePosition(String position, String region) {
+        if (position.isEmpty() || position.length() > 12 || !position.chars().allMatch(Character::isDigit)) {
+            throw new IllegalArgumentException("Invalid region: " + region);
+        }
+        return Long.parseLong(position);
+    }
+
+    public int getChromosome() {
+        return chromosome;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public boolean contains(int chromosome, long position) {
+        return chromosome == this.chromosome && position >= start && position <= end;
+    }
+
+    @Override
+    public String toString() {
+        return chromosome + ":" + start + "-" + end;
+    }
+}
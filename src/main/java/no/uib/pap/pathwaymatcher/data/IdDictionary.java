@@ -0,0 +1,56 @@
+package no.uib.pap.pathwaymatcher.data;
+
+/**
+ * Symbol table giving dense int ids to the identifiers of each kind of entity: UniProt accessions, gene names,
+ * reaction, pathway, complex and set stable identifiers.
+ * <p>
+ * The structures indexed with this dictionary join on ints and the identifiers are only materialized as
+ * strings when writing the output.
+ */
+public class IdDictionary {
+
+    public enum Kind {
+        PROTEIN, GENE, REACTION, PATHWAY, COMPLEX, SET
+    }
+
+    private final SymbolTable[] tables = new SymbolTable[Kind.values().length];
+
+    public IdDictionary() {
+        for (int I = 0; I < tables.length; I++) {
+            tables[I] = new SymbolTable();
+        }
+    }
+
+    /**
+     * @return the id of the identifier, or -1 if it is not in the dictionary
+     */
+    public int getId(Kind kind, String identifier) {
+        return tables[kind.ordinal()].getId(identifier);
+    }
+
+    public String getString(Kind kind, int id) {
+        return tables[kind.ordinal()].getString(id);
+    }
+
+    /**
+     * Number of identifiers of a kind. The ids of the kind go from 0 to size - 1.
+     */
+    public int size(Kind kind) {
+        return tables[kind.ordinal()].size();
+    }
+
+    /**
+     * Rough bytes taken by the identifiers and their tables.
+     */
+    long estimateSize() {
+        long bytes = 0;
+        for (SymbolTable table : tables) {
+            bytes += table.estimateSize();
+        }
+        return bytes;
+    }
+
+    int intern(Kind kind, String identifier) {
+        return tables[kind.ordinal()].intern(identifier);
+    }
+}
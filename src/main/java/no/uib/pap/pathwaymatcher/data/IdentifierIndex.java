@@ -0,0 +1,383 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Identifiers of one namespace (genes, Ensembl or UniProt) to proteins, resolved with a minimal perfect hash.
+ * <p>
+ * The identifiers themselves are not stored. Each one is hashed to a bucket, and the displacement of the bucket
+ * sends it to its own slot among the n slots. The displacements are bit packed with the width of the largest one,
+ * about 16 bits per bucket of four identifiers. A 16 bit fingerprint per slot rejects most identifiers that were
+ * not in the build set (about 1 in 65536 gets through). The proteins of the slot are ids in the sorted protein table.
+ * <p>
+ * The file is gzipped: the namespace (UTF), protein count (int) and the proteins (UTF), key count (int),
+ * bucket count (int) and the displacements (var int), then for each slot the fingerprint (short), the number of
+ * proteins (var int) and the protein ids (var int).
+ * <p>
+ * This is a point query feature only. The index files are written by {@code tools.IdentifierIndexBuilder}, never at
+ * run time, and the point queries use them when they exist. Gene, Ensembl and UniProt searches do not read them:
+ * Search.search resolves its identifiers in the maps of the mapping.
+ */
+public class IdentifierIndex {
+
+    public enum Namespace {
+        GENE("genesToProteins.gz"),
+        ENSEMBL("ensemblToProteins.gz"),
+        UNIPROT("proteinsToReactions.gz");
+
+        private final String source;
+
+        Namespace(String source) {
+            this.source = source;
+        }
+
+        /**
+         * Serialized multimap whose keys are the identifiers of the namespace.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public String getFileName() {
+            return "identifiers" + name().charAt(0) + name().substring(1).toLowerCase() + ".gz";
+        }
+    }
+
+    private static final int KEYS_PER_BUCKET = 4;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final Namespace namespace;
+    private final String[] proteinTable;
+    private final int bucketCount;
+    private final int displacementBits;
+    private final long[] displacements;
+    private final short[] fingerprints;
+    private final int[] offsets;
+    private final int[] proteins;
+
+    private IdentifierIndex(Namespace namespace, String[] proteinTable, int[] displacements, short[] fingerprints,
+                            int[] offsets, int[] proteins) {
+        this.namespace = namespace;
+        this.proteinTable = proteinTable;
+        int max = 0;
+        for (int displacement : displacements) {
+            max = Math.max(max, displacement);
+        }
+        this.bucketCount = displacements.length;
+        this.displacementBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(max));
+        this.displacements = new long[(int) (((long) bucketCount * displacementBits + 63) / 64)];
+        for (int B = 0; B < bucketCount; B++) {
+            long bit = (long) B * displacementBits;
+            int word = (int) (bit >>> 6);
+            int shift = (int) (bit & 63);
+            this.displacements[word] |= (long) displacements[B] << shift;
+            if (shift + displacementBits > 64) {
+                this.displacements[word + 1] |= (long) displacements[B] >>> (64 - shift);
+            }
+        }
+        this.fingerprints = fingerprints;
+        this.offsets = offsets;
+        this.proteins = proteins;
+    }
+
+    /**
+     * Creates the index of a multimap from identifiers to proteins.
+     *
+     * @throws IllegalArgumentException if the multimap is too large to find a displacement for every bucket
+     */
+    public static IdentifierIndex build(Namespace namespace, Multimap<String, String> identifiersToProteins) {
+        String[] keys = identifiersToProteins.keySet().toArray(new String[0]);
+        String[] proteinTable = new TreeSet<>(identifiersToProteins.values()).toArray(new String[0]);
+        int n = keys.length;
+        int bucketCount = Math.max(1, n / KEYS_PER_BUCKET);
+
+        long[] hashes = new long[n];
+        int[] bucketSizes = new int[bucketCount];
+        for (int K = 0; K < n; K++) {
+            hashes[K] = hash(keys[K]);
+            bucketSizes[bucket(hashes[K], bucketCount)]++;
+        }
+
+        // Keys grouped by bucket, as a CSR of key indexes
+        int[] bucketStarts = new int[bucketCount + 1];
+        for (int B = 0; B < bucketCount; B++) {
+            bucketStarts[B + 1] = bucketStarts[B] + bucketSizes[B];
+        }
+        int[] bucketKeys = new int[n];
+        int[] filled = Arrays.copyOf(bucketStarts, bucketCount);
+        for (int K = 0; K < n; K++) {
+            bucketKeys[filled[bucket(hashes[K], bucketCount)]++] = K;
+        }
+
+        // Place the largest buckets first, while most slots are still free
+        Integer[] order = new Integer[bucketCount];
+        for (int B = 0; B < bucketCount; B++) {
+            order[B] = B;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(bucketSizes[b], bucketSizes[a]));
+
+        int[] displacements = new int[bucketCount];
+        int[] keyOfSlot = new int[n];
+        Arrays.fill(keyOfSlot, -1);
+        int[] candidate = new int[16];
+        for (int bucket : order) {
+            int size = bucketSizes[bucket];
+            if (size == 0) {
+                continue;
+            }
+            if (candidate.length < size) {
+                candidate = new int[size];
+            }
+            for (int displacement = 0; ; displacement++) {
+                if (displacement == Integer.MAX_VALUE) {
+                    throw new IllegalArgumentException("Could not find a perfect hash for the " + namespace + " identifiers.");
+                }
+                boolean free = true;
+                for (int I = 0; I < size && free; I++) {
+                    int slot = slot(hashes[bucketKeys[bucketStarts[bucket] + I]], displacement, n);
+                    if (keyOfSlot[slot] >= 0) {
+                        free = false;
+                    }
+                    for (int J = 0; J < I && free; J++) {
+                        if (candidate[J] == slot) {
+                            free = false;
+                        }
+                    }
+                    candidate[I] = slot;
+                }
+                if (free) {
+                    displacements[bucket] = displacement;
+                    for (int I = 0; I < size; I++) {
+                        keyOfSlot[candidate[I]] = bucketKeys[bucketStarts[bucket] + I];
+                    }
+                    break;
+                }
+            }
+        }
+
+        short[] fingerprints = new short[n];
+        int[] offsets = new int[n + 1];
+        int[] proteins = new int[identifiersToProteins.size()];
+        int position = 0;
+        for (int slot = 0; slot < n; slot++) {
+            int key = keyOfSlot[slot];
+            fingerprints[slot] = fingerprint(hashes[key]);
+            offsets[slot] = position;
+            for (String protein : identifiersToProteins.get(keys[key])) {
+                proteins[position++] = Arrays.binarySearch(proteinTable, protein);
+            }
+            Arrays.sort(proteins, offsets[slot], position);
+        }
+        offsets[n] = position;
+        return new IdentifierIndex(namespace, proteinTable, displacements, fingerprints, offsets, Arrays.copyOf(proteins, position));
+    }
+
+    static long hash(String key) {
+        long h = GOLDEN;
+        for (int I = 0; I < key.length(); I++) {
+            h = (h ^ key.charAt(I)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    /**
+     * Same hash as {@link #hash(String)} for the ISO-8859-1 bytes of the key.
+     */
+    static long hash(byte[] bytes, int start, int end) {
+        long h = GOLDEN;
+        for (int I = start; I < end; I++) {
+            h = (h ^ (bytes[I] & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int bucket(long hash, int bucketCount) {
+        return (int) ((hash & 0xFFFFFFFFL) % bucketCount);
+    }
+
+    private static int slot(long hash, int displacement, int n) {
+        return (int) ((mix(hash + displacement * GOLDEN) >>> 1) % n);
+    }
+
+    private static short fingerprint(long hash) {
+        return (short) (hash >>> 48);
+    }
+
+    private int getDisplacement(int bucket) {
+        long bit = (long) bucket * displacementBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) (bit & 63);
+        long value = displacements[word] >>> shift;
+        if (shift + displacementBits > 64) {
+            value |= displacements[word + 1] << (64 - shift);
+        }
+        return (int) (value & ((1L << displacementBits) - 1));
+    }
+
+    /**
+     * @return the slot of the identifier, or -1 if it was not in the build set
+     */
+    public int getSlot(String identifier) {
+        if (fingerprints.length == 0) {
+            return -1;
+        }
+        return getSlot(hash(identifier));
+    }
+
+    /**
+     * @return the slot of the identifier in the ISO-8859-1 bytes from start to end, or -1 if it was not in the
+     * build set
+     */
+    public int getSlot(byte[] bytes, int start, int end) {
+        if (fingerprints.length == 0) {
+            return -1;
+        }
+        return getSlot(hash(bytes, start, end));
+    }
+
+    private int getSlot(long hash) {
+        int slot = slot(hash, getDisplacement(bucket(hash, bucketCount)), fingerprints.length);
+        return fingerprints[slot] == fingerprint(hash) ? slot : -1;
+    }
+
+    public boolean contains(String identifier) {
+        return getSlot(identifier) >= 0;
+    }
+
+    /**
+     * @return the proteins of the identifier, empty if it is unknown
+     */
+    public List<String> getProteins(String identifier) {
+        int slot = getSlot(identifier);
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>(offsets[slot + 1] - offsets[slot]);
+        for (int P = offsets[slot]; P < offsets[slot + 1]; P++) {
+            result.add(proteinTable[proteins[P]]);
+        }
+        return result;
+    }
+
+    public Namespace getNamespace() {
+        return namespace;
+    }
+
+    public int size() {
+        return fingerprints.length;
+    }
+
+    /**
+     * Bits per identifier used by the hash function and the fingerprints, without the proteins.
+     */
+    public double getBitsPerKey() {
+        return size() == 0 ? 0 : ((double) bucketCount * displacementBits + fingerprints.length * 16.0) / size();
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            output.writeUTF(namespace.name());
+            output.writeInt(proteinTable.length);
+            for (String protein : proteinTable) {
+                output.writeUTF(protein);
+            }
+            output.writeInt(fingerprints.length);
+            output.writeInt(bucketCount);
+            for (int B = 0; B < bucketCount; B++) {
+                RsIdDirectory.writeVarLong(output, getDisplacement(B));
+            }
+            for (int slot = 0; slot < fingerprints.length; slot++) {
+                output.writeShort(fingerprints[slot]);
+                RsIdDirectory.writeVarLong(output, offsets[slot + 1] - offsets[slot]);
+                for (int P = offsets[slot]; P < offsets[slot + 1]; P++) {
+                    RsIdDirectory.writeVarLong(output, proteins[P]);
+                }
+            }
+        }
+    }
+
+    public static IdentifierIndex read(InputStream stream) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)))) {
+            Namespace namespace = Namespace.valueOf(input.readUTF());
+            String[] proteinTable = new String[input.readInt()];
+            for (int I = 0; I < proteinTable.length; I++) {
+                proteinTable[I] = input.readUTF();
+            }
+            int n = input.readInt();
+            int[] displacements = new int[input.readInt()];
+            for (int B = 0; B < displacements.length; B++) {
+                displacements[B] = (int) RsIdDirectory.readVarLong(input);
+            }
+            short[] fingerprints = new short[n];
+            int[] offsets = new int[n + 1];
+            int[] proteins = new int[Math.max(16, n)];
+            int position = 0;
+            for (int slot = 0; slot < n; slot++) {
+                fingerprints[slot] = input.readShort();
+                offsets[slot] = position;
+                int count = (int) RsIdDirectory.readVarLong(input);
+                if (position + count > proteins.length) {
+                    proteins = Arrays.copyOf(proteins, Math.max(proteins.length * 2, position + count));
+                }
+                for (int P = 0; P < count; P++) {
+                    proteins[position++] = (int) RsIdDirectory.readVarLong(input);
+                }
+            }
+            offsets[n] = position;
+            return new IdentifierIndex(namespace, proteinTable, displacements, fingerprints, offsets, Arrays.copyOf(proteins, position));
+        }
+    }
+
+    /**
+     * Reads the index of a namespace from the class path or the resources directory, or builds it from the
+     * serialized multimap when the index file has not been created.
+     */
+    @SuppressWarnings("unchecked")
+    public static IdentifierIndex load(Namespace namespace) throws IOException {
+        try {
+            return read(SerializedResources.open(namespace.getFileName()));
+        } catch (FileNotFoundException e) {
+            Multimap<String, String> source = (Multimap<String, String>) SerializedResources.read(namespace.getSource());
+            return build(namespace, namespace == Namespace.UNIPROT ? identity(source.keySet()) : source);
+        }
+    }
+
+    /**
+     * Reads the index of a namespace from the class path or the resources directory, without building it.
+     *
+     * @return the index, or null if it has not been built
+     */
+    public static IdentifierIndex find(Namespace namespace) {
+        try {
+            return read(SerializedResources.open(namespace.getFileName()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Multimap from each protein to itself, to resolve UniProt accessions.
+     */
+    public static Multimap<String, String> identity(Set<String> proteins) {
+        ImmutableSetMultimap.Builder<String, String> builder = ImmutableSetMultimap.builder();
+        for (String protein : proteins) {
+            builder.put(protein, protein);
+        }
+        return builder.build();
+    }
+}
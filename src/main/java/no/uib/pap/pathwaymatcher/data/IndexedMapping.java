@@ -0,0 +1,178 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Reaction;
+import no.uib.pap.model.Role;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static no.uib.pap.pathwaymatcher.data.IdDictionary.Kind.*;
+
+/**
+ * The entity-to-entity relations of the {@link Mapping} used by the networks, keyed on the int ids of an
+ * {@link IdDictionary} instead of on Strings.
+ * <p>
+ * Each relation is an {@link IntMultimap} in compressed sparse row form, so the network loops are array scans.
+ * Built once from the {@link NetworkMaps} of the mapping.
+ */
+public class IndexedMapping {
+
+    private final IdDictionary dictionary;
+
+    private IntMultimap proteinsToReactions;
+    private IntMultimap reactionsToParticipants;   // Sorted protein ids of each reaction
+    private byte[] participantRoles;               // Role mask of each participant, parallel to reactionsToParticipants
+    private IntMultimap proteinsToComplexes;
+    private IntMultimap complexesToProteins;
+    private IntMultimap proteinsToSets;
+    private IntMultimap setsToProteins;
+    private IntMultimap proteinsToGenes;
+
+    private IndexedMapping(IdDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * Indexes the relations of the protein and gene networks.
+     *
+     * @param maps      network maps of the mapping
+     * @param withGenes index also the protein to gene relation, loaded only for the gene network
+     */
+    public static IndexedMapping build(NetworkMaps maps, boolean withGenes) throws IOException {
+        Mapping mapping = maps.getMapping();
+        IdDictionary dictionary = new IdDictionary();
+        IndexedMapping indexed = new IndexedMapping(dictionary);
+
+        // Each map is read once, as the maps read only by the index are not held
+        Multimap<String, String> proteinsToComplexes = maps.getProteinsToComplexes();
+        Multimap<String, String> complexesToProteins = maps.getComplexesToProteins();
+        Multimap<String, String> proteinsToSets = maps.getProteinsToSets();
+        Multimap<String, String> setsToProteins = maps.getSetsToProteins();
+
+        // Assign the ids first, so that the relations can be sized
+        intern(dictionary, mapping.getProteinsToReactions(), PROTEIN, REACTION);
+        for (Map.Entry<String, Reaction> reaction : mapping.getReactions().entrySet()) {
+            dictionary.intern(REACTION, reaction.getKey());
+            for (String protein : reaction.getValue().getProteinParticipantsWithRole().keySet()) {
+                dictionary.intern(PROTEIN, protein);
+            }
+        }
+        intern(dictionary, proteinsToComplexes, PROTEIN, COMPLEX);
+        intern(dictionary, complexesToProteins, COMPLEX, PROTEIN);
+        intern(dictionary, proteinsToSets, PROTEIN, SET);
+        intern(dictionary, setsToProteins, SET, PROTEIN);
+        if (withGenes) {
+            intern(dictionary, maps.getProteinsToGenes(), PROTEIN, GENE);
+        }
+
+        indexed.proteinsToReactions = index(dictionary, mapping.getProteinsToReactions(), PROTEIN, REACTION);
+        indexed.indexParticipants(mapping.getReactions());
+        indexed.proteinsToComplexes = index(dictionary, proteinsToComplexes, PROTEIN, COMPLEX);
+        indexed.complexesToProteins = index(dictionary, complexesToProteins, COMPLEX, PROTEIN);
+        indexed.proteinsToSets = index(dictionary, proteinsToSets, PROTEIN, SET);
+        indexed.setsToProteins = index(dictionary, setsToProteins, SET, PROTEIN);
+        indexed.proteinsToGenes = withGenes ? index(dictionary, maps.getProteinsToGenes(), PROTEIN, GENE) : IntMultimap.builder(0).build();
+        return indexed;
+    }
+
+    private static void intern(IdDictionary dictionary, Multimap<String, String> relation, IdDictionary.Kind from, IdDictionary.Kind to) {
+        for (Map.Entry<String, String> entry : relation.entries()) {
+            dictionary.intern(from, entry.getKey());
+            dictionary.intern(to, entry.getValue());
+        }
+    }
+
+    private static IntMultimap index(IdDictionary dictionary, Multimap<String, String> relation, IdDictionary.Kind from, IdDictionary.Kind to) {
+        IntMultimap.Builder builder = IntMultimap.builder(dictionary.size(from));
+        for (Map.Entry<String, String> entry : relation.entries()) {
+            builder.put(dictionary.getId(from, entry.getKey()), dictionary.getId(to, entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    private void indexParticipants(Map<String, Reaction> reactions) {
+        IntMultimap.Builder builder = IntMultimap.builder(dictionary.size(REACTION)).sortValues();
+        int size = 0;
+        for (Reaction reaction : reactions.values()) {
+            size += reaction.getProteinParticipantsWithRole().size();
+        }
+        byte[] roles = new byte[size];
+        for (Map.Entry<String, Reaction> reaction : reactions.entrySet()) {
+            int reactionId = dictionary.getId(REACTION, reaction.getKey());
+            for (Map.Entry<String, Set<Role>> participant : reaction.getValue().getProteinParticipantsWithRole().entrySet()) {
+                roles[builder.size()] = RoleMask.of(participant.getValue());
+                builder.put(reactionId, dictionary.getId(PROTEIN, participant.getKey()));
+            }
+        }
+
+        // Keep the roles aligned with the position where each participant was placed
+        int[] positions = new int[size];
+        reactionsToParticipants = builder.build(positions);
+        participantRoles = new byte[size];
+        for (int I = 0; I < size; I++) {
+            participantRoles[positions[I]] = roles[I];
+        }
+    }
+
+    /**
+     * Rough bytes taken by the index, counted against the budget of a {@link ResourceCache}.
+     */
+    long estimateSize() {
+        return dictionary.estimateSize() + proteinsToReactions.estimateSize() + reactionsToParticipants.estimateSize()
+                + participantRoles.length + proteinsToComplexes.estimateSize() + complexesToProteins.estimateSize()
+                + proteinsToSets.estimateSize() + setsToProteins.estimateSize() + proteinsToGenes.estimateSize();
+    }
+
+    public IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public IntMultimap getProteinsToReactions() {
+        return proteinsToReactions;
+    }
+
+    /**
+     * Protein participants of each reaction, sorted by id.
+     */
+    public IntMultimap getReactionsToParticipants() {
+        return reactionsToParticipants;
+    }
+
+    /**
+     * {@link RoleMask} of the participant at a position of {@link #getReactionsToParticipants}.
+     */
+    public byte getRoles(int position) {
+        return participantRoles[position];
+    }
+
+    /**
+     * {@link RoleMask} of a protein in a reaction, {@link RoleMask#NONE} if it does not participate.
+     */
+    public byte getRolesOf(int reaction, int protein) {
+        int position = reactionsToParticipants.indexOf(reaction, protein);
+        return position >= 0 ? participantRoles[position] : RoleMask.NONE;
+    }
+
+    public IntMultimap getProteinsToComplexes() {
+        return proteinsToComplexes;
+    }
+
+    public IntMultimap getComplexesToProteins() {
+        return complexesToProteins;
+    }
+
+    public IntMultimap getProteinsToSets() {
+        return proteinsToSets;
+    }
+
+    public IntMultimap getSetsToProteins() {
+        return setsToProteins;
+    }
+
+    public IntMultimap getProteinsToGenes() {
+        return proteinsToGenes;
+    }
+}
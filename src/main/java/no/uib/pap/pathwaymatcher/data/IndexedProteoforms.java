@@ -0,0 +1,185 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.Reaction;
+import no.uib.pap.model.Role;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+import static no.uib.pap.pathwaymatcher.data.IdDictionary.Kind.*;
+
+/**
+ * The proteoform relations of the {@link Mapping} used by the proteoform network, keyed on the ids of a
+ * {@link ProteoformRegistry} and of an {@link IdDictionary} for the reactions, complexes and sets.
+ * <p>
+ * Built once from the proteoform maps of the {@link NetworkMaps} of the mapping.
+ */
+public class IndexedProteoforms {
+
+    private final ProteoformRegistry registry = new ProteoformRegistry();
+    private final IdDictionary dictionary = new IdDictionary();
+
+    private IntMultimap proteoformsToReactions;
+    private IntMultimap reactionsToParticipants;   // Sorted proteoform ids of each reaction
+    private byte[] participantRoles;               // Role mask of each participant, parallel to reactionsToParticipants
+    private IntMultimap proteoformsToComplexes;
+    private IntMultimap complexesToProteoforms;
+    private IntMultimap proteoformsToSets;
+    private IntMultimap setsToProteoforms;
+
+    private IndexedProteoforms() {
+    }
+
+    /**
+     * @param maps network maps of the mapping
+     */
+    public static IndexedProteoforms build(NetworkMaps maps) throws IOException {
+        Mapping mapping = maps.getMapping();
+        IndexedProteoforms indexed = new IndexedProteoforms();
+
+        // Each map is read once, as the maps read only by the index are not held
+        Multimap<Proteoform, String> proteoformsToReactions = maps.getProteoformsToReactions();
+        Multimap<Proteoform, String> proteoformsToComplexes = maps.getProteoformsToComplexes();
+        Multimap<String, Proteoform> complexesToProteoforms = maps.getComplexesToProteoforms();
+        Multimap<Proteoform, String> proteoformsToSets = maps.getProteoformsToSets();
+        Multimap<String, Proteoform> setsToProteoforms = maps.getSetsToProteoforms();
+
+        // Register all proteoforms first, so that the relations can be sized
+        indexed.intern(proteoformsToReactions, REACTION);
+        for (Map.Entry<String, Reaction> reaction : mapping.getReactions().entrySet()) {
+            indexed.dictionary.intern(REACTION, reaction.getKey());
+            for (Proteoform proteoform : reaction.getValue().getProteoformParticipants().keySet()) {
+                indexed.registry.intern(proteoform);
+            }
+        }
+        indexed.intern(proteoformsToComplexes, COMPLEX);
+        indexed.internInverse(complexesToProteoforms, COMPLEX);
+        indexed.intern(proteoformsToSets, SET);
+        indexed.internInverse(setsToProteoforms, SET);
+
+        indexed.proteoformsToReactions = indexed.index(proteoformsToReactions, REACTION);
+        indexed.indexParticipants(mapping.getReactions());
+        indexed.proteoformsToComplexes = indexed.index(proteoformsToComplexes, COMPLEX);
+        indexed.complexesToProteoforms = indexed.indexInverse(complexesToProteoforms, COMPLEX);
+        indexed.proteoformsToSets = indexed.index(proteoformsToSets, SET);
+        indexed.setsToProteoforms = indexed.indexInverse(setsToProteoforms, SET);
+        return indexed;
+    }
+
+    private void intern(Multimap<Proteoform, String> relation, IdDictionary.Kind to) {
+        for (Map.Entry<Proteoform, String> entry : relation.entries()) {
+            registry.intern(entry.getKey());
+            dictionary.intern(to, entry.getValue());
+        }
+    }
+
+    private void internInverse(Multimap<String, Proteoform> relation, IdDictionary.Kind from) {
+        for (Map.Entry<String, Proteoform> entry : relation.entries()) {
+            dictionary.intern(from, entry.getKey());
+            registry.intern(entry.getValue());
+        }
+    }
+
+    private IntMultimap index(Multimap<Proteoform, String> relation, IdDictionary.Kind to) {
+        IntMultimap.Builder builder = IntMultimap.builder(registry.size());
+        for (Map.Entry<Proteoform, String> entry : relation.entries()) {
+            builder.put(registry.intern(entry.getKey()), dictionary.getId(to, entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    private IntMultimap indexInverse(Multimap<String, Proteoform> relation, IdDictionary.Kind from) {
+        IntMultimap.Builder builder = IntMultimap.builder(dictionary.size(from));
+        for (Map.Entry<String, Proteoform> entry : relation.entries()) {
+            builder.put(dictionary.getId(from, entry.getKey()), registry.intern(entry.getValue()));
+        }
+        return builder.build();
+    }
+
+    private void indexParticipants(Map<String, Reaction> reactions) {
+        IntMultimap.Builder builder = IntMultimap.builder(dictionary.size(REACTION)).sortValues();
+        int size = 0;
+        for (Reaction reaction : reactions.values()) {
+            size += reaction.getProteoformParticipants().size();
+        }
+        byte[] roles = new byte[size];
+        for (Map.Entry<String, Reaction> reaction : reactions.entrySet()) {
+            int reactionId = dictionary.getId(REACTION, reaction.getKey());
+            for (Map.Entry<Proteoform, Set<Role>> participant : reaction.getValue().getProteoformParticipants().entrySet()) {
+                roles[builder.size()] = RoleMask.of(participant.getValue());
+                builder.put(reactionId, registry.intern(participant.getKey()));
+            }
+        }
+
+        // Keep the roles aligned with the position where each participant was placed
+        int[] positions = new int[size];
+        reactionsToParticipants = builder.build(positions);
+        participantRoles = new byte[size];
+        for (int I = 0; I < size; I++) {
+            participantRoles[positions[I]] = roles[I];
+        }
+    }
+
+    /**
+     * Rough bytes taken by the index, counted against the budget of a {@link ResourceCache}.
+     */
+    long estimateSize() {
+        return registry.estimateSize() + dictionary.estimateSize() + proteoformsToReactions.estimateSize()
+                + reactionsToParticipants.estimateSize() + participantRoles.length + proteoformsToComplexes.estimateSize()
+                + complexesToProteoforms.estimateSize() + proteoformsToSets.estimateSize() + setsToProteoforms.estimateSize();
+    }
+
+    public ProteoformRegistry getRegistry() {
+        return registry;
+    }
+
+    public IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public IntMultimap getProteoformsToReactions() {
+        return proteoformsToReactions;
+    }
+
+    /**
+     * Proteoform participants of each reaction, sorted by id.
+     */
+    public IntMultimap getReactionsToParticipants() {
+        return reactionsToParticipants;
+    }
+
+    /**
+     * {@link RoleMask} of the participant at a position of {@link #getReactionsToParticipants}.
+     */
+    public byte getRoles(int position) {
+        return participantRoles[position];
+    }
+
+    /**
+     * {@link RoleMask} of a proteoform in a reaction, {@link RoleMask#NONE} if it does not participate.
+     */
+    public byte getRolesOf(int reaction, int proteoform) {
+        int position = reactionsToParticipants.indexOf(reaction, proteoform);
+        return position >= 0 ? participantRoles[position] : RoleMask.NONE;
+    }
+
+    public IntMultimap getProteoformsToComplexes() {
+        return proteoformsToComplexes;
+    }
+
+    public IntMultimap getComplexesToProteoforms() {
+        return complexesToProteoforms;
+    }
+
+    public IntMultimap getProteoformsToSets() {
+        return proteoformsToSets;
+    }
+
+    public IntMultimap getSetsToProteoforms() {
+        return setsToProteoforms;
+    }
+}
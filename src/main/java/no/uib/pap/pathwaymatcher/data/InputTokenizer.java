@@ -0,0 +1,378 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the lines of an input and the fields of each line in place, from the bytes of the input, so that reading
+ * a line or parsing a field into a number or an identifier slot creates no objects.
+ * <p>
+ * Lines end with LF, CRLF or CR, also mixed in one file. Files compressed with gzip, also in several members as
+ * written by bgzip, are inflated transparently; they are recognized by their magic number, not by their name.
+ * Bytes are read as ISO-8859-1 characters, like the input otherwise. Fields are separated by runs of spaces and
+ * tabs with {@link #nextField()}, or by a single separator with {@link #nextField(char)}.
+ * <p>
+ * The bytes of the current line are only valid until the next call to {@link #nextLine()}. Lines longer than the
+ * buffer make it grow.
+ */
+public class InputTokenizer implements Closeable {
+
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private final ReadableByteChannel channel;
+    private byte[] buffer;
+    private ByteBuffer view;
+    private int limit = 0;
+    private boolean eof = false;
+
+    private int next = 0;
+    private boolean skipLineFeed = false;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+    private long lineNumber = 0;
+
+    private int cursor = 0;
+    private int fieldStart = 0;
+    private int fieldEnd = 0;
+
+    public InputTokenizer(ReadableByteChannel channel) {
+        this(channel, BUFFER_SIZE);
+    }
+
+    InputTokenizer(ReadableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buffer = new byte[bufferSize];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    /**
+     * Opens a file, inflating it if it is compressed with gzip.
+     */
+    public static InputTokenizer open(File file) throws IOException {
+        return new InputTokenizer(openChannel(file));
+    }
+
+    /**
+     * Opens a file, reading and inflating it on a thread of the executor while the lines are parsed.
+     */
+    public static InputTokenizer open(File file, ExecutorService executor) throws IOException {
+        return new InputTokenizer(new ReadAheadChannel(openChannel(file), executor));
+    }
+
+    private static ReadableByteChannel openChannel(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(2);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // Read the two bytes of the magic number, or as many as the file has
+            }
+            channel.position(0);
+            if (magic.position() == 2 && (magic.get(0) & 0xFF) == 0x1F && (magic.get(1) & 0xFF) == 0x8B) {
+                return Channels.newChannel(new GZIPInputStream(Channels.newInputStream(channel), BUFFER_SIZE));
+            }
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads all the lines of a file, for the parsers that need them as strings.
+     */
+    public static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (InputTokenizer tokenizer = open(file)) {
+            while (tokenizer.nextLine()) {
+                lines.add(tokenizer.getLine());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Moves to the next line.
+     *
+     * @return false at the end of the input
+     */
+    public boolean nextLine() throws IOException {
+        if (skipLineFeed) {
+            // The previous line ended with a CR at the end of the buffer
+            if (next == limit) {
+                fill();
+            }
+            if (next < limit && buffer[next] == '\n') {
+                next++;
+            }
+            skipLineFeed = false;
+        }
+
+        int scan = next;
+        while (true) {
+            while (scan < limit && buffer[scan] != '\n' && buffer[scan] != '\r') {
+                scan++;
+            }
+            if (scan < limit || eof) {
+                break;
+            }
+            scan -= next;
+            fill();
+            scan += next;
+        }
+        if (next == limit) {
+            return false;   // End of the input, after the line end of the last line
+        }
+
+        lineStart = next;
+        lineEnd = scan;
+        if (scan == limit) {
+            next = limit;   // Last line without a line end
+        } else if (buffer[scan] == '\n') {
+            next = scan + 1;
+        } else if (scan + 1 < limit) {
+            next = buffer[scan + 1] == '\n' ? scan + 2 : scan + 1;
+        } else {
+            next = scan + 1;
+            skipLineFeed = !eof;
+        }
+        cursor = lineStart;
+        fieldStart = lineStart;
+        fieldEnd = lineStart;
+        lineNumber++;
+        return true;
+    }
+
+    /**
+     * Moves the unread bytes to the start of the buffer, growing it if they fill it, and reads more bytes.
+     */
+    private void fill() throws IOException {
+        int remaining = limit - next;
+        if (next > 0) {
+            System.arraycopy(buffer, next, buffer, 0, remaining);
+        } else if (remaining == buffer.length) {
+            byte[] grown = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, grown, 0, remaining);
+            buffer = grown;
+            view = ByteBuffer.wrap(buffer);
+        }
+        next = 0;
+        limit = remaining;
+
+        view.limit(buffer.length).position(limit);
+        int read = 0;
+        while (read == 0) {
+            read = channel.read(view);
+        }
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    /**
+     * @return the number of the current line, starting at 1
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getLineLength() {
+        return lineEnd - lineStart;
+    }
+
+    /**
+     * @return true if the line has only spaces and tabs
+     */
+    public boolean isBlankLine() {
+        for (int I = lineStart; I < lineEnd; I++) {
+            if (!isBlank(buffer[I])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the line starts with the character, e.g. '#' for comments and headers
+     */
+    public boolean startsWith(char c) {
+        return lineEnd > lineStart && buffer[lineStart] == (byte) c;
+    }
+
+    /**
+     * @return the current line, without its line end
+     */
+    public String getLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Moves to the next field of the line, separated by spaces and tabs. Leading blanks are skipped.
+     *
+     * @return false if the line has no more fields
+     */
+    public boolean nextField() {
+        int position = cursor;
+        while (position < lineEnd && isBlank(buffer[position])) {
+            position++;
+        }
+        if (position == lineEnd) {
+            cursor = lineEnd;
+            return false;
+        }
+        fieldStart = position;
+        while (position < lineEnd && !isBlank(buffer[position])) {
+            position++;
+        }
+        fieldEnd = position;
+        cursor = position;
+        return true;
+    }
+
+    /**
+     * Moves to the next field of the line, up to the separator or the end of the line. Fields can be empty, so a
+     * line with n separators has n + 1 fields.
+     *
+     * @return false if the line has no more fields
+     */
+    public boolean nextField(char separator) {
+        if (cursor > lineEnd) {
+            return false;
+        }
+        int position = cursor;
+        while (position < lineEnd && buffer[position] != (byte) separator) {
+            position++;
+        }
+        fieldStart = cursor;
+        fieldEnd = position;
+        cursor = position + 1;
+        return true;
+    }
+
+    /**
+     * Skips fields separated by spaces and tabs.
+     *
+     * @return false if the line had fewer fields
+     */
+    public boolean skipFields(int count) {
+        for (int I = 0; I < count; I++) {
+            if (!nextField()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getFieldLength() {
+        return fieldEnd - fieldStart;
+    }
+
+    /**
+     * @return the byte at an index of the current field
+     */
+    public byte getFieldByte(int index) {
+        return buffer[fieldStart + index];
+    }
+
+    /**
+     * @return the current field
+     */
+    public String getField() {
+        return new String(buffer, fieldStart, fieldEnd - fieldStart, StandardCharsets.ISO_8859_1);
+    }
+
+    public boolean fieldEquals(String value) {
+        if (value.length() != fieldEnd - fieldStart) {
+            return false;
+        }
+        for (int I = 0; I < value.length(); I++) {
+            if ((buffer[fieldStart + I] & 0xFF) != value.charAt(I)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the current field as a non-negative number, e.g. a base pair position.
+     *
+     * @return the number, or -1 if the field is empty, has other characters than digits or more than 18 digits
+     */
+    public long parseLong() {
+        return parseDigits(fieldStart);
+    }
+
+    private long parseDigits(int start) {
+        if (start == fieldEnd || fieldEnd - start > 18) {
+            return -1;
+        }
+        long number = 0;
+        for (int I = start; I < fieldEnd; I++) {
+            byte b = buffer[I];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            number = number * 10 + (b - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Reads the current field as a chromosome, like {@link SnpShards#parseChromosome(String)}, e.g. 1 or chr1.
+     *
+     * @return the chromosome number, or 0 if it is not an autosome
+     */
+    public int parseChromosome() {
+        int start = fieldStart;
+        if (fieldEnd - start > 3 && (buffer[start] | 0x20) == 'c' && (buffer[start + 1] | 0x20) == 'h'
+                && (buffer[start + 2] | 0x20) == 'r') {
+            start += 3;
+        }
+        if (fieldEnd - start > 2) {
+            return 0;
+        }
+        long chromosome = parseDigits(start);
+        return chromosome > 0 && chromosome <= SnpShards.CHROMOSOMES ? (int) chromosome : 0;
+    }
+
+    /**
+     * Reads the current field as an rsId, like {@link RsIdDirectory#parseRsNumber(String)}.
+     *
+     * @return the number of the rsId, or -1 if the field is not an rsId
+     */
+    public long parseRsNumber() {
+        int length = fieldEnd - fieldStart;
+        if (length < 3 || length > 20 || (buffer[fieldStart] | 0x20) != 'r' || (buffer[fieldStart + 1] | 0x20) != 's') {
+            return -1;
+        }
+        return parseDigits(fieldStart + 2);
+    }
+
+    /**
+     * Looks up the current field in an identifier index, without creating a string.
+     *
+     * @return the slot of the field in the index, or -1 if it is not in the index
+     */
+    public int getSlot(IdentifierIndex index) {
+        return index.getSlot(buffer, fieldStart, fieldEnd);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
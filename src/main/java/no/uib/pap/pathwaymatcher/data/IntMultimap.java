@@ -0,0 +1,209 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable multimap from int keys to int values in compressed sparse row form.
+ * <p>
+ * The values of key k are targets[offsets[k]] to targets[offsets[k + 1] - 1]. Iterating them with
+ * {@link #start}, {@link #end} and {@link #target}, or with {@link #forEach}, does not allocate.
+ * Keys outside the range of the multimap have no values.
+ */
+public final class IntMultimap {
+
+    private final int[] offsets;
+    private final int[] targets;
+    private final boolean sorted;
+
+    private IntMultimap(int[] offsets, int[] targets, boolean sorted) {
+        this.offsets = offsets;
+        this.targets = targets;
+        this.sorted = sorted;
+    }
+
+    public static Builder builder(int keyCount) {
+        return new Builder(keyCount);
+    }
+
+    /**
+     * Rough bytes taken by the arrays of the multimap.
+     */
+    long estimateSize() {
+        return 48 + 4L * (offsets.length + targets.length);
+    }
+
+    public int keyCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Number of key-value pairs.
+     */
+    public int size() {
+        return targets.length;
+    }
+
+    /**
+     * Position of the first value of the key.
+     */
+    public int start(int key) {
+        return key >= 0 && key < offsets.length - 1 ? offsets[key] : 0;
+    }
+
+    /**
+     * Position after the last value of the key.
+     */
+    public int end(int key) {
+        return key >= 0 && key < offsets.length - 1 ? offsets[key + 1] : 0;
+    }
+
+    /**
+     * Value at a position between {@link #start} and {@link #end} of a key.
+     */
+    public int target(int position) {
+        return targets[position];
+    }
+
+    public int count(int key) {
+        return end(key) - start(key);
+    }
+
+    public void forEach(int key, IntConsumer consumer) {
+        for (int I = start(key), end = end(key); I < end; I++) {
+            consumer.accept(targets[I]);
+        }
+    }
+
+    /**
+     * Copy of the values of a key.
+     */
+    public int[] get(int key) {
+        return Arrays.copyOfRange(targets, start(key), end(key));
+    }
+
+    /**
+     * Position of a value among the values of a key.
+     *
+     * @return the position, or -1 if the pair is not in the multimap
+     */
+    public int indexOf(int key, int value) {
+        int start = start(key);
+        int end = end(key);
+        if (sorted) {
+            int index = Arrays.binarySearch(targets, start, end, value);
+            return index >= 0 ? index : -1;
+        }
+        for (int I = start; I < end; I++) {
+            if (targets[I] == value) {
+                return I;
+            }
+        }
+        return -1;
+    }
+
+    public boolean containsEntry(int key, int value) {
+        return indexOf(key, value) >= 0;
+    }
+
+    /**
+     * Collects key-value pairs and lays them out by key, keeping the order in which the values of a key were added.
+     */
+    public static final class Builder {
+
+        private final int keyCount;
+        private int[] keys = new int[64];
+        private int[] values = new int[64];
+        private int size = 0;
+        private boolean sortValues = false;
+
+        private Builder(int keyCount) {
+            this.keyCount = keyCount;
+        }
+
+        public Builder put(int key, int value) {
+            if (key < 0 || key >= keyCount) {
+                throw new IllegalArgumentException("Key " + key + " out of range " + keyCount);
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            return this;
+        }
+
+        /**
+         * Sorts the values of each key, so that {@link #indexOf} uses binary search.
+         */
+        public Builder sortValues() {
+            sortValues = true;
+            return this;
+        }
+
+        /**
+         * Number of pairs added so far. The pair added in position p is placed at {@link #build()}.
+         */
+        public int size() {
+            return size;
+        }
+
+        public IntMultimap build() {
+            return build(null);
+        }
+
+        /**
+         * Builds the multimap and fills the positions where each added pair was placed.
+         *
+         * @param positions array of {@link #size()} elements, or null
+         */
+        public IntMultimap build(int[] positions) {
+            int[] offsets = new int[keyCount + 1];
+            for (int I = 0; I < size; I++) {
+                offsets[keys[I] + 1]++;
+            }
+            for (int K = 0; K < keyCount; K++) {
+                offsets[K + 1] += offsets[K];
+            }
+
+            int[] next = Arrays.copyOf(offsets, keyCount);
+            int[] targets = new int[size];
+            int[] placed = positions != null ? positions : new int[size];
+            for (int I = 0; I < size; I++) {
+                placed[I] = next[keys[I]]++;
+                targets[placed[I]] = values[I];
+            }
+
+            if (sortValues) {
+                sortRanges(offsets, targets, placed);
+            }
+            return new IntMultimap(offsets, targets, sortValues);
+        }
+
+        private void sortRanges(int[] offsets, int[] targets, int[] placed) {
+            // Sort each key range of (value, original position) pairs, then update where every pair went
+            int[] origin = new int[targets.length];
+            for (int I = 0; I < size; I++) {
+                origin[placed[I]] = I;
+            }
+            for (int K = 0; K < keyCount; K++) {
+                int start = offsets[K];
+                int end = offsets[K + 1];
+                if (end - start < 2) {
+                    continue;
+                }
+                long[] range = new long[end - start];
+                for (int I = start; I < end; I++) {
+                    range[I - start] = (long) targets[I] << 32 | origin[I];
+                }
+                Arrays.sort(range);
+                for (int I = start; I < end; I++) {
+                    targets[I] = (int) (range[I - start] >> 32);
+                    placed[(int) range[I - start]] = I;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Value loaded on its first access, once, by the first thread asking for it.
+ * <p>
+ * The threads compete with a compare-and-set to install the loading task; the winner runs it and the others wait
+ * on that task only. Once loaded, the value is read from a volatile field without waiting. If the load fails,
+ * the threads waiting for it get the error and the next access tries again. The loader must not return null.
+ */
+public final class Lazy<T> {
+
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    private final Loader<T> loader;
+    private final AtomicReference<FutureTask<T>> task = new AtomicReference<>();
+    private volatile T value;
+
+    public Lazy(Loader<T> loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns the value, loading it or waiting for the thread loading it.
+     */
+    public T get() throws IOException {
+        T result = value;
+        if (result != null) {
+            return result;
+        }
+
+        // A task read after losing the compare-and-set may already have failed and been removed, so try again
+        FutureTask<T> current;
+        while ((current = task.get()) == null) {
+            FutureTask<T> created = new FutureTask<>(loader::load);
+            if (task.compareAndSet(null, created)) {
+                created.run();
+                current = created;
+                break;
+            }
+        }
+
+        try {
+            result = current.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading.");
+        } catch (ExecutionException e) {
+            task.compareAndSet(current, null);      // Let the next access try again
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+        value = result;
+        return result;
+    }
+
+    /**
+     * @return true if the value is loaded
+     */
+    public boolean isLoaded() {
+        return value != null;
+    }
+}
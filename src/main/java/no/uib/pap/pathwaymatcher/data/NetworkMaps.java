@@ -0,0 +1,234 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import no.uib.pap.model.Mapping;
+import no.uib.pap.model.Proteoform;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * The network maps of a {@link Mapping} and their indexed relations, each loaded once on first use.
+ * <p>
+ * Every map is behind its own {@link Lazy} holder, so one mapping can be shared by the graphs built in parallel:
+ * a graph waits only for the maps it uses, and a map is never loaded twice. The maps are read from their own
+ * resource files instead of being loaded into the mapping, which is never modified, so loading takes no lock and
+ * the loaded maps are read without locking. The maps the mapping of the search type already holds are reused.
+ * <p>
+ * The complex, set and proteoform relations are read by the indexes only, so they are not held: each index reads
+ * them while it is built and keeps only its int relations. An index built again, e.g. the protein index with the
+ * genes after the one without, reads them again. Without a cache the indexes stay loaded for the life of the
+ * mapping, as they are what the graphs read, so they add to the heap taken by the mapping.
+ * <p>
+ * With a {@link ResourceCache}, the protein names, the proteoform maps and the indexed relations are kept by the
+ * cache instead, under its memory budget: they may be dropped once the graphs that use them are written, and are
+ * read or built again when needed. They are then not prefetched, as the cache could drop them before use.
+ */
+public class NetworkMaps {
+
+    private final Mapping mapping;
+    private final ResourceCache cache;
+
+    private final Lazy<Multimap<String, String>> genesToProteins;
+    private final Lazy<Multimap<String, String>> proteinsToGenes;
+    private final Reloadable<Map<String, String>> proteinsToNames;
+    private final Reloadable<Multimap<String, String>> proteinsToComplexes;
+    private final Reloadable<Multimap<String, String>> complexesToProteins;
+    private final Reloadable<Multimap<String, String>> proteinsToSets;
+    private final Reloadable<Multimap<String, String>> setsToProteins;
+    private final Reloadable<Multimap<String, Proteoform>> proteinsToProteoforms;
+    private final Reloadable<Multimap<Proteoform, String>> proteoformsToReactions;
+    private final Reloadable<Multimap<Proteoform, String>> proteoformsToComplexes;
+    private final Reloadable<Multimap<String, Proteoform>> complexesToProteoforms;
+    private final Reloadable<Multimap<Proteoform, String>> proteoformsToSets;
+    private final Reloadable<Multimap<String, Proteoform>> setsToProteoforms;
+
+    private final Reloadable<IndexedMapping> indexedMapping;
+    private final Reloadable<IndexedMapping> indexedMappingWithGenes;
+    private final Reloadable<IndexedProteoforms> indexedProteoforms;
+    private final Lazy<PathwaySets> pathwaySets;
+
+    /**
+     * @param cache keeps the protein names, the proteoform maps and the indexed relations under its memory budget,
+     *              or null to keep them loaded with the other maps
+     */
+    public NetworkMaps(Mapping mapping, ResourceCache cache) {
+        this.mapping = mapping;
+        this.cache = cache;
+        genesToProteins = new Lazy<>(() -> isLoaded(mapping.getGenesToProteins()) ? mapping.getGenesToProteins()
+                : NetworkMaps.<Multimap<String, String>>read("genesToProteins"));
+        proteinsToGenes = new Lazy<>(() -> Multimaps.invertFrom(genesToProteins.get(), HashMultimap.<String, String>create()));
+        proteinsToNames = reloadable("proteinsToNames", ResourceCache::estimate);
+        proteinsToComplexes = notHeld("proteinsToComplexes");
+        complexesToProteins = notHeld("complexesToProteins");
+        proteinsToSets = notHeld("proteinsToSets");
+        setsToProteins = notHeld("setsToProteins");
+        proteinsToProteoforms = reloadable("proteinsToProteoforms", ResourceCache::estimate);
+        proteoformsToReactions = notHeld("proteoformsToReactions");
+        proteoformsToComplexes = notHeld("proteoformsToComplexes");
+        complexesToProteoforms = notHeld("complexesToProteoforms");
+        proteoformsToSets = notHeld("proteoformsToSets");
+        setsToProteoforms = notHeld("setsToProteoforms");
+
+        indexedMapping = new Reloadable<>("indexedMapping", () -> IndexedMapping.build(this, false), IndexedMapping::estimateSize, true);
+        indexedMappingWithGenes = new Reloadable<>("indexedMappingWithGenes", () -> IndexedMapping.build(this, true), IndexedMapping::estimateSize, true);
+        indexedProteoforms = new Reloadable<>("indexedProteoforms", () -> IndexedProteoforms.build(this), IndexedProteoforms::estimateSize, true);
+        pathwaySets = new Lazy<>(() -> PathwaySets.build(mapping));
+    }
+
+    private static boolean isLoaded(Multimap<?, ?> map) {
+        return map != null && !map.isEmpty();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T read(String name) throws IOException {
+        return (T) SerializedResources.read(name + ".gz");
+    }
+
+    private <T> Reloadable<T> reloadable(String name, ResourceCache.Sizer<? super T> sizer) {
+        return new Reloadable<>(name + ".gz", () -> read(name), sizer, true);
+    }
+
+    /**
+     * Multimap read on each use without a cache, for the relations read only while an index is built.
+     */
+    private <T extends Multimap<?, ?>> Reloadable<T> notHeld(String name) {
+        return new Reloadable<T>(name + ".gz", () -> read(name), ResourceCache::estimate, false);
+    }
+
+    /**
+     * Structure kept by the cache when there is one. Without a cache it is loaded once and held, or loaded on each
+     * use if it is not held.
+     */
+    private final class Reloadable<T> {
+        private final String name;
+        private final Lazy.Loader<T> loader;
+        private final ResourceCache.Sizer<? super T> sizer;
+        private final Lazy<T> lazy;
+
+        Reloadable(String name, Lazy.Loader<T> loader, ResourceCache.Sizer<? super T> sizer, boolean held) {
+            this.name = name;
+            this.loader = loader;
+            this.sizer = sizer;
+            this.lazy = cache == null && held ? new Lazy<>(loader) : null;
+        }
+
+        T get() throws IOException {
+            if (lazy != null) {
+                return lazy.get();
+            }
+            return cache != null ? cache.get(name, loader::load, sizer) : loader.load();
+        }
+    }
+
+    public Mapping getMapping() {
+        return mapping;
+    }
+
+    /**
+     * Loads the maps of the gene network.
+     */
+    public NetworkMaps loadGeneMaps() throws IOException {
+        getProteinsToGenes();
+        loadProteinMaps();
+        return this;
+    }
+
+    /**
+     * Loads the maps of the protein network read by its writer. The complex and set relations are read by the index.
+     * With a resource cache, the maps it keeps are left to be loaded on use.
+     */
+    public NetworkMaps loadProteinMaps() throws IOException {
+        if (cache == null) {
+            getProteinsToNames();
+        }
+        return this;
+    }
+
+    /**
+     * Loads the maps of the proteoform network read by its writer. The proteoform relations are read by the index.
+     * With a resource cache, which keeps them all, nothing is loaded.
+     */
+    public NetworkMaps loadProteoformMaps() throws IOException {
+        if (cache == null) {
+            getProteinsToNames();
+            getProteinsToProteoforms();
+        }
+        return this;
+    }
+
+    public Multimap<String, String> getGenesToProteins() throws IOException {
+        return genesToProteins.get();
+    }
+
+    public Multimap<String, String> getProteinsToGenes() throws IOException {
+        return proteinsToGenes.get();
+    }
+
+    public Map<String, String> getProteinsToNames() throws IOException {
+        return proteinsToNames.get();
+    }
+
+    public Multimap<String, String> getProteinsToComplexes() throws IOException {
+        return proteinsToComplexes.get();
+    }
+
+    public Multimap<String, String> getComplexesToProteins() throws IOException {
+        return complexesToProteins.get();
+    }
+
+    public Multimap<String, String> getProteinsToSets() throws IOException {
+        return proteinsToSets.get();
+    }
+
+    public Multimap<String, String> getSetsToProteins() throws IOException {
+        return setsToProteins.get();
+    }
+
+    public Multimap<String, Proteoform> getProteinsToProteoforms() throws IOException {
+        return proteinsToProteoforms.get();
+    }
+
+    public Multimap<Proteoform, String> getProteoformsToReactions() throws IOException {
+        if (isLoaded(mapping.getProteoformsToReactions())) {
+            return mapping.getProteoformsToReactions();
+        }
+        return proteoformsToReactions.get();
+    }
+
+    public Multimap<Proteoform, String> getProteoformsToComplexes() throws IOException {
+        return proteoformsToComplexes.get();
+    }
+
+    public Multimap<String, Proteoform> getComplexesToProteoforms() throws IOException {
+        return complexesToProteoforms.get();
+    }
+
+    public Multimap<Proteoform, String> getProteoformsToSets() throws IOException {
+        return proteoformsToSets.get();
+    }
+
+    public Multimap<String, Proteoform> getSetsToProteoforms() throws IOException {
+        return setsToProteoforms.get();
+    }
+
+    /**
+     * @param withGenes index the proteins to genes relation too, for the gene network
+     */
+    public IndexedMapping getIndexedMapping(boolean withGenes) throws IOException {
+        return withGenes ? indexedMappingWithGenes.get() : indexedMapping.get();
+    }
+
+    public IndexedProteoforms getIndexedProteoforms() throws IOException {
+        return indexedProteoforms.get();
+    }
+
+    /**
+     * @return the proteins of the pathways, shared by the analyses of the samples of per sample runs
+     */
+    public PathwaySets getPathwaySets() throws IOException {
+        return pathwaySets.get();
+    }
+}
@@ -0,0 +1,93 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import no.uib.pap.model.Mapping;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static no.uib.pap.pathwaymatcher.data.IdDictionary.Kind.PATHWAY;
+import static no.uib.pap.pathwaymatcher.data.IdDictionary.Kind.PROTEIN;
+
+/**
+ * Proteins of each pathway of a {@link Mapping}, on int ids, for the over-representation analysis of many protein
+ * sets against the same pathways.
+ * <p>
+ * The proteins are those of the proteins to reactions relation, the background of the analyses of protein inputs,
+ * and the pathways of a protein are the pathways of its reactions. Counting the hits of a set of proteins in each
+ * pathway only walks the pathways of the proteins of the set.
+ */
+public class PathwaySets {
+
+    private final IdDictionary dictionary;
+    private final IntMultimap proteinsToPathways;
+    private final int[] pathwaySizes;
+
+    private PathwaySets(IdDictionary dictionary, IntMultimap proteinsToPathways, int[] pathwaySizes) {
+        this.dictionary = dictionary;
+        this.proteinsToPathways = proteinsToPathways;
+        this.pathwaySizes = pathwaySizes;
+    }
+
+    public static PathwaySets build(Mapping mapping) {
+        IdDictionary dictionary = new IdDictionary();
+        for (String protein : mapping.getProteinsToReactions().keySet()) {
+            dictionary.intern(PROTEIN, protein);
+        }
+
+        // The distinct pathways of each protein, sorted by id
+        IntMultimap.Builder builder = IntMultimap.builder(dictionary.size(PROTEIN));
+        TreeSet<Integer> pathways = new TreeSet<>();
+        for (Map.Entry<String, Collection<String>> entry : mapping.getProteinsToReactions().asMap().entrySet()) {
+            pathways.clear();
+            for (String reaction : entry.getValue()) {
+                for (String pathway : mapping.getReactionsToPathways().get(reaction)) {
+                    pathways.add(dictionary.intern(PATHWAY, pathway));
+                }
+            }
+            int protein = dictionary.getId(PROTEIN, entry.getKey());
+            for (int pathway : pathways) {
+                builder.put(protein, pathway);
+            }
+        }
+        IntMultimap proteinsToPathways = builder.build();
+
+        int[] pathwaySizes = new int[dictionary.size(PATHWAY)];
+        for (int I = 0; I < proteinsToPathways.size(); I++) {
+            pathwaySizes[proteinsToPathways.target(I)]++;
+        }
+        return new PathwaySets(dictionary, proteinsToPathways, pathwaySizes);
+    }
+
+    /**
+     * Ids of the proteins and the pathways.
+     */
+    public IdDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Distinct pathways of each protein, sorted by id.
+     */
+    public IntMultimap getProteinsToPathways() {
+        return proteinsToPathways;
+    }
+
+    /**
+     * Number of proteins of the analysis background.
+     */
+    public int getProteinCount() {
+        return dictionary.size(PROTEIN);
+    }
+
+    public int getPathwayCount() {
+        return pathwaySizes.length;
+    }
+
+    /**
+     * Number of proteins of a pathway.
+     */
+    public int getPathwaySize(int pathway) {
+        return pathwaySizes[pathway];
+    }
+}
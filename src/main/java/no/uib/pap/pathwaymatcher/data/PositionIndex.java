@@ -0,0 +1,209 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Base pair intervals of the proteins of one chromosome.
+ * <p>
+ * Each protein gets the interval from its first to its last position in the chrBpToProteins shard. The intervals
+ * are sorted by start, with the running maximum of the ends, so that the intervals overlapping a range are found
+ * with a binary search and a walk back that stops as soon as no earlier interval can reach the range.
+ * <p>
+ * The file is gzipped: interval count (int), then for each interval the protein (UTF), the difference of the start
+ * with the previous start (var long) and the length (var long).
+ */
+public class PositionIndex {
+
+    static final String FILE_PREFIX = "chrBpIndex";
+
+    private final String[] proteins;
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] maxEnds;
+
+    private PositionIndex(String[] proteins, long[] starts, long[] ends) {
+        this.proteins = proteins;
+        this.starts = starts;
+        this.ends = ends;
+        this.maxEnds = new long[ends.length];
+        long max = Long.MIN_VALUE;
+        for (int I = 0; I < ends.length; I++) {
+            max = Math.max(max, ends[I]);
+            maxEnds[I] = max;
+        }
+    }
+
+    public static String getFileName(int chromosome) {
+        return FILE_PREFIX + chromosome + ".gz";
+    }
+
+    /**
+     * Creates the intervals from a chrBpToProteins shard.
+     */
+    public static PositionIndex build(Multimap<Long, String> chrBpToProteins) {
+        Map<String, long[]> intervals = new HashMap<>();
+        for (Map.Entry<Long, String> entry : chrBpToProteins.entries()) {
+            long position = entry.getKey();
+            long[] interval = intervals.get(entry.getValue());
+            if (interval == null) {
+                intervals.put(entry.getValue(), new long[]{position, position});
+            } else {
+                interval[0] = Math.min(interval[0], position);
+                interval[1] = Math.max(interval[1], position);
+            }
+        }
+
+        List<Map.Entry<String, long[]>> sorted = new ArrayList<>(intervals.entrySet());
+        sorted.sort((a, b) -> a.getValue()[0] != b.getValue()[0]
+                ? Long.compare(a.getValue()[0], b.getValue()[0])
+                : a.getKey().compareTo(b.getKey()));
+
+        String[] proteins = new String[sorted.size()];
+        long[] starts = new long[sorted.size()];
+        long[] ends = new long[sorted.size()];
+        for (int I = 0; I < sorted.size(); I++) {
+            proteins[I] = sorted.get(I).getKey();
+            starts[I] = sorted.get(I).getValue()[0];
+            ends[I] = sorted.get(I).getValue()[1];
+        }
+        return new PositionIndex(proteins, starts, ends);
+    }
+
+    /**
+     * @return the intervals overlapping [from, to], in ascending order
+     */
+    public int[] overlapping(long from, long to) {
+        // Last interval starting at or before the end of the range
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= to) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return collect(high, from);
+    }
+
+    /**
+     * Finds the intervals near each position of a sorted batch in one pass, advancing over the starts instead of
+     * searching them again for every position.
+     *
+     * @param sortedPositions positions in ascending order
+     * @param window          maximum distance in base pairs between a position and an interval
+     * @return for each position the intervals within the window
+     */
+    public int[][] overlapping(long[] sortedPositions, long window) {
+        int[][] result = new int[sortedPositions.length][];
+        int last = -1;
+        for (int Q = 0; Q < sortedPositions.length; Q++) {
+            long to = sortedPositions[Q] + window;
+            while (last + 1 < starts.length && starts[last + 1] <= to) {
+                last++;
+            }
+            result[Q] = collect(last, sortedPositions[Q] - window);
+        }
+        return result;
+    }
+
+    private int[] collect(int last, long from) {
+        int[] found = new int[4];
+        int size = 0;
+        for (int I = last; I >= 0 && maxEnds[I] >= from; I--) {
+            if (ends[I] >= from) {
+                if (size == found.length) {
+                    found = Arrays.copyOf(found, size * 2);
+                }
+                found[size++] = I;
+            }
+        }
+        found = Arrays.copyOf(found, size);
+        Arrays.sort(found);
+        return found;
+    }
+
+    /**
+     * @return the proteins with an interval within the window of the position
+     */
+    public List<String> getProteins(long position, long window) {
+        List<String> result = new ArrayList<>();
+        for (int interval : overlapping(position - window, position + window)) {
+            result.add(proteins[interval]);
+        }
+        return result;
+    }
+
+    public String getProtein(int interval) {
+        return proteins[interval];
+    }
+
+    public long getStart(int interval) {
+        return starts[interval];
+    }
+
+    public long getEnd(int interval) {
+        return ends[interval];
+    }
+
+    /**
+     * @return the base pairs between the position and the interval, 0 if the position is inside it
+     */
+    public long distance(int interval, long position) {
+        if (position < starts[interval]) {
+            return starts[interval] - position;
+        }
+        return position > ends[interval] ? position - ends[interval] : 0;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    /**
+     * Approximate number of bytes taken by the index.
+     */
+    public long getMemoryFootprint() {
+        long bytes = starts.length * 24L;
+        for (String protein : proteins) {
+            bytes += 40 + protein.length() * 2L;
+        }
+        return bytes;
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            output.writeInt(starts.length);
+            long previous = 0;
+            for (int I = 0; I < starts.length; I++) {
+                output.writeUTF(proteins[I]);
+                RsIdDirectory.writeVarLong(output, starts[I] - previous);
+                RsIdDirectory.writeVarLong(output, ends[I] - starts[I]);
+                previous = starts[I];
+            }
+        }
+    }
+
+    public static PositionIndex read(InputStream stream) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)))) {
+            int count = input.readInt();
+            String[] proteins = new String[count];
+            long[] starts = new long[count];
+            long[] ends = new long[count];
+            long previous = 0;
+            for (int I = 0; I < count; I++) {
+                proteins[I] = input.readUTF();
+                previous += RsIdDirectory.readVarLong(input);
+                starts[I] = previous;
+                ends[I] = previous + RsIdDirectory.readVarLong(input);
+            }
+            return new PositionIndex(proteins, starts, ends);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Canonical store of proteoforms, each kept once with a dense int id.
+ * <p>
+ * A proteoform is packed as the id of its accession (isoform included) and a sorted long[] of its
+ * modifications, each one the PSI-MOD id in the high 32 bits and the site in the low 32 bits (-1 for an unknown
+ * site). Equal proteoforms get the same id, so comparing them is comparing ints, and the SIMPLE string is
+ * rendered once when the proteoform is registered.
+ * <p>
+ * {@link Proteoform} instances are looked up by identity first, so the instances shared by the maps of the
+ * {@code Mapping} are rendered and parsed only once.
+ */
+public class ProteoformRegistry {
+
+    private static final long[] NO_MODIFICATIONS = new long[0];
+
+    private final SymbolTable accessions = new SymbolTable();
+    private final Map<Proteoform, Integer> instances = new IdentityHashMap<>();
+    private final Map<Key, Integer> keys = new HashMap<>();
+
+    private int[] accessionIds = new int[64];
+    private long[][] modifications = new long[64][];
+    private String[] simple = new String[64];
+    private Proteoform[] proteoforms = new Proteoform[64];
+    private int size = 0;
+
+    /**
+     * Accession and packed modifications, compared by value.
+     */
+    private static final class Key {
+
+        private final int accession;
+        private final long[] modifications;
+        private final int hash;
+
+        Key(int accession, long[] modifications) {
+            this.accession = accession;
+            this.modifications = modifications;
+            this.hash = 31 * accession + Arrays.hashCode(modifications);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) object;
+            return accession == other.accession && Arrays.equals(modifications, other.modifications);
+        }
+    }
+
+    /**
+     * @return the id of the proteoform, registering it if it is new
+     */
+    public int intern(Proteoform proteoform) {
+        Integer id = instances.get(proteoform);
+        if (id == null) {
+            id = intern(proteoform.toString(ProteoformFormat.SIMPLE), proteoform);
+            instances.put(proteoform, id);
+        }
+        return id;
+    }
+
+    /**
+     * @param simple proteoform in the SIMPLE format, e.g. "A2RUS2;00046:472,00046:490"
+     * @return the id of the proteoform, registering it if it is new
+     * @throws IllegalArgumentException if the string is not a SIMPLE proteoform
+     */
+    public int intern(String simple) {
+        return intern(simple, null);
+    }
+
+    private int intern(String simpleString, Proteoform proteoform) {
+        int separator = simpleString.indexOf(';');
+        String accession = separator < 0 ? simpleString : simpleString.substring(0, separator);
+        long[] packed = separator < 0 ? NO_MODIFICATIONS : parseModifications(simpleString, separator + 1);
+        Key key = new Key(accessions.intern(accession), packed);
+
+        Integer id = keys.get(key);
+        if (id != null) {
+            if (proteoforms[id] == null) {
+                proteoforms[id] = proteoform;
+            }
+            return id;
+        }
+
+        if (size == accessionIds.length) {
+            int capacity = size * 2;
+            accessionIds = Arrays.copyOf(accessionIds, capacity);
+            modifications = Arrays.copyOf(modifications, capacity);
+            simple = Arrays.copyOf(simple, capacity);
+            proteoforms = Arrays.copyOf(proteoforms, capacity);
+        }
+        accessionIds[size] = key.accession;
+        modifications[size] = packed;
+        simple[size] = simpleString;
+        proteoforms[size] = proteoform;
+        keys.put(key, size);
+        return size++;
+    }
+
+    /**
+     * Reads the "MOD:SITE,MOD:SITE" part of a SIMPLE proteoform into sorted packed pairs.
+     */
+    static long[] parseModifications(String simple, int start) {
+        if (start >= simple.length()) {
+            return NO_MODIFICATIONS;
+        }
+        int count = 1;
+        for (int I = start; I < simple.length(); I++) {
+            if (simple.charAt(I) == ',') {
+                count++;
+            }
+        }
+        long[] packed = new long[count];
+        int index = 0;
+        int position = start;
+        while (position < simple.length()) {
+            int end = simple.indexOf(',', position);
+            if (end < 0) {
+                end = simple.length();
+            }
+            int colon = simple.indexOf(':', position);
+            if (colon < 0 || colon > end) {
+                throw new IllegalArgumentException("Invalid modification in proteoform " + simple);
+            }
+            int mod = parseInt(simple, position, colon);
+            int site = simple.regionMatches(colon + 1, "null", 0, 4) && end - colon - 1 == 4 ? -1 : parseInt(simple, colon + 1, end);
+            packed[index++] = pack(mod, site);
+            position = end + 1;
+        }
+        Arrays.sort(packed);
+        return packed;
+    }
+
+    private static int parseInt(String string, int start, int end) {
+        if (start >= end || end - start > 9) {
+            throw new IllegalArgumentException("Invalid number in proteoform " + string);
+        }
+        int value = 0;
+        for (int I = start; I < end; I++) {
+            char c = string.charAt(I);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Invalid number in proteoform " + string);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    public static long pack(int mod, int site) {
+        return (long) mod << 32 | (site & 0xFFFFFFFFL);
+    }
+
+    public static int getMod(long modification) {
+        return (int) (modification >>> 32);
+    }
+
+    /**
+     * @return the site of a packed modification, -1 if it is unknown
+     */
+    public static int getSite(long modification) {
+        return (int) modification;
+    }
+
+    /**
+     * @return the id of the proteoform, or -1 if it has not been registered
+     */
+    public int getId(Proteoform proteoform) {
+        Integer id = instances.get(proteoform);
+        if (id == null) {
+            String simpleString = proteoform.toString(ProteoformFormat.SIMPLE);
+            int separator = simpleString.indexOf(';');
+            int accession = accessions.getId(separator < 0 ? simpleString : simpleString.substring(0, separator));
+            if (accession < 0) {
+                return -1;
+            }
+            id = keys.get(new Key(accession, separator < 0 ? NO_MODIFICATIONS : parseModifications(simpleString, separator + 1)));
+        }
+        return id != null ? id : -1;
+    }
+
+    /**
+     * SIMPLE string of the proteoform, rendered when it was registered.
+     */
+    public String getSimple(int id) {
+        return simple[id];
+    }
+
+    public String getAccession(int id) {
+        return accessions.getString(accessionIds[id]);
+    }
+
+    public int getModificationCount(int id) {
+        return modifications[id].length;
+    }
+
+    /**
+     * @return the packed modification, see {@link #getMod} and {@link #getSite}
+     */
+    public long getModification(int id, int index) {
+        return modifications[id][index];
+    }
+
+    /**
+     * @return an instance of the proteoform, or null if it was only registered from a string
+     */
+    public Proteoform getProteoform(int id) {
+        return proteoforms[id];
+    }
+
+    /**
+     * Rough bytes taken by the registered proteoforms: their accessions, modifications, SIMPLE strings, the
+     * {@link Proteoform} instances kept for them and the lookup maps.
+     */
+    long estimateSize() {
+        long bytes = accessions.estimateSize() + 32L * accessionIds.length;
+        for (int id = 0; id < size; id++) {
+            bytes += 96 + 8L * modifications[id].length + 40 + 2L * simple[id].length();
+            if (proteoforms[id] != null) {
+                bytes += 64;
+            }
+        }
+        return bytes + 48L * instances.size();
+    }
+
+    public int size() {
+        return size;
+    }
+}
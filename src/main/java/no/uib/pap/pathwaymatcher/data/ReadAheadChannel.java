@@ -0,0 +1,121 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Channel reading ahead of its reader on another thread, so that reading and inflating a compressed input overlap
+ * with parsing it.
+ * <p>
+ * The source is read in blocks into a fixed number of buffers, which are handed to the reader and reused once it
+ * has consumed them. Errors of the source are rethrown by the next read.
+ */
+public class ReadAheadChannel implements ReadableByteChannel {
+
+    static final int BLOCK_SIZE = 1 << 16;
+    static final int BLOCKS = 4;
+
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    private final ReadableByteChannel source;
+    private final BlockingQueue<ByteBuffer> free;
+    private final BlockingQueue<ByteBuffer> filled;
+    private final Future<?> task;
+    private volatile IOException error;
+    private ByteBuffer current;
+    private boolean open = true;
+
+    public ReadAheadChannel(ReadableByteChannel source, ExecutorService executor) {
+        this(source, executor, BLOCK_SIZE, BLOCKS);
+    }
+
+    ReadAheadChannel(ReadableByteChannel source, ExecutorService executor, int blockSize, int blocks) {
+        this.source = source;
+        this.free = new ArrayBlockingQueue<>(blocks);
+        this.filled = new ArrayBlockingQueue<>(blocks + 1);
+        for (int I = 0; I < blocks; I++) {
+            free.add(ByteBuffer.allocate(blockSize));
+        }
+        this.task = executor.submit(this::readAhead);
+    }
+
+    private void readAhead() {
+        try {
+            while (true) {
+                ByteBuffer block = free.take();
+                block.clear();
+                int read = 0;
+                while (read >= 0 && block.hasRemaining()) {
+                    read = source.read(block);
+                }
+                block.flip();
+                if (block.hasRemaining()) {
+                    filled.put(block);
+                }
+                if (read < 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;     // Closed by the reader
+        }
+        try {
+            filled.put(END);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer destination) throws IOException {
+        if (current == END) {
+            return -1;
+        }
+        try {
+            if (current == null) {
+                current = filled.take();
+                if (current == END) {
+                    if (error != null) {
+                        throw new IOException(error.getMessage(), error);
+                    }
+                    return -1;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading ahead.");
+        }
+
+        int count = Math.min(destination.remaining(), current.remaining());
+        int limit = current.limit();
+        current.limit(current.position() + count);
+        destination.put(current);
+        current.limit(limit);
+        if (!current.hasRemaining()) {
+            free.add(current);
+            current = null;
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        task.cancel(true);
+        source.close();
+    }
+}
@@ -0,0 +1,211 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reloadable resources kept under a memory budget.
+ * <p>
+ * Each resource is stored with an estimate of its size. When the total goes over the budget the least recently
+ * used resources are dropped, and they are loaded again on their next access. A resource larger than the whole
+ * budget is still returned, but it is not kept.
+ * <p>
+ * Dropping a resource only releases the reference of the cache: callers that still hold it keep it alive.
+ * The cache is thread-safe; two threads asking for the same missing resource may both load it.
+ */
+public class ResourceCache {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    public interface Loader<T> {
+        T load() throws IOException;
+    }
+
+    public interface Sizer<T> {
+        long size(T resource);
+    }
+
+    private static final class Entry {
+        final Object resource;
+        final long size;
+
+        Entry(Object resource, long size) {
+            this.resource = resource;
+            this.size = size;
+        }
+    }
+
+    private final long budget;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> loadedBefore = new HashSet<>();
+
+    private long size = 0;
+    private long peakSize = 0;
+    private int loads = 0;
+    private int reloads = 0;
+    private int evictions = 0;
+
+    /**
+     * @param budget bytes the cached resources may take, {@link #UNLIMITED} to never evict
+     */
+    public ResourceCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns a resource, loading it if it is not in the cache.
+     *
+     * @param name   unique name of the resource, e.g. "chrBpIndex7"
+     * @param loader creates the resource
+     * @param sizer  estimates the bytes taken by the resource
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String name, Loader<T> loader, Sizer<? super T> sizer) throws IOException {
+        synchronized (this) {
+            Entry entry = entries.get(name);
+            if (entry != null) {
+                return (T) entry.resource;
+            }
+        }
+
+        T resource = loader.load();
+        long resourceSize = sizer.size(resource);
+
+        synchronized (this) {
+            Entry entry = entries.get(name);
+            if (entry != null) {
+                return (T) entry.resource;      // Loaded meanwhile by another thread
+            }
+            loads++;
+            if (!loadedBefore.add(name)) {
+                reloads++;
+            }
+            if (resourceSize > budget) {
+                return resource;
+            }
+            entries.put(name, new Entry(resource, resourceSize));
+            size += resourceSize;
+            evict(name);
+            peakSize = Math.max(peakSize, size);
+        }
+        return resource;
+    }
+
+    /**
+     * Drops the least recently used resources, except the one just added, until the cache fits the budget.
+     */
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (size > budget && iterator.hasNext()) {
+            Map.Entry<String, Entry> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            size -= entry.getValue().size;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized boolean contains(String name) {
+        return entries.containsKey(name);
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getPeakSize() {
+        return peakSize;
+    }
+
+    public synchronized int getLoads() {
+        return loads;
+    }
+
+    public synchronized int getReloads() {
+        return reloads;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    public synchronized void printSummary(PrintStream output) {
+        output.println("Mapping memory: " + (budget == UNLIMITED ? "no budget" : "budget " + toMegabytes(budget) + " MB")
+                + ", peak " + toMegabytes(peakSize) + " MB, " + loads + " loads, " + reloads + " reloads, "
+                + evictions + " evictions");
+    }
+
+    private static long toMegabytes(long bytes) {
+        return (bytes + 512 * 1024) / (1024 * 1024);
+    }
+
+    /**
+     * Rough size of a multimap of Strings or boxed numbers, as held by the serialized resources.
+     */
+    public static long estimate(Multimap<?, ?> multimap) {
+        long bytes = 64L * multimap.keySet().size() + 32L * multimap.size();
+        for (Object key : multimap.keySet()) {
+            bytes += estimate(key);
+        }
+        Set<Object> values = new HashSet<>(multimap.values());
+        for (Object value : values) {
+            bytes += estimate(value);
+        }
+        return bytes;
+    }
+
+    /**
+     * Rough size of a map of Strings or boxed numbers.
+     */
+    public static long estimate(Map<?, ?> map) {
+        long bytes = 48L * map.size();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            bytes += estimate(entry.getKey()) + estimate(entry.getValue());
+        }
+        return bytes;
+    }
+
+    private static long estimate(Object object) {
+        if (object instanceof String) {
+            return 40 + 2L * ((String) object).length();
+        }
+        return 16;
+    }
+
+    /**
+     * Reads a memory amount: a number of megabytes, or a number followed by k, m or g, e.g. "512", "800m" or "2g".
+     *
+     * @return the bytes, or -1 if the value is not a valid amount
+     */
+    public static long parseMemory(String value) {
+        value = value.trim().toLowerCase();
+        long unit = 1024 * 1024;
+        if (value.endsWith("k") || value.endsWith("m") || value.endsWith("g")) {
+            char suffix = value.charAt(value.length() - 1);
+            unit = suffix == 'k' ? 1024 : suffix == 'm' ? 1024 * 1024 : 1024 * 1024 * 1024;
+            value = value.substring(0, value.length() - 1);
+        }
+        if (value.isEmpty() || value.length() > 12) {
+            return -1;
+        }
+        for (int I = 0; I < value.length(); I++) {
+            if (!Character.isDigit(value.charAt(I))) {
+                return -1;
+            }
+        }
+        return Long.parseLong(value) * unit;
+    }
+}
@@ -0,0 +1,160 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * List of the files of a resources directory, with the number of entries, the size and the SHA-256 checksum of
+ * each one.
+ * <p>
+ * The file is tab separated, with a header line: FILE, ENTRIES, BYTES, SHA256.
+ */
+public class ResourceManifest {
+
+    public static final String FILE_NAME = "manifest.tsv";
+
+    private static final String HEADER = "FILE\tENTRIES\tBYTES\tSHA256";
+
+    public static class Entry {
+
+        private final String file;
+        private final long entries;
+        private final long bytes;
+        private final String checksum;
+
+        public Entry(String file, long entries, long bytes, String checksum) {
+            this.file = file;
+            this.entries = entries;
+            this.bytes = bytes;
+            this.checksum = checksum;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+    }
+
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    /**
+     * Adds a file, computing its size and checksum.
+     *
+     * @param count number of entries of the structure in the file
+     */
+    public synchronized Entry add(File file, long count) throws IOException {
+        Entry entry = new Entry(file.getName(), count, file.length(), checksum(file));
+        entries.put(entry.getFile(), entry);
+        return entry;
+    }
+
+    public synchronized void add(Entry entry) {
+        entries.put(entry.getFile(), entry);
+    }
+
+    /**
+     * @return the entry of the file, or null if it is not in the manifest
+     */
+    public synchronized Entry get(String file) {
+        return entries.get(file);
+    }
+
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void write(File file) throws IOException {
+        try (BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            output.write(HEADER);
+            output.newLine();
+            for (Entry entry : entries.values()) {
+                output.write(entry.getFile() + "\t" + entry.getEntries() + "\t" + entry.getBytes() + "\t" + entry.getChecksum());
+                output.newLine();
+            }
+        }
+    }
+
+    public static ResourceManifest read(File file) throws IOException {
+        ResourceManifest manifest = new ResourceManifest();
+        try (BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = input.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException("Not a resource manifest: " + file.getPath());
+            }
+            while ((line = input.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] columns = line.split("\t");
+                if (columns.length != 4) {
+                    throw new IOException("Invalid manifest line: " + line);
+                }
+                try {
+                    manifest.add(new Entry(columns[0], Long.parseLong(columns[1]), Long.parseLong(columns[2]), columns[3]));
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid manifest line: " + line);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * SHA-256 of the content of a file, in hexadecimal.
+     */
+    public static String checksum(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = new FileInputStream(file)) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * SHA-256 of the remaining bytes of a buffer, in hexadecimal. The position of the buffer is not changed.
+     */
+    public static String checksum(ByteBuffer buffer) {
+        MessageDigest digest = newDigest();
+        digest.update(buffer.duplicate());
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
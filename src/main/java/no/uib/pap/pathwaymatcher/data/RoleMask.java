@@ -0,0 +1,83 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import no.uib.pap.model.Role;
+
+import java.util.Set;
+
+/**
+ * Sets of reaction participant {@link Role}s as byte bitmasks, one bit per role ordinal.
+ * <p>
+ * The role pairs of two participants are the cross product of their bits, so a filter of chosen roles is a
+ * single and.
+ */
+public class RoleMask {
+
+    private static final Role[] ROLES = Role.values();
+    private static final String[] NAMES = new String[ROLES.length];
+
+    public static final byte NONE = 0;
+    public static final byte ALL = (byte) ((1 << ROLES.length) - 1);
+
+    static {
+        if (ROLES.length > 8) {
+            throw new IllegalStateException("There are more roles than bits in a role mask.");
+        }
+        for (Role role : ROLES) {
+            NAMES[role.ordinal()] = role.toString();
+        }
+    }
+
+    public static byte of(Role role) {
+        return (byte) (1 << role.ordinal());
+    }
+
+    /**
+     * @return the mask of the roles, {@link #NONE} if the set is null
+     */
+    public static byte of(Set<Role> roles) {
+        int mask = 0;
+        if (roles != null) {
+            for (Role role : roles) {
+                mask |= 1 << role.ordinal();
+            }
+        }
+        return (byte) mask;
+    }
+
+    /**
+     * Reads a comma separated list of role names, e.g. "catalyst" or "input,output".
+     *
+     * @throws IllegalArgumentException if a name is not a role
+     */
+    public static byte parse(String value) {
+        int mask = 0;
+        for (String name : value.split(",")) {
+            name = name.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            Role role = null;
+            for (Role candidate : ROLES) {
+                if (candidate.name().equalsIgnoreCase(name)) {
+                    role = candidate;
+                }
+            }
+            if (role == null) {
+                throw new IllegalArgumentException("Invalid role: " + name);
+            }
+            mask |= 1 << role.ordinal();
+        }
+        return (byte) mask;
+    }
+
+    /**
+     * Label of the role of a bit, as written in the network files.
+     */
+    public static String getName(int bit) {
+        return NAMES[bit];
+    }
+
+    public static boolean contains(byte mask, Role role) {
+        return (mask & (1 << role.ordinal())) != 0;
+    }
+}
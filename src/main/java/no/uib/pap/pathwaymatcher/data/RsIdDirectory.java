@@ -0,0 +1,177 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact directory telling in which chromosome each rsId is, so that the point queries read only the rsId indexes or
+ * block shards of the chromosomes of their rsIds.
+ * <p>
+ * The rsIds are kept as their sorted numbers with a parallel array of chromosomes.
+ * The file is gzipped: count (int), then for each rsId the difference with the previous number (var int)
+ * and the chromosome (byte).
+ */
+public class RsIdDirectory {
+
+    public static final String FILE_NAME = "rsIdsToChromosomes.gz";
+
+    private final long[] rsNumbers;
+    private final byte[] chromosomes;
+
+    private RsIdDirectory(long[] rsNumbers, byte[] chromosomes) {
+        this.rsNumbers = rsNumbers;
+        this.chromosomes = chromosomes;
+    }
+
+    /**
+     * Creates the directory from the rs numbers of each chromosome. If an rsId appears in several chromosomes
+     * the lowest chromosome is kept.
+     */
+    public static RsIdDirectory build(Map<Integer, long[]> rsNumbersByChromosome) {
+        int count = 0;
+        for (long[] rsNumbers : rsNumbersByChromosome.values()) {
+            count += rsNumbers.length;
+        }
+
+        // Sort the entries by rs number, with the chromosome in the low bits to keep them together
+        long[] entries = new long[count];
+        int index = 0;
+        for (Map.Entry<Integer, long[]> chromosome : rsNumbersByChromosome.entrySet()) {
+            for (long rsNumber : chromosome.getValue()) {
+                entries[index++] = rsNumber << 8 | chromosome.getKey();
+            }
+        }
+        Arrays.sort(entries);
+
+        long[] rsNumbers = new long[entries.length];
+        byte[] chromosomes = new byte[entries.length];
+        int size = 0;
+        for (long entry : entries) {
+            long rsNumber = entry >>> 8;
+            if (size > 0 && rsNumbers[size - 1] == rsNumber) {
+                continue;
+            }
+            rsNumbers[size] = rsNumber;
+            chromosomes[size] = (byte) (entry & 0xFF);
+            size++;
+        }
+        return new RsIdDirectory(Arrays.copyOf(rsNumbers, size), Arrays.copyOf(chromosomes, size));
+    }
+
+    /**
+     * Numbers of the valid rsIds of a collection, skipping other identifiers.
+     */
+    public static long[] toRsNumbers(Collection<String> rsIds) {
+        long[] rsNumbers = new long[rsIds.size()];
+        int size = 0;
+        for (String rsId : rsIds) {
+            long rsNumber = parseRsNumber(rsId);
+            if (rsNumber >= 0) {
+                rsNumbers[size++] = rsNumber;
+            }
+        }
+        return Arrays.copyOf(rsNumbers, size);
+    }
+
+    /**
+     * Number of an rsId, e.g. 10010131 for rs10010131.
+     *
+     * @return the number, or -1 if the identifier is not an rsId
+     */
+    public static long parseRsNumber(String rsId) {
+        int length = rsId.length();
+        if (length < 3 || length > 20 || (rsId.charAt(0) != 'r' && rsId.charAt(0) != 'R')
+                || (rsId.charAt(1) != 's' && rsId.charAt(1) != 'S')) {
+            return -1;
+        }
+        long number = 0;
+        for (int I = 2; I < length; I++) {
+            char c = rsId.charAt(I);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * @return the chromosome of the rsId, or 0 if it is not in the directory
+     */
+    public int getChromosome(String rsId) {
+        long rsNumber = parseRsNumber(rsId);
+        if (rsNumber < 0) {
+            return 0;
+        }
+        int index = Arrays.binarySearch(rsNumbers, rsNumber);
+        return index >= 0 ? chromosomes[index] : 0;
+    }
+
+    public int size() {
+        return rsNumbers.length;
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            output.writeInt(rsNumbers.length);
+            long previous = 0;
+            for (int I = 0; I < rsNumbers.length; I++) {
+                writeVarLong(output, rsNumbers[I] - previous);
+                output.writeByte(chromosomes[I]);
+                previous = rsNumbers[I];
+            }
+        }
+    }
+
+    public static RsIdDirectory read(InputStream stream) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)))) {
+            int count = input.readInt();
+            long[] rsNumbers = new long[count];
+            byte[] chromosomes = new byte[count];
+            long previous = 0;
+            for (int I = 0; I < count; I++) {
+                previous += readVarLong(input);
+                rsNumbers[I] = previous;
+                chromosomes[I] = input.readByte();
+            }
+            return new RsIdDirectory(rsNumbers, chromosomes);
+        }
+    }
+
+    /**
+     * Reads the directory from the class path or the resources directory.
+     *
+     * @return the directory, or null if it has not been built
+     */
+    public static RsIdDirectory load() {
+        try {
+            return read(SerializedResources.open(FILE_NAME));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = input.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
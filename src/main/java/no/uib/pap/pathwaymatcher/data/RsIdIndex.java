@@ -0,0 +1,266 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * rsId to protein index of one chromosome.
+ * <p>
+ * The rsIds are kept as their sorted numbers. The proteins of the rsId at index I are
+ * proteins[offsets[I]] until proteins[offsets[I + 1]], as ids in the sorted protein table of the shard.
+ * The three arrays can be placed off-heap, in direct buffers.
+ * <p>
+ * Only the point queries read rsIds from these indexes, off-heap: the engine preloads them when it creates an rsId
+ * point query. Full rsId searches do not use them, as Search.search looks rsIds up in the String keyed shards of
+ * the mapping, all of which it loads.
+ * <p>
+ * The file is gzipped: protein count (int) and the proteins (UTF), rsId count (int), then for each rsId the
+ * difference with the previous number (var long), the number of proteins (var int) and the protein ids (var int).
+ */
+public class RsIdIndex {
+
+    static final String FILE_PREFIX = "rsIdIndex";
+
+    private final String[] proteinTable;
+    private final LongBuffer rsNumbers;
+    private final IntBuffer offsets;
+    private final IntBuffer proteins;
+
+    private RsIdIndex(String[] proteinTable, long[] rsNumbers, int[] offsets, int[] proteins, boolean offHeap) {
+        this.proteinTable = proteinTable;
+        if (offHeap) {
+            this.rsNumbers = directBuffer(rsNumbers.length * 8).asLongBuffer().put(rsNumbers);
+            this.offsets = directBuffer(offsets.length * 4).asIntBuffer().put(offsets);
+            this.proteins = directBuffer(proteins.length * 4).asIntBuffer().put(proteins);
+        } else {
+            this.rsNumbers = LongBuffer.wrap(rsNumbers);
+            this.offsets = IntBuffer.wrap(offsets);
+            this.proteins = IntBuffer.wrap(proteins);
+        }
+    }
+
+    private static ByteBuffer directBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    public static String getFileName(int chromosome) {
+        return FILE_PREFIX + chromosome + ".gz";
+    }
+
+    /**
+     * Creates the index from an rsIdsToProteins shard. Keys that are not rsIds, like "NA", are skipped.
+     */
+    public static RsIdIndex build(Multimap<String, String> rsIdsToProteins, boolean offHeap) {
+        String[] proteinTable = new TreeSet<>(rsIdsToProteins.values()).toArray(new String[0]);
+
+        // Sort the rsIds by number, keeping the identifier to reach its proteins
+        long[] keys = new long[rsIdsToProteins.keySet().size()];
+        Map<Long, String> rsIds = new HashMap<>(keys.length * 2);
+        int size = 0;
+        for (String rsId : rsIdsToProteins.keySet()) {
+            long rsNumber = RsIdDirectory.parseRsNumber(rsId);
+            if (rsNumber >= 0 && rsIds.put(rsNumber, rsId) == null) {
+                keys[size++] = rsNumber;
+            }
+        }
+        long[] rsNumbers = Arrays.copyOf(keys, size);
+        Arrays.sort(rsNumbers);
+
+        int[] offsets = new int[rsNumbers.length + 1];
+        int[] proteins = new int[rsIdsToProteins.size()];
+        int position = 0;
+        for (int I = 0; I < rsNumbers.length; I++) {
+            offsets[I] = position;
+            for (String protein : rsIdsToProteins.get(rsIds.get(rsNumbers[I]))) {
+                proteins[position++] = Arrays.binarySearch(proteinTable, protein);
+            }
+            Arrays.sort(proteins, offsets[I], position);
+        }
+        offsets[rsNumbers.length] = position;
+        return new RsIdIndex(proteinTable, rsNumbers, offsets, Arrays.copyOf(proteins, position), offHeap);
+    }
+
+    /**
+     * Finds the index of an rs number with interpolation search, switching to binary search when the
+     * numbers are not evenly spread.
+     *
+     * @return the index, or -1 if the rs number is not in the shard
+     */
+    int indexOf(long rsNumber) {
+        int low = 0;
+        int high = rsNumbers.limit() - 1;
+        int probes = 0;
+        while (low <= high) {
+            long lowValue = rsNumbers.get(low);
+            long highValue = rsNumbers.get(high);
+            if (rsNumber < lowValue || rsNumber > highValue) {
+                return -1;
+            }
+            int middle;
+            if (probes++ < 4 && highValue > lowValue) {
+                middle = low + (int) ((double) (rsNumber - lowValue) / (highValue - lowValue) * (high - low));
+            } else {
+                middle = (low + high) >>> 1;
+            }
+            long value = rsNumbers.get(middle);
+            if (value < rsNumber) {
+                low = middle + 1;
+            } else if (value > rsNumber) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds many rs numbers at once, walking the index forward from the last match instead of searching it
+     * from the start for each number.
+     *
+     * @param sortedRsNumbers rs numbers in ascending order, e.g. from {@link RsIdDirectory#toRsNumbers}
+     * @return for each rs number its index, or -1 if it is not in the shard
+     */
+    public int[] indexOf(long[] sortedRsNumbers) {
+        int[] indexes = new int[sortedRsNumbers.length];
+        int size = size();
+        int low = 0;
+        for (int Q = 0; Q < sortedRsNumbers.length; Q++) {
+            long rsNumber = sortedRsNumbers[Q];
+            // Gallop to a range that contains the number, then search inside it
+            int step = 1;
+            int high = low;
+            while (high < size && rsNumbers.get(high) < rsNumber) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            high = Math.min(high, size - 1);
+            int index = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long value = rsNumbers.get(middle);
+                if (value < rsNumber) {
+                    low = middle + 1;
+                } else if (value > rsNumber) {
+                    high = middle - 1;
+                } else {
+                    index = middle;
+                    break;
+                }
+            }
+            indexes[Q] = index;
+            if (index >= 0) {
+                low = index;
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * @return the proteins of the rsId at an index returned by {@link #indexOf(long[])}
+     */
+    public List<String> getProteins(int index) {
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        int start = offsets.get(index);
+        int end = offsets.get(index + 1);
+        List<String> result = new ArrayList<>(end - start);
+        for (int P = start; P < end; P++) {
+            result.add(proteinTable[proteins.get(P)]);
+        }
+        return result;
+    }
+
+    public boolean contains(String rsId) {
+        long rsNumber = RsIdDirectory.parseRsNumber(rsId);
+        return rsNumber >= 0 && indexOf(rsNumber) >= 0;
+    }
+
+    /**
+     * @return the proteins of the rsId, empty if it is not in the shard
+     */
+    public List<String> getProteins(String rsId) {
+        long rsNumber = RsIdDirectory.parseRsNumber(rsId);
+        return getProteins(rsNumber >= 0 ? indexOf(rsNumber) : -1);
+    }
+
+    public int size() {
+        return rsNumbers.limit();
+    }
+
+    public boolean isOffHeap() {
+        return rsNumbers.isDirect();
+    }
+
+    /**
+     * Approximate number of bytes taken by the arrays of the index.
+     */
+    public long getMemoryFootprint() {
+        long bytes = rsNumbers.limit() * 8L + offsets.limit() * 4L + proteins.limit() * 4L;
+        for (String protein : proteinTable) {
+            bytes += 40 + protein.length() * 2L;
+        }
+        return bytes;
+    }
+
+    public void write(File file) throws IOException {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            output.writeInt(proteinTable.length);
+            for (String protein : proteinTable) {
+                output.writeUTF(protein);
+            }
+            output.writeInt(size());
+            long previous = 0;
+            for (int I = 0; I < size(); I++) {
+                long rsNumber = rsNumbers.get(I);
+                RsIdDirectory.writeVarLong(output, rsNumber - previous);
+                previous = rsNumber;
+                int start = offsets.get(I);
+                int end = offsets.get(I + 1);
+                RsIdDirectory.writeVarLong(output, end - start);
+                for (int P = start; P < end; P++) {
+                    RsIdDirectory.writeVarLong(output, proteins.get(P));
+                }
+            }
+        }
+    }
+
+    public static RsIdIndex read(InputStream stream, boolean offHeap) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(stream)))) {
+            String[] proteinTable = new String[input.readInt()];
+            for (int I = 0; I < proteinTable.length; I++) {
+                proteinTable[I] = input.readUTF();
+            }
+            int count = input.readInt();
+            long[] rsNumbers = new long[count];
+            int[] offsets = new int[count + 1];
+            int[] proteins = new int[Math.max(16, count)];
+            int position = 0;
+            long previous = 0;
+            for (int I = 0; I < count; I++) {
+                previous += RsIdDirectory.readVarLong(input);
+                rsNumbers[I] = previous;
+                offsets[I] = position;
+                int proteinCount = (int) RsIdDirectory.readVarLong(input);
+                if (position + proteinCount > proteins.length) {
+                    proteins = Arrays.copyOf(proteins, Math.max(proteins.length * 2, position + proteinCount));
+                }
+                for (int P = 0; P < proteinCount; P++) {
+                    proteins[position++] = (int) RsIdDirectory.readVarLong(input);
+                }
+            }
+            offsets[count] = position;
+            return new RsIdIndex(proteinTable, rsNumbers, offsets, Arrays.copyOf(proteins, position), offHeap);
+        }
+    }
+}
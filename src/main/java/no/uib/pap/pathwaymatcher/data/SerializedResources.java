@@ -0,0 +1,53 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the gzipped, Java-serialized structures of the resources directory.
+ */
+public class SerializedResources {
+
+    /**
+     * Directory used when a resource is not found in the class path.
+     */
+    public static String RESOURCES_PATH = "resources/";
+
+    /**
+     * Reads a resource by file name, e.g. "proteinsToNames.gz", from the class path or the resources directory.
+     */
+    public static Object read(String fileName) throws IOException {
+        InputStream stream = ClassLoader.getSystemResourceAsStream(fileName);
+        if (stream == null) {
+            File file = new File(RESOURCES_PATH + fileName);
+            if (!file.exists()) {
+                throw new FileNotFoundException("Could not find the resource " + fileName);
+            }
+            stream = new FileInputStream(file);
+        }
+        return read(stream, fileName);
+    }
+
+    public static Object read(File file) throws IOException {
+        return read(new FileInputStream(file), file.getName());
+    }
+
+    /**
+     * Opens a resource by file name without decompressing it.
+     */
+    public static InputStream open(String fileName) throws IOException {
+        InputStream stream = ClassLoader.getSystemResourceAsStream(fileName);
+        if (stream == null) {
+            return new FileInputStream(RESOURCES_PATH + fileName);
+        }
+        return stream;
+    }
+
+    private static Object read(InputStream stream, String name) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new GZIPInputStream(new BufferedInputStream(stream)))) {
+            return input.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Could not deserialize the resource " + name, e);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.model.InputType;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads the per chromosome chrBpToProteins shards, and the rsId and position indexes.
+ * <p>
+ * The callers scan their input first to find the chromosomes it touches, then load only those, in parallel on the
+ * executor they pass. The variant window and per sample runs load the position indexes and chrBp shards this way,
+ * and the point queries the rsId indexes. Searches of rsIds or chrBp without a window do not: they run on the
+ * mapping of their input type, which reads its own shards.
+ */
+public class SnpShards {
+
+    public static final int CHROMOSOMES = 22;
+
+    static final String RSIDS_SHARD = "rsIdsToProteins";
+    static final String CHRBP_SHARD = "chrBpToProteins";
+
+    /**
+     * Finds the chromosomes needed to search the input.
+     *
+     * @param directory rsId directory, used only for rsId inputs. If it is null all chromosomes are returned for rsIds.
+     * @return the sorted chromosome numbers, empty for input types that are not genetic variants
+     */
+    public static SortedSet<Integer> getChromosomes(List<String> input, InputType inputType, RsIdDirectory directory) {
+        SortedSet<Integer> chromosomes = new TreeSet<>();
+        switch (inputType) {
+            case RSID:
+            case RSIDS:
+                if (directory == null) {
+                    return allChromosomes();
+                }
+                for (String line : input) {
+                    int chromosome = directory.getChromosome(line.trim());
+                    if (chromosome > 0) {
+                        chromosomes.add(chromosome);
+                    }
+                }
+                break;
+            case CHRBP:
+            case CHRBPS:
+            case VCF:
+                for (String line : input) {
+                    if (line.startsWith("#")) {
+                        continue;
+                    }
+                    int chromosome = parseChromosome(line);
+                    if (chromosome > 0) {
+                        chromosomes.add(chromosome);
+                    }
+                }
+                break;
+        }
+        return chromosomes;
+    }
+
+    /**
+     * Reads the chromosome in the first column of a chrBp or vcf line, e.g. "1 11854476" or "chr1\t11854476".
+     *
+     * @return the chromosome number, or 0 if it is not an autosome
+     */
+    public static int parseChromosome(String line) {
+        int start = 0;
+        while (start < line.length() && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        if (line.regionMatches(true, start, "chr", 0, 3)) {
+            start += 3;
+        }
+        int chromosome = 0;
+        int end = start;
+        while (end < line.length() && Character.isDigit(line.charAt(end))) {
+            chromosome = chromosome * 10 + (line.charAt(end) - '0');
+            end++;
+        }
+        if (end == start || end - start > 2 || (end < line.length() && !Character.isWhitespace(line.charAt(end)))) {
+            return 0;
+        }
+        return chromosome <= CHROMOSOMES ? chromosome : 0;
+    }
+
+    public static SortedSet<Integer> allChromosomes() {
+        SortedSet<Integer> chromosomes = new TreeSet<>();
+        for (int chromosome = 1; chromosome <= CHROMOSOMES; chromosome++) {
+            chromosomes.add(chromosome);
+        }
+        return chromosomes;
+    }
+
+    /**
+     * @param cache    keeps the shards between calls under its memory budget, or null to always load them
+     * @param executor loads the shards in parallel, or null to load them in the calling thread
+     */
+    public static Map<Integer, Multimap<Long, String>> loadChrBpShards(Set<Integer> chromosomes, ResourceCache cache,
+                                                                        ExecutorService executor) throws IOException {
+        return loadShards(CHRBP_SHARD, chromosomes, cache, executor);
+    }
+
+    /**
+     * Loads the rsId indexes of the chromosomes. When the index file of a chromosome has not been built, the index
+     * is created from its rsIdsToProteins shard.
+     *
+     * @param offHeap  keep the index arrays in direct buffers
+     * @param cache    keeps the indexes between calls under its memory budget, or null to always load them
+     * @param executor loads the indexes in parallel, or null to load them in the calling thread
+     */
+    public static Map<Integer, RsIdIndex> loadRsIdIndexes(Set<Integer> chromosomes, boolean offHeap, ResourceCache cache,
+                                                          ExecutorService executor) throws IOException {
+        return load("rsId index", chromosomes, cache, executor, RsIdIndex::getFileName, RsIdIndex::getMemoryFootprint, chromosome -> {
+            InputStream stream;
+            try {
+                stream = SerializedResources.open(RsIdIndex.getFileName(chromosome));
+            } catch (FileNotFoundException e) {
+                @SuppressWarnings("unchecked")
+                Multimap<String, String> shard = (Multimap<String, String>) SerializedResources.read(RSIDS_SHARD + chromosome + ".gz");
+                return RsIdIndex.build(shard, offHeap);
+            }
+            return RsIdIndex.read(stream, offHeap);
+        });
+    }
+
+    /**
+     * Loads the base pair interval indexes of the chromosomes. When the index file of a chromosome has not been
+     * built, the index is created from its chrBpToProteins shard.
+     *
+     * @param cache    keeps the indexes between calls under its memory budget, or null to always load them
+     * @param executor loads the indexes in parallel, or null to load them in the calling thread
+     */
+    public static Map<Integer, PositionIndex> loadPositionIndexes(Set<Integer> chromosomes, ResourceCache cache,
+                                                                  ExecutorService executor) throws IOException {
+        return load("position index", chromosomes, cache, executor, PositionIndex::getFileName, PositionIndex::getMemoryFootprint,
+                SnpShards::loadPositionIndex);
+    }
+
+    /**
+     * Loads the base pair interval index of one chromosome, through the cache when there is one.
+     */
+    public static PositionIndex getPositionIndex(int chromosome, ResourceCache cache) throws IOException {
+        if (cache == null) {
+            return loadPositionIndex(chromosome);
+        }
+        return cache.get(PositionIndex.getFileName(chromosome), () -> loadPositionIndex(chromosome), PositionIndex::getMemoryFootprint);
+    }
+
+    private static PositionIndex loadPositionIndex(int chromosome) throws IOException {
+        InputStream stream;
+        try {
+            stream = SerializedResources.open(PositionIndex.getFileName(chromosome));
+        } catch (FileNotFoundException e) {
+            @SuppressWarnings("unchecked")
+            Multimap<Long, String> shard = (Multimap<Long, String>) SerializedResources.read(CHRBP_SHARD + chromosome + ".gz");
+            return PositionIndex.build(shard);
+        }
+        return PositionIndex.read(stream);
+    }
+
+    /**
+     * Deserializes the shards of the chromosomes, one task per shard.
+     */
+    @SuppressWarnings("unchecked")
+    static <K> Map<Integer, Multimap<K, String>> loadShards(String prefix, Set<Integer> chromosomes, ResourceCache cache,
+                                                           ExecutorService executor) throws IOException {
+        return load(prefix + " shards", chromosomes, cache, executor, chromosome -> prefix + chromosome + ".gz", ResourceCache::estimate,
+                chromosome -> (Multimap<K, String>) SerializedResources.read(prefix + chromosome + ".gz"));
+    }
+
+    interface ShardLoader<T> {
+        T load(int chromosome) throws IOException;
+    }
+
+    interface ShardName {
+        String get(int chromosome);
+    }
+
+    private static <T> Map<Integer, T> load(String name, Set<Integer> chromosomes, ResourceCache cache, ExecutorService executor,
+                                            ShardName shardName, ResourceCache.Sizer<? super T> sizer, ShardLoader<T> loader) throws IOException {
+        ShardLoader<T> shardLoader = cache == null ? loader
+                : chromosome -> cache.get(shardName.get(chromosome), () -> loader.load(chromosome), sizer);
+        Map<Integer, T> shards = new TreeMap<>();
+        if (executor == null || chromosomes.size() < 2) {
+            for (Integer chromosome : chromosomes) {
+                shards.put(chromosome, shardLoader.load(chromosome));
+            }
+            return shards;
+        }
+
+        Map<Integer, Future<T>> futures = new TreeMap<>();
+        try {
+            for (Integer chromosome : chromosomes) {
+                futures.put(chromosome, executor.submit(() -> shardLoader.load(chromosome)));
+            }
+            for (Map.Entry<Integer, Future<T>> future : futures.entrySet()) {
+                shards.put(future.getKey(), future.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + name + ".", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not load " + name + ".", e.getCause());
+        } finally {
+            // The executor is shared, so only the tasks of this call are stopped
+            for (Future<T> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,85 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Read-only view of a table of strings stored in a bundle section.
+ * <p>
+ * Layout: count (int), offsets (int[count + 1]) into the heap, heap size (int), heap (UTF-8 bytes).
+ * The strings are sorted by their unsigned UTF-8 bytes, so they can be searched without decoding.
+ */
+final class StringTable {
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int offsetsPosition;
+    private final int heapPosition;
+    private final int end;
+
+    StringTable(ByteBuffer buffer, int position) {
+        this.buffer = buffer;
+        this.count = buffer.getInt(position);
+        this.offsetsPosition = position + 4;
+        int heapSizePosition = offsetsPosition + 4 * (count + 1);
+        this.heapPosition = heapSizePosition + 4;
+        this.end = heapPosition + buffer.getInt(heapSizePosition);
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Position of the first byte after this table.
+     */
+    int end() {
+        return end;
+    }
+
+    String get(int index) {
+        int start = buffer.getInt(offsetsPosition + 4 * index);
+        int length = buffer.getInt(offsetsPosition + 4 * (index + 1)) - start;
+        byte[] bytes = new byte[length];
+        for (int I = 0; I < length; I++) {
+            bytes[I] = buffer.get(heapPosition + start + I);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Binary search of a string in the table.
+     *
+     * @return the index of the string, or -1 if it is not in the table
+     */
+    int indexOf(String value) {
+        byte[] key = value.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(middle, key);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compare(int index, byte[] key) {
+        int start = heapPosition + buffer.getInt(offsetsPosition + 4 * index);
+        int length = heapPosition + buffer.getInt(offsetsPosition + 4 * (index + 1)) - start;
+        int common = Math.min(length, key.length);
+        for (int I = 0; I < common; I++) {
+            int difference = (buffer.get(start + I) & 0xFF) - (key[I] & 0xFF);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length;
+    }
+}
@@ -0,0 +1,88 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.util.Arrays;
+
+/**
+ * Assigns dense int ids, in order of arrival, to the identifiers of one kind of entity.
+ * <p>
+ * Open addressing hash table with linear probing, so that lookups do not box the ids.
+ */
+final class SymbolTable {
+
+    private String[] strings = new String[16];
+    private String[] slots = new String[32];
+    private int[] slotIds = new int[32];
+    private int size = 0;
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Rough bytes taken by the table and its strings.
+     */
+    long estimateSize() {
+        long bytes = 64 + 8L * strings.length + 12L * slots.length;
+        for (int id = 0; id < size; id++) {
+            bytes += 40 + 2L * strings[id].length();
+        }
+        return bytes;
+    }
+
+    /**
+     * @return the id of the string, or -1 if it has not been added
+     */
+    int getId(String string) {
+        int mask = slots.length - 1;
+        for (int slot = string.hashCode() & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            if (slots[slot].equals(string)) {
+                return slotIds[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds the string if it is not present.
+     *
+     * @return the id of the string
+     */
+    int intern(String string) {
+        int mask = slots.length - 1;
+        int slot = string.hashCode() & mask;
+        for (; slots[slot] != null; slot = (slot + 1) & mask) {
+            if (slots[slot].equals(string)) {
+                return slotIds[slot];
+            }
+        }
+        if (size == strings.length) {
+            strings = Arrays.copyOf(strings, size * 2);
+        }
+        strings[size] = string;
+        slots[slot] = string;
+        slotIds[slot] = size;
+        size++;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    String getString(int id) {
+        return strings[id];
+    }
+
+    private void rehash() {
+        slots = new String[slots.length * 2];
+        slotIds = new int[slots.length];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = strings[id].hashCode() & mask;
+            while (slots[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = strings[id];
+            slotIds[slot] = id;
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Coordinate index of a sorted vcf or chrBp file compressed with bgzip, in the .tbi format of tabix, so that the
+ * variants of a region are read without scanning the file.
+ * <p>
+ * The variants of each sequence are indexed in two ways, like tabix does. The binning index puts each variant in
+ * the smallest of a hierarchy of bins, from the whole sequence down to 16kb, that contains it, and keeps for each
+ * bin the chunks of the file, as pairs of {@link BgzfChannel} virtual offsets, with its variants. The linear index
+ * keeps for each 16kb window the offset of the first variant overlapping it. The chunks of a region are those of
+ * the bins overlapping it that end after the linear offset of its start. They may contain variants outside the
+ * region, which the reader skips.
+ * <p>
+ * Indexes written by {@link #build} use the vcf preset of tabix, so tabix and other readers of .tbi files can use
+ * them too, and this class reads the indexes written by tabix.
+ */
+public class TabixIndex {
+
+    public static final String EXTENSION = ".tbi";
+
+    private static final byte[] MAGIC = {'T', 'B', 'I', 1};
+    private static final int LINEAR_SHIFT = 14;
+    private static final int MAX_POSITION = 1 << 29;
+    private static final int VCF_FORMAT = 2;
+
+    // First bin and size in bits of the bins of each level, from 64Mb down to 16kb
+    private static final int[] LEVEL_FIRST_BINS = {1, 9, 73, 585, 4681};
+    private static final int[] LEVEL_SHIFTS = {26, 23, 20, 17, 14};
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Map<Integer, long[]>> bins = new ArrayList<>();
+    private final List<long[]> linear = new ArrayList<>();
+
+    private TabixIndex() {
+    }
+
+    /**
+     * @return the index file of a bgzip file, next to it with the .tbi extension
+     */
+    public static File getIndexFile(File file) {
+        return new File(file.getPath() + EXTENSION);
+    }
+
+    /**
+     * Names of the sequences, in the order of the file.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Chunks of the file that contain the variants of a region. The sequence of the region is looked up with and
+     * without the chr prefix.
+     *
+     * @return the start and end virtual offsets of the chunks, sorted and merged, empty if the sequence is not indexed
+     */
+    public long[] getChunks(GenomicRegion region) {
+        int sequence = names.indexOf(String.valueOf(region.getChromosome()));
+        if (sequence < 0) {
+            sequence = names.indexOf("chr" + region.getChromosome());
+        }
+        if (sequence < 0 || region.getStart() > MAX_POSITION) {
+            return new long[0];
+        }
+        int start = (int) region.getStart() - 1;
+        int end = (int) Math.min(region.getEnd(), MAX_POSITION);
+
+        long[] offsets = linear.get(sequence);
+        long minimum = offsets.length == 0 ? 0L : offsets[Math.min(start >> LINEAR_SHIFT, offsets.length - 1)];
+        List<long[]> found = new ArrayList<>();
+        Map<Integer, long[]> sequenceBins = bins.get(sequence);
+        for (int bin : overlappingBins(start, end)) {
+            long[] chunks = sequenceBins.get(bin);
+            if (chunks == null) {
+                continue;
+            }
+            for (int I = 0; I < chunks.length; I += 2) {
+                if (Long.compareUnsigned(chunks[I + 1], minimum) > 0) {
+                    found.add(new long[]{chunks[I], chunks[I + 1]});
+                }
+            }
+        }
+        found.sort((a, b) -> Long.compareUnsigned(a[0], b[0]));
+
+        long[] merged = new long[found.size() * 2];
+        int size = 0;
+        for (long[] chunk : found) {
+            if (size > 0 && Long.compareUnsigned(chunk[0], merged[size - 1]) <= 0) {
+                if (Long.compareUnsigned(chunk[1], merged[size - 1]) > 0) {
+                    merged[size - 1] = chunk[1];
+                }
+            } else {
+                merged[size++] = chunk[0];
+                merged[size++] = chunk[1];
+            }
+        }
+        return Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * Bin of the smallest level that contains the 0-based range [start, end).
+     */
+    static int getBin(int start, int end) {
+        end--;
+        for (int level = LEVEL_SHIFTS.length - 1; level >= 0; level--) {
+            if (start >> LEVEL_SHIFTS[level] == end >> LEVEL_SHIFTS[level]) {
+                return LEVEL_FIRST_BINS[level] + (start >> LEVEL_SHIFTS[level]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Bins of all the levels that overlap the 0-based range [start, end).
+     */
+    static List<Integer> overlappingBins(int start, int end) {
+        List<Integer> result = new ArrayList<>();
+        end--;
+        result.add(0);
+        for (int level = 0; level < LEVEL_SHIFTS.length; level++) {
+            int first = LEVEL_FIRST_BINS[level];
+            for (int bin = first + (start >> LEVEL_SHIFTS[level]); bin <= first + (end >> LEVEL_SHIFTS[level]); bin++) {
+                result.add(bin);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads a .tbi file.
+     */
+    public static TabixIndex read(File file) throws IOException {
+        byte[] bytes;
+        try (InputStream input = new GZIPInputStream(new FileInputStream(file))) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1 << 16];
+            int count;
+            while ((count = input.read(buffer)) >= 0) {
+                output.write(buffer, 0, count);
+            }
+            bytes = output.toByteArray();
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                throw new IOException("Not a tabix index: " + file.getPath());
+            }
+            TabixIndex index = new TabixIndex();
+            int sequences = buffer.getInt();
+            buffer.position(buffer.position() + 6 * 4);     // Format, columns, meta character and skipped lines
+            byte[] namesBytes = new byte[buffer.getInt()];
+            buffer.get(namesBytes);
+            int start = 0;
+            for (int I = 0; I < namesBytes.length; I++) {
+                if (namesBytes[I] == 0) {
+                    index.names.add(new String(namesBytes, start, I - start, StandardCharsets.ISO_8859_1));
+                    start = I + 1;
+                }
+            }
+            if (index.names.size() != sequences) {
+                throw new IOException("Invalid tabix index: " + file.getPath());
+            }
+
+            for (int sequence = 0; sequence < sequences; sequence++) {
+                Map<Integer, long[]> sequenceBins = new HashMap<>();
+                int binCount = buffer.getInt();
+                for (int B = 0; B < binCount; B++) {
+                    int bin = buffer.getInt();
+                    long[] chunks = new long[2 * buffer.getInt()];
+                    for (int C = 0; C < chunks.length; C++) {
+                        chunks[C] = buffer.getLong();
+                    }
+                    sequenceBins.put(bin, chunks);
+                }
+                long[] offsets = new long[buffer.getInt()];
+                for (int W = 0; W < offsets.length; W++) {
+                    offsets[W] = buffer.getLong();
+                }
+                index.bins.add(sequenceBins);
+                index.linear.add(offsets);
+            }
+            return index;
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid tabix index: " + file.getPath(), e);
+        }
+    }
+
+    /**
+     * Indexes a sorted vcf or chrBp file compressed with bgzip. Lines starting with # are skipped. The fields are
+     * separated by tabs or spaces: the sequence name, the 1-based position and, for vcf lines, the reference allele,
+     * whose length gives the end of the variant.
+     *
+     * @throws IOException if the file is not compressed with bgzip or not sorted by position within each sequence
+     */
+    public static TabixIndex build(File file) throws IOException {
+        if (!BgzfChannel.isBgzf(file)) {
+            throw new IOException("The file " + file.getPath() + " is not compressed with bgzip.");
+        }
+        Builder builder = new Builder();
+        try (BgzfChannel channel = new BgzfChannel(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BgzfChannel.MAX_BLOCK_SIZE);
+            byte[] line = new byte[1024];
+            int lineLength = 0;
+            long lineStart = -1;
+            long lineEnd = 0;
+            while (true) {
+                buffer.clear();
+                int count = channel.read(buffer);
+                if (count < 0) {
+                    break;
+                }
+                long offset = channel.getLastReadOffset();
+                byte[] bytes = buffer.array();
+                for (int I = 0; I < count; I++) {
+                    if (lineStart < 0) {
+                        lineStart = offset + I;
+                    }
+                    if (bytes[I] == '\n') {
+                        builder.add(line, lineLength, lineStart, offset + I + 1);
+                        lineStart = -1;
+                        lineLength = 0;
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, lineLength * 2);
+                        }
+                        line[lineLength++] = bytes[I];
+                    }
+                }
+                lineEnd = offset + count;
+            }
+            if (lineStart >= 0) {
+                builder.add(line, lineLength, lineStart, lineEnd);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Collects the chunks and linear offsets of the lines of a file, in the order of the file.
+     */
+    private static class Builder {
+
+        private final TabixIndex index = new TabixIndex();
+        private final List<Map<Integer, List<Long>>> chunks = new ArrayList<>();
+        private final List<long[]> offsets = new ArrayList<>();
+        private final Map<String, Integer> sequences = new HashMap<>();
+        private int sequence = -1;
+        private int lastStart = -1;
+
+        void add(byte[] line, int length, long start, long end) throws IOException {
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            if (length == 0 || line[0] == '#') {
+                return;
+            }
+
+            // Name, position and reference allele
+            int[] fields = new int[6];
+            int count = 0;
+            for (int I = 0; I < length && count < fields.length; ) {
+                while (I < length && (line[I] == '\t' || line[I] == ' ')) {
+                    I++;
+                }
+                if (I == length) {
+                    break;
+                }
+                fields[count++] = I;
+                while (I < length && line[I] != '\t' && line[I] != ' ') {
+                    I++;
+                }
+                fields[count++] = I;
+            }
+            if (count < 4) {
+                throw new IOException("Missing position in the line: " + new String(line, 0, length, StandardCharsets.ISO_8859_1));
+            }
+            String name = new String(line, fields[0], fields[1] - fields[0], StandardCharsets.ISO_8859_1);
+            long position = 0;
+            for (int I = fields[2]; I < fields[3]; I++) {
+                if (line[I] < '0' || line[I] > '9' || position > MAX_POSITION) {
+                    throw new IOException("Invalid position in the line: " + new String(line, 0, length, StandardCharsets.ISO_8859_1));
+                }
+                position = position * 10 + line[I] - '0';
+            }
+            if (position < 1 || position > MAX_POSITION) {
+                throw new IOException("Position out of the range of tabix indexes: " + position);
+            }
+            int variantStart = (int) position - 1;
+            // The vcf preset: the reference allele after the ID column gives the end
+            int variantEnd = variantStart + 1;
+            if (count == 6) {
+                variantEnd = Math.min(MAX_POSITION, variantStart + Math.max(1, lengthOfFourthField(line, fields[5], length)));
+            }
+
+            Integer id = sequences.get(name);
+            if (id == null) {
+                id = sequences.size();
+                sequences.put(name, id);
+                index.names.add(name);
+                chunks.add(new HashMap<>());
+                offsets.add(new long[0]);
+            } else if (id != sequence) {
+                throw new IOException("The file is not sorted: " + name + " appears in separate blocks of lines.");
+            } else if (variantStart < lastStart) {
+                throw new IOException("The file is not sorted: " + name + ":" + position + " after " + name + ":" + (lastStart + 1));
+            }
+            sequence = id;
+            lastStart = variantStart;
+
+            List<Long> binChunks = chunks.get(id).computeIfAbsent(getBin(variantStart, variantEnd), bin -> new ArrayList<>());
+            if (!binChunks.isEmpty() && binChunks.get(binChunks.size() - 1) == start) {
+                binChunks.set(binChunks.size() - 1, end);
+            } else {
+                binChunks.add(start);
+                binChunks.add(end);
+            }
+
+            long[] windows = offsets.get(id);
+            int last = (variantEnd - 1) >> LINEAR_SHIFT;
+            if (last >= windows.length) {
+                int previous = windows.length;
+                windows = Arrays.copyOf(windows, last + 1);
+                Arrays.fill(windows, previous, windows.length, -1L);
+                offsets.set(id, windows);
+            }
+            for (int window = variantStart >> LINEAR_SHIFT; window <= last; window++) {
+                if (windows[window] == -1L) {
+                    windows[window] = start;
+                }
+            }
+        }
+
+        /**
+         * Length of the reference allele, the fourth field, given the start of the third one.
+         */
+        private static int lengthOfFourthField(byte[] line, int thirdEnd, int length) {
+            int I = thirdEnd;
+            while (I < length && (line[I] == '\t' || line[I] == ' ')) {
+                I++;
+            }
+            int start = I;
+            while (I < length && line[I] != '\t' && line[I] != ' ') {
+                I++;
+            }
+            return I - start;
+        }
+
+        TabixIndex build() {
+            for (int id = 0; id < chunks.size(); id++) {
+                Map<Integer, long[]> sequenceBins = new HashMap<>();
+                for (Map.Entry<Integer, List<Long>> bin : chunks.get(id).entrySet()) {
+                    sequenceBins.put(bin.getKey(), bin.getValue().stream().mapToLong(Long::longValue).toArray());
+                }
+                index.bins.add(sequenceBins);
+
+                // Windows without variants take the offset of the previous window
+                long[] windows = offsets.get(id);
+                for (int window = 0; window < windows.length; window++) {
+                    if (windows[window] == -1L) {
+                        windows[window] = window == 0 ? 0L : windows[window - 1];
+                    }
+                }
+                index.linear.add(windows);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Writes the index in the .tbi format, compressed with bgzip.
+     */
+    public void write(File file) throws IOException {
+        LittleEndianOutput output = new LittleEndianOutput();
+        output.write(MAGIC);
+        output.writeInt(names.size());
+        output.writeInt(VCF_FORMAT);
+        output.writeInt(1);     // Column of the sequence name
+        output.writeInt(2);     // Column of the start
+        output.writeInt(0);     // Column of the end, none as the vcf preset takes the reference allele
+        output.writeInt('#');
+        output.writeInt(0);     // Lines to skip
+        ByteArrayOutputStream namesBytes = new ByteArrayOutputStream();
+        for (String name : names) {
+            namesBytes.write(name.getBytes(StandardCharsets.ISO_8859_1));
+            namesBytes.write(0);
+        }
+        output.writeInt(namesBytes.size());
+        output.write(namesBytes.toByteArray());
+
+        for (int sequence = 0; sequence < names.size(); sequence++) {
+            Map<Integer, long[]> sequenceBins = new TreeMap<>(bins.get(sequence));
+            output.writeInt(sequenceBins.size());
+            for (Map.Entry<Integer, long[]> bin : sequenceBins.entrySet()) {
+                output.writeInt(bin.getKey());
+                output.writeInt(bin.getValue().length / 2);
+                for (long offset : bin.getValue()) {
+                    output.writeLong(offset);
+                }
+            }
+            long[] offsets = linear.get(sequence);
+            output.writeInt(offsets.length);
+            for (long offset : offsets) {
+                output.writeLong(offset);
+            }
+        }
+
+        try (OutputStream stream = new BufferedOutputStream(new FileOutputStream(file))) {
+            writeBgzf(output.toByteArray(), stream);
+        }
+    }
+
+    /**
+     * Compresses the bytes into bgzip blocks, followed by the empty block that marks the end of the file.
+     */
+    static void writeBgzf(byte[] data, OutputStream output) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            // Data that fits in a block even if it does not compress at all
+            int blockData = 0xFF00;
+            int start = 0;
+            do {
+                int length = Math.min(blockData, data.length - start);
+                writeBlock(data, start, length, deflater, output);
+                start += length;
+            } while (start < data.length);
+            writeBlock(data, 0, 0, deflater, output);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeBlock(byte[] data, int start, int length, Deflater deflater, OutputStream output) throws IOException {
+        byte[] compressed = new byte[BgzfChannel.MAX_BLOCK_SIZE];
+        deflater.reset();
+        deflater.setInput(data, start, length);
+        deflater.finish();
+        int size = 0;
+        while (!deflater.finished()) {
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, start, length);
+
+        // Gzip header with the BC extra field holding the size of the block minus 1
+        ByteBuffer block = ByteBuffer.allocate(18 + size + 8).order(ByteOrder.LITTLE_ENDIAN);
+        block.put(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF});
+        block.putShort((short) 6);
+        block.put(new byte[]{'B', 'C'});
+        block.putShort((short) 2);
+        block.putShort((short) (block.capacity() - 1));
+        block.put(compressed, 0, size);
+        block.putInt((int) crc.getValue());
+        block.putInt(length);
+        output.write(block.array());
+    }
+
+    /**
+     * Bytes of numbers in little endian order, as the .tbi format has them.
+     */
+    private static class LittleEndianOutput extends ByteArrayOutputStream {
+
+        void writeInt(int value) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                write(value >>> shift & 0xFF);
+            }
+        }
+
+        void writeLong(long value) {
+            for (int shift = 0; shift < 64; shift += 8) {
+                write((int) (value >>> shift & 0xFF));
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Maps chrBp and vcf variants to the proteins whose intervals lie within a window of base pairs.
+ */
+public class VariantWindows {
+
+    /**
+     * Largest position of a variant key.
+     */
+    public static final long MAX_POSITION = (1L << 40) - 1;
+
+    public static class Hit {
+
+        private final int chromosome;
+        private final long position;
+        private final String protein;
+        private final long distance;
+
+        Hit(int chromosome, long position, String protein, long distance) {
+            this.chromosome = chromosome;
+            this.position = position;
+            this.protein = protein;
+            this.distance = distance;
+        }
+
+        public int getChromosome() {
+            return chromosome;
+        }
+
+        public long getPosition() {
+            return position;
+        }
+
+        public String getProtein() {
+            return protein;
+        }
+
+        public long getDistance() {
+            return distance;
+        }
+    }
+
+    /**
+     * Reads the position in the second column of a chrBp or vcf line, e.g. "1 11854476" or "chr1\t11854476\t.\tC".
+     *
+     * @return the position, or -1 if the line has none
+     */
+    public static long parsePosition(String line) {
+        int index = 0;
+        while (index < line.length() && Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        while (index < line.length() && !Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        while (index < line.length() && Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        int start = index;
+        long position = 0;
+        while (index < line.length() && Character.isDigit(line.charAt(index)) && index - start < 18) {
+            position = position * 10 + (line.charAt(index) - '0');
+            index++;
+        }
+        if (index == start || (index < line.length() && !Character.isWhitespace(line.charAt(index)))) {
+            return -1;
+        }
+        return position;
+    }
+
+    /**
+     * Source of the position index of a chromosome.
+     */
+    public interface IndexSource {
+        /**
+         * @return the index, or null if the chromosome has none
+         */
+        PositionIndex get(int chromosome) throws IOException;
+    }
+
+    /**
+     * Finds the proteins near each variant of the input. The positions of each chromosome are sorted and answered
+     * in one pass over its index.
+     *
+     * @param indexes position indexes by chromosome. Variants in other chromosomes are skipped.
+     * @param window  maximum distance in base pairs, 0 to keep only the proteins whose interval contains the variant
+     * @return the hits sorted by chromosome, position and protein interval
+     */
+    public static List<Hit> map(List<String> input, Map<Integer, PositionIndex> indexes, long window) {
+        try {
+            return map(input, indexes.keySet(), indexes::get, window);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);      // Not thrown by a map
+        }
+    }
+
+    /**
+     * Same as {@link #map(List, Map, long)}, asking the source for one chromosome index at a time, so that only
+     * the index in use needs to be in memory.
+     *
+     * @param chromosomes chromosomes to map. Variants in other chromosomes are skipped.
+     */
+    public static List<Hit> map(List<String> input, Set<Integer> chromosomes, IndexSource indexes, long window) throws IOException {
+        long[] variants = new long[input.size()];
+        int count = 0;
+        for (String line : input) {
+            if (line.startsWith("#")) {
+                continue;
+            }
+            int chromosome = SnpShards.parseChromosome(line);
+            long position = parsePosition(line);
+            if (chromosome > 0 && position >= 0 && position <= MAX_POSITION && chromosomes.contains(chromosome)) {
+                variants[count++] = getVariant(chromosome, position);
+            }
+        }
+        return map(variants, count, indexes, window);
+    }
+
+    /**
+     * Variant key of a position, sorting by chromosome and position.
+     */
+    public static long getVariant(int chromosome, long position) {
+        return (long) chromosome << 40 | position;
+    }
+
+    /**
+     * Finds the proteins near each variant, given as keys from {@link #getVariant(int, long)}. The keys are sorted
+     * in place and each chromosome is answered in one pass over its index.
+     *
+     * @param count number of keys at the start of the array
+     * @return the hits sorted by chromosome, position and protein interval
+     */
+    public static List<Hit> map(long[] variants, int count, IndexSource indexes, long window) throws IOException {
+        Arrays.sort(variants, 0, count);
+        List<Hit> hits = new ArrayList<>();
+        long[] sortedPositions = new long[count];
+        int start = 0;
+        while (start < count) {
+            int chromosome = (int) (variants[start] >>> 40);
+            int size = 0;
+            int end = start;
+            for (; end < count && (int) (variants[end] >>> 40) == chromosome; end++) {
+                long position = variants[end] & MAX_POSITION;
+                if (size == 0 || sortedPositions[size - 1] != position) {
+                    sortedPositions[size++] = position;
+                }
+            }
+            start = end;
+
+            PositionIndex index = indexes.get(chromosome);
+            if (index == null) {
+                continue;
+            }
+            long[] positions = Arrays.copyOf(sortedPositions, size);
+            int[][] intervals = index.overlapping(positions, window);
+            for (int Q = 0; Q < positions.length; Q++) {
+                for (int interval : intervals[Q]) {
+                    hits.add(new Hit(chromosome, positions[Q], index.getProtein(interval),
+                            index.distance(interval, positions[Q])));
+                }
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,475 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Streaming reader of the variants of a VCF file, plain or compressed with gzip or bgzip. Files of chrBp pairs
+ * are read the same way, as VCF lines with only CHROM and POS.
+ * <p>
+ * The meta-information and header lines are skipped. Only CHROM, POS and ID are parsed, plus FILTER and INFO when
+ * the variants are filtered on them; the sample columns are only split by {@link #readGenotypes}. Variants outside
+ * the autosomes are skipped, as the SNP lookups only cover those.
+ * <p>
+ * The file is read and inflated on one thread of the executor and parsed into batches of variant keys on another,
+ * while the caller looks up the previous batch, so that the three overlap. The batches are reused once the caller
+ * is done with them.
+ * <p>
+ * A reader restricted to a region keeps only the variants in it. If the file has a {@link TabixIndex} next to it,
+ * only the chunks of the file with variants of the region are read; otherwise the whole file is scanned.
+ */
+public class VcfReader {
+
+    public static final int DEFAULT_BATCH_SIZE = 1 << 14;
+
+    private static final int BATCHES = 3;
+
+    /**
+     * Variants parsed from consecutive lines of the file.
+     */
+    public static class Batch {
+
+        private final long[] variants;
+        private final long[] rsNumbers;
+        private int size = 0;
+
+        Batch(int capacity) {
+            variants = new long[capacity];
+            rsNumbers = new long[capacity];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Variant keys of the batch from index 0 to {@link #size()}, see {@link VariantWindows#getVariant(int, long)}.
+         * Sorting them breaks their pairing with the rsIds.
+         */
+        public long[] getVariants() {
+            return variants;
+        }
+
+        public int getChromosome(int index) {
+            return (int) (variants[index] >>> 40);
+        }
+
+        public long getPosition(int index) {
+            return variants[index] & VariantWindows.MAX_POSITION;
+        }
+
+        /**
+         * @return the number of the rsId in the ID column, or -1 if it has none
+         */
+        public long getRsNumber(int index) {
+            return rsNumbers[index];
+        }
+
+        /**
+         * @return the variant as a VCF line of the CHROM, POS and ID columns
+         */
+        public String getLine(int index) {
+            long rsNumber = rsNumbers[index];
+            return getChromosome(index) + "\t" + getPosition(index) + "\t" + (rsNumber < 0 ? "." : "rs" + rsNumber);
+        }
+
+        private boolean isFull() {
+            return size == variants.length;
+        }
+
+        private void add(long variant, long rsNumber) {
+            variants[size] = variant;
+            rsNumbers[size] = rsNumber;
+            size++;
+        }
+    }
+
+    /**
+     * Receives the batches of variants, in the order of the file, on the thread calling {@link #read}.
+     */
+    public interface BatchHandler {
+        void batch(Batch batch) throws IOException;
+    }
+
+    /**
+     * Receives the samples of the file and, for each variant, the samples carrying it, on the thread calling
+     * {@link #readGenotypes}.
+     */
+    public interface GenotypeHandler {
+
+        /**
+         * Called once, before the first variant, with the sample columns of the header line, empty if it has none.
+         */
+        void samples(List<String> samples) throws IOException;
+
+        /**
+         * @return true to receive the carriers of the variant, false to skip its sample columns
+         */
+        boolean variant(int chromosome, long position) throws IOException;
+
+        /**
+         * Called for each sample with a non-reference allele in the genotype of the last variant accepted.
+         *
+         * @param sample index of the sample in the list of samples
+         */
+        void carrier(int sample);
+    }
+
+    private final boolean passOnly;
+    private final double minAlleleFrequency;
+    private final double maxAlleleFrequency;
+    private final GenomicRegion region;
+
+    /**
+     * Reader keeping all the variants.
+     */
+    public VcfReader() {
+        this(false, 0.0, 1.0);
+    }
+
+    /**
+     * @param passOnly           keep only the variants with PASS in the FILTER column
+     * @param minAlleleFrequency keep only the variants with an alternate allele of at least this AF in the INFO
+     *                           column, 0 to keep all
+     * @param maxAlleleFrequency keep only the variants with an alternate allele of at most this AF in the INFO
+     *                           column, 1 to keep all. Variants without AF are dropped when either bound is set.
+     */
+    public VcfReader(boolean passOnly, double minAlleleFrequency, double maxAlleleFrequency) {
+        this(passOnly, minAlleleFrequency, maxAlleleFrequency, null);
+    }
+
+    /**
+     * @param region keep only the variants of this region, null to keep the variants of all the autosomes
+     */
+    public VcfReader(boolean passOnly, double minAlleleFrequency, double maxAlleleFrequency, GenomicRegion region) {
+        this.passOnly = passOnly;
+        this.minAlleleFrequency = minAlleleFrequency;
+        this.maxAlleleFrequency = maxAlleleFrequency;
+        this.region = region;
+    }
+
+    private boolean isFrequencyFiltered() {
+        return minAlleleFrequency > 0.0 || maxAlleleFrequency < 1.0;
+    }
+
+    private boolean isSeekable(File file) {
+        return region != null && TabixIndex.getIndexFile(file).isFile();
+    }
+
+    /**
+     * Opens the whole file, or only the chunks of the region if the file has a tabix index.
+     */
+    private InputTokenizer open(File file, ExecutorService executor) throws IOException {
+        if (!isSeekable(file)) {
+            return InputTokenizer.open(file, executor);
+        }
+        long[] chunks = TabixIndex.read(TabixIndex.getIndexFile(file)).getChunks(region);
+        return new InputTokenizer(new ReadAheadChannel(new BgzfChannel(file, chunks), executor));
+    }
+
+    /**
+     * Reads the variants of a file and passes them to the handler in batches.
+     *
+     * @param executor runs the reading and the parsing of the file
+     * @return the number of variants kept
+     */
+    public long read(File file, ExecutorService executor, int batchSize, BatchHandler handler) throws IOException {
+        BlockingQueue<Batch> free = new ArrayBlockingQueue<>(BATCHES);
+        BlockingQueue<Batch> filled = new ArrayBlockingQueue<>(BATCHES + 1);
+        for (int I = 0; I < BATCHES; I++) {
+            free.add(new Batch(batchSize));
+        }
+        Batch end = new Batch(0);
+
+        long count = 0;
+        try (InputTokenizer tokenizer = open(file, executor)) {
+            Future<?> parser = executor.submit(() -> {
+                try {
+                    parse(tokenizer, free, filled);
+                } finally {
+                    filled.put(end);
+                }
+                return null;
+            });
+            try {
+                while (true) {
+                    Batch batch = filled.take();
+                    if (batch == end) {
+                        break;
+                    }
+                    count += batch.size;
+                    handler.batch(batch);
+                    batch.size = 0;
+                    free.put(batch);
+                }
+                parser.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading " + file.getPath());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Could not read " + file.getPath(), e.getCause());
+            } finally {
+                parser.cancel(true);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the variants of a file with their genotypes. The variants without a GT key first in the FORMAT column,
+     * as the specification requires when genotypes are present, have no carriers and are skipped.
+     * <p>
+     * The file is read and inflated on a thread of the executor while it is parsed on the caller thread, which also
+     * runs the handler. The sample columns of a variant are only split if the handler accepts it.
+     *
+     * @return the number of variants kept
+     */
+    public long readGenotypes(File file, ExecutorService executor, GenotypeHandler handler) throws IOException {
+        long count = 0;
+        // The header is not in the chunks of a region
+        int sampleCount = isSeekable(file) ? readHeader(file, handler) : -1;
+        try (InputTokenizer tokenizer = open(file, executor)) {
+            while (tokenizer.nextLine()) {
+                if (tokenizer.startsWith('#')) {
+                    if (sampleCount < 0 && tokenizer.nextField() && tokenizer.fieldEquals("#CHROM")) {
+                        sampleCount = readSamples(tokenizer, handler);
+                    }
+                    continue;
+                }
+                if (!tokenizer.nextField()) {
+                    continue;   // Blank line
+                }
+                if (sampleCount < 0) {
+                    sampleCount = 0;
+                    handler.samples(Collections.emptyList());
+                }
+                int chromosome = tokenizer.parseChromosome();
+                if (chromosome == 0 || !tokenizer.nextField()) {
+                    continue;
+                }
+                long position = tokenizer.parseLong();
+                if (position < 0 || position > VariantWindows.MAX_POSITION || region != null && !region.contains(chromosome, position)) {
+                    continue;
+                }
+                // ID, the fixed columns up to INFO, then FORMAT
+                if (!tokenizer.nextField() || !isKept(tokenizer) || !tokenizer.nextField() || !isGenotypeFormat(tokenizer)) {
+                    continue;
+                }
+
+                count++;
+                if (handler.variant(chromosome, position)) {
+                    for (int sample = 0; sample < sampleCount && tokenizer.nextField(); sample++) {
+                        if (isNonReference(tokenizer)) {
+                            handler.carrier(sample);
+                        }
+                    }
+                }
+            }
+        }
+        if (sampleCount < 0) {
+            handler.samples(Collections.emptyList());
+        }
+        return count;
+    }
+
+    /**
+     * Reads the header lines at the start of the file.
+     *
+     * @return the number of samples
+     */
+    private static int readHeader(File file, GenotypeHandler handler) throws IOException {
+        try (InputTokenizer tokenizer = InputTokenizer.open(file)) {
+            while (tokenizer.nextLine() && tokenizer.startsWith('#')) {
+                if (tokenizer.nextField() && tokenizer.fieldEquals("#CHROM")) {
+                    return readSamples(tokenizer, handler);
+                }
+            }
+        }
+        handler.samples(Collections.emptyList());
+        return 0;
+    }
+
+    /**
+     * Passes the names of the sample columns of the header line, after the FORMAT column, to the handler.
+     *
+     * @return the number of samples
+     */
+    private static int readSamples(InputTokenizer tokenizer, GenotypeHandler handler) throws IOException {
+        List<String> samples = new ArrayList<>();
+        // POS, ID, REF, ALT, QUAL, FILTER, INFO and FORMAT
+        if (tokenizer.skipFields(8)) {
+            while (tokenizer.nextField()) {
+                samples.add(tokenizer.getField());
+            }
+        }
+        handler.samples(samples);
+        return samples.size();
+    }
+
+    private static boolean isGenotypeFormat(InputTokenizer tokenizer) {
+        int length = tokenizer.getFieldLength();
+        return length >= 2 && tokenizer.getFieldByte(0) == 'G' && tokenizer.getFieldByte(1) == 'T'
+                && (length == 2 || tokenizer.getFieldByte(2) == ':');
+    }
+
+    /**
+     * Checks the GT key at the start of a sample column, e.g. 0/1, 1|1, 2 or ./. Allele indexes are separated by / or |,
+     * so any digit other than 0 is part of an alternate allele index.
+     *
+     * @return true if one of the alleles of the genotype is not the reference
+     */
+    static boolean isNonReference(InputTokenizer tokenizer) {
+        int length = tokenizer.getFieldLength();
+        for (int I = 0; I < length; I++) {
+            byte b = tokenizer.getFieldByte(I);
+            if (b == ':') {
+                break;
+            }
+            if (b > '0' && b <= '9') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void parse(InputTokenizer tokenizer, BlockingQueue<Batch> free, BlockingQueue<Batch> filled) throws IOException, InterruptedException {
+        Batch batch = free.take();
+        while (tokenizer.nextLine()) {
+            if (tokenizer.startsWith('#') || !tokenizer.nextField()) {
+                continue;   // Header or blank line
+            }
+            int chromosome = tokenizer.parseChromosome();
+            if (chromosome == 0 || !tokenizer.nextField()) {
+                continue;
+            }
+            long position = tokenizer.parseLong();
+            if (position < 0 || position > VariantWindows.MAX_POSITION || region != null && !region.contains(chromosome, position)) {
+                continue;
+            }
+            long rsNumber = tokenizer.nextField() ? tokenizer.parseRsNumber() : -1L;
+            if ((passOnly || isFrequencyFiltered()) && !isKept(tokenizer)) {
+                continue;
+            }
+
+            batch.add(VariantWindows.getVariant(chromosome, position), rsNumber);
+            if (batch.isFull()) {
+                filled.put(batch);
+                batch = free.take();
+            }
+        }
+        if (batch.size > 0) {
+            filled.put(batch);
+        }
+    }
+
+    /**
+     * Checks the FILTER and INFO columns, after the ID column. The tokenizer is left on the INFO column.
+     *
+     * @return false if the variant is filtered out or the line ends before its INFO column
+     */
+    private boolean isKept(InputTokenizer tokenizer) {
+        // REF, ALT and QUAL, then FILTER and INFO
+        if (!tokenizer.skipFields(3) || !tokenizer.nextField()) {
+            return false;
+        }
+        if (passOnly && !tokenizer.fieldEquals("PASS")) {
+            return false;
+        }
+        return tokenizer.nextField() && (!isFrequencyFiltered() || hasAlleleFrequencyInRange(tokenizer));
+    }
+
+    /**
+     * @return true if one of the values of the AF key of the INFO field is within the bounds
+     */
+    private boolean hasAlleleFrequencyInRange(InputTokenizer tokenizer) {
+        int length = tokenizer.getFieldLength();
+        for (int I = 0; I + 3 <= length; I++) {
+            if ((I == 0 || tokenizer.getFieldByte(I - 1) == ';') && tokenizer.getFieldByte(I) == 'A'
+                    && tokenizer.getFieldByte(I + 1) == 'F' && tokenizer.getFieldByte(I + 2) == '=') {
+                int start = I + 3;
+                for (int end = start; end <= length; end++) {
+                    if (end == length || tokenizer.getFieldByte(end) == ',' || tokenizer.getFieldByte(end) == ';') {
+                        double frequency = parseNumber(tokenizer, start, end);
+                        if (frequency >= minAlleleFrequency && frequency <= maxAlleleFrequency) {
+                            return true;
+                        }
+                        if (end == length || tokenizer.getFieldByte(end) == ';') {
+                            return false;
+                        }
+                        start = end + 1;
+                    }
+                }
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses a decimal number of the current field, e.g. 0.5, .25 or 1e-05.
+     *
+     * @return the number, or NaN if it is missing or malformed
+     */
+    static double parseNumber(InputTokenizer tokenizer, int start, int end) {
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = 0;
+        boolean point = false;
+        int index = start;
+        for (; index < end; index++) {
+            byte b = tokenizer.getFieldByte(index);
+            if (b >= '0' && b <= '9') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (point) {
+                        decimals++;
+                    }
+                } else if (!point) {
+                    decimals--;     // Digits beyond the precision of the mantissa
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (index == start || index == start + 1 && point) {
+            return Double.NaN;
+        }
+        int exponent = 0;
+        if (index < end) {
+            byte b = tokenizer.getFieldByte(index);
+            if (b != 'e' && b != 'E') {
+                return Double.NaN;
+            }
+            index++;
+            boolean negative = index < end && tokenizer.getFieldByte(index) == '-';
+            if (index < end && (tokenizer.getFieldByte(index) == '-' || tokenizer.getFieldByte(index) == '+')) {
+                index++;
+            }
+            if (index == end) {
+                return Double.NaN;
+            }
+            for (; index < end; index++) {
+                b = tokenizer.getFieldByte(index);
+                if (b < '0' || b > '9' || exponent > 1000) {
+                    return Double.NaN;
+                }
+                exponent = exponent * 10 + (b - '0');
+            }
+            if (negative) {
+                exponent = -exponent;
+            }
+        }
+        return mantissa * Math.pow(10, exponent - decimals);
+    }
+}
@@ -0,0 +1,50 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.pathwaymatcher.data.BlockShard;
+import no.uib.pap.pathwaymatcher.data.BlockShardWriter;
+import no.uib.pap.pathwaymatcher.data.SerializedResources;
+import no.uib.pap.pathwaymatcher.data.SnpShards;
+
+import java.io.File;
+import java.io.IOException;
+
+public class BlockShardConverter {
+
+    /**
+     * Creates the block compressed rsIdBlocksN.bin files from the rsIdsToProteinsN.gz shards.
+     *
+     * @param args [0] directory with the rsIdsToProteins shards [1] output directory, by default the same directory
+     */
+    public static void main(String args[]) {
+        String resourcesPath = args.length > 0 ? args[0] : SerializedResources.RESOURCES_PATH;
+        if (!resourcesPath.endsWith("/")) {
+            resourcesPath += "/";
+        }
+        String outputPath = args.length > 1 ? args[1] : resourcesPath;
+        if (!outputPath.endsWith("/")) {
+            outputPath += "/";
+        }
+
+        try {
+            for (int chromosome = 1; chromosome <= SnpShards.CHROMOSOMES; chromosome++) {
+                File file = new File(resourcesPath + "rsIdsToProteins" + chromosome + ".gz");
+                if (!file.exists()) {
+                    System.out.println("Skipped chromosome " + chromosome + ": " + file.getPath() + " not found.");
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Multimap<String, String> shard = (Multimap<String, String>) SerializedResources.read(file);
+                File outputFile = new File(outputPath + BlockShard.getRsIdFileName(chromosome));
+                BlockShardWriter.write(BlockShardWriter.fromRsIds(shard), outputFile);
+                try (BlockShard blocks = BlockShard.open(outputFile)) {
+                    System.out.println("Converted chromosome " + chromosome + ": " + blocks.getEntryCount() + " rsIds in "
+                            + blocks.getBlockCount() + " blocks");
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Could not convert the rsId shards: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
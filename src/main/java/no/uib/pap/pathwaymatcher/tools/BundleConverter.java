@@ -0,0 +1,96 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import no.uib.pap.model.Proteoform;
+import no.uib.pap.model.ProteoformFormat;
+import no.uib.pap.pathwaymatcher.data.BundleWriter;
+import no.uib.pap.pathwaymatcher.data.SerializedResources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+public class BundleConverter {
+
+    /**
+     * Converts the gzipped serialized resource files to a single mapping bundle file.
+     * <p>
+     * Each map or multimap of the resources becomes a section named as the file without extension,
+     * e.g. proteinsToReactions.gz becomes the section proteinsToReactions.
+     * Proteoforms are stored with the SIMPLE format. The chrBpToProteins shards keep their numeric base pair keys.
+     * The maps of Reaction and Pathway objects are not converted: the bundle serves the point queries, which read
+     * only stable identifiers, while the runs read those objects from the Mapping.
+     *
+     * @param args [0] directory with the .gz resource files [1] output bundle file, resources/mapping.bundle for the
+     *             point queries of the engine
+     */
+    public static void main(String args[]) {
+        if (args.length < 2) {
+            System.out.println("Usage: BundleConverter <resources directory> <bundle file>");
+            System.exit(1);
+        }
+
+        File[] files = new File(args[0]).listFiles((dir, name) -> name.endsWith(".gz"));
+        if (files == null) {
+            System.out.println("Could not read directory: " + args[0]);
+            System.exit(2);
+        }
+        Arrays.sort(files);
+
+        BundleWriter writer = new BundleWriter();
+        try {
+            for (File file : files) {
+                String name = file.getName().substring(0, file.getName().length() - ".gz".length());
+                Object object = SerializedResources.read(file);
+                if (object instanceof Multimap) {
+                    Multimap<?, ?> multimap = (Multimap<?, ?>) object;
+                    if (!multimap.isEmpty() && multimap.keySet().iterator().next() instanceof Long) {
+                        writer.addLongMultimap(name, toLongMultimap(multimap));
+                    } else {
+                        writer.addMultimap(name, toStringMultimap(multimap.entries()));
+                    }
+                } else if (object instanceof Map && isStringMap((Map<?, ?>) object)) {
+                    writer.addMultimap(name, toStringMultimap(((Map<?, ?>) object).entrySet()));
+                } else {
+                    System.out.println("Skipped " + file.getName() + ": not a map of identifiers.");
+                    continue;
+                }
+                System.out.println("Converted " + file.getName());
+            }
+            writer.write(new File(args[1]));
+        } catch (IOException e) {
+            System.out.println("Could not convert the resources: " + e.getMessage());
+            System.exit(2);
+        }
+        System.out.println("Finished writing " + args[1]);
+    }
+
+    private static boolean isStringMap(Map<?, ?> map) {
+        return map.isEmpty() || map.values().iterator().next() instanceof String;
+    }
+
+    private static Multimap<String, String> toStringMultimap(Iterable<? extends Map.Entry<?, ?>> entries) {
+        Multimap<String, String> result = HashMultimap.create();
+        for (Map.Entry<?, ?> entry : entries) {
+            result.put(toIdentifier(entry.getKey()), toIdentifier(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static Multimap<Long, String> toLongMultimap(Multimap<?, ?> multimap) {
+        Multimap<Long, String> result = HashMultimap.create();
+        for (Map.Entry<?, ?> entry : multimap.entries()) {
+            result.put((Long) entry.getKey(), toIdentifier(entry.getValue()));
+        }
+        return result;
+    }
+
+    private static String toIdentifier(Object object) {
+        if (object instanceof Proteoform) {
+            return ((Proteoform) object).toString(ProteoformFormat.SIMPLE);
+        }
+        return object.toString();
+    }
+}
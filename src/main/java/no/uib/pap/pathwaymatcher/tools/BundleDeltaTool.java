@@ -0,0 +1,50 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import no.uib.pap.pathwaymatcher.data.Bundle;
+import no.uib.pap.pathwaymatcher.data.BundleDelta;
+import no.uib.pap.pathwaymatcher.data.ResourceManifest;
+
+import java.io.File;
+import java.io.IOException;
+
+public class BundleDeltaTool {
+
+    /**
+     * Creates or applies the delta between two releases of a mapping bundle.
+     * <p>
+     * diff: writes the rows added and removed in each section of the new bundle, and the manifest of the sections
+     * of the new bundle to check the result of applying it.
+     * <p>
+     * apply: patches a bundle with a delta and replaces it only if the result matches the manifest.
+     *
+     * @param args diff [old bundle] [new bundle] [delta file] [manifest file], or apply [bundle] [delta file] [manifest file]
+     */
+    public static void main(String args[]) {
+        if (args.length == 5 && args[0].equals("diff")) {
+            try (Bundle from = Bundle.open(new File(args[1])); Bundle to = Bundle.open(new File(args[2]))) {
+                BundleDelta delta = BundleDelta.diff(from, to);
+                delta.write(new File(args[3]));
+                BundleDelta.manifest(to).write(new File(args[4]));
+                System.out.println("Wrote " + args[3] + ": " + delta.getSections().size() + " sections changed, "
+                        + delta.getAddedCount() + " rows added, " + delta.getRemovedCount() + " rows removed");
+            } catch (IOException e) {
+                System.out.println("Could not create the delta: " + e.getMessage());
+                System.exit(2);
+            }
+        } else if (args.length == 4 && args[0].equals("apply")) {
+            try {
+                BundleDelta delta = BundleDelta.read(new File(args[2]));
+                delta.applyInPlace(new File(args[1]), ResourceManifest.read(new File(args[3])));
+                System.out.println("Patched " + args[1] + ": " + delta.getSections().size() + " sections changed, "
+                        + delta.getAddedCount() + " rows added, " + delta.getRemovedCount() + " rows removed");
+            } catch (IOException e) {
+                System.out.println("Could not apply the delta: " + e.getMessage());
+                System.exit(2);
+            }
+        } else {
+            System.out.println("Usage: BundleDeltaTool diff <old bundle> <new bundle> <delta file> <manifest file>");
+            System.out.println("       BundleDeltaTool apply <bundle> <delta file> <manifest file>");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.pathwaymatcher.data.IdentifierIndex;
+import no.uib.pap.pathwaymatcher.data.IdentifierIndex.Namespace;
+import no.uib.pap.pathwaymatcher.data.SerializedResources;
+
+import java.io.File;
+import java.io.IOException;
+
+public class IdentifierIndexBuilder {
+
+    /**
+     * Creates the perfect hash identifier indexes of the gene, Ensembl and UniProt namespaces.
+     *
+     * @param args [0] directory with the genesToProteins, ensemblToProteins and proteinsToReactions files
+     *             [1] output directory, by default the same directory
+     */
+    public static void main(String args[]) {
+        String resourcesPath = args.length > 0 ? args[0] : SerializedResources.RESOURCES_PATH;
+        if (!resourcesPath.endsWith("/")) {
+            resourcesPath += "/";
+        }
+        String outputPath = args.length > 1 ? args[1] : resourcesPath;
+        if (!outputPath.endsWith("/")) {
+            outputPath += "/";
+        }
+
+        try {
+            for (Namespace namespace : Namespace.values()) {
+                @SuppressWarnings("unchecked")
+                Multimap<String, String> source = (Multimap<String, String>) SerializedResources.read(new File(resourcesPath + namespace.getSource()));
+                IdentifierIndex index = IdentifierIndex.build(namespace, namespace == Namespace.UNIPROT
+                        ? IdentifierIndex.identity(source.keySet()) : source);
+                index.write(new File(outputPath + namespace.getFileName()));
+                System.out.println("Indexed " + index.size() + " " + namespace + " identifiers, "
+                        + String.format("%.1f", index.getBitsPerKey()) + " bits per identifier");
+            }
+        } catch (IOException e) {
+            System.out.println("Could not build the identifier indexes: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.pathwaymatcher.data.PositionIndex;
+import no.uib.pap.pathwaymatcher.data.SerializedResources;
+import no.uib.pap.pathwaymatcher.data.SnpShards;
+
+import java.io.File;
+import java.io.IOException;
+
+public class PositionIndexBuilder {
+
+    /**
+     * Creates the chrBpIndexN.gz files from the chrBpToProteinsN.gz shards.
+     *
+     * @param args [0] directory with the chrBpToProteins shards [1] output directory, by default the same directory
+     */
+    public static void main(String args[]) {
+        String resourcesPath = args.length > 0 ? args[0] : SerializedResources.RESOURCES_PATH;
+        if (!resourcesPath.endsWith("/")) {
+            resourcesPath += "/";
+        }
+        String outputPath = args.length > 1 ? args[1] : resourcesPath;
+        if (!outputPath.endsWith("/")) {
+            outputPath += "/";
+        }
+
+        try {
+            for (int chromosome = 1; chromosome <= SnpShards.CHROMOSOMES; chromosome++) {
+                File file = new File(resourcesPath + "chrBpToProteins" + chromosome + ".gz");
+                if (!file.exists()) {
+                    System.out.println("Skipped chromosome " + chromosome + ": " + file.getPath() + " not found.");
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Multimap<Long, String> shard = (Multimap<Long, String>) SerializedResources.read(file);
+                PositionIndex index = PositionIndex.build(shard);
+                index.write(new File(outputPath + PositionIndex.getFileName(chromosome)));
+                System.out.println("Indexed chromosome " + chromosome + ": " + index.size() + " protein intervals");
+            }
+        } catch (IOException e) {
+            System.out.println("could not build the position indexes: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
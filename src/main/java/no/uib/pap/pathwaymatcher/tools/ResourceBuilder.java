@@ -0,0 +1,322 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import no.uib.pap.model.ProteoformFormat;
+import no.uib.pap.pathwaymatcher.data.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+public class ResourceBuilder {
+
+    private enum Column {
+        STRING, LONG, PROTEOFORM
+    }
+
+    /**
+     * Mapping file built from a two column source table of the same name.
+     */
+    private static class Table {
+        final String name;
+        final Column key;
+        final Column value;
+        final boolean map;
+
+        Table(String name, Column key, Column value, boolean map) {
+            this.name = name;
+            this.key = key;
+            this.value = value;
+            this.map = map;
+        }
+    }
+
+    private static final List<Table> TABLES = Arrays.asList(
+            new Table("genesToProteins", Column.STRING, Column.STRING, false),
+            new Table("ensemblToProteins", Column.STRING, Column.STRING, false),
+            new Table("proteinsToNames", Column.STRING, Column.STRING, true),
+            new Table("proteinsToReactions", Column.STRING, Column.STRING, false),
+            new Table("reactionsToPathways", Column.STRING, Column.STRING, false),
+            new Table("pathwaysToTopLevelPathways", Column.STRING, Column.STRING, false),
+            new Table("proteinsToComplexes", Column.STRING, Column.STRING, false),
+            new Table("complexesToProteins", Column.STRING, Column.STRING, false),
+            new Table("proteinsToSets", Column.STRING, Column.STRING, false),
+            new Table("setsToProteins", Column.STRING, Column.STRING, false),
+            new Table("proteinsToProteoforms", Column.STRING, Column.PROTEOFORM, false),
+            new Table("proteoformsToReactions", Column.PROTEOFORM, Column.STRING, false),
+            new Table("proteoformsToComplexes", Column.PROTEOFORM, Column.STRING, false),
+            new Table("complexesToProteoforms", Column.STRING, Column.PROTEOFORM, false),
+            new Table("proteoformsToSets", Column.PROTEOFORM, Column.STRING, false),
+            new Table("setsToProteoforms", Column.STRING, Column.PROTEOFORM, false)
+    );
+
+    private static final String SNPS = "snps";
+
+    /**
+     * Lines "position\tprotein", by position and then protein.
+     */
+    private static final Comparator<String> BY_POSITION = (a, b) -> {
+        int comparison = Long.compare(Long.parseLong(a.substring(0, a.indexOf('\t'))), Long.parseLong(b.substring(0, b.indexOf('\t'))));
+        return comparison != 0 ? comparison : a.compareTo(b);
+    };
+
+    /**
+     * Builds the serialized resource files from tab separated source tables, sorting them on disk so that only
+     * the structure being written is held in memory.
+     * <p>
+     * Each mapping file, e.g. genesToProteins.gz, is built from the table genesToProteins.tsv (or .tsv.gz) with
+     * one key and one value per line. Proteoforms are in the SIMPLE format, e.g. "P31749;00047:308".
+     * The SNP shards are built from snps.tsv, with the columns chromosome, position, rsId and protein. The
+     * rsIdsToProteinsN.gz and chrBpToProteinsN.gz shards of each chromosome, and their rsId and position indexes,
+     * are built in parallel. Lines starting with # are skipped.
+     * <p>
+     * The map of reactions and pathways with their names are not built. A manifest.tsv with the number of entries
+     * and the checksum of every file is written to the output directory.
+     *
+     * @param args [0] directory with the source tables [1] output directory [2] memory for sorting, e.g. 512m (default 256m)
+     */
+    public static void main(String args[]) {
+        if (args.length < 2) {
+            System.out.println("Usage: ResourceBuilder <sources directory> <output directory> [sort memory]");
+            System.exit(1);
+        }
+        File sources = new File(args[0]);
+        File output = new File(args[1]);
+        long memory = args.length > 2 ? ResourceCache.parseMemory(args[2]) : 256L * 1024 * 1024;
+        if (memory <= 0) {
+            System.out.println("Invalid sort memory: " + args[2]);
+            System.exit(1);
+        }
+
+        File temporary = new File(output, ".sort");
+        if (!temporary.isDirectory() && !temporary.mkdirs()) {
+            System.out.println("Could not create directory: " + temporary.getPath());
+            System.exit(2);
+        }
+
+        try {
+            ResourceManifest manifest = new ResourceManifest();
+            for (Table table : TABLES) {
+                File source = findSource(sources, table.name);
+                if (source == null) {
+                    System.out.println("Skipped " + table.name + ": no source table.");
+                    continue;
+                }
+                File file = new File(output, table.name + ".gz");
+                long count = buildTable(table, source, file, memory, temporary);
+                manifest.add(file, count);
+                System.out.println("Built " + file.getName() + ": " + count + " entries");
+            }
+
+            File snps = findSource(sources, SNPS);
+            if (snps == null) {
+                System.out.println("Skipped the SNP shards: no source table.");
+            } else {
+                buildSnpShards(snps, output, memory, temporary, manifest);
+            }
+
+            manifest.write(new File(output, ResourceManifest.FILE_NAME));
+            System.out.println("Wrote " + ResourceManifest.FILE_NAME + " with " + manifest.size() + " files.");
+        } catch (IOException e) {
+            System.out.println("Could not build the resources: " + e.getMessage());
+            System.exit(2);
+        } finally {
+            temporary.delete();
+        }
+    }
+
+    private static File findSource(File directory, String name) {
+        for (String extension : new String[]{".tsv", ".tsv.gz"}) {
+            File file = new File(directory, name + extension);
+            if (file.exists()) {
+                return file;
+            }
+        }
+        return null;
+    }
+
+    private static BufferedReader openSource(File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            stream = new GZIPInputStream(stream, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    }
+
+    private static long buildTable(Table table, File source, File file, long memory, File temporary) throws IOException {
+        try (ExternalSorter sorter = new ExternalSorter(memory, temporary, Comparator.naturalOrder())) {
+            try (BufferedReader input = openSource(source)) {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    if (line.isEmpty() || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] columns = line.split("\t");
+                    if (columns.length < 2 || columns[0].isEmpty() || columns[1].isEmpty()) {
+                        throw new IOException("Invalid line in " + source.getName() + ": " + line);
+                    }
+                    sorter.add(columns[0] + "\t" + columns[1]);
+                }
+            }
+
+            Object structure;
+            if (table.map) {
+                // First value of each key
+                ImmutableMap.Builder<Object, Object> builder = ImmutableMap.builder();
+                String[] previous = new String[1];
+                sorter.forEachSorted(line -> {
+                    String key = line.substring(0, line.indexOf('\t'));
+                    if (!key.equals(previous[0])) {
+                        builder.put(parse(table.key, key), parse(table.value, line.substring(key.length() + 1)));
+                        previous[0] = key;
+                    }
+                });
+                structure = builder.build();
+            } else {
+                ImmutableSetMultimap.Builder<Object, Object> builder = ImmutableSetMultimap.builder();
+                sorter.forEachSorted(line -> {
+                    int tab = line.indexOf('\t');
+                    builder.put(parse(table.key, line.substring(0, tab)), parse(table.value, line.substring(tab + 1)));
+                });
+                structure = builder.build();
+            }
+            write(structure, file);
+            return structure instanceof Map ? ((Map<?, ?>) structure).size() : ((ImmutableSetMultimap<?, ?>) structure).size();
+        }
+    }
+
+    private static Object parse(Column column, String value) throws IOException {
+        switch (column) {
+            case LONG:
+                return Long.parseLong(value);
+            case PROTEOFORM:
+                try {
+                    return ProteoformFormat.SIMPLE.getProteoform(value);
+                } catch (java.text.ParseException e) {
+                    throw new IOException("Invalid proteoform: " + value);
+                }
+            default:
+                return value;
+        }
+    }
+
+    private static void write(Object structure, File file) throws IOException {
+        try (ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            output.writeObject(structure);
+        }
+    }
+
+    /**
+     * Splits the SNP table by chromosome on disk, then builds the shards of the chromosomes in parallel.
+     */
+    private static void buildSnpShards(File source, File output, long memory, File temporary, ResourceManifest manifest) throws IOException {
+        Map<Integer, File> partitions = new TreeMap<>();
+        Map<Integer, BufferedWriter> writers = new HashMap<>();
+        try (BufferedReader input = openSource(source)) {
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                int chromosome = SnpShards.parseChromosome(line);
+                long position = VariantWindows.parsePosition(line);
+                String[] columns = line.split("\t");
+                if (chromosome <= 0 || position < 0 || columns.length < 4) {
+                    throw new IOException("Invalid line in " + source.getName() + ": " + line);
+                }
+                BufferedWriter writer = writers.get(chromosome);
+                if (writer == null) {
+                    File partition = File.createTempFile("chromosome" + chromosome + "-", ".gz", temporary);
+                    partitions.put(chromosome, partition);
+                    writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(partition), 1 << 16), StandardCharsets.UTF_8));
+                    writers.put(chromosome, writer);
+                }
+                writer.write(position + "\t" + columns[2] + "\t" + columns[3]);
+                writer.write('\n');
+            }
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+
+        int threads = Math.min(partitions.size(), Runtime.getRuntime().availableProcessors());
+        long memoryPerSorter = Math.max(1024 * 1024, memory / Math.max(1, threads) / 2);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            Map<Integer, Future<String>> tasks = new TreeMap<>();
+            for (Map.Entry<Integer, File> partition : partitions.entrySet()) {
+                tasks.put(partition.getKey(), executor.submit(() ->
+                        buildChromosome(partition.getKey(), partition.getValue(), output, memoryPerSorter, temporary, manifest)));
+            }
+            for (Future<String> task : tasks.values()) {
+                System.out.println(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while building the SNP shards.");
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            for (File partition : partitions.values()) {
+                partition.delete();
+            }
+        }
+    }
+
+    private static String buildChromosome(int chromosome, File partition, File output, long memory, File temporary,
+                                          ResourceManifest manifest) throws IOException {
+        try (ExternalSorter rsIds = new ExternalSorter(memory, temporary, Comparator.naturalOrder());
+             ExternalSorter positions = new ExternalSorter(memory, temporary, BY_POSITION)) {
+            try (BufferedReader input = openSource(partition)) {
+                String line;
+                while ((line = input.readLine()) != null) {
+                    int first = line.indexOf('\t');
+                    int second = line.indexOf('\t', first + 1);
+                    String protein = line.substring(second + 1);
+                    rsIds.add(line.substring(first + 1, second) + "\t" + protein);
+                    positions.add(line.substring(0, first) + "\t" + protein);
+                }
+            }
+
+            ImmutableSetMultimap.Builder<String, String> rsIdBuilder = ImmutableSetMultimap.builder();
+            rsIds.forEachSorted(line -> {
+                int tab = line.indexOf('\t');
+                rsIdBuilder.put(line.substring(0, tab), line.substring(tab + 1));
+            });
+            ImmutableSetMultimap<String, String> rsIdShard = rsIdBuilder.build();
+            File rsIdFile = new File(output, "rsIdsToProteins" + chromosome + ".gz");
+            write(rsIdShard, rsIdFile);
+            manifest.add(rsIdFile, rsIdShard.size());
+            RsIdIndex rsIdIndex = RsIdIndex.build(rsIdShard, false);
+            File rsIdIndexFile = new File(output, RsIdIndex.getFileName(chromosome));
+            rsIdIndex.write(rsIdIndexFile);
+            manifest.add(rsIdIndexFile, rsIdIndex.size());
+
+            ImmutableSetMultimap.Builder<Long, String> positionBuilder = ImmutableSetMultimap.builder();
+            positions.forEachSorted(line -> {
+                int tab = line.indexOf('\t');
+                positionBuilder.put(Long.parseLong(line.substring(0, tab)), line.substring(tab + 1));
+            });
+            ImmutableSetMultimap<Long, String> chrBpShard = positionBuilder.build();
+            File chrBpFile = new File(output, "chrBpToProteins" + chromosome + ".gz");
+            write(chrBpShard, chrBpFile);
+            manifest.add(chrBpFile, chrBpShard.size());
+            PositionIndex positionIndex = PositionIndex.build(chrBpShard);
+            File positionIndexFile = new File(output, PositionIndex.getFileName(chromosome));
+            positionIndex.write(positionIndexFile);
+            manifest.add(positionIndexFile, positionIndex.size());
+
+            return "Built chromosome " + chromosome + ": " + rsIdShard.keySet().size() + " rsIds, "
+                    + chrBpShard.keySet().size() + " positions, " + (rsIds.getRunCount() + positions.getRunCount()) + " sort runs";
+        }
+    }
+}
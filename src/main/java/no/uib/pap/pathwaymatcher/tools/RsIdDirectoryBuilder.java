@@ -0,0 +1,50 @@
+package no.uib.pap.pathwaymatcher.tools;
+
+import com.google.common.collect.Multimap;
+import no.uib.pap.pathwaymatcher.data.RsIdDirectory;
+import no.uib.pap.pathwaymatcher.data.SerializedResources;
+import no.uib.pap.pathwaymatcher.data.SnpShards;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+public class RsIdDirectoryBuilder {
+
+    /**
+     * Creates the rsId to chromosome directory from the rsIdsToProteins shards.
+     *
+     * @param args [0] directory with the rsIdsToProteins shards [1] output file, by default resources/rsIdsToChromosomes.gz
+     */
+    public static void main(String args[]) {
+        String resourcesPath = args.length > 0 ? args[0] : SerializedResources.RESOURCES_PATH;
+        if (!resourcesPath.endsWith("/")) {
+            resourcesPath += "/";
+        }
+        String outputFile = args.length > 1 ? args[1] : resourcesPath + RsIdDirectory.FILE_NAME;
+
+        Map<Integer, long[]> rsNumbersByChromosome = new TreeMap<>();
+        try {
+            for (int chromosome = 1; chromosome <= SnpShards.CHROMOSOMES; chromosome++) {
+                File file = new File(resourcesPath + "rsIdsToProteins" + chromosome + ".gz");
+                if (!file.exists()) {
+                    System.out.println("Skipped chromosome " + chromosome + ": " + file.getPath() + " not found.");
+                    continue;
+                }
+                Multimap<?, ?> shard = (Multimap<?, ?>) SerializedResources.read(file);
+                @SuppressWarnings("unchecked")
+                Set<String> rsIds = (Set<String>) shard.keySet();
+                rsNumbersByChromosome.put(chromosome, RsIdDirectory.toRsNumbers(rsIds));
+                System.out.println("Read chromosome " + chromosome);
+            }
+            RsIdDirectory directory = RsIdDirectory.build(rsNumbersByChromosome);
+            directory.write(new File(outputFile));
+            System.out.println("Finished writing " + outputFile + " (" + directory.size() + " rsIds)");
+        } catch (IOException e) {
+            System.out.println("Could not build the rsId directory: " + e.getMessage());
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.MatchType;
+import no.uib.pap.pathwaymatcher.data.RoleMask;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchRunnerTest {
+
+    private static File writeManifest(String content) throws IOException {
+        File manifest = File.createTempFile("batch", ".tsv");
+        manifest.deleteOnExit();
+        com.google.common.io.Files.write(content, manifest, StandardCharsets.UTF_8);
+        return manifest;
+    }
+
+    @Test
+    void readManifestTest() throws IOException {
+        File manifest = writeManifest("INPUT\tTYPE\tOUTPUT\tOPTIONS\n"
+                + "# Cohort A\n"
+                + "sample1.txt\tuniprot\tout/sample1\n"
+                + "\n"
+                + "sample2.txt\tproteoform\tout/sample2/\t-tlp -m superset -r 2 -gp -ro input,output\n");
+        List<BatchRunner.Entry> entries = BatchRunner.readManifest(manifest);
+        assertEquals(2, entries.size());
+
+        BatchRunner.Entry first = entries.get(0);
+        assertEquals(3, first.line);
+        assertEquals("sample1.txt", first.input);
+        assertNull(first.error);
+        assertEquals(InputType.UNIPROT, first.config.getInputType());
+        assertEquals("sample1.txt", first.config.getInputPath());
+        assertEquals("out/sample1/", first.config.getOutputPath());
+        assertFalse(first.config.isTopLevelPathways());
+        assertFalse(first.config.isUniprotGraph());
+
+        RunConfig second = entries.get(1).config;
+        assertEquals(InputType.PROTEOFORM, second.getInputType());
+        assertTrue(second.isTopLevelPathways());
+        assertEquals(MatchType.SUPERSET, second.getMatchType());
+        assertEquals(2L, second.getRange());
+        assertTrue(second.isProteoformGraph());
+        assertEquals(RoleMask.parse("input,output"), second.getRoleFilter());
+    }
+
+    @Test
+    void invalidLinesTest() throws IOException {
+        File manifest = writeManifest("sample1.txt\tbanana\tout/\n"
+                + "sample2.txt\tuniprot\n"
+                + "sample3.txt\tuniprot\tout/\t-x\n");
+        List<BatchRunner.Entry> entries = BatchRunner.readManifest(manifest);
+        assertEquals(3, entries.size());
+        for (BatchRunner.Entry entry : entries) {
+            assertNull(entry.config);
+            assertNotNull(entry.error);
+        }
+    }
+
+    @Test
+    void failedJobsTest() throws IOException {
+        File manifest = writeManifest("missing.txt\tuniprot\tout/\n"
+                + "sample2.txt\tbanana\tout/\n");
+        assertEquals(2, BatchRunner.run(manifest, 2, new PrintStream(new ByteArrayOutputStream())));
+    }
+}
@@ -0,0 +1,117 @@
+package no.uib.pap.pathwaymatcher;
+
+import com.google.common.io.Files;
+import no.uib.pap.model.Error;
+import no.uib.pap.model.InputType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathwayMatcherEngineTest {
+
+    @Test
+    void concurrentRunsTest() throws Exception {
+        PathwayMatcherEngine engine = new PathwayMatcherEngine();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<RunResult>> runs = new ArrayList<>();
+            for (String input : new String[]{"UniProt", "Ensembl"}) {
+                RunConfig config = RunConfig.builder()
+                        .inputType(input.equals("UniProt") ? InputType.UNIPROT : InputType.ENSEMBL)
+                        .inputPath("resources/input/Proteins/" + input + "/CysticFibrosis.txt")
+                        .outputPath("output/engine" + input)
+                        .topLevelPathways(true)
+                        .build();
+                runs.add(executor.submit(() -> engine.run(config)));
+            }
+            for (Future<RunResult> run : runs) {
+                RunResult result = run.get();
+                assertEquals(2, result.getFiles().size());
+                List<String> search = Files.readLines(result.getFiles().get(0), Charset.defaultCharset());
+                assertEquals(539, search.size());
+                List<String> analysis = Files.readLines(result.getFiles().get(1), Charset.defaultCharset());
+                assertEquals(105, analysis.size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void streamingRunTest() throws PathwayMatcherException, IOException {
+        PathwayMatcherEngine engine = new PathwayMatcherEngine();
+        RunConfig.Builder builder = RunConfig.builder()
+                .inputType(InputType.RSIDS)
+                .inputPath("resources/input/GeneticVariants/RsId/Diabetes.txt")
+                .topLevelPathways(true);
+        RunResult whole = engine.run(builder.outputPath("output/engineWhole").build());
+        RunResult streamed = engine.run(builder.outputPath("output/engineStreamed").streaming(true).chunkSize(50).build());
+
+        // Same rows and analysis, with the rows sorted within each chunk of 50 rsIds
+        List<String> wholeSearch = Files.readLines(whole.getFiles().get(0), Charset.defaultCharset());
+        List<String> streamedSearch = Files.readLines(streamed.getFiles().get(0), Charset.defaultCharset());
+        assertEquals(wholeSearch.get(0), streamedSearch.get(0));
+        assertEquals(new HashSet<>(wholeSearch), new HashSet<>(streamedSearch));
+        assertEquals(wholeSearch.size(), streamedSearch.size());
+        assertEquals(Files.readLines(whole.getFiles().get(1), Charset.defaultCharset()),
+                Files.readLines(streamed.getFiles().get(1), Charset.defaultCharset()));
+    }
+
+    @Test
+    void perSampleRunTest() throws PathwayMatcherException, IOException {
+        File vcf = new File("output/enginePerSample.vcf");
+        vcf.getParentFile().mkdirs();
+        Files.write("##fileformat=VCFv4.3\n"
+                + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2\tS3\n"
+                + "1\t210827406\t.\tT\tA\t.\tPASS\t.\tGT\t0/1\t0/0\t0/0\n"
+                + "10\t114808902\t.\tT\tA\t.\tPASS\t.\tGT:DP\t1|1:5\t0|1:5\t./.:0\n"
+                + "10\t114758349\t.\tT\tA\t.\tPASS\t.\tGT\t1/0\t0/0\t0/0\n", vcf, Charset.defaultCharset());
+        RunResult result = new PathwayMatcherEngine().run(RunConfig.builder()
+                .inputType(InputType.VCF)
+                .inputPath(vcf.getPath())
+                .outputPath("output/enginePerSample")
+                .perSample(true)
+                .build());
+
+        assertEquals(1, result.getFiles().size());
+        List<String> matrix = Files.readLines(result.getFiles().get(0), Charset.defaultCharset());
+        assertEquals(4, matrix.size());
+        String[] pathways = matrix.get(0).split("\t");
+        assertEquals("SAMPLE", pathways[0]);
+        assertTrue(pathways.length > 1);
+        for (int row = 1; row < matrix.size(); row++) {
+            String[] pValues = matrix.get(row).split("\t");
+            assertEquals("S" + row, pValues[0]);
+            assertEquals(pathways.length, pValues.length);
+            for (int column = 1; column < pValues.length; column++) {
+                double pValue = Double.parseDouble(pValues[column]);
+                assertTrue(pValue >= 0.0 && pValue <= 1.0);
+                if (row == 3) {
+                    assertEquals(1.0, pValue);  // No non-reference genotype
+                }
+            }
+        }
+    }
+
+    @Test
+    void inputFileNotFoundTest() throws PathwayMatcherException {
+        RunConfig config = RunConfig.builder().inputType(InputType.UNIPROT).inputPath("blabla.csv").outputPath("output/").build();
+        PathwayMatcherException e = assertThrows(PathwayMatcherException.class, () -> new PathwayMatcherEngine().run(config));
+        assertEquals(Error.COULD_NOT_READ_INPUT_FILE, e.getError());
+    }
+
+    @Test
+    void searchWithoutFilesTest() throws PathwayMatcherException, IOException {
+        RunConfig config = RunConfig.builder().inputType(InputType.UNIPROT).build();
+        List<String> input = Files.readLines(new File("resources/input/Proteins/Valid/singleProtein.txt"), Charset.defaultCharset());
+        assertNotNull(new PathwayMatcherEngine().search(config, input));
+    }
+}
@@ -0,0 +1,101 @@
+package no.uib.pap.pathwaymatcher;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathwayMatcherServerTest {
+
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new PathwayMatcherServer().start(0, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private HttpURLConnection connect(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.getAddress().getPort() + path).openConnection();
+    }
+
+    private static String read(InputStream stream) {
+        Scanner scanner = new Scanner(stream, "UTF-8").useDelimiter("\\A");
+        return scanner.hasNext() ? scanner.next() : "";
+    }
+
+    @Test
+    void parseQueryTest() {
+        Map<String, String> parameters = PathwayMatcherServer.parseQuery("inputType=uniprot&tlp&output=%2Ftmp%2Fout%20a");
+        assertEquals("uniprot", parameters.get("inputType"));
+        assertEquals("true", parameters.get("tlp"));
+        assertEquals("/tmp/out a", parameters.get("output"));
+        assertTrue(PathwayMatcherServer.parseQuery(null).isEmpty());
+    }
+
+    @Test
+    void healthTest() throws IOException {
+        HttpURLConnection connection = connect("/health");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("{\"status\":\"up\",\"mappings\":{}}", read(connection.getInputStream()));
+    }
+
+    @Test
+    void invalidInputTypeTest() throws IOException {
+        HttpURLConnection connection = connect("/search?inputType=banana");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write("P01308\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(400, connection.getResponseCode());
+    }
+
+    @Test
+    void queryUnsupportedTypeTest() throws IOException {
+        assertEquals(400, connect("/query?inputType=vcf&id=1%20100").getResponseCode());
+    }
+
+    @Test
+    void runWithoutOutputTest() throws IOException {
+        HttpURLConnection connection = connect("/run?inputType=uniprot");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write("P01308\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(400, connection.getResponseCode());
+        assertEquals("Missing parameter: output", read(connection.getErrorStream()));
+    }
+
+    @Test
+    void getSearchTest() throws IOException {
+        assertEquals(405, connect("/search?inputType=uniprot").getResponseCode());
+    }
+
+    @Test
+    void postQueryTest() throws IOException {
+        HttpURLConnection connection = connect("/query?inputType=uniprot&id=P01308");
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write("P01308\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(405, connection.getResponseCode());
+    }
+}
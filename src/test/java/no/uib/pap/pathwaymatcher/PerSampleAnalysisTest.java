@@ -0,0 +1,43 @@
+package no.uib.pap.pathwaymatcher;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PerSampleAnalysisTest {
+
+    private static double directUpperTail(int k, int n, double p) {
+        double sum = 0.0;
+        for (int i = k; i <= n; i++) {
+            double choose = 1.0;
+            for (int j = 1; j <= i; j++) {
+                choose = choose * (n - i + j) / j;
+            }
+            sum += choose * Math.pow(p, i) * Math.pow(1 - p, n - i);
+        }
+        return sum;
+    }
+
+    @Test
+    void binomialUpperTailTest() {
+        for (int n : new int[]{1, 5, 20, 60}) {
+            for (double p : new double[]{0.001, 0.05, 0.3, 0.5, 0.9}) {
+                for (int k = 0; k <= n; k++) {
+                    double expected = directUpperTail(k, n, p);
+                    assertEquals(expected, PerSampleAnalysis.binomialUpperTail(k, n, p), 1e-12 + expected * 1e-9);
+                }
+            }
+        }
+        assertEquals(1.0, PerSampleAnalysis.binomialUpperTail(0, 0, 0.5));
+        assertEquals(0.0, PerSampleAnalysis.binomialUpperTail(3, 2, 0.5));
+    }
+
+    @Test
+    void largeBinomialUpperTailTest() {
+        // Far below the mean, where the first terms underflow, and far above it
+        assertEquals(1.0, PerSampleAnalysis.binomialUpperTail(1, 20000, 0.5), 1e-15);
+        double tail = PerSampleAnalysis.binomialUpperTail(40, 10000, 0.001);
+        assertTrue(tail > 0.0 && tail < 1e-10);
+        assertTrue(PerSampleAnalysis.binomialUpperTail(41, 10000, 0.001) < tail);
+    }
+}
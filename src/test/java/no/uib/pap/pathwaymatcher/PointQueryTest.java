@@ -0,0 +1,119 @@
+package no.uib.pap.pathwaymatcher;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import no.uib.pap.model.Error;
+import no.uib.pap.model.InputType;
+import no.uib.pap.pathwaymatcher.data.Bundle;
+import no.uib.pap.pathwaymatcher.data.BundleWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PointQueryTest {
+
+    @Test
+    void proteinTest() throws PathwayMatcherException, IOException {
+        PointQuery pointQuery = new PathwayMatcherEngine().getPointQuery(InputType.UNIPROT, true);
+        List<PointQuery.Row> rows = pointQuery.query(Collections.singletonList("P01308"));
+        assertFalse(rows.isEmpty());
+        for (PointQuery.Row row : rows) {
+            assertEquals("P01308", row.getEntity());
+            assertTrue(row.getReaction().startsWith("R-HSA-"));
+            assertTrue(row.getPathway().startsWith("R-HSA-"));
+            assertNotNull(row.getTopLevelPathway());
+        }
+    }
+
+    @Test
+    void geneTest() throws PathwayMatcherException, IOException {
+        PointQuery pointQuery = new PathwayMatcherEngine().getPointQuery(InputType.GENE, false);
+        List<PointQuery.Row> rows = pointQuery.query(Arrays.asList("INS", "NOT_A_GENE"));
+        assertFalse(rows.isEmpty());
+        for (PointQuery.Row row : rows) {
+            assertEquals("INS", row.getIdentifier());
+            assertEquals("P01308", row.getEntity());
+            assertNull(row.getTopLevelPathway());
+        }
+    }
+
+    @Test
+    void unknownIdentifierTest() throws PathwayMatcherException, IOException {
+        PointQuery pointQuery = new PathwayMatcherEngine().getPointQuery(InputType.UNIPROT, false);
+        assertEquals(0, pointQuery.query("XXXXXX", (identifier, entity, reaction, pathway, topLevelPathway) -> fail(identifier)));
+        assertEquals(0, pointQuery.query("  ", (identifier, entity, reaction, pathway, topLevelPathway) -> fail(identifier)));
+    }
+
+    @Test
+    void unknownGeneAndProteoformTest() throws PathwayMatcherException, IOException {
+        PointQuery genes = new PathwayMatcherEngine().getPointQuery(InputType.GENE, false);
+        assertEquals(0, genes.query("NOT_A_GENE", (identifier, entity, reaction, pathway, topLevelPathway) -> fail(identifier)));
+
+        PointQuery proteoforms = new PathwayMatcherEngine().getPointQuery(InputType.PROTEOFORM, false);
+        assertEquals(0, proteoforms.query("XXXXXX;00046:1", (identifier, entity, reaction, pathway, topLevelPathway) -> fail(identifier)));
+        assertEquals(0, proteoforms.query("not a proteoform", (identifier, entity, reaction, pathway, topLevelPathway) -> fail(identifier)));
+    }
+
+    @Test
+    void isoformTest() throws PathwayMatcherException, IOException {
+        PointQuery pointQuery = new PathwayMatcherEngine().getPointQuery(InputType.UNIPROT, false);
+        List<PointQuery.Row> canonical = pointQuery.query(Collections.singletonList("P01308"));
+        List<PointQuery.Row> isoform = pointQuery.query(Collections.singletonList("P01308-1"));
+
+        // The isoform is not in the mapping, so it gets the rows of the canonical protein
+        assertEquals(canonical.size(), isoform.size());
+        for (PointQuery.Row row : isoform) {
+            assertEquals("P01308-1", row.getIdentifier());
+            assertEquals("P01308", row.getEntity());
+        }
+    }
+
+    @Test
+    void malformedRsIdTest() throws PathwayMatcherException, IOException {
+        PointQuery pointQuery = new PathwayMatcherEngine().getPointQuery(InputType.RSID, false);
+        for (String rsId : Arrays.asList("rs", "rsABC", "12345", "rs12a45", "-rs1")) {
+            assertEquals(0, pointQuery.query(rsId, (identifier, entity, reaction, pathway, topLevelPathway) -> fail(identifier)));
+        }
+        assertTrue(pointQuery.query(Arrays.asList("rsABC", "12345")).isEmpty());
+    }
+
+    @Test
+    void bundleTest() throws IOException {
+        File file = File.createTempFile("mapping", ".bundle");
+        file.deleteOnExit();
+        new BundleWriter()
+                .addMultimap("genesToProteins", ImmutableSetMultimap.of("INS", "P01308"))
+                .addMultimap("proteinsToReactions", ImmutableSetMultimap.of("P01308", "R-HSA-264876"))
+                .addMultimap("reactionsToPathways", ImmutableSetMultimap.of(
+                        "R-HSA-264876", "R-HSA-264876-P",
+                        "R-HSA-264876", "R-HSA-422356"))
+                .write(file);
+
+        try (Bundle bundle = Bundle.open(file)) {
+            PointQuery pointQuery = new PointQuery(InputType.GENE, bundle, false, null);
+            List<PointQuery.Row> rows = pointQuery.query(Arrays.asList("INS", "NOT_A_GENE"));
+            assertEquals(2, rows.size());
+            for (PointQuery.Row row : rows) {
+                assertEquals("INS", row.getIdentifier());
+                assertEquals("P01308", row.getEntity());
+                assertEquals("R-HSA-264876", row.getReaction());
+                assertNull(row.getTopLevelPathway());
+            }
+
+            // The bundle has no top level pathways
+            assertThrows(IllegalArgumentException.class, () -> new PointQuery(InputType.GENE, bundle, true, null));
+        }
+    }
+
+    @Test
+    void unsupportedTypeTest() {
+        PathwayMatcherException e = assertThrows(PathwayMatcherException.class,
+                () -> new PathwayMatcherEngine().getPointQuery(InputType.VCF, false));
+        assertEquals(Error.INVALID_INPUT_TYPE, e.getError());
+    }
+}
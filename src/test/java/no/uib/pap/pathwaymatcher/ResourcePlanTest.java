@@ -0,0 +1,50 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.InputType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+
+import static no.uib.pap.pathwaymatcher.ResourcePlan.Resource;
+import static no.uib.pap.pathwaymatcher.ResourcePlan.Stage;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourcePlanTest {
+
+    @Test
+    void searchOnlyTest() {
+        ResourcePlan plan = ResourcePlan.create(InputType.UNIPROT, EnumSet.of(Stage.SEARCH, Stage.ANALYSIS));
+        assertEquals(Arrays.asList(Resource.MAPPING), plan.getResources());
+        assertFalse(plan.contains(Resource.TOP_LEVEL_PATHWAYS));
+        assertFalse(plan.contains(Resource.PROTEIN_NETWORK_MAPS));
+    }
+
+    @Test
+    void graphsTest() {
+        ResourcePlan plan = ResourcePlan.create(InputType.PROTEOFORMS,
+                EnumSet.of(Stage.SEARCH, Stage.ANALYSIS, Stage.PROTEIN_GRAPH, Stage.PROTEOFORM_GRAPH));
+        assertEquals(Arrays.asList(Resource.MAPPING, Resource.PROTEIN_NETWORK_MAPS, Resource.PROTEOFORM_NETWORK_MAPS,
+                Resource.INDEXED_MAPPING, Resource.INDEXED_PROTEOFORMS), plan.getResources());
+    }
+
+    @Test
+    void proteinGraphSharesGeneIndexTest() {
+        ResourcePlan plan = ResourcePlan.create(InputType.GENES,
+                EnumSet.of(Stage.SEARCH, Stage.TOP_LEVEL_PATHWAYS, Stage.GENE_GRAPH, Stage.PROTEIN_GRAPH));
+        assertTrue(plan.contains(Resource.TOP_LEVEL_PATHWAYS));
+        assertTrue(plan.contains(Resource.INDEXED_MAPPING_WITH_GENES));
+        assertFalse(plan.contains(Resource.INDEXED_MAPPING));
+        assertTrue(plan.getResources().indexOf(Resource.GENE_NETWORK_MAPS) < plan.getResources().indexOf(Resource.INDEXED_MAPPING_WITH_GENES));
+    }
+
+    @Test
+    void taskNamesDistinctTest() {
+        Set<String> names = new HashSet<>();
+        for (Resource resource : Resource.values()) {
+            assertTrue(names.add(resource.getTaskName()), resource.getTaskName());
+        }
+    }
+}
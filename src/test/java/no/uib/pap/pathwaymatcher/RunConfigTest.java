@@ -0,0 +1,150 @@
+package no.uib.pap.pathwaymatcher;
+
+import no.uib.pap.model.Error;
+import no.uib.pap.model.InputType;
+import no.uib.pap.model.MatchType;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RunConfigTest {
+
+    @Test
+    void defaultsTest() throws PathwayMatcherException {
+        RunConfig config = RunConfig.builder().inputType(InputType.UNIPROT).inputPath("input.txt").build();
+        assertEquals(InputType.UNIPROT, config.getSearchType());
+        assertEquals(MatchType.SUBSET, config.getMatchType());
+        assertEquals(-1L, config.getWindow());
+        assertEquals("", config.getOutputPath());
+        assertEquals("", config.getFastaPath());
+        assertFalse(config.isUniprotGraph());
+    }
+
+    @Test
+    void parametersOfOtherInputTypesIgnoredTest() throws PathwayMatcherException {
+        RunConfig config = RunConfig.builder()
+                .inputType(InputType.UNIPROT)
+                .matchType(MatchType.STRICT)
+                .range(5)
+                .window(1000)
+                .outputPath("output")
+                .build();
+        assertEquals(MatchType.SUBSET, config.getMatchType());
+        assertEquals(0L, config.getRange());
+        assertEquals(-1L, config.getWindow());
+        assertEquals("output/", config.getOutputPath());
+    }
+
+    @Test
+    void windowTest() throws PathwayMatcherException {
+        RunConfig config = RunConfig.builder().inputType(InputType.CHRBP).window(1000).build();
+        assertEquals(1000L, config.getWindow());
+        assertEquals(InputType.UNIPROTS, config.getSearchType());
+        assertTrue(config.getStages().contains(ResourcePlan.Stage.VARIANT_WINDOWS));
+    }
+
+    @Test
+    void defaultGraphTest() throws PathwayMatcherException {
+        RunConfig genes = RunConfig.builder().inputType(InputType.GENE).defaultGraph(true).build();
+        assertTrue(genes.isGeneGraph());
+        assertFalse(genes.isUniprotGraph());
+
+        RunConfig proteoforms = RunConfig.builder().inputType(InputType.PROTEOFORM).defaultGraph(true).uniprotGraph(true).build();
+        assertTrue(proteoforms.isProteoformGraph());
+        assertTrue(proteoforms.isUniprotGraph());
+        assertFalse(proteoforms.isGeneGraph());
+    }
+
+    @Test
+    void missingInputTypeTest() {
+        PathwayMatcherException e = assertThrows(PathwayMatcherException.class, () -> RunConfig.builder().build());
+        assertEquals(Error.MISSING_ARGUMENT, e.getError());
+    }
+
+    @Test
+    void fastaTest() {
+        PathwayMatcherException missing = assertThrows(PathwayMatcherException.class,
+                () -> RunConfig.builder().inputType(InputType.PEPTIDE).build());
+        assertEquals(Error.MISSING_ARGUMENT, missing.getError());
+
+        PathwayMatcherException unreadable = assertThrows(PathwayMatcherException.class,
+                () -> RunConfig.builder().inputType(InputType.PEPTIDE).fastaPath("blabla.fasta").build());
+        assertEquals(Error.COULD_NOT_READ_FASTA_FILE, unreadable.getError());
+    }
+
+    @Test
+    void invalidMatchTypeTest() {
+        PathwayMatcherException e = assertThrows(PathwayMatcherException.class, () -> RunConfig.parseMatchType("blabla"));
+        assertEquals(Error.INVALID_MATCHING_TYPE, e.getError());
+
+        PathwayMatcherException missing = assertThrows(PathwayMatcherException.class, () -> RunConfig.parseMatchType(null));
+        assertEquals(Error.INVALID_MATCHING_TYPE, missing.getError());
+    }
+
+    @Test
+    void matchTypeOfOtherInputTypesNotParsedTest() throws PathwayMatcherException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("inputType", "uniprot");
+        parameters.put("matchType", "blabla");
+        RunConfig config = RunConfig.fromParameters(parameters, false).build();
+        assertEquals(MatchType.SUBSET, config.getMatchType());
+    }
+
+    @Test
+    void streamingTest() throws PathwayMatcherException {
+        RunConfig config = RunConfig.builder().inputType(InputType.RSIDS).streaming(true).chunkSize(100).build();
+        assertTrue(config.isStreaming());
+        assertEquals(100, config.getChunkSize());
+
+        PathwayMatcherException e = assertThrows(PathwayMatcherException.class,
+                () -> RunConfig.builder().inputType(InputType.RSIDS).streaming(true).chunkSize(0).build());
+        assertEquals(Error.COMMAND_LINE_ARGUMENTS_PARSING_ERROR, e.getError());
+    }
+
+    @Test
+    void vcfFiltersTest() throws PathwayMatcherException {
+        RunConfig vcf = RunConfig.builder().inputType(InputType.VCF).passOnly(true).minAlleleFrequency(0.01).build();
+        assertTrue(vcf.isPassOnly());
+        assertEquals(0.01, vcf.getMinAlleleFrequency());
+        assertEquals(1.0, vcf.getMaxAlleleFrequency());
+
+        RunConfig chrBp = RunConfig.builder().inputType(InputType.CHRBP).passOnly(true).minAlleleFrequency(0.01).build();
+        assertFalse(chrBp.isPassOnly());
+        assertEquals(0.0, chrBp.getMinAlleleFrequency());
+
+        assertThrows(PathwayMatcherException.class,
+                () -> RunConfig.builder().inputType(InputType.VCF).minAlleleFrequency(0.5).maxAlleleFrequency(0.1).build());
+        assertThrows(PathwayMatcherException.class, () -> RunConfig.parseAlleleFrequency("1.5"));
+    }
+
+    @Test
+    void perSampleTest() throws PathwayMatcherException {
+        assertTrue(RunConfig.builder().inputType(InputType.VCF).perSample(true).build().isPerSample());
+        assertFalse(RunConfig.builder().inputType(InputType.CHRBP).perSample(true).build().isPerSample());
+    }
+
+    @Test
+    void regionTest() throws PathwayMatcherException {
+        RunConfig vcf = RunConfig.builder().inputType(InputType.VCF).region(RunConfig.parseRegion("chr7:117,000,000-118,000,000")).build();
+        assertEquals("7:117000000-118000000", vcf.getRegion().toString());
+        assertNull(RunConfig.builder().inputType(InputType.UNIPROT).region(RunConfig.parseRegion("7")).build().getRegion());
+        assertThrows(PathwayMatcherException.class, () -> RunConfig.parseRegion("X"));
+    }
+
+    @Test
+    void fromParametersTest() throws PathwayMatcherException {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("inputType", "proteoform");
+        parameters.put("matchType", "superset");
+        parameters.put("tlp", "true");
+        assertThrows(PathwayMatcherException.class, () -> RunConfig.fromParameters(parameters, true));
+
+        RunConfig config = RunConfig.fromParameters(parameters, false).build();
+        assertEquals(InputType.PROTEOFORM, config.getInputType());
+        assertEquals(MatchType.SUPERSET, config.getMatchType());
+        assertTrue(config.isTopLevelPathways());
+    }
+}
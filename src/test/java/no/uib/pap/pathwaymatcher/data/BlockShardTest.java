@@ -0,0 +1,100 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BlockShardTest {
+
+    private static File writeShard(Multimap<Long, String> multimap, int blockSize) throws IOException {
+        File file = File.createTempFile("rsIdBlocks", ".bin");
+        file.deleteOnExit();
+        BlockShardWriter.write(multimap, file, blockSize);
+        return file;
+    }
+
+    private static Multimap<Long, String> createMultimap(int size) {
+        Multimap<Long, String> multimap = ArrayListMultimap.create();
+        for (long key = 0; key < size; key++) {
+            multimap.put(key * 3, "P" + key % 97);
+            if (key % 5 == 0) {
+                multimap.put(key * 3, "Q" + key);
+            }
+        }
+        return multimap;
+    }
+
+    @Test
+    void getTest() throws IOException {
+        try (BlockShard shard = BlockShard.open(writeShard(createMultimap(10000), 1024))) {
+            assertEquals(10000, shard.getEntryCount());
+            assertTrue(shard.getBlockCount() > 10);
+
+            assertEquals(Arrays.asList("P0", "Q0"), shard.get(0L));
+            assertEquals(Arrays.asList("P12"), shard.get(3 * 4183L));
+            assertEquals(Collections.emptyList(), shard.get(1L));
+            assertEquals(Collections.emptyList(), shard.get(3 * 10000L));
+        }
+    }
+
+    @Test
+    void readsOnlyNeededBlocksTest() throws IOException {
+        try (BlockShard shard = BlockShard.open(writeShard(createMultimap(10000), 1024))) {
+            Map<Long, List<String>> result = shard.get(new long[]{300L, 303L, 306L, 2L}, null);
+            assertEquals(3, result.size());
+            assertEquals(1, shard.getBlocksRead());
+        }
+    }
+
+    @Test
+    void parallelGetTest() throws IOException {
+        Multimap<Long, String> multimap = createMultimap(20000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (BlockShard shard = BlockShard.open(writeShard(multimap, 2048))) {
+            long[] keys = new long[3000];
+            Random random = new Random(3);
+            for (int K = 0; K < keys.length; K++) {
+                keys[K] = random.nextInt(70000);
+            }
+            Map<Long, List<String>> result = shard.get(keys, executor);
+            for (long key : keys) {
+                assertEquals(multimap.get(key), result.getOrDefault(key, Collections.emptyList()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void fromRsIdsTest() throws IOException {
+        Multimap<Long, String> multimap = BlockShardWriter.fromRsIds(ImmutableSetMultimap.of(
+                "rs9272346", "P01906", "NA", "P01909", "rs1024611", "P13500"));
+        assertEquals(2, multimap.size());
+        try (BlockShard shard = BlockShard.open(writeShard(multimap, BlockShardWriter.DEFAULT_BLOCK_SIZE))) {
+            assertEquals(1, shard.getBlockCount());
+            assertEquals(Arrays.asList("P13500"), shard.get(1024611L));
+        }
+    }
+
+    @Test
+    void invalidFileTest() throws IOException {
+        File file = File.createTempFile("rsIdBlocks", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.writeInt(0);
+            output.writeInt(BlockShard.VERSION);
+            output.writeInt(0);
+        }
+        assertThrows(IOException.class, () -> BlockShard.open(file));
+    }
+}
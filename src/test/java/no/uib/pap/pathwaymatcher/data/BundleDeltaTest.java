@@ -0,0 +1,124 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BundleDeltaTest {
+
+    private static File write(BundleWriter writer) throws IOException {
+        File file = File.createTempFile("mapping", ".bundle");
+        file.deleteOnExit();
+        writer.write(file);
+        return file;
+    }
+
+    private static BundleWriter oldRelease() throws IOException {
+        return new BundleWriter()
+                .addMultimap("proteinsToReactions", ImmutableSetMultimap.of(
+                        "P01308", "R-HSA-264876",
+                        "P01308", "R-HSA-74749",
+                        "P68871", "R-HSA-2168885"))
+                .addMultimap("reactionsToPathways", ImmutableSetMultimap.of(
+                        "R-HSA-264876", "R-HSA-264876P"))
+                .addLongMultimap("chrBpToProteins22", ImmutableSetMultimap.of(
+                        16444392L, "Q8NG94",
+                        50000000L, "P36543"));
+    }
+
+    private static BundleWriter newRelease() throws IOException {
+        return new BundleWriter()
+                .addMultimap("proteinsToReactions", ImmutableSetMultimap.of(
+                        "P01308", "R-HSA-264876",
+                        "P68871", "R-HSA-2168885",
+                        "Q9Y6D9", "R-HSA-141409"))
+                .addMultimap("reactionsToPathways", ImmutableSetMultimap.of(
+                        "R-HSA-264876", "R-HSA-264876P"))
+                .addLongMultimap("chrBpToProteins22", ImmutableSetMultimap.of(
+                        16444392L, "Q8NG94",
+                        50000000L, "Q9NZK5"));
+    }
+
+    @Test
+    void diffTest() throws IOException {
+        try (Bundle from = Bundle.open(write(oldRelease())); Bundle to = Bundle.open(write(newRelease()))) {
+            BundleDelta delta = BundleDelta.diff(from, to);
+            assertEquals(2, delta.getSections().size());
+            assertFalse(delta.getSections().contains("reactionsToPathways"));
+            assertEquals(2, delta.getAddedCount());
+            assertEquals(2, delta.getRemovedCount());
+        }
+    }
+
+    @Test
+    void applyInPlaceTest() throws IOException {
+        File bundleFile = write(oldRelease());
+        File deltaFile = File.createTempFile("mapping", ".delta.gz");
+        deltaFile.deleteOnExit();
+        ResourceManifest manifest;
+        try (Bundle from = Bundle.open(bundleFile); Bundle to = Bundle.open(write(newRelease()))) {
+            BundleDelta.diff(from, to).write(deltaFile);
+            manifest = BundleDelta.manifest(to);
+        }
+
+        BundleDelta.read(deltaFile).applyInPlace(bundleFile, manifest);
+        try (Bundle patched = Bundle.open(bundleFile)) {
+            assertTrue(BundleDelta.verify(patched, manifest).isEmpty());
+            assertEquals(1, patched.getMultimap("proteinsToReactions").get("P01308").size());
+            assertEquals("Q9NZK5", patched.getLongMultimap("chrBpToProteins22").get(50000000L).get(0));
+        }
+    }
+
+    @Test
+    void mismatchKeepsBundleTest() throws IOException {
+        File bundleFile = write(oldRelease());
+        byte[] original = Files.readAllBytes(bundleFile.toPath());
+
+        BundleDelta delta = new BundleDelta();
+        delta.remove("proteinsToReactions", "P01308", "R-HSA-0000");
+        ResourceManifest manifest;
+        try (Bundle bundle = Bundle.open(bundleFile)) {
+            manifest = BundleDelta.manifest(bundle);
+        }
+        assertThrows(IOException.class, () -> delta.applyInPlace(bundleFile, manifest));
+
+        BundleDelta wrongManifest = new BundleDelta();
+        wrongManifest.add("proteinsToReactions", "P01308", "R-HSA-0000");
+        assertThrows(IOException.class, () -> wrongManifest.applyInPlace(bundleFile, manifest));
+
+        assertArrayEquals(original, Files.readAllBytes(bundleFile.toPath()));
+        assertFalse(new File(bundleFile.getPath() + ".patch").exists());
+    }
+
+    @Test
+    void droppedSectionTest() throws IOException {
+        File bundleFile = write(oldRelease());
+        File deltaFile = File.createTempFile("mapping", ".delta.gz");
+        deltaFile.deleteOnExit();
+        ResourceManifest manifest;
+        try (Bundle from = Bundle.open(bundleFile); Bundle to = Bundle.open(write(new BundleWriter()
+                .addMultimap("proteinsToReactions", ImmutableSetMultimap.of(
+                        "P01308", "R-HSA-264876",
+                        "P01308", "R-HSA-74749",
+                        "P68871", "R-HSA-2168885"))
+                .addMultimap("reactionsToPathways", ImmutableSetMultimap.of(
+                        "R-HSA-264876", "R-HSA-264876P"))))) {
+            BundleDelta delta = BundleDelta.diff(from, to);
+            assertEquals(1, delta.getSections().size());
+            assertEquals(2, delta.getRemovedCount());
+            delta.write(deltaFile);
+            manifest = BundleDelta.manifest(to);
+        }
+
+        BundleDelta.read(deltaFile).applyInPlace(bundleFile, manifest);
+        try (Bundle patched = Bundle.open(bundleFile)) {
+            assertFalse(patched.hasSection("chrBpToProteins22"));
+            assertEquals(2, patched.getMultimap("proteinsToReactions").get("P01308").size());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BundleTest {
+
+    private static File writeBundle() throws IOException {
+        File file = File.createTempFile("mapping", ".bundle");
+        file.deleteOnExit();
+        new BundleWriter()
+                .addMultimap("proteinsToReactions", ImmutableSetMultimap.of(
+                        "P01308", "R-HSA-264876",
+                        "P01308", "R-HSA-74749",
+                        "P68871", "R-HSA-2168885",
+                        "Q9Y6D9", "R-HSA-141409"))
+                .addLongMultimap("chrBpToProteins22", ImmutableSetMultimap.of(
+                        16444392L, "Q8NG94",
+                        16444405L, "Q8NG94",
+                        50000000L, "P36543",
+                        50000000L, "Q9NZK5"))
+                .write(file);
+        return file;
+    }
+
+    @Test
+    void stringMultimapTest() throws IOException {
+        try (Bundle bundle = Bundle.open(writeBundle())) {
+            BundleMultimap proteinsToReactions = bundle.getMultimap("proteinsToReactions");
+            assertEquals(3, proteinsToReactions.keyCount());
+            assertEquals(4, proteinsToReactions.size());
+
+            List<String> reactions = proteinsToReactions.get("P01308");
+            assertEquals(2, reactions.size());
+            assertTrue(reactions.contains("R-HSA-264876"));
+            assertTrue(reactions.contains("R-HSA-74749"));
+
+            assertTrue(proteinsToReactions.containsKey("Q9Y6D9"));
+            assertFalse(proteinsToReactions.containsKey("P0130"));
+            assertTrue(proteinsToReactions.get("A00000").isEmpty());
+        }
+    }
+
+    @Test
+    void longMultimapTest() throws IOException {
+        try (Bundle bundle = Bundle.open(writeBundle())) {
+            BundleLongMultimap chrBpToProteins = bundle.getLongMultimap("chrBpToProteins22");
+            assertEquals(3, chrBpToProteins.keyCount());
+            assertEquals(16444392L, chrBpToProteins.getKey(0));
+            assertEquals(2, chrBpToProteins.get(50000000L).size());
+            assertEquals("Q8NG94", chrBpToProteins.get(16444405L).get(0));
+            assertTrue(chrBpToProteins.get(16444406L).isEmpty());
+        }
+    }
+
+    @Test
+    void sectionsTest() throws IOException {
+        try (Bundle bundle = Bundle.open(writeBundle())) {
+            assertEquals(2, bundle.getSectionNames().size());
+            assertTrue(bundle.hasSection("chrBpToProteins22"));
+            assertThrows(IllegalArgumentException.class, () -> bundle.getMultimap("chrBpToProteins22"));
+            assertThrows(IllegalArgumentException.class, () -> bundle.getMultimap("reactions"));
+        }
+    }
+
+    @Test
+    void notABundleTest() throws IOException {
+        File file = File.createTempFile("mapping", ".txt");
+        file.deleteOnExit();
+        java.nio.file.Files.write(file.toPath(), "P01308\tR-HSA-264876\n".getBytes());
+        assertThrows(IOException.class, () -> Bundle.open(file));
+    }
+}
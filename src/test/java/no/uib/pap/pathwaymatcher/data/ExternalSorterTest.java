@@ -0,0 +1,47 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExternalSorterTest {
+
+    @Test
+    void inMemoryTest() throws IOException {
+        File directory = Files.createTempDirectory("sort").toFile();
+        try (ExternalSorter sorter = new ExternalSorter(1024 * 1024, directory, Comparator.naturalOrder())) {
+            for (String line : new String[]{"P2\tR1", "P1\tR2", "P1\tR1", "P2\tR1"}) {
+                sorter.add(line);
+            }
+            List<String> sorted = new ArrayList<>();
+            assertEquals(3, sorter.forEachSorted(sorted::add));
+            assertEquals(Arrays.asList("P1\tR1", "P1\tR2", "P2\tR1"), sorted);
+            assertEquals(0, sorter.getRunCount());
+        }
+    }
+
+    @Test
+    void mergeRunsTest() throws IOException {
+        File directory = Files.createTempDirectory("sort").toFile();
+        Random random = new Random(7);
+        TreeSet<String> expected = new TreeSet<>();
+        try (ExternalSorter sorter = new ExternalSorter(4 * 1024, directory, Comparator.naturalOrder())) {
+            for (int I = 0; I < 5000; I++) {
+                String line = "rs" + random.nextInt(2000) + "\tP" + random.nextInt(5);
+                expected.add(line);
+                sorter.add(line);
+            }
+            assertTrue(sorter.getRunCount() > 1);
+
+            List<String> sorted = new ArrayList<>();
+            assertEquals(expected.size(), sorter.forEachSorted(sorted::add));
+            assertEquals(new ArrayList<>(expected), sorted);
+        }
+        assertEquals(0, directory.listFiles().length);
+    }
+}
@@ -0,0 +1,44 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import static no.uib.pap.pathwaymatcher.data.IdDictionary.Kind.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class IdDictionaryTest {
+
+    @Test
+    void internTest() {
+        IdDictionary dictionary = new IdDictionary();
+        assertEquals(0, dictionary.intern(PROTEIN, "P01308"));
+        assertEquals(1, dictionary.intern(PROTEIN, "P68871"));
+        assertEquals(0, dictionary.intern(PROTEIN, "P01308"));
+        assertEquals(0, dictionary.intern(REACTION, "R-HSA-74749"));
+
+        assertEquals(2, dictionary.size(PROTEIN));
+        assertEquals(1, dictionary.size(REACTION));
+        assertEquals(0, dictionary.size(GENE));
+    }
+
+    @Test
+    void kindsAreSeparateTest() {
+        IdDictionary dictionary = new IdDictionary();
+        dictionary.intern(GENE, "INS");
+        assertEquals(-1, dictionary.getId(PROTEIN, "INS"));
+        assertEquals(0, dictionary.getId(GENE, "INS"));
+        assertEquals("INS", dictionary.getString(GENE, 0));
+    }
+
+    @Test
+    void manyIdentifiersTest() {
+        IdDictionary dictionary = new IdDictionary();
+        for (int I = 0; I < 100000; I++) {
+            assertEquals(I, dictionary.intern(PATHWAY, "R-HSA-" + I));
+        }
+        for (int I = 0; I < 100000; I++) {
+            assertEquals(I, dictionary.getId(PATHWAY, "R-HSA-" + I));
+            assertEquals("R-HSA-" + I, dictionary.getString(PATHWAY, I));
+        }
+        assertEquals(-1, dictionary.getId(PATHWAY, "R-HSA-100000"));
+    }
+}
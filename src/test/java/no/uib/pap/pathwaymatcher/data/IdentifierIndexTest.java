@@ -0,0 +1,91 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Multimap;
+import no.uib.pap.pathwaymatcher.data.IdentifierIndex.Namespace;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentifierIndexTest {
+
+    private static final ImmutableSetMultimap<String, String> GENES = ImmutableSetMultimap.<String, String>builder()
+            .put("TP53", "P04637")
+            .put("HLA-A", "P04439")
+            .put("HLA-A", "P01892")
+            .put("CCL2", "P13500")
+            .build();
+
+    @Test
+    void getProteinsTest() {
+        IdentifierIndex index = IdentifierIndex.build(Namespace.GENE, GENES);
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("P04637"), index.getProteins("TP53"));
+        assertEquals(Arrays.asList("P01892", "P04439"), index.getProteins("HLA-A"));
+        assertEquals(Collections.emptyList(), index.getProteins("NOTAGENE"));
+        assertFalse(index.contains(""));
+    }
+
+    @Test
+    void byteSlotTest() {
+        IdentifierIndex index = IdentifierIndex.build(Namespace.GENE, GENES);
+        byte[] line = "x HLA-A TP53 NOTAGENE".getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(index.getSlot("HLA-A"), index.getSlot(line, 2, 7));
+        assertEquals(index.getSlot("TP53"), index.getSlot(line, 8, 12));
+        assertEquals(-1, index.getSlot(line, 13, 21));
+    }
+
+    @Test
+    void allKeysResolveTest() {
+        Multimap<String, String> multimap = HashMultimap.create();
+        for (int K = 0; K < 50000; K++) {
+            multimap.put("ENSG" + String.format("%011d", K * 7), "P" + K % 1000);
+        }
+        IdentifierIndex index = IdentifierIndex.build(Namespace.ENSEMBL, multimap);
+
+        HashSet<Integer> slots = new HashSet<>();
+        for (String key : multimap.keySet()) {
+            slots.add(index.getSlot(key));
+            assertEquals(new HashSet<>(multimap.get(key)), new HashSet<>(index.getProteins(key)));
+        }
+        assertEquals(multimap.keySet().size(), slots.size());
+        assertTrue(index.getBitsPerKey() < 24);
+
+        // The fingerprints reject almost all unknown identifiers
+        int accepted = 0;
+        for (int K = 0; K < 50000; K++) {
+            if (index.contains("ENSG" + String.format("%011d", K * 7 + 1))) {
+                accepted++;
+            }
+        }
+        assertTrue(accepted < 10);
+    }
+
+    @Test
+    void identityTest() {
+        IdentifierIndex index = IdentifierIndex.build(Namespace.UNIPROT, IdentifierIndex.identity(ImmutableSet.of("P04637", "P13500")));
+        assertEquals(Arrays.asList("P13500"), index.getProteins("P13500"));
+    }
+
+    @Test
+    void writeReadTest() throws IOException {
+        File file = File.createTempFile("identifiersGene", ".gz");
+        file.deleteOnExit();
+        IdentifierIndex.build(Namespace.GENE, GENES).write(file);
+
+        IdentifierIndex index = IdentifierIndex.read(new FileInputStream(file));
+        assertEquals(Namespace.GENE, index.getNamespace());
+        assertEquals(Arrays.asList("P13500"), index.getProteins("CCL2"));
+        assertEquals(Arrays.asList("P01892", "P04439"), index.getProteins("HLA-A"));
+    }
+}
@@ -0,0 +1,119 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InputTokenizerTest {
+
+    private static final String PATH = "resources/input/";
+
+    private static InputTokenizer tokenizer(String text, int bufferSize) {
+        return new InputTokenizer(Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1))), bufferSize);
+    }
+
+    private static List<String> lines(String text, int bufferSize) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (InputTokenizer tokenizer = tokenizer(text, bufferSize)) {
+            while (tokenizer.nextLine()) {
+                lines.add(tokenizer.getLine());
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    void lineEndsTest() throws IOException {
+        for (String file : new String[]{"lineEndUnix.txt", "lineEndWindows.txt", "lineEndMac.txt"}) {
+            List<String> lines = InputTokenizer.readLines(new File(PATH + file));
+            assertEquals(10, lines.size(), file);
+            assertEquals("P41159", lines.get(0), file);
+        }
+    }
+
+    @Test
+    void bufferBoundariesTest() throws IOException {
+        String text = "a\r\nbb\rccc\n\ndddd\r\r\neeeeeeeeeeee";
+        List<String> expected = Arrays.asList("a", "bb", "ccc", "", "dddd", "", "eeeeeeeeeeee");
+        // Small buffers split the CRLF pairs and force the buffer to grow for the long lines
+        for (int bufferSize = 1; bufferSize <= 8; bufferSize++) {
+            assertEquals(expected, lines(text, bufferSize), "buffer " + bufferSize);
+        }
+        assertEquals(Arrays.asList("a", "b"), lines("a\rb\r", 2));
+        assertEquals(Arrays.asList(), lines("", 4));
+    }
+
+    @Test
+    void fieldsTest() throws IOException {
+        try (InputTokenizer tokenizer = tokenizer("#CHROM POS\nchr12\t 94508323\t.\tC\n23 5\nP01308;00046:123,00047:44\n", 16)) {
+            assertTrue(tokenizer.nextLine());
+            assertTrue(tokenizer.startsWith('#'));
+
+            assertTrue(tokenizer.nextLine());
+            assertEquals(2, tokenizer.getLineNumber());
+            assertTrue(tokenizer.nextField());
+            assertEquals(12, tokenizer.parseChromosome());
+            assertTrue(tokenizer.nextField());
+            assertEquals(94508323L, tokenizer.parseLong());
+            assertTrue(tokenizer.nextField());
+            assertTrue(tokenizer.fieldEquals("."));
+            assertEquals(-1L, tokenizer.parseLong());
+            assertTrue(tokenizer.skipFields(1));
+            assertFalse(tokenizer.nextField());
+
+            assertTrue(tokenizer.nextLine());
+            assertTrue(tokenizer.nextField());
+            assertEquals(0, tokenizer.parseChromosome());
+
+            assertTrue(tokenizer.nextLine());
+            assertTrue(tokenizer.nextField(';'));
+            assertEquals("P01308", tokenizer.getField());
+            assertTrue(tokenizer.nextField(','));
+            assertEquals("00046:123", tokenizer.getField());
+            assertTrue(tokenizer.nextField(','));
+            assertEquals(8, tokenizer.getFieldLength());
+            assertFalse(tokenizer.nextField(','));
+            assertFalse(tokenizer.nextLine());
+        }
+    }
+
+    @Test
+    void rsIdTest() throws IOException {
+        try (InputTokenizer tokenizer = tokenizer("rs10010131 RS7 rs rs12a", 8)) {
+            assertTrue(tokenizer.nextLine());
+            long[] expected = {10010131L, 7L, -1L, -1L};
+            for (long rsNumber : expected) {
+                assertTrue(tokenizer.nextField());
+                assertEquals(RsIdDirectory.parseRsNumber(tokenizer.getField()), tokenizer.parseRsNumber());
+                assertEquals(rsNumber, tokenizer.parseRsNumber());
+            }
+        }
+    }
+
+    @Test
+    void gzipTest() throws IOException {
+        File file = File.createTempFile("tokenizer", ".txt.gz");
+        file.deleteOnExit();
+        try (OutputStream output = new FileOutputStream(file)) {
+            // Two members, as written by bgzip
+            for (String member : new String[]{"1 11854476\r\n", "2 320\r\n"}) {
+                GZIPOutputStream gzip = new GZIPOutputStream(output);
+                gzip.write(member.getBytes(StandardCharsets.ISO_8859_1));
+                gzip.finish();
+            }
+        }
+        assertEquals(Arrays.asList("1 11854476", "2 320"), InputTokenizer.readLines(file));
+    }
+}
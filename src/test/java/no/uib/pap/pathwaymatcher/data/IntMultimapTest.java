@@ -0,0 +1,60 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntMultimapTest {
+
+    @Test
+    void insertionOrderTest() {
+        IntMultimap multimap = IntMultimap.builder(4)
+                .put(2, 7).put(0, 5).put(2, 3).put(0, 9).put(2, 1)
+                .build();
+        assertEquals(4, multimap.keyCount());
+        assertEquals(5, multimap.size());
+        assertArrayEquals(new int[]{5, 9}, multimap.get(0));
+        assertArrayEquals(new int[]{}, multimap.get(1));
+        assertArrayEquals(new int[]{7, 3, 1}, multimap.get(2));
+        assertEquals(3, multimap.count(2));
+        assertEquals(-1, multimap.indexOf(2, 4));
+        assertTrue(multimap.containsEntry(2, 1));
+    }
+
+    @Test
+    void keysOutOfRangeTest() {
+        IntMultimap multimap = IntMultimap.builder(1).put(0, 1).build();
+        assertEquals(0, multimap.count(-1));
+        assertEquals(0, multimap.count(5));
+        assertArrayEquals(new int[]{}, multimap.get(5));
+        assertThrows(IllegalArgumentException.class, () -> IntMultimap.builder(1).put(1, 0));
+    }
+
+    @Test
+    void forEachTest() {
+        IntMultimap multimap = IntMultimap.builder(2).put(1, 4).put(1, 8).build();
+        List<Integer> values = new ArrayList<>();
+        multimap.forEach(1, values::add);
+        assertEquals(Arrays.asList(4, 8), values);
+    }
+
+    @Test
+    void sortedValuesPositionsTest() {
+        IntMultimap.Builder builder = IntMultimap.builder(2).sortValues();
+        builder.put(1, 30).put(0, 2).put(1, 10).put(1, 20);
+        int[] positions = new int[builder.size()];
+        IntMultimap multimap = builder.build(positions);
+
+        assertArrayEquals(new int[]{10, 20, 30}, multimap.get(1));
+        // The value added first (30) ends at the end of the range of key 1
+        assertEquals(30, multimap.target(positions[0]));
+        assertEquals(2, multimap.target(positions[1]));
+        assertEquals(10, multimap.target(positions[2]));
+        assertEquals(20, multimap.target(positions[3]));
+        assertEquals(positions[3], multimap.indexOf(1, 20));
+    }
+}
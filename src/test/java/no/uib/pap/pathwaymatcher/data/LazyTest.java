@@ -0,0 +1,64 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LazyTest {
+
+    @Test
+    void loadOnceTest() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        Lazy<String> lazy = new Lazy<>(() -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return "loaded";
+        });
+        assertFalse(lazy.isLoaded());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int I = 0; I < 8; I++) {
+                results.add(executor.submit(lazy::get));
+            }
+            Thread.sleep(50);
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("loaded", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertTrue(lazy.isLoaded());
+        assertEquals("loaded", lazy.get());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void retryAfterFailureTest() throws IOException {
+        AtomicInteger loads = new AtomicInteger();
+        Lazy<String> lazy = new Lazy<>(() -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IOException("missing file");
+            }
+            return "loaded";
+        });
+        assertThrows(IOException.class, lazy::get);
+        assertFalse(lazy.isLoaded());
+        assertEquals("loaded", lazy.get());
+        assertEquals(2, loads.get());
+    }
+}
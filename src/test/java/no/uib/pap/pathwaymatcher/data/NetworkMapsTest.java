@@ -0,0 +1,54 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NetworkMapsTest {
+
+    @Test
+    void heldWithoutCacheTest() throws IOException {
+        // The protein names are read from their own resource file, so no mapping is needed
+        NetworkMaps maps = new NetworkMaps(null, null);
+        Map<String, String> proteinsToNames = maps.getProteinsToNames();
+        assertFalse(proteinsToNames.isEmpty());
+        assertSame(proteinsToNames, maps.getProteinsToNames());
+    }
+
+    @Test
+    void reloadedThroughCacheTest() throws IOException {
+        ResourceCache cache = new ResourceCache(ResourceCache.UNLIMITED);
+        NetworkMaps maps = new NetworkMaps(null, cache);
+        Map<String, String> proteinsToNames = maps.getProteinsToNames();
+        assertTrue(cache.contains("proteinsToNames.gz"));
+        assertSame(proteinsToNames, maps.getProteinsToNames());
+
+        // Larger than the budget, so it is read again on each use
+        ResourceCache small = new ResourceCache(1);
+        NetworkMaps reloaded = new NetworkMaps(null, small);
+        assertEquals(proteinsToNames, reloaded.getProteinsToNames());
+        reloaded.getProteinsToNames();
+        assertFalse(small.contains("proteinsToNames.gz"));
+        assertEquals(2, small.getLoads());
+        assertEquals(1, small.getReloads());
+    }
+
+    @Test
+    void notPrefetchedThroughCacheTest() throws IOException {
+        // The cache could drop a prefetched map before the graph reads it, so the maps it keeps are read on use
+        ResourceCache cache = new ResourceCache(1);
+        NetworkMaps maps = new NetworkMaps(null, cache);
+        maps.loadProteoformMaps();
+        assertEquals(0, cache.getLoads());
+    }
+
+    @Test
+    void indexRelationsNotHeldTest() throws IOException {
+        // Read only while an index is built, so without a cache each read gives a new map
+        NetworkMaps maps = new NetworkMaps(null, null);
+        assertNotSame(maps.getProteinsToComplexes(), maps.getProteinsToComplexes());
+    }
+}
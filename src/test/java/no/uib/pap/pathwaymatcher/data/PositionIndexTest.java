@@ -0,0 +1,108 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PositionIndexTest {
+
+    // P1 spans 100-500, P2 spans 300-350, P3 spans 1000-5000, P4 is at 2000
+    private static final ImmutableSetMultimap<Long, String> SHARD = ImmutableSetMultimap.<Long, String>builder()
+            .put(100L, "P1").put(500L, "P1").put(250L, "P1")
+            .put(300L, "P2").put(350L, "P2")
+            .put(1000L, "P3").put(5000L, "P3")
+            .put(2000L, "P4")
+            .build();
+
+    @Test
+    void getProteinsTest() {
+        PositionIndex index = PositionIndex.build(SHARD);
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("P1", "P2"), index.getProteins(320L, 0L));
+        assertEquals(Arrays.asList("P1"), index.getProteins(100L, 0L));
+        assertEquals(Collections.emptyList(), index.getProteins(700L, 0L));
+        assertEquals(Arrays.asList("P1", "P3"), index.getProteins(700L, 300L));
+        assertEquals(Arrays.asList("P3", "P4"), index.getProteins(2000L, 0L));
+        assertEquals(Collections.emptyList(), index.getProteins(6000L, 999L));
+    }
+
+    @Test
+    void distanceTest() {
+        PositionIndex index = PositionIndex.build(SHARD);
+        int[] intervals = index.overlapping(700L - 300L, 700L + 300L);
+        assertEquals("P1", index.getProtein(intervals[0]));
+        assertEquals(200L, index.distance(intervals[0], 700L));
+        assertEquals(300L, index.distance(intervals[1], 700L));
+        assertEquals(0L, index.distance(intervals[0], 250L));
+    }
+
+    @Test
+    void batchMatchesSingleQueriesTest() {
+        ImmutableSetMultimap.Builder<Long, String> builder = ImmutableSetMultimap.builder();
+        Random random = new Random(7);
+        for (int P = 0; P < 200; P++) {
+            long start = random.nextInt(1000000);
+            builder.put(start, "P" + P);
+            builder.put(start + random.nextInt(50000), "P" + P);
+        }
+        PositionIndex index = PositionIndex.build(builder.build());
+
+        long[] positions = new long[500];
+        for (int Q = 0; Q < positions.length; Q++) {
+            positions[Q] = random.nextInt(1100000);
+        }
+        Arrays.sort(positions);
+        for (long window : new long[]{0L, 1000L, 100000L}) {
+            int[][] batch = index.overlapping(positions, window);
+            for (int Q = 0; Q < positions.length; Q++) {
+                assertArrayEquals(index.overlapping(positions[Q] - window, positions[Q] + window), batch[Q]);
+            }
+        }
+    }
+
+    @Test
+    void writeReadTest() throws IOException {
+        File file = File.createTempFile("chrBpIndex", ".gz");
+        file.deleteOnExit();
+        PositionIndex.build(SHARD).write(file);
+
+        PositionIndex index = PositionIndex.read(new FileInputStream(file));
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("P1", "P2"), index.getProteins(320L, 0L));
+        assertEquals(5000L, index.getEnd(index.overlapping(5000L, 5000L)[0]));
+    }
+
+    @Test
+    void parsePositionTest() {
+        assertEquals(11854476L, VariantWindows.parsePosition("1 11854476"));
+        assertEquals(94508323L, VariantWindows.parsePosition("chr1\t94508323\t.\tC"));
+        assertEquals(-1L, VariantWindows.parsePosition("1"));
+        assertEquals(-1L, VariantWindows.parsePosition("1 12a"));
+    }
+
+    @Test
+    void variantWindowsTest() {
+        Map<Integer, PositionIndex> indexes = ImmutableMap.of(3, PositionIndex.build(SHARD));
+        List<String> input = Arrays.asList("#CHROM POS ID REF ALT", "3 700 . C", "3 320", "4 320", "3 320");
+
+        List<VariantWindows.Hit> hits = VariantWindows.map(input, indexes, 0L);
+        assertEquals(2, hits.size());
+        assertEquals("P1", hits.get(0).getProtein());
+        assertEquals(320L, hits.get(1).getPosition());
+        assertEquals("P2", hits.get(1).getProtein());
+
+        hits = VariantWindows.map(input, indexes, 300L);
+        assertEquals(4, hits.size());
+        assertEquals(700L, hits.get(2).getPosition());
+        assertEquals(200L, hits.get(2).getDistance());
+        assertEquals("P3", hits.get(3).getProtein());
+        assertEquals(3, hits.get(3).getChromosome());
+    }
+}
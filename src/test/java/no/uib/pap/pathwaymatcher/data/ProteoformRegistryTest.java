@@ -0,0 +1,61 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProteoformRegistryTest {
+
+    @Test
+    void internTest() {
+        ProteoformRegistry registry = new ProteoformRegistry();
+        int first = registry.intern("A2RUS2;00046:472,00046:490");
+        int unmodified = registry.intern("A2RUS2;");
+        int isoform = registry.intern("O00159-3;");
+
+        assertEquals(3, registry.size());
+        assertNotEquals(first, unmodified);
+        assertEquals(first, registry.intern("A2RUS2;00046:490,00046:472"));
+        assertEquals(unmodified, registry.intern("A2RUS2"));
+        assertEquals(isoform, registry.intern("O00159-3;"));
+        assertEquals(3, registry.size());
+
+        assertEquals("A2RUS2;00046:472,00046:490", registry.getSimple(first));
+        assertEquals("A2RUS2", registry.getAccession(unmodified));
+        assertEquals("O00159-3", registry.getAccession(isoform));
+    }
+
+    @Test
+    void modificationsTest() {
+        ProteoformRegistry registry = new ProteoformRegistry();
+        int id = registry.intern("A6NMZ7;00039:null,00037:12");
+
+        assertEquals(2, registry.getModificationCount(id));
+        long modification = registry.getModification(id, 0);
+        assertEquals(37, ProteoformRegistry.getMod(modification));
+        assertEquals(12, ProteoformRegistry.getSite(modification));
+        modification = registry.getModification(id, 1);
+        assertEquals(39, ProteoformRegistry.getMod(modification));
+        assertEquals(-1, ProteoformRegistry.getSite(modification));
+
+        assertNotEquals(id, registry.intern("A6NMZ7;00039:null,00037:13"));
+        assertNull(registry.getProteoform(id));
+    }
+
+    @Test
+    void invalidTest() {
+        ProteoformRegistry registry = new ProteoformRegistry();
+        assertThrows(IllegalArgumentException.class, () -> registry.intern("A6NMZ7;00039"));
+        assertThrows(IllegalArgumentException.class, () -> registry.intern("A6NMZ7;00039:1x"));
+        assertThrows(IllegalArgumentException.class, () -> registry.intern("A6NMZ7;:5"));
+    }
+
+    @Test
+    void growTest() {
+        ProteoformRegistry registry = new ProteoformRegistry();
+        for (int I = 0; I < 1000; I++) {
+            assertEquals(I, registry.intern("P12345;00046:" + I));
+        }
+        assertEquals("P12345;00046:999", registry.getSimple(999));
+    }
+}
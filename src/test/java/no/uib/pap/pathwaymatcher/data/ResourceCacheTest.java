@@ -0,0 +1,84 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceCacheTest {
+
+    private static String load(ResourceCache cache, String name, long size) throws IOException {
+        return cache.get(name, () -> name, resource -> size);
+    }
+
+    @Test
+    void evictLeastRecentlyUsedTest() throws IOException {
+        ResourceCache cache = new ResourceCache(100);
+        load(cache, "a", 40);
+        load(cache, "b", 40);
+        load(cache, "a", 40);           // "b" is now the least recently used
+        load(cache, "c", 40);
+
+        assertTrue(cache.contains("a"));
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("c"));
+        assertEquals(80, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getLoads());
+        assertEquals(0, cache.getReloads());
+    }
+
+    @Test
+    void reloadTest() throws IOException {
+        ResourceCache cache = new ResourceCache(50);
+        assertEquals("a", load(cache, "a", 40));
+        assertEquals("b", load(cache, "b", 40));
+        assertEquals("a", load(cache, "a", 40));
+
+        assertEquals(3, cache.getLoads());
+        assertEquals(1, cache.getReloads());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(40, cache.getPeakSize());
+    }
+
+    @Test
+    void oversizedTest() throws IOException {
+        ResourceCache cache = new ResourceCache(100);
+        load(cache, "a", 40);
+        assertEquals("big", load(cache, "big", 500));
+        assertFalse(cache.contains("big"));
+        assertTrue(cache.contains("a"));
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    void unlimitedTest() throws IOException {
+        ResourceCache cache = new ResourceCache(ResourceCache.UNLIMITED);
+        for (int I = 0; I < 100; I++) {
+            load(cache, "r" + I, Integer.MAX_VALUE);
+        }
+        assertEquals(0, cache.getEvictions());
+        assertEquals(100, cache.getLoads());
+    }
+
+    @Test
+    void estimateTest() {
+        ImmutableSetMultimap<String, String> small = ImmutableSetMultimap.of("rs1", "P1");
+        ImmutableSetMultimap<String, String> large = ImmutableSetMultimap.of("rs1", "P1", "rs2", "P1", "rs3", "P2");
+        assertTrue(ResourceCache.estimate(small) > 0);
+        assertTrue(ResourceCache.estimate(large) > ResourceCache.estimate(small));
+    }
+
+    @Test
+    void parseMemoryTest() {
+        assertEquals(512L * 1024 * 1024, ResourceCache.parseMemory("512"));
+        assertEquals(800L * 1024 * 1024, ResourceCache.parseMemory("800m"));
+        assertEquals(2L * 1024 * 1024 * 1024, ResourceCache.parseMemory("2G"));
+        assertEquals(64L * 1024, ResourceCache.parseMemory("64k"));
+        assertEquals(-1, ResourceCache.parseMemory("g"));
+        assertEquals(-1, ResourceCache.parseMemory("1.5g"));
+        assertEquals(-1, ResourceCache.parseMemory("-5"));
+    }
+}
@@ -0,0 +1,41 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceManifestTest {
+
+    @Test
+    void checksumTest() throws IOException {
+        File file = File.createTempFile("abc", ".txt");
+        Files.write(file.toPath(), "abc".getBytes(StandardCharsets.UTF_8));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", ResourceManifest.checksum(file));
+        file.delete();
+    }
+
+    @Test
+    void writeReadTest() throws IOException {
+        File directory = Files.createTempDirectory("manifest").toFile();
+        File resource = new File(directory, "genesToProteins.gz");
+        Files.write(resource.toPath(), new byte[]{1, 2, 3});
+
+        ResourceManifest manifest = new ResourceManifest();
+        manifest.add(resource, 42);
+        File file = new File(directory, ResourceManifest.FILE_NAME);
+        manifest.write(file);
+
+        ResourceManifest read = ResourceManifest.read(file);
+        assertEquals(1, read.size());
+        ResourceManifest.Entry entry = read.get("genesToProteins.gz");
+        assertEquals(42, entry.getEntries());
+        assertEquals(3, entry.getBytes());
+        assertEquals(ResourceManifest.checksum(resource), entry.getChecksum());
+        assertNull(read.get("ensemblToProteins.gz"));
+    }
+}
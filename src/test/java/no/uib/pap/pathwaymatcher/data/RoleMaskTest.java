@@ -0,0 +1,41 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import no.uib.pap.model.Role;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleMaskTest {
+
+    @Test
+    void ofTest() {
+        byte mask = RoleMask.of(EnumSet.of(Role.INPUT, Role.CATALYST));
+        assertTrue(RoleMask.contains(mask, Role.INPUT));
+        assertTrue(RoleMask.contains(mask, Role.CATALYST));
+        assertFalse(RoleMask.contains(mask, Role.OUTPUT));
+        assertEquals(RoleMask.NONE, RoleMask.of((Set<Role>) null));
+        assertEquals(RoleMask.of(Role.OUTPUT), RoleMask.of(EnumSet.of(Role.OUTPUT)));
+        for (Role role : Role.values()) {
+            assertTrue(RoleMask.contains(RoleMask.ALL, role));
+            assertEquals(role.toString(), RoleMask.getName(Integer.numberOfTrailingZeros(RoleMask.of(role))));
+        }
+    }
+
+    @Test
+    void parseTest() {
+        assertEquals(RoleMask.of(Role.CATALYST), RoleMask.parse("catalyst"));
+        assertEquals(RoleMask.of(EnumSet.of(Role.INPUT, Role.OUTPUT)), RoleMask.parse("Input, OUTPUT"));
+        assertEquals(RoleMask.NONE, RoleMask.parse(""));
+        assertThrows(IllegalArgumentException.class, () -> RoleMask.parse("input,enzyme"));
+    }
+
+    @Test
+    void filterTest() {
+        byte roles = RoleMask.of(EnumSet.of(Role.INPUT, Role.CATALYST));
+        assertEquals(RoleMask.of(Role.CATALYST), (byte) (roles & RoleMask.parse("catalyst")));
+        assertEquals(RoleMask.NONE, (byte) (roles & RoleMask.parse("output")));
+    }
+}
@@ -0,0 +1,74 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RsIdIndexTest {
+
+    private static final ImmutableSetMultimap<String, String> SHARD = ImmutableSetMultimap.<String, String>builder()
+            .put("rs9272346", "P01906")
+            .put("rs9272346", "P01909")
+            .put("rs1024611", "P13500")
+            .put("rs10010131", "P13500")
+            .put("rs7", "O00141")
+            .put("NA", "Q9Y6K9")
+            .build();
+
+    @Test
+    void getProteinsTest() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            RsIdIndex index = RsIdIndex.build(SHARD, offHeap);
+            assertEquals(offHeap, index.isOffHeap());
+            assertEquals(4, index.size());
+            assertEquals(Arrays.asList("P01906", "P01909"), index.getProteins("rs9272346"));
+            assertEquals(Arrays.asList("P13500"), index.getProteins("rs10010131"));
+            assertEquals(Arrays.asList("O00141"), index.getProteins("rs7"));
+            assertEquals(Collections.emptyList(), index.getProteins("NA"));
+            assertEquals(Collections.emptyList(), index.getProteins("rs8"));
+            assertFalse(index.contains("rs99999999"));
+        }
+    }
+
+    @Test
+    void indexOfTest() {
+        ImmutableSetMultimap.Builder<String, String> builder = ImmutableSetMultimap.builder();
+        for (int I = 0; I < 1000; I++) {
+            // Unevenly spread numbers so that the interpolation falls back to binary search
+            builder.put("rs" + (long) I * I * I, "P" + I % 7);
+        }
+        RsIdIndex index = RsIdIndex.build(builder.build(), false);
+        for (int I = 0; I < 1000; I++) {
+            assertEquals(I, index.indexOf((long) I * I * I));
+            assertEquals(-1, index.indexOf((long) I * I * I + 2));
+        }
+    }
+
+    @Test
+    void indexOfSortedTest() {
+        RsIdIndex index = RsIdIndex.build(SHARD, false);
+        int[] indexes = index.indexOf(new long[]{1, 7, 8, 1024611, 9272346, 10010131, 20000000});
+        assertArrayEquals(new int[]{-1, 0, -1, 1, 2, 3, -1}, indexes);
+        assertEquals(Arrays.asList("P01906", "P01909"), index.getProteins(indexes[4]));
+        assertEquals(Collections.emptyList(), index.getProteins(indexes[0]));
+    }
+
+    @Test
+    void writeReadTest() throws IOException {
+        File file = File.createTempFile("rsIdIndex", ".gz");
+        file.deleteOnExit();
+        RsIdIndex.build(SHARD, false).write(file);
+
+        RsIdIndex index = RsIdIndex.read(new FileInputStream(file), true);
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList("P01906", "P01909"), index.getProteins("rs9272346"));
+        assertEquals(Arrays.asList("P13500"), index.getProteins("rs1024611"));
+    }
+}
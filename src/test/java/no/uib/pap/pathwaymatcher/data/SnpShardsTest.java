@@ -0,0 +1,77 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import no.uib.pap.model.InputType;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnpShardsTest {
+
+    @Test
+    void parseChromosomeTest() {
+        assertEquals(1, SnpShards.parseChromosome("1 11854476"));
+        assertEquals(22, SnpShards.parseChromosome("chr22\t16444392"));
+        assertEquals(0, SnpShards.parseChromosome("X 1000"));
+        assertEquals(0, SnpShards.parseChromosome("23 1000"));
+        assertEquals(0, SnpShards.parseChromosome("1a 1000"));
+        assertEquals(0, SnpShards.parseChromosome(""));
+    }
+
+    @Test
+    void chrBpChromosomesTest() throws IOException {
+        List<String> input = Files.readLines(new File("resources/input/GeneticVariants/Chr_Bp/CysticFibrosis.txt"), Charset.defaultCharset());
+        SortedSet<Integer> chromosomes = SnpShards.getChromosomes(input, InputType.CHRBPS, null);
+        assertFalse(chromosomes.isEmpty());
+        assertTrue(chromosomes.size() < SnpShards.CHROMOSOMES);
+    }
+
+    @Test
+    void vcfChromosomesTest() {
+        List<String> input = Arrays.asList("##fileformat=VCFv4.3", "#CHROM POS ID REF ALT", "7 117120017 . C", "7 117120018 . T", "12 1000 . A");
+        assertEquals(Arrays.asList(7, 12), Arrays.asList(SnpShards.getChromosomes(input, InputType.VCF, null).toArray()));
+    }
+
+    @Test
+    void rsIdsWithoutDirectoryTest() {
+        assertEquals(SnpShards.CHROMOSOMES, SnpShards.getChromosomes(Arrays.asList("rs123"), InputType.RSIDS, null).size());
+    }
+
+    @Test
+    void rsIdDirectoryTest() throws IOException {
+        RsIdDirectory directory = RsIdDirectory.build(ImmutableMap.of(
+                6, RsIdDirectory.toRsNumbers(Arrays.asList("rs9272346", "rs1024611", "NA")),
+                17, RsIdDirectory.toRsNumbers(Arrays.asList("rs10010131"))));
+        assertEquals(3, directory.size());
+
+        File file = File.createTempFile("rsIdsToChromosomes", ".gz");
+        file.deleteOnExit();
+        directory.write(file);
+        directory = RsIdDirectory.read(new FileInputStream(file));
+
+        assertEquals(6, directory.getChromosome("rs9272346"));
+        assertEquals(17, directory.getChromosome("rs10010131"));
+        assertEquals(0, directory.getChromosome("rs1"));
+        assertEquals(0, directory.getChromosome("P01308"));
+
+        List<String> input = Arrays.asList("rs9272346", "rs1024611", "rs1");
+        assertEquals(Arrays.asList(6), Arrays.asList(SnpShards.getChromosomes(input, InputType.RSIDS, directory).toArray()));
+    }
+
+    @Test
+    void parseRsNumberTest() {
+        assertEquals(10010131L, RsIdDirectory.parseRsNumber("rs10010131"));
+        assertEquals(-1L, RsIdDirectory.parseRsNumber("rs"));
+        assertEquals(-1L, RsIdDirectory.parseRsNumber("rs12a"));
+        assertEquals(-1L, RsIdDirectory.parseRsNumber("NA"));
+    }
+}
@@ -0,0 +1,165 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TabixIndexTest {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @AfterAll
+    static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Sorted vcf of two chromosomes, spanning many bgzip blocks and 16kb windows.
+     */
+    private static File writeVcf(String prefix) throws IOException {
+        StringBuilder text = new StringBuilder("##fileformat=VCFv4.3\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tS1\tS2\n");
+        for (int chromosome = 1; chromosome <= 2; chromosome++) {
+            for (int I = 0; I < 20000; I++) {
+                long position = 1000L + I * 997L;
+                text.append(prefix).append(chromosome).append('\t').append(position).append("\trs").append(chromosome * 100000 + I)
+                        .append("\tA\tG\t.\tPASS\t.\tGT\t").append(I % 3 == 0 ? "0/1" : "0/0").append("\t1/1\n");
+            }
+        }
+        File file = File.createTempFile("variants", ".vcf.gz");
+        file.deleteOnExit();
+        try (OutputStream output = new BufferedOutputStream(new FileOutputStream(file))) {
+            TabixIndex.writeBgzf(text.toString().getBytes(StandardCharsets.ISO_8859_1), output);
+        }
+        return file;
+    }
+
+    private static List<String> read(VcfReader reader, File file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        reader.read(file, executor, 1000, batch -> {
+            for (int I = 0; I < batch.size(); I++) {
+                lines.add(batch.getLine(I));
+            }
+        });
+        return lines;
+    }
+
+    private static long getInflatedSize(File file, long[] chunks) throws IOException {
+        long size = 0;
+        try (BgzfChannel channel = new BgzfChannel(file, chunks)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            int count;
+            while ((count = channel.read(buffer)) >= 0) {
+                size += count;
+                buffer.clear();
+            }
+        }
+        return size;
+    }
+
+    @Test
+    void binTest() {
+        // Values of reg2bin in the specification of the format
+        assertEquals(4681, TabixIndex.getBin(0, 1));
+        assertEquals(4681 + 1, TabixIndex.getBin(16384, 16385));
+        assertEquals(585, TabixIndex.getBin(16383, 16385));
+        assertEquals(0, TabixIndex.getBin(0, 1 << 29));
+        assertEquals(Arrays.asList(0, 1, 9, 73, 585, 4681), TabixIndex.overlappingBins(0, 1));
+        assertTrue(TabixIndex.overlappingBins(10000, 40000).containsAll(Arrays.asList(4681, 4682, 4683)));
+    }
+
+    @Test
+    void regionTest() {
+        GenomicRegion region = GenomicRegion.parse("chr2:1,000-2,000");
+        assertEquals(2, region.getChromosome());
+        assertEquals(1000, region.getStart());
+        assertEquals(2000, region.getEnd());
+        assertTrue(region.contains(2, 2000));
+        assertFalse(region.contains(2, 2001));
+        assertFalse(region.contains(1, 1500));
+        assertEquals("7:1-" + VariantWindows.MAX_POSITION, GenomicRegion.parse("7").toString());
+        assertEquals("7:5-5", GenomicRegion.parse("7:5").toString());
+        assertThrows(IllegalArgumentException.class, () -> GenomicRegion.parse("X:1-5"));
+        assertThrows(IllegalArgumentException.class, () -> GenomicRegion.parse("1:5-1"));
+        assertThrows(IllegalArgumentException.class, () -> GenomicRegion.parse("1:a-b"));
+    }
+
+    @Test
+    void buildAndReadTest() throws IOException {
+        for (String prefix : new String[]{"", "chr"}) {
+            File file = writeVcf(prefix);
+            assertTrue(BgzfChannel.isBgzf(file));
+            TabixIndex.build(file).write(TabixIndex.getIndexFile(file));
+            TabixIndex.getIndexFile(file).deleteOnExit();
+            TabixIndex index = TabixIndex.read(TabixIndex.getIndexFile(file));
+            assertEquals(Arrays.asList(prefix + "1", prefix + "2"), index.getNames());
+
+            List<String> all = read(new VcfReader(), file);
+            assertEquals(40000, all.size());
+            long fileSize = getInflatedSize(file, new long[]{0L, Long.MAX_VALUE});
+            for (String text : new String[]{"1:1-1000", "1:5000-200000", "2:9000000-12000000", "2:19000000", "2"}) {
+                GenomicRegion region = GenomicRegion.parse(text);
+                List<String> expected = new ArrayList<>();
+                for (String line : all) {
+                    String[] fields = line.split("\t");
+                    if (region.contains(Integer.parseInt(fields[0]), Long.parseLong(fields[1]))) {
+                        expected.add(line);
+                    }
+                }
+                assertEquals(expected, read(new VcfReader(false, 0.0, 1.0, region), file), text);
+
+                // Only the chunks of the region are read
+                long size = getInflatedSize(file, index.getChunks(region));
+                assertTrue(expected.size() > 10000 || size < fileSize / 10, text);
+            }
+            assertEquals(0, index.getChunks(GenomicRegion.parse("3")).length);
+        }
+    }
+
+    @Test
+    void regionGenotypesTest() throws IOException {
+        File file = writeVcf("chr");
+        TabixIndex.build(file).write(TabixIndex.getIndexFile(file));
+        TabixIndex.getIndexFile(file).deleteOnExit();
+        List<String> carried = new ArrayList<>();
+        long count = new VcfReader(false, 0.0, 1.0, GenomicRegion.parse("chr2:1000-5000")).readGenotypes(file, executor,
+                new VcfReader.GenotypeHandler() {
+                    @Override
+                    public void samples(List<String> samples) {
+                        assertEquals(Arrays.asList("S1", "S2"), samples);
+                    }
+
+                    @Override
+                    public boolean variant(int chromosome, long position) {
+                        carried.add(chromosome + ":" + position);
+                        return true;
+                    }
+
+                    @Override
+                    public void carrier(int sample) {
+                        carried.add("S" + (sample + 1));
+                    }
+                });
+        assertEquals(5, count);
+        assertEquals(Arrays.asList("2:1000", "S1", "S2", "2:1997", "S2", "2:2994", "S2", "2:3991", "S1", "S2", "2:4988", "S2"), carried);
+    }
+
+    @Test
+    void unsortedTest() throws IOException {
+        File file = File.createTempFile("unsorted", ".gz");
+        file.deleteOnExit();
+        try (OutputStream output = new FileOutputStream(file)) {
+            TabixIndex.writeBgzf("1 200\n1 100\n".getBytes(StandardCharsets.ISO_8859_1), output);
+        }
+        assertThrows(IOException.class, () -> TabixIndex.build(file));
+    }
+}
@@ -0,0 +1,118 @@
+package no.uib.pap.pathwaymatcher.data;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VcfReaderTest {
+
+    private static final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private static final String VCF = "##fileformat=VCFv4.3\n"
+            + "##INFO=<ID=AF,Number=A,Type=Float,Description=\"Allele Frequency\">\n"
+            + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tNA00001\tNA00002\n"
+            + "20\t14370\trs6054257\tG\tA\t29\tPASS\tNS=3;DP=14;AF=0.5;DB\tGT\t0|0\t1|0\n"
+            + "chr20\t17330\t.\tT\tA\t3\tq10\tNS=3;DP=11;AF=0.017\tGT\t0|0\t0|1\n"
+            + "20\t1110696\trs6040355\tA\tG,T\t67\tPASS\tNS=2;DP=10;AF=0.333,0.667;AA=T\tGT\t1|2\t2|1\n"
+            + "X\t1230237\t.\tT\t.\t47\tPASS\tNS=3;DP=13;AA=T\tGT\t0|0\t0|0\n"
+            + "20\t1234567\trs1\tGTC\tG\t50\tPASS\tNS=3;DP=9;MAF=0.9\tGT\t0/1\t0/2\n";
+
+    @AfterAll
+    static void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static File write(String text, boolean gzip) throws IOException {
+        File file = File.createTempFile("variants", gzip ? ".vcf.gz" : ".vcf");
+        file.deleteOnExit();
+        try (OutputStream output = gzip ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+            output.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        return file;
+    }
+
+    private static List<String> read(VcfReader reader, File file, int batchSize) throws IOException {
+        List<String> lines = new ArrayList<>();
+        long count = reader.read(file, executor, batchSize, batch -> {
+            assertTrue(batch.size() <= batchSize);
+            for (int I = 0; I < batch.size(); I++) {
+                lines.add(batch.getLine(I));
+            }
+        });
+        assertEquals(lines.size(), count);
+        return lines;
+    }
+
+    @Test
+    void readTest() throws IOException {
+        List<String> expected = Arrays.asList("20\t14370\trs6054257", "20\t17330\t.", "20\t1110696\trs6040355", "20\t1234567\trs1");
+        for (boolean gzip : new boolean[]{false, true}) {
+            File file = write(VCF, gzip);
+            for (int batchSize : new int[]{1, 3, 100}) {
+                assertEquals(expected, read(new VcfReader(), file, batchSize));
+            }
+        }
+    }
+
+    @Test
+    void filterTest() throws IOException {
+        File file = write(VCF, true);
+        assertEquals(Arrays.asList("20\t14370\trs6054257", "20\t1110696\trs6040355", "20\t1234567\trs1"),
+                read(new VcfReader(true, 0.0, 1.0), file, 2));
+        assertEquals(Arrays.asList("20\t14370\trs6054257", "20\t1110696\trs6040355"),
+                read(new VcfReader(false, 0.4, 1.0), file, 2));
+        assertEquals(Arrays.asList("20\t17330\t."), read(new VcfReader(false, 0.0, 0.05), file, 2));
+        assertEquals(Arrays.asList(), read(new VcfReader(true, 0.0, 0.05), file, 2));
+    }
+
+    @Test
+    void genotypesTest() throws IOException {
+        List<String> carried = new ArrayList<>();
+        VcfReader.GenotypeHandler handler = new VcfReader.GenotypeHandler() {
+            @Override
+            public void samples(List<String> samples) {
+                assertEquals(Arrays.asList("NA00001", "NA00002"), samples);
+            }
+
+            @Override
+            public boolean variant(int chromosome, long position) {
+                carried.add(chromosome + ":" + position);
+                return position != 1234567;
+            }
+
+            @Override
+            public void carrier(int sample) {
+                carried.add("NA0000" + (sample + 1));
+            }
+        };
+        for (boolean gzip : new boolean[]{false, true}) {
+            carried.clear();
+            assertEquals(4, new VcfReader().readGenotypes(write(VCF, gzip), executor, handler));
+            assertEquals(Arrays.asList("20:14370", "NA00002", "20:17330", "NA00002", "20:1110696", "NA00001", "NA00002",
+                    "20:1234567"), carried);
+        }
+
+        carried.clear();
+        assertEquals(2, new VcfReader(true, 0.4, 1.0).readGenotypes(write(VCF, false), executor, handler));
+        assertEquals(Arrays.asList("20:14370", "NA00002", "20:1110696", "NA00001", "NA00002"), carried);
+    }
+
+    @Test
+    void chrBpTest() throws IOException {
+        File file = write("1 94508323\r\n1 94517254\r\nchr22 100\r\n23 5\r\n", false);
+        assertEquals(Arrays.asList("1\t94508323\t.", "1\t94517254\t.", "22\t100\t."), read(new VcfReader(), file, 2));
+    }
+}